@@ -69,6 +69,7 @@ public class Config {
 	static final String eGlobalDeckGlOutFile = "deckGlOutFile";
 	static final String eGlobalMetricsOutFile = "metricsOutFile";
 	static final String eGlobalMetricsBinSizeInSecs = "metricsBinSizeInSecs";
+	static final String eGlobalHazardCache = "hazardCache";
 	// Model IDs in XML
 	static final String eModelCyclone = "cyclone";
 	static final String eModelFlood = "flood";
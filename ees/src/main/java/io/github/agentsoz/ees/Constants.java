@@ -76,6 +76,7 @@ public class Constants {
     public static final String EMBERS_DATA = "embers_data";
     public static final String FIRE_ALERT = "fire_alert";
     public static final String FIRE_DATA  = "fire_data";
+    public static final String FIRE_ARRIVAL_DATA  = "fire_arrival_data";
     public static final String CYCLONE_DATA  = "cylcone_data";
     public static final String FLOOD_DATA  = "flood_data";
     public static final String SIGHTED_EMBERS= "embers";
@@ -24,29 +24,24 @@ package io.github.agentsoz.ees;
 
 import io.github.agentsoz.dataInterface.DataServer;
 import io.github.agentsoz.dataInterface.DataSource;
+import io.github.agentsoz.ees.util.GeoJsonReader;
+import io.github.agentsoz.ees.util.HazardCache;
 import io.github.agentsoz.util.Time;
 import org.geotools.geometry.jts.GeometryBuilder;
 import org.geotools.geometry.jts.JTS;
 import org.geotools.referencing.CRS;
-import org.json.simple.JSONArray;
-import org.json.simple.JSONObject;
-import org.json.simple.parser.JSONParser;
 import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
 import org.locationtech.jts.geom.Geometry;
 import org.opengis.referencing.operation.MathTransform;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.FileInputStream;
-import java.io.FileReader;
-import java.io.InputStreamReader;
-import java.io.Reader;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
-import java.util.zip.GZIPInputStream;
 
 
 
@@ -60,7 +55,6 @@ public class CycloneModel implements DataSource<Geometry[]> {
 
     // Model options' values
     private String optGeoJsonFile = null;
-    private JSONObject json = null;
     private String optOffsetFromSimStart = null ;
     private Date startDate = null ;
     private TreeMap<Double, ArrayList<Geometry>> cyclone;
@@ -68,6 +62,7 @@ public class CycloneModel implements DataSource<Geometry[]> {
     private String cycloneGeoJsonCRS = "EPSG:4326";
     private Time.TimestepUnit timestepUnit = Time.TimestepUnit.SECONDS;
     private double startTimeInSeconds = -1;
+    private HazardCache.Mode optHazardCache = HazardCache.Mode.off;
     private DataServer dataServer = null;
 
 
@@ -99,6 +94,9 @@ public class CycloneModel implements DataSource<Geometry[]> {
                 case Config.eGlobalCoordinateSystem:
                     optCrs = opts.get(opt);
                     break;
+                case Config.eGlobalHazardCache:
+                    optHazardCache = HazardCache.parseMode(opts.get(opt));
+                    break;
                 default:
                     logger.warn("Ignoring option: " + opt + "=" + opts.get(opt));
             }
@@ -107,19 +105,40 @@ public class CycloneModel implements DataSource<Geometry[]> {
     }
 
 
+    /**
+     * Gets the envelope of all the cyclone shapes loaded, or an empty envelope if there are none
+     */
+    public Envelope getExtent() {
+        Envelope extent = new Envelope();
+        for (List<Geometry> shapes : cyclone.values()) {
+            for (Geometry shape : shapes) {
+                extent.expandToInclude(shape.getEnvelopeInternal());
+            }
+        }
+        return extent;
+    }
+
     /**
      * Start publishing cyclone data
      */
     public void start() {
         if (optGeoJsonFile != null && !optGeoJsonFile.isEmpty()) {
             try {
-                loadCycloneFileGeoJson(optGeoJsonFile);
+                HazardCache cache = new HazardCache(optGeoJsonFile,
+                        "cyclone;" + optOffsetFromSimStart + ";" + cycloneGeoJsonCRS + ";" + optCrs, optHazardCache);
+                HazardCache.Contents cached = cache.read();
+                if (cached != null) {
+                    cyclone.putAll(cached.getGeometries(Constants.CYCLONE_DATA));
+                } else {
+                    loadCycloneFileGeoJson(optGeoJsonFile);
+                    cache.write(new HazardCache.Contents().putGeometries(Constants.CYCLONE_DATA, cyclone));
+                }
                 dataServer.registerTimedUpdate(Constants.CYCLONE_DATA, this, startTimeInSeconds);
             } catch (Exception e) {
                 throw new RuntimeException("Could not load cyclone data from [" + optGeoJsonFile + "]", e);
             }
         }
-        else if (json==null) {
+        else {
             logger.warn("started but will be idle forever!!");
         }
     }
@@ -128,45 +147,28 @@ public class CycloneModel implements DataSource<Geometry[]> {
         logger.info("Loading GeoJSON file: " + file);
         MathTransform utmTransform = CRS.findMathTransform(CRS.decode(cycloneGeoJsonCRS), CRS.decode(optCrs), false);
 
-        // Create the JSON parsor
-        JSONParser parser = new JSONParser();
-        Reader reader = (file.endsWith(".gz")) ?
-                new InputStreamReader(new GZIPInputStream(new FileInputStream(file))) :
-                new FileReader(file);
-        // Read in the JSON file
-        json = (JSONObject) (parser.parse(reader));
-        // close the reader
-        reader.close();
-        // Loop through the features (which contains the time-stamped cyclone
-        // shapes)
-        JSONArray features = (JSONArray) json.get("features");
-        Iterator<JSONObject> iterator = features.iterator();
-
-        while (iterator.hasNext()) {
-            JSONObject feature = iterator.next();
-            JSONObject properties = (JSONObject) feature.get("properties");
-            String timestamp = (String) properties.get("timestamp");
-            JSONObject geometry = (JSONObject) feature.get("geometry");
-            JSONArray jcoords = (JSONArray) geometry.get("coordinates");
-
-
-            // create cyclone map
-            if (timestamp != null) {
-                double secs = getTimeInSeconds(timestamp);
-
-                if(!cyclone.containsKey(secs)) {
-                    ArrayList<Geometry> polygonList = new  ArrayList<Geometry>();
-                    cyclone.put(secs,polygonList);
-                }
-                Iterator<JSONArray> it = jcoords.iterator();
-                while(it.hasNext()){
-                    Geometry shape = getGeometryFromCoords(getPolygonCoordinates(it.next()));
-                    ArrayList<Geometry> polyList = cyclone.get(secs);
-                    polyList.add(shape);
-                }
+        // Stream through the features (which contain the time-stamped cyclone
+        // shapes) one at a time, rather than parsing the whole file first
+        try (GeoJsonReader reader = new GeoJsonReader(file)) {
+            for (GeoJsonReader.Feature feature = reader.next(); feature != null; feature = reader.next()) {
+                String timestamp = (String) feature.getProperty("timestamp");
+
+                // create cyclone map
+                if (timestamp != null) {
+                    double secs = getTimeInSeconds(timestamp);
+
+                    if(!cyclone.containsKey(secs)) {
+                        ArrayList<Geometry> polygonList = new  ArrayList<Geometry>();
+                        cyclone.put(secs,polygonList);
+                    }
+                    for (double[] ring : feature.getPositionLists()) {
+                        Geometry shape = getGeometryFromCoords(ring, utmTransform);
+                        ArrayList<Geometry> polyList = cyclone.get(secs);
+                        polyList.add(shape);
+                    }
 
+                }
             }
-
         }
     }
 
@@ -221,34 +223,13 @@ public class CycloneModel implements DataSource<Geometry[]> {
         return null;
     }
 
-    // returns a 2D array of all json polygon points
-    private Double[][] getPolygonCoordinates(JSONArray jcoords) {
-        Double[][] coordinates = new Double[jcoords.size()][2];
-        // has a [[[x,y],[x,y]]] form ie one extra nesting
-        Iterator<JSONArray> it = jcoords.iterator();
-        int i = 0;
-        while (it.hasNext()) {
-            coordinates[i++] = (Double[]) it.next().toArray(new Double[2]);
-//            Iterator<JSONArray> cit = obj.iterator();
-//            while (cit.hasNext()) {
-//                coordinates[i++] = (Double[]) cit.next().toArray(new Double[2]);
-//            }
-//            break; // get the first element only of outer array
-        }
-        return coordinates;
-    }
-
-
-
-    private Geometry getGeometryFromCoords(Double[][] pairs) throws Exception{
-        MathTransform utmTransform = CRS.findMathTransform(CRS.decode(cycloneGeoJsonCRS), CRS.decode(optCrs), false);
-
+    // positions come packed as lat,lon pairs
+    private Geometry getGeometryFromCoords(double[] pairs, MathTransform utmTransform) throws Exception{
         int i = 0;
-        double[] flatarray = new double[pairs.length*2];
-        int o = 0;
-        for (Double[] pair : pairs) {
+        double[] flatarray = new double[pairs.length];
+        for (int p = 0; p < pairs.length; p += 2) {
 
-            Coordinate coord = new Coordinate(pair[1],pair[0]); // lat,lon
+            Coordinate coord = new Coordinate(pairs[p+1],pairs[p]); // lat,lon
             JTS.transform(coord, coord, utmTransform); // transform EPSG:4326 to global CRS EPSG: 28356 (EPSSG:7856)
             flatarray[i++] = coord.getX();
             flatarray[i++] = coord.getY();
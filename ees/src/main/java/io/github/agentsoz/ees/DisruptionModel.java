@@ -137,6 +137,17 @@ public class DisruptionModel implements DataSource<SortedMap<Double, Disruption>
 		this.dataServer = dataServer;
 	}
 
+	/**
+	 * Gets the ids of all the links that the loaded disruptions impact
+	 */
+	public Set<String> getImpactLinkIds() {
+		Set<String> linkIds = new LinkedHashSet<>();
+		for (Disruption disruption : disruptions.values()) {
+			linkIds.addAll(Arrays.asList(disruption.getImpactLinks()));
+		}
+		return linkIds;
+	}
+
 	/**
 	 * Start publishing disruptions data
 	 * @param hhmm an array of size 2 with hour and minutes representing start time
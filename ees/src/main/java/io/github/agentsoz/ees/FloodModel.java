@@ -24,24 +24,22 @@ package io.github.agentsoz.ees;
 
 import io.github.agentsoz.dataInterface.DataServer;
 import io.github.agentsoz.dataInterface.DataSource;
+import io.github.agentsoz.ees.util.GeoJsonReader;
+import io.github.agentsoz.ees.util.HazardCache;
 import io.github.agentsoz.util.Time;
 import org.geotools.geometry.jts.GeometryBuilder;
 import org.geotools.geometry.jts.JTS;
 import org.geotools.referencing.CRS;
-import org.json.simple.JSONArray;
-import org.json.simple.JSONObject;
-import org.json.simple.parser.JSONParser;
 import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
 import org.locationtech.jts.geom.Geometry;
 import org.opengis.referencing.operation.MathTransform;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.*;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
-import java.util.zip.GZIPInputStream;
 
 public class FloodModel implements DataSource<Geometry[]> {
 
@@ -56,13 +54,13 @@ public class FloodModel implements DataSource<Geometry[]> {
     private String optGeoJsonFile = null;
     private String optOffsetFromSimStart = null ;
     private String timestampColumnName = "timestamp";
-    private JSONObject json = null;
     private TreeMap<Double, ArrayList<Geometry>> flood;
     private LocalDateTime startDate = null ;
     private String optCrs = "EPSG:28356";
     private String floodGeoJsonCRS = "EPSG:4326";
     private Time.TimestepUnit timestepUnit = Time.TimestepUnit.SECONDS;
     private double startTimeInSeconds = -1;
+    private HazardCache.Mode optHazardCache = HazardCache.Mode.off;
     private DataServer dataServer = null;
 
 
@@ -90,6 +88,9 @@ public class FloodModel implements DataSource<Geometry[]> {
                 case Config.eGlobalCoordinateSystem:
                     optCrs = opts.get(opt);
                     break;
+                case Config.eGlobalHazardCache:
+                    optHazardCache = HazardCache.parseMode(opts.get(opt));
+                    break;
                 case etimestampColumnName:
                     timestampColumnName = opts.get(opt);
                     break;
@@ -103,79 +104,78 @@ public class FloodModel implements DataSource<Geometry[]> {
 
     }
 
+    /**
+     * Gets the envelope of all the flood shapes loaded, or an empty envelope if there are none
+     */
+    public Envelope getExtent() {
+        Envelope extent = new Envelope();
+        for (List<Geometry> shapes : flood.values()) {
+            for (Geometry shape : shapes) {
+                extent.expandToInclude(shape.getEnvelopeInternal());
+            }
+        }
+        return extent;
+    }
+
     /**
      * Start publishing flood data
      */
     public void start() {
         if (optGeoJsonFile != null && !optGeoJsonFile.isEmpty()) {
             try {
-                loadFloodFileGeoJson(optGeoJsonFile);
+                HazardCache cache = new HazardCache(optGeoJsonFile,
+                        "flood;" + timestampColumnName + ";" + optOffsetFromSimStart + ";" + floodGeoJsonCRS + ";" + optCrs,
+                        optHazardCache);
+                HazardCache.Contents cached = cache.read();
+                if (cached != null) {
+                    flood.putAll(cached.getGeometries(Constants.FLOOD_DATA));
+                } else {
+                    loadFloodFileGeoJson(optGeoJsonFile);
+                    cache.write(new HazardCache.Contents().putGeometries(Constants.FLOOD_DATA, flood));
+                }
                 dataServer.registerTimedUpdate(Constants.FLOOD_DATA, this, startTimeInSeconds);
             } catch (Exception e) {
                 throw new RuntimeException("Could not load flood data from [" + optGeoJsonFile + "]", e);
             }
         }
-        else if (json==null) {
+        else {
             logger.warn("started but will be idle forever!!");
         }
     }
 
     private void loadFloodFileGeoJson(String file) throws Exception {
         logger.info("Loading GeoJSON file: " + file);
+        MathTransform utmTransform = CRS.findMathTransform(CRS.decode(floodGeoJsonCRS), CRS.decode(optCrs), false);
 
-        // Create the JSON parsor
-        JSONParser parser = new JSONParser();
-        Reader reader = (file.endsWith(".gz")) ?
-                new InputStreamReader(new GZIPInputStream(new FileInputStream(file))) :
-                new FileReader(file);
-        // Read in the JSON file
-        json = (JSONObject) (parser.parse(reader));
-        // close the reader
-        reader.close();
-        // Loop through the features (which contains the time-stamped flood shapes
-        JSONArray features = (JSONArray) json.get("features");
-        Iterator<JSONObject> iterator = features.iterator();
-        while (iterator.hasNext()) {
-            JSONObject feature = iterator.next();
-            JSONObject properties = (JSONObject) feature.get("properties");
-            String time = (String) properties.get(timestampColumnName);
-            JSONObject geometry = (JSONObject) feature.get("geometry");
-            JSONArray jcoords = (JSONArray) geometry.get("coordinates");
-
-            //Iterator<JSONArray> it = jcoords.iterator();
-            JSONArray jArr = (JSONArray) jcoords.get(0); // first element contains the coords
-            Iterator<JSONArray>  it = jArr.iterator();
-            Double[][] coordinates = new Double[jArr.size()][2];
-
-            int i = 0;
-            while (it.hasNext()) {
-                coordinates[i++] = (Double[]) it.next().toArray(new Double[2]);
-            }
+        // Stream through the features (which contain the time-stamped flood shapes)
+        // one at a time, rather than parsing the whole file first
+        try (GeoJsonReader reader = new GeoJsonReader(file)) {
+            for (GeoJsonReader.Feature feature = reader.next(); feature != null; feature = reader.next()) {
+                String time = (String) feature.getProperty(timestampColumnName);
+                double[] coordinates = feature.getFirstPositionList(); // first element contains the coords
+
+                if (time != null && coordinates != null) {
+                    double secs = getTimeInSeconds(time);
+                    //double secs = 0.0; // flood model starts at time 0.0
+                    if(!flood.containsKey(secs)) {
+                        ArrayList<Geometry> polygonList = new  ArrayList<Geometry>();
+                        flood.put(secs,polygonList);
+                    }
+                    ArrayList<Geometry> list = flood.get(secs);
+                    list.add(getGeometryFromCoords(coordinates, utmTransform));
 
-            if (time != null) {
-                double secs = getTimeInSeconds(time);
-                //double secs = 0.0; // flood model starts at time 0.0
-                if(!flood.containsKey(secs)) {
-                    ArrayList<Geometry> polygonList = new  ArrayList<Geometry>();
-                    flood.put(secs,polygonList);
                 }
-                ArrayList<Geometry> list = flood.get(secs);
-                list.add(getGeometryFromCoords(coordinates));
-
             }
-
         }
     }
 
-    private Geometry getGeometryFromCoords(Double[][] pairs) throws Exception{
-        MathTransform utmTransform = CRS.findMathTransform(CRS.decode(floodGeoJsonCRS), CRS.decode(optCrs), false);
-
+    // positions come packed as lat,lon pairs
+    private Geometry getGeometryFromCoords(double[] pairs, MathTransform utmTransform) throws Exception{
         int i = 0;
-        double[] flatarray = new double[pairs.length*2];
-        int o = 0;
-        for (Double[] pair : pairs) {
+        double[] flatarray = new double[pairs.length];
+        for (int p = 0; p < pairs.length; p += 2) {
 
-            Coordinate coord = new Coordinate(pair[1],pair[0]);
+            Coordinate coord = new Coordinate(pairs[p+1],pairs[p]);
             JTS.transform(coord, coord, utmTransform); // transform EPSG:4326 to global CRS EPSG: 28356 (EPSSG:7856)
             flatarray[i++] = coord.getX();
             flatarray[i++] = coord.getY();
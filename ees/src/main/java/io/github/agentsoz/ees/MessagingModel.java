@@ -26,6 +26,7 @@ package io.github.agentsoz.ees;
 import com.google.gson.Gson;
 import io.github.agentsoz.dataInterface.DataServer;
 import io.github.agentsoz.dataInterface.DataSource;
+import io.github.agentsoz.ees.util.GeoJsonReader;
 import io.github.agentsoz.util.Time;
 import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
@@ -153,42 +154,34 @@ public class MessagingModel implements DataSource<SortedMap<Double, EmergencyMes
 	 * @throws ParseException
 	 * @throws java.text.ParseException
 	 */
-	@SuppressWarnings("unchecked")
 	private void loadGeoJsonZones(String file) throws IOException, ParseException, java.text.ParseException {
 		logger.info("Loading zones from GeoJSON file: " + file);
-		// Create the JSON parsor
-		JSONParser parser = new JSONParser();
-		// Read in the JSON file
-		JSONObject json = (JSONObject) (parser.parse(new FileReader(file)));
-		// Loop through the features (which contains the time-stamped fire
-		// shapes)
-		JSONArray features = (JSONArray) json.get("features");
-		for (JSONObject feature : (Iterable<JSONObject>) features) {
-			JSONObject properties = (JSONObject) feature.get("properties");
-			String zoneId = (properties.get("SA1_MAIN11") != null) ?
-					(String) properties.get("SA1_MAIN11") :
-					(String) properties.get("SA1_MAIN16");
-			if (optZonesFileIdColumnName != null) {
-				zoneId = (String) properties.get(optZonesFileIdColumnName);
-			}
-			if (zoneId == null) {
-				logger.warn("Feature has no property named SA1_MAIN11 or SA1_MAIN16; discarding");
-				continue;
-			}
-			JSONObject geometry = (JSONObject) feature.get("geometry");
-			String jtype = (String)geometry.get("type");
-			if (!jtype.toLowerCase().equals("polygon")) {
-				throw new RuntimeException("GeoJSON file " + file + " has geometry " + jtype + " but was expecting POLYGON");
-			}
-			JSONArray jcoords = (JSONArray) geometry.get("coordinates");
-			JSONArray coords = (JSONArray) jcoords.get(0);
-			Double[][] polygon = new Double[coords.size()][2];
-			Iterator<JSONArray> it = coords.iterator();
-			int i = 0;
-			while (it.hasNext()) {
-				polygon[i++] = (Double[]) it.next().toArray(new Double[2]);
+		// Stream through the features (which contain the zone shapes) one at a
+		// time, rather than parsing the whole file first
+		try (GeoJsonReader reader = new GeoJsonReader(file)) {
+			for (GeoJsonReader.Feature feature = reader.next(); feature != null; feature = reader.next()) {
+				String zoneId = (feature.getProperty("SA1_MAIN11") != null) ?
+						(String) feature.getProperty("SA1_MAIN11") :
+						(String) feature.getProperty("SA1_MAIN16");
+				if (optZonesFileIdColumnName != null) {
+					zoneId = (String) feature.getProperty(optZonesFileIdColumnName);
+				}
+				if (zoneId == null) {
+					logger.warn("Feature has no property named SA1_MAIN11 or SA1_MAIN16; discarding");
+					continue;
+				}
+				String jtype = feature.getGeometryType();
+				if (!"polygon".equalsIgnoreCase(jtype)) {
+					throw new RuntimeException("GeoJSON file " + file + " has geometry " + jtype + " but was expecting POLYGON");
+				}
+				// exterior ring only
+				double[] coords = feature.getFirstPositionList();
+				Double[][] polygon = new Double[coords.length / 2][2];
+				for (int i = 0; i < polygon.length; i++) {
+					polygon[i] = new Double[]{coords[2 * i], coords[2 * i + 1]};
+				}
+				zones.put(zoneId, polygon);
 			}
-			zones.put(zoneId, polygon);
 		}
 	}
 
@@ -212,6 +205,19 @@ public class MessagingModel implements DataSource<SortedMap<Double, EmergencyMes
 		this.dataServer = dataServer;
 	}
 
+	/**
+	 * Gets the polygons (as lon/lat pairs) of all the zones that the loaded messages are broadcast to
+	 */
+	public List<Double[][]> getBroadcastZones() {
+		List<Double[][]> broadcastZones = new ArrayList<>();
+		for (EmergencyMessage message : messages.values()) {
+			if (message.getBroadcastZones() != null) {
+				broadcastZones.addAll(message.getBroadcastZones().values());
+			}
+		}
+		return broadcastZones;
+	}
+
 	/**
 	 * Start publishing messages data
 	 * @param hhmm an array of size 2 with hour and minutes representing start time
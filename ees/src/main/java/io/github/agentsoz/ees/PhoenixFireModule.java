@@ -24,7 +24,6 @@ package io.github.agentsoz.ees;
 
 
 import java.io.FileNotFoundException;
-import java.io.FileReader;
 import java.io.IOException;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
@@ -32,18 +31,17 @@ import java.util.*;
 
 import io.github.agentsoz.util.Time;
 import org.geotools.geometry.jts.GeometryBuilder;
-import org.json.simple.JSONArray;
-import org.json.simple.JSONObject;
-import org.json.simple.parser.JSONParser;
 import org.json.simple.parser.ParseException;
+import org.locationtech.jts.geom.Envelope;
 import org.locationtech.jts.geom.Geometry;
-import org.locationtech.jts.geom.PrecisionModel;
-import org.locationtech.jts.precision.GeometryPrecisionReducer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import io.github.agentsoz.dataInterface.DataServer;
 import io.github.agentsoz.dataInterface.DataSource;
+import io.github.agentsoz.ees.util.GeoJsonReader;
+import io.github.agentsoz.ees.util.HazardCache;
+import io.github.agentsoz.ees.util.HazardShapes;
 
 public class PhoenixFireModule implements DataSource<Geometry> {
 
@@ -57,12 +55,12 @@ public class PhoenixFireModule implements DataSource<Geometry> {
 	private String optSmokeShapefile = null;
 
 	private DataServer dataServer = null;
-	private JSONObject json = null;
 	private double lastUpdateTimeInMinutes = -1;
 	private TreeMap<Double, Geometry> fire;
 	private Time.TimestepUnit timestepUnit = Time.TimestepUnit.SECONDS;
 	private double evacStartInSeconds = 0.0;
 	private boolean fireAlertSent = true;
+	private HazardCache.Mode optHazardCache = HazardCache.Mode.off;
 
 	public PhoenixFireModule(boolean sendFireAlertOnFireStart) {
 
@@ -100,41 +98,33 @@ public class PhoenixFireModule implements DataSource<Geometry> {
 					String[] tokens = opts.get(opt).split(":");
 					setEvacStartHHMM(new int[]{Integer.parseInt(tokens[0]),Integer.parseInt(tokens[1])});
 					break;
+				case Config.eGlobalHazardCache:
+					optHazardCache = HazardCache.parseMode(opts.get(opt));
+					break;
 				default:
 					logger.warn("Ignoring option: " + opt + "=" + opts.get(opt));
 			}
 		}
 	}
 
-	@SuppressWarnings("unchecked")
 	public void loadGeoJson(String file) throws FileNotFoundException, IOException, ParseException, java.text.ParseException {
 		logger.info("Loading GeoJSON fire file: " + file);
-		// Create the JSON parsor
-		JSONParser parser = new JSONParser();
-		// Read in the JSON file
-		json = (JSONObject) (parser.parse(new FileReader(file)));
-		// Loop through the features (which contains the time-stamped fire
-		// shapes)
-		JSONArray features = (JSONArray) json.get("features");
-		Iterator<JSONObject> iterator = features.iterator();
-		while (iterator.hasNext()) {
-			JSONObject feature = iterator.next();
-			JSONObject properties = (JSONObject) feature.get("properties");
-			JSONObject geometry = (JSONObject) feature.get("geometry");
-			JSONArray jcoords = (JSONArray) geometry.get("coordinates");
-			Double[][] coordinates = new Double[jcoords.size()][2];
-			Iterator<JSONArray> it = jcoords.iterator();
-			int i = 0;
-			while (it.hasNext()) {
-				coordinates[i++] = (Double[]) it.next().toArray(new Double[2]);
+		DateFormat format = new SimpleDateFormat("yyyy/MM/dd HH:mm:ss", Locale.ENGLISH);
+		// Stream through the features (which contain the time-stamped fire
+		// shapes) one at a time, rather than parsing the whole file first
+		try (GeoJsonReader reader = new GeoJsonReader(file)) {
+			for (GeoJsonReader.Feature feature = reader.next(); feature != null; feature = reader.next()) {
+				double[] coordinates = feature.getFirstPositionList();
+				if (coordinates == null) {
+					continue;
+				}
+				Date date = format.parse((String)feature.getProperty("CURRENT_AT"));
+				Calendar cal = Calendar.getInstance();
+				cal.setTime(date);
+				double minutes = 60*cal.get(Calendar.HOUR_OF_DAY) + cal.get(Calendar.MINUTE);
+				//double minutes = (double) properties.get("MINUTES");
+				fire.put(minutes, new GeometryBuilder().polygon(coordinates));
 			}
-			DateFormat format = new SimpleDateFormat("yyyy/MM/dd HH:mm:ss", Locale.ENGLISH);
-			Date date = format.parse((String)properties.get("CURRENT_AT"));
-			Calendar cal = Calendar.getInstance();
-			cal.setTime(date);  
-			double minutes = 60*cal.get(Calendar.HOUR_OF_DAY) + cal.get(Calendar.MINUTE);
-			//double minutes = (double) properties.get("MINUTES");
-			fire.put(minutes, getGeometryFromCoords(coordinates));
 		}
 	}
 
@@ -157,7 +147,7 @@ public class PhoenixFireModule implements DataSource<Geometry> {
 				logger.info("step {} ({} mins): sending fire alert!!", String.format("%.0f", timestep), String.format("%.0f", time));
 				dataServer.publish(Constants.FIRE_ALERT, null);
 			}
-			geometry = getGeometry(shapes);
+			geometry = HazardShapes.union(shapes.values());
 			logger.info("sending {} : {}", Constants.FIRE_DATA, geometry);
 			dataServer.publish(Constants.FIRE_DATA, geometry);
 		}
@@ -177,33 +167,19 @@ public class PhoenixFireModule implements DataSource<Geometry> {
 		return geometry;
 	}
 
-	private Geometry getGeometry(SortedMap<Double, Geometry> shapes) {
-		Geometry polygon = null;
-		if (shapes != null && !shapes.isEmpty()) {
-			for (Geometry shape : shapes.values()) {
-				// Fix for JTS #288 requires reduction to floating.
-				// https://github.com/locationtech/jts/issues/288#issuecomment-396647804
-				polygon = (polygon==null) ?
-						shape :
-						GeometryPrecisionReducer.reduce(polygon.union(shape),new PrecisionModel(PrecisionModel.FLOATING));
-			}
-		}
-		return polygon;
+	public void setDataServer(DataServer dataServer) {
+		this.dataServer = dataServer;
 	}
 
-	private Geometry getGeometryFromCoords(Double[][] pairs) {
-		int i = 0;
-		double[] flatarray = new double[pairs.length*2];
-		int o = 0;
-		for (Double[] pair : pairs) {
-			flatarray[i++] = pair[0];
-			flatarray[i++] = pair[1];
+	/**
+	 * Gets the envelope of all the fire shapes loaded, or an empty envelope if there are none
+	 */
+	public Envelope getExtent() {
+		Envelope extent = new Envelope();
+		for (Geometry shape : fire.values()) {
+			extent.expandToInclude(shape.getEnvelopeInternal());
 		}
-		return new GeometryBuilder().polygon(flatarray);
-	}
-
-	public void setDataServer(DataServer dataServer) {
-		this.dataServer = dataServer;
+		return extent;
 	}
 
 	/**
@@ -212,11 +188,18 @@ public class PhoenixFireModule implements DataSource<Geometry> {
 	public void start() {
 		if (optFireShapefile != null && !optFireShapefile.isEmpty()) {
 			try {
-				loadGeoJson(optFireShapefile);
+				HazardCache cache = new HazardCache(optFireShapefile, "phoenixFire", optHazardCache);
+				HazardCache.Contents cached = cache.read();
+				if (cached != null) {
+					fire.putAll(cached.getGeometry(Constants.FIRE_DATA));
+				} else {
+					loadGeoJson(optFireShapefile);
+					cache.write(new HazardCache.Contents().putGeometry(Constants.FIRE_DATA, fire));
+				}
 			} catch (Exception e) {
 				throw new RuntimeException("Could not load fire shapes from [" + optFireShapefile + "]", e);
 			}
-		} else if (json==null) {
+		} else {
 			logger.warn("started but will be idle forever!!");
 		}
 		dataServer.registerTimedUpdate(Constants.FIRE, this, evacStartInSeconds);
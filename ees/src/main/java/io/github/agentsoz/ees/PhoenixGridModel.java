@@ -25,22 +25,21 @@ package io.github.agentsoz.ees;
 
 import io.github.agentsoz.dataInterface.DataServer;
 import io.github.agentsoz.dataInterface.DataSource;
+import io.github.agentsoz.ees.util.FireArrivalGrid;
+import io.github.agentsoz.ees.util.GeoJsonReader;
+import io.github.agentsoz.ees.util.HazardCache;
+import io.github.agentsoz.ees.util.HazardRaster;
+import io.github.agentsoz.ees.util.HazardShapes;
 import io.github.agentsoz.util.Time;
-import org.geotools.geometry.jts.GeometryBuilder;
-import org.json.simple.JSONArray;
-import org.json.simple.JSONObject;
-import org.json.simple.parser.JSONParser;
 import org.json.simple.parser.ParseException;
-import org.locationtech.jts.algorithm.ConvexHull;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
 import org.locationtech.jts.geom.Geometry;
-import org.locationtech.jts.geom.PrecisionModel;
-import org.locationtech.jts.precision.GeometryPrecisionReducer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.*;
 import java.util.*;
-import java.util.zip.GZIPInputStream;
 
 public class PhoenixGridModel implements DataSource<Geometry> {
 
@@ -52,18 +51,21 @@ public class PhoenixGridModel implements DataSource<Geometry> {
 	private final String eFireGeoJson = "fireGeoJson";
 	private final String eEmbersGeoJson = "smokeGeoJson";
 	private final String eIgnitionHHMM = "ignitionHHMM";
+	private final String eRasterHazards = "rasterHazards";
 	// Model options' values
 	private String optGridGeoJsonFile = null;
 	private double optGridSquareSideInMetres = 180;
+	private boolean optRasterHazards = false;
+	private HazardCache.Mode optHazardCache = HazardCache.Mode.off;
 	private DataServer dataServer = null;
 	private Time.TimestepUnit timestepUnit = Time.TimestepUnit.SECONDS;
 	private double startTimeInSeconds = -1;
 	private double ignitionTimeInSecs = 0;
-	private JSONObject json = null;
 	private double lastFireUpdateInSecs = -1;
 	private double lastEmbersUpdateInSecs = -1;
 	private TreeMap<Double, Geometry> fire;
 	private TreeMap<Double, Geometry> embers;
+	private FireArrivalGrid arrivalGrid;
 
 	public PhoenixGridModel() {
 		fire = new TreeMap<>();
@@ -105,6 +107,12 @@ public class PhoenixGridModel implements DataSource<Geometry> {
 					ignitionTimeInSecs = Time.convertTime(Integer.parseInt(hhmm[0]), Time.TimestepUnit.HOURS, Time.TimestepUnit.SECONDS)
 							+ Time.convertTime(Integer.parseInt(hhmm[1]), Time.TimestepUnit.MINUTES, Time.TimestepUnit.SECONDS);
 					break;
+				case eRasterHazards:
+					optRasterHazards = Boolean.parseBoolean(opts.get(opt));
+					break;
+				case Config.eGlobalHazardCache:
+					optHazardCache = HazardCache.parseMode(opts.get(opt));
+					break;
 				default:
 					logger.warn("Ignoring option: " + opt + "=" + opts.get(opt));
 			}
@@ -117,56 +125,50 @@ public class PhoenixGridModel implements DataSource<Geometry> {
 	}
 
 
-	@SuppressWarnings("unchecked")
 	public void loadPhoenixGridGeoJson(String file) throws FileNotFoundException, IOException, ParseException, java.text.ParseException {
 		logger.info("Loading GeoJSON file: " + file);
-		// Create the JSON parsor
-		JSONParser parser = new JSONParser();
-		Reader reader = (file.endsWith(".gz")) ?
-				new InputStreamReader(new GZIPInputStream(new FileInputStream(file))) :
-				new FileReader(file);
-		// Read in the JSON file
-		json = (JSONObject) (parser.parse(reader));
-		// close the reader
-		reader.close();
-		// Loop through the features (which contains the time-stamped embers
-		// shapes)
-		JSONArray features = (JSONArray) json.get("features");
-		Iterator<JSONObject> iterator = features.iterator();
-		while (iterator.hasNext()) {
-			JSONObject feature = iterator.next();
-			JSONObject properties = (JSONObject) feature.get("properties");
-			JSONObject geometry = (JSONObject) feature.get("geometry");
-			JSONArray jcoords = (JSONArray) geometry.get("coordinates");
-			Double hourSpotOffset = (Double)properties.get("HOUR_SPOT");
-			Double hourBurntOffset = (Double)properties.get("HOUR_BURNT");
-			if (hourBurntOffset != null) {
-				Geometry shape = getGeometryFromSquareCentroids(getPolygonCoordinates(jcoords), optGridSquareSideInMetres);
-				double secs = Math.floor(ignitionTimeInSecs + Time.convertTime(hourBurntOffset, Time.TimestepUnit.HOURS, Time.TimestepUnit.SECONDS));
-				fire.put(secs, shape);
-			}
-			if (hourSpotOffset != null) {
-				Geometry shape = getGeometryFromSquareCentroids(getPolygonCoordinates(jcoords), optGridSquareSideInMetres);
-				double secs = Math.floor(ignitionTimeInSecs + Time.convertTime(hourSpotOffset, Time.TimestepUnit.HOURS, Time.TimestepUnit.SECONDS));
-				embers.put(secs, shape);
+		arrivalGrid = new FireArrivalGrid(optGridSquareSideInMetres);
+		// Stream through the features (which contain the time-stamped fire and
+		// embers shapes) one at a time, rather than parsing the whole file first
+		try (GeoJsonReader reader = new GeoJsonReader(file)) {
+			for (GeoJsonReader.Feature feature = reader.next(); feature != null; feature = reader.next()) {
+				// get the first element only of outer array
+				double[] centroids = feature.getFirstPositionList();
+				Double hourSpotOffset = getDouble(feature.getProperty("HOUR_SPOT"));
+				Double hourBurntOffset = getDouble(feature.getProperty("HOUR_BURNT"));
+				if (centroids == null) {
+					continue;
+				}
+				// only the hulls of the shapes are ever sent, so the cells need not be unioned
+				Geometry shape = (hourBurntOffset == null && hourSpotOffset == null) ? null :
+						HazardShapes.hullOfSquares(getCoordinates(centroids), optGridSquareSideInMetres);
+				if (hourBurntOffset != null) {
+					double secs = Math.floor(ignitionTimeInSecs + Time.convertTime(hourBurntOffset, Time.TimestepUnit.HOURS, Time.TimestepUnit.SECONDS));
+					fire.put(secs, shape);
+					for (int i = 0; i < centroids.length; i += 2) {
+						arrivalGrid.addFire(centroids[i], centroids[i + 1], secs);
+					}
+				}
+				if (hourSpotOffset != null) {
+					double secs = Math.floor(ignitionTimeInSecs + Time.convertTime(hourSpotOffset, Time.TimestepUnit.HOURS, Time.TimestepUnit.SECONDS));
+					embers.put(secs, shape);
+					for (int i = 0; i < centroids.length; i += 2) {
+						arrivalGrid.addEmbers(centroids[i], centroids[i + 1], secs);
+					}
+				}
 			}
 		}
 	}
 
-	private Double[][] getPolygonCoordinates(JSONArray jcoords) {
-		Double[][] coordinates = null;
-		// has a [[[x,y],[x,y]]] form ie one extra nesting
-		Iterator<JSONArray> it = jcoords.iterator();
-		int i = 0;
-		while (it.hasNext()) {
-            JSONArray obj = it.next();
-            coordinates = new Double[obj.size()][2];
-            Iterator<JSONArray> cit = obj.iterator();
-            while (cit.hasNext()) {
-                coordinates[i++] = (Double[]) cit.next().toArray(new Double[2]);
-            }
-            break; // get the first element only of outer array
-        }
+	private static Double getDouble(Object value) {
+		return (value instanceof Number) ? ((Number) value).doubleValue() : null;
+	}
+
+	private static List<Coordinate> getCoordinates(double[] pairs) {
+		List<Coordinate> coordinates = new ArrayList<>(pairs.length / 2);
+		for (int i = 0; i < pairs.length; i += 2) {
+			coordinates.add(new Coordinate(pairs[i], pairs[i + 1]));
+		}
 		return coordinates;
 	}
 
@@ -180,8 +182,7 @@ public class PhoenixGridModel implements DataSource<Geometry> {
 		double time = Time.convertTime(timestep, timestepUnit, Time.TimestepUnit.SECONDS);
 		if (Constants.EMBERS_DATA.equals(dataType)) {
 			SortedMap<Double, Geometry> shapes = embers.subMap(0.0, time);
-			Geometry shape = getGeometry(shapes);
-			shape = (shape==null) ? null : new ConvexHull(shape).getConvexHull();
+			Geometry shape = HazardShapes.hull(shapes.values());
 			while (shapes.size() > 1) {
 				embers.remove(embers.firstKey());
 			}
@@ -194,8 +195,7 @@ public class PhoenixGridModel implements DataSource<Geometry> {
 
 		} else if (Constants.FIRE_DATA.equals(dataType)) {
 			SortedMap<Double, Geometry> shapes = fire.subMap(0.0, time);
-			Geometry shape = getGeometry(shapes);
-			shape = (shape==null) ? null : new ConvexHull(shape).getConvexHull();
+			Geometry shape = HazardShapes.hull(shapes.values());
 			while (shapes.size() > 1) {
 				fire.remove(fire.firstKey());
 			}
@@ -210,35 +210,37 @@ public class PhoenixGridModel implements DataSource<Geometry> {
 		return null;
 	}
 
-	private Geometry getGeometry(SortedMap<Double, Geometry> shapes) {
-		Geometry polygon = null;
-		if (shapes != null && !shapes.isEmpty()) {
-			for (Geometry shape : shapes.values()) {
-				// Fix for JTS #288 requires reduction to floating.
-				// https://github.com/locationtech/jts/issues/288#issuecomment-396647804
-				polygon = (polygon==null) ?
-						shape :
-						GeometryPrecisionReducer.reduce(polygon.union(shape),new PrecisionModel(PrecisionModel.FLOATING));
+	/**
+	 * Sends the fire and embers as the grid cells they have reached by each update (rather than
+	 * as the hulls of the polygons of the latest cells), if raster hazards are enabled
+	 */
+	private final DataSource<HazardRaster> rasterSource = new DataSource<HazardRaster>() {
+		@Override
+		public HazardRaster sendData(double timestep, String dataType) {
+			double time = Time.convertTime(timestep, timestepUnit, Time.TimestepUnit.SECONDS);
+			boolean isFire = Constants.FIRE_DATA.equals(dataType);
+			HazardRaster raster = isFire ? arrivalGrid.getFireRaster(time) : arrivalGrid.getEmbersRaster(time);
+			Double nextTime = (isFire ? fire : embers).higherKey(time);
+			if (nextTime != null) {
+				dataServer.registerTimedUpdate(dataType, this, Time.convertTime(nextTime, Time.TimestepUnit.SECONDS, timestepUnit));
 			}
+			logger.debug("sending {} at time {} as raster of {} cells", dataType, timestep, raster.getNumberOfCells());
+			return raster;
 		}
-		return polygon;
-	}
+	};
 
-	private Geometry getGeometryFromSquareCentroids(Double[][] pairs, double squareSideInMetres) {
-		Geometry shape = null ;
-		int i = 0;
-		for (Double[] pair : pairs) {
-			double delta = squareSideInMetres/2;
-			Geometry gridCell = new GeometryBuilder().box(
-					pair[0]-delta, pair[1]-delta,
-					pair[0]+delta, pair[1]+delta);
-			// Fix for JTS #288 requires reduction to floating.
-			// https://github.com/locationtech/jts/issues/288#issuecomment-396647804
-			shape = (shape==null) ?
-					gridCell :
-					GeometryPrecisionReducer.reduce(shape.union(gridCell),new PrecisionModel(PrecisionModel.FLOATING));
+	/**
+	 * Gets the envelope of all the fire and embers shapes loaded, or an empty envelope if there are none
+	 */
+	public Envelope getExtent() {
+		Envelope extent = new Envelope();
+		for (Geometry shape : fire.values()) {
+			extent.expandToInclude(shape.getEnvelopeInternal());
+		}
+		for (Geometry shape : embers.values()) {
+			extent.expandToInclude(shape.getEnvelopeInternal());
 		}
-		return shape;
+		return extent;
 	}
 
 	/**
@@ -247,17 +249,49 @@ public class PhoenixGridModel implements DataSource<Geometry> {
 	public void start() {
 		if (optGridGeoJsonFile != null && !optGridGeoJsonFile.isEmpty()) {
 			try {
-				loadPhoenixGridGeoJson(optGridGeoJsonFile);
-				dataServer.registerTimedUpdate(Constants.EMBERS_DATA, this, startTimeInSeconds);
-				dataServer.registerTimedUpdate(Constants.FIRE_DATA, this, startTimeInSeconds);
+				HazardCache cache = new HazardCache(optGridGeoJsonFile,
+						"phoenixGrid;" + ignitionTimeInSecs + ";" + optGridSquareSideInMetres, optHazardCache);
+				HazardCache.Contents cached = cache.read();
+				if (cached != null && cached.getArrivalGrid(Constants.FIRE_ARRIVAL_DATA) != null) {
+					fire.putAll(cached.getGeometry(Constants.FIRE_DATA));
+					embers.putAll(cached.getGeometry(Constants.EMBERS_DATA));
+					arrivalGrid = cached.getArrivalGrid(Constants.FIRE_ARRIVAL_DATA);
+				} else {
+					loadPhoenixGridGeoJson(optGridGeoJsonFile);
+					cache.write(new HazardCache.Contents()
+							.putGeometry(Constants.FIRE_DATA, fire)
+							.putGeometry(Constants.EMBERS_DATA, embers)
+							.putArrivalGrid(Constants.FIRE_ARRIVAL_DATA, arrivalGrid));
+				}
+				if (optRasterHazards) {
+					dataServer.registerTimedUpdate(Constants.EMBERS_DATA, rasterSource, startTimeInSeconds);
+					dataServer.registerTimedUpdate(Constants.FIRE_DATA, rasterSource, startTimeInSeconds);
+				} else {
+					dataServer.registerTimedUpdate(Constants.EMBERS_DATA, this, startTimeInSeconds);
+					dataServer.registerTimedUpdate(Constants.FIRE_DATA, this, startTimeInSeconds);
+				}
+				// the arrival times of the whole fire are known up front, so are sent once at the start
+				dataServer.registerTimedUpdate(Constants.FIRE_ARRIVAL_DATA, new DataSource<FireArrivalGrid>() {
+					@Override
+					public FireArrivalGrid sendData(double timestep, String dataType) {
+						return arrivalGrid;
+					}
+				}, startTimeInSeconds);
 			} catch (Exception e) {
 				throw new RuntimeException("Could not load phoenix grid shapes from [" + optGridGeoJsonFile + "]", e);
 			}
-		} else if (json==null) {
+		} else {
 			logger.warn("started but will be idle forever!!");
 		}
 	}
 
+	/**
+	 * Gets the fire and embers arrival times of every grid cell, once the grid has been loaded
+	 */
+	public FireArrivalGrid getArrivalGrid() {
+		return arrivalGrid;
+	}
+
 	/**
 	 * Set the time step unit for this model
 	 * @param unit the time step unit to use
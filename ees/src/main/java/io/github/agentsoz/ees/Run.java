@@ -31,6 +31,7 @@ import io.github.agentsoz.ees.matsim.*;
 import io.github.agentsoz.ees.util.Utils;
 import io.github.agentsoz.util.Global;
 import io.github.agentsoz.util.Time;
+import org.locationtech.jts.geom.Envelope;
 import org.matsim.api.core.v01.Scenario;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -93,18 +94,25 @@ public class Run implements DataClient {
         dataServer.setTimeStep(optTimestep);
         dataServer.subscribe(this, Constants.AGENT_DATA_CONTAINER_FROM_BDI);
 
+        // where the hazards and zones are, so that the network can be kept detailed there
+        List<Envelope> hazardExtents = new ArrayList<>();
+        Set<String> disruptedLinkIds;
+        List<Double[][]> broadcastZones;
+
         // initialise the fire model and register it as an active data source
         {
             log.info("Starting phoenix fire model (ISO)");
             PhoenixFireModule model = new PhoenixFireModule(cfg.getModelConfig(Config.eModelFire), dataServer);
             model.setTimestepUnit(Time.TimestepUnit.SECONDS);
             model.start();
+            hazardExtents.add(model.getExtent());
         }
         {
             log.info("Starting phoenix fire model (GRID)");
             PhoenixGridModel model = new PhoenixGridModel(cfg.getModelConfig(Config.eModelFire), dataServer);
             model.setTimestepUnit(Time.TimestepUnit.SECONDS);
             model.start();
+            hazardExtents.add(model.getExtent());
         }
         // initialise the cyclone model and register it as an active data source
         {
@@ -112,18 +120,21 @@ public class Run implements DataClient {
             CycloneModel model = new CycloneModel(cfg.getModelConfig(Config.eModelCyclone), dataServer);
             model.setTimestepUnit(Time.TimestepUnit.SECONDS);
             model.start();
+            hazardExtents.add(model.getExtent());
         }
         {
             log.info("Starting flood model ");
             FloodModel model = new FloodModel(cfg.getModelConfig(Config.eModelFlood), dataServer);
             model.setTimestepUnit(Time.TimestepUnit.SECONDS);
             model.start();
+            hazardExtents.add(model.getExtent());
         }
         {
             log.info("Starting Spark fire model");
             SparkFireModel model = new SparkFireModel(cfg.getModelConfig(Config.eModelFireSpark), dataServer);
             model.setTimestepUnit(Time.TimestepUnit.SECONDS);
             model.start();
+            hazardExtents.add(model.getExtent());
         }
         // initialise the disruptions model and register it as an active data source
         {
@@ -131,6 +142,7 @@ public class Run implements DataClient {
             DisruptionModel model = new DisruptionModel(cfg.getModelConfig(Config.eModelDisruption), dataServer);
             model.setTimestepUnit(Time.TimestepUnit.SECONDS);
             model.start();
+            disruptedLinkIds = model.getImpactLinkIds();
         }
         // initialise the messaging model and register it as an active data source
         {
@@ -138,12 +150,14 @@ public class Run implements DataClient {
             MessagingModel model = new MessagingModel(cfg.getModelConfig(Config.eModelMessaging), dataServer);
             model.setTimestepUnit(Time.TimestepUnit.SECONDS);
             model.start();
+            broadcastZones = model.getBroadcastZones();
         }
         // initialise the MATSim model and register it as an active data source
         log.info("Creating MATSim model");
         MATSimEvacModel matsimEvacModel = new MATSimEvacModel(cfg.getModelConfig(Config.eModelMatsim), dataServer);
         matsimEvacModel.loadAndPrepareConfig();
         EvacConfig evacConfig = matsimEvacModel.getEvacConfig();
+        matsimEvacModel.keepNetworkDetailFor(disruptedLinkIds, hazardExtents, broadcastZones);
         Scenario scenario = matsimEvacModel.loadAndPrepareScenario() ;
 
         // initialise the diffusion model and register it as an active data source
@@ -182,7 +196,8 @@ public class Run implements DataClient {
             EvacAgentTracker tracker = new EvacAgentTracker(evacConfig,
                     matsimEvacModel.getScenario().getNetwork(),
                     matsimEvacModel.getEvents(),
-                    deckglTripsData);
+                    deckglTripsData,
+                    matsimEvacModel.getNetworkSimplifier());
             matsimEvacModel.getEvents().addHandler(tracker);
         }
 
@@ -193,7 +208,9 @@ public class Run implements DataClient {
             metrics = new EvacMetricsTracker(
                     matsimEvacModel.getScenario().getConfig().global().getCoordinateSystem(),
                     matsimEvacModel.getScenario().getNetwork(),
-                    Integer.parseInt(cfg.getGlobalConfig(Config.eGlobalMetricsBinSizeInSecs)));
+                    Integer.parseInt(cfg.getGlobalConfig(Config.eGlobalMetricsBinSizeInSecs)),
+                    matsimEvacModel.getNetworkSimplifier(),
+                    matsimEvacModel.getHazardTable());
             matsimEvacModel.getEvents().addHandler(metrics);
         }
 
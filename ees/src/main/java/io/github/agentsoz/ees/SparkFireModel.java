@@ -24,16 +24,15 @@ package io.github.agentsoz.ees;
 
 import io.github.agentsoz.dataInterface.DataServer;
 import io.github.agentsoz.dataInterface.DataSource;
+import io.github.agentsoz.ees.util.HazardCache;
+import io.github.agentsoz.ees.util.HazardShapes;
 import io.github.agentsoz.util.Location;
 import io.github.agentsoz.util.Time;
-import org.geotools.geometry.jts.GeometryBuilder;
 import org.geotools.geometry.jts.JTS;
 import org.geotools.referencing.CRS;
-import org.locationtech.jts.algorithm.ConvexHull;
 import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
 import org.locationtech.jts.geom.Geometry;
-import org.locationtech.jts.geom.PrecisionModel;
-import org.locationtech.jts.precision.GeometryPrecisionReducer;
 import org.opengis.referencing.operation.MathTransform;
 import org.opengis.referencing.operation.TransformException;
 import org.slf4j.Logger;
@@ -58,6 +57,7 @@ public class SparkFireModel implements DataSource<Geometry> {
     private int optGridSizeInMetres = -1;
     private String optCsvDelimiter = ",";
     private String optCrs = "EPSG:4326";
+    private HazardCache.Mode optHazardCache = HazardCache.Mode.off;
 
     private TreeMap<Double, Geometry> fire;
     private DataServer dataServer = null;
@@ -94,6 +94,9 @@ public class SparkFireModel implements DataSource<Geometry> {
                 case Config.eGlobalCoordinateSystem:
                     optCrs = opts.get(opt);
                     break;
+                case Config.eGlobalHazardCache:
+                    optHazardCache = HazardCache.parseMode(opts.get(opt));
+                    break;
                 case eIgnitionHHMM:
                     String[] hhmm = opts.get(opt).split(":");
                     ignitionTimeInSecs = Time.convertTime(Integer.parseInt(hhmm[0]), Time.TimestepUnit.HOURS, Time.TimestepUnit.SECONDS)
@@ -118,8 +121,7 @@ public class SparkFireModel implements DataSource<Geometry> {
         double time = Time.convertTime(forTime, timestepUnit, Time.TimestepUnit.SECONDS);
         if (Constants.FIRE_DATA.equals(dataType)) {
             SortedMap<Double, Geometry> shapes = fire.subMap(0.0, time);
-            Geometry shape = getGeometry(shapes);
-            shape = (shape==null) ? null : new ConvexHull(shape).getConvexHull();
+            Geometry shape = HazardShapes.hull(shapes.values());
             while (shapes.size() > 1) {
                 fire.remove(fire.firstKey());
             }
@@ -134,39 +136,26 @@ public class SparkFireModel implements DataSource<Geometry> {
         return null;
     }
 
-    private Geometry getGeometry(SortedMap<Double, Geometry> shapes) {
-        Geometry polygon = null;
-        if (shapes != null && !shapes.isEmpty()) {
-            for (Geometry shape : shapes.values()) {
-                // Fix for JTS #288 requires reduction to floating.
-                // https://github.com/locationtech/jts/issues/288#issuecomment-396647804
-                polygon = (polygon==null) ?
-                        shape :
-                        GeometryPrecisionReducer.reduce(polygon.union(shape),new PrecisionModel(PrecisionModel.FLOATING));
-            }
-        }
-        return polygon;
-    }
-
     private Geometry getGeometryFromSquareCentroids(MathTransform utmTransform, List<Location> centroids, double squareSideInMetres) throws TransformException {
-        Geometry shape = null ;
-        int i = 0;
+        List<Coordinate> coords = new ArrayList<>(centroids.size());
         for (Location centroid : centroids) {
-            double delta = squareSideInMetres/2;
             Coordinate coord = new Coordinate(centroid.getX(), centroid.getY());
             JTS.transform(coord, coord, utmTransform);
-            Coordinate cornerA = new Coordinate(coord.getX()-delta, coord.getY()-delta);
-            Coordinate cornerB = new Coordinate(coord.getX()+delta, coord.getY()+delta);
-            Geometry gridCell = new GeometryBuilder().box(
-                    cornerA.getX(), cornerA.getY(),
-                    cornerB.getX(), cornerB.getY());
-            // Fix for JTS #288 requires reduction to floating.
-            // https://github.com/locationtech/jts/issues/288#issuecomment-396647804
-            shape = (shape==null) ?
-                    gridCell :
-                    GeometryPrecisionReducer.reduce(shape.union(gridCell),new PrecisionModel(PrecisionModel.FLOATING));
+            coords.add(coord);
+        }
+        // only the hull of the shape is ever sent, so the cells need not be unioned
+        return HazardShapes.hullOfSquares(coords, squareSideInMetres);
+    }
+
+    /**
+     * Gets the envelope of all the fire shapes loaded, or an empty envelope if there are none
+     */
+    public Envelope getExtent() {
+        Envelope extent = new Envelope();
+        for (Geometry shape : fire.values()) {
+            extent.expandToInclude(shape.getEnvelopeInternal());
         }
-        return shape;
+        return extent;
     }
 
     /**
@@ -176,7 +165,16 @@ public class SparkFireModel implements DataSource<Geometry> {
         if (optCsvFile != null && !optCsvFile.isEmpty()) {
             try {
                 logger.info("Loading Spark fire from " + optCsvFile);
-                loadSparkCsv(optCsvFile);
+                HazardCache cache = new HazardCache(optCsvFile,
+                        "spark;" + optCsvDelimiter + ";" + optGridSizeInMetres + ";" + optCrs + ";" + ignitionTimeInSecs,
+                        optHazardCache);
+                HazardCache.Contents cached = cache.read();
+                if (cached != null) {
+                    fire.putAll(cached.getGeometry(Constants.FIRE_DATA));
+                } else {
+                    loadSparkCsv(optCsvFile);
+                    cache.write(new HazardCache.Contents().putGeometry(Constants.FIRE_DATA, fire));
+                }
                 dataServer.registerTimedUpdate(Constants.FIRE_DATA, this, startTimeInSeconds);
             } catch (Exception e) {
                 throw new RuntimeException("Could not load Spark fire data from [" + optCsvFile + "]", e);
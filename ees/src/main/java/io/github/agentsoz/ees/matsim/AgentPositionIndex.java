@@ -0,0 +1,246 @@
+package io.github.agentsoz.ees.matsim;
+
+/*
+ * #%L
+ * Emergency Evacuation Simulator
+ * %%
+ * Copyright (C) 2014 - 2025 by its authors. See AUTHORS file.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+
+import io.github.agentsoz.ees.util.NetworkSpatialIndex;
+import io.github.agentsoz.nonmatsim.PAAgentManager;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.Point;
+import org.locationtech.jts.geom.prep.PreparedGeometry;
+import org.locationtech.jts.geom.prep.PreparedGeometryFactory;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.events.*;
+import org.matsim.api.core.v01.events.handler.*;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.core.events.algorithms.Vehicle2DriverEventHandler;
+import org.matsim.core.mobsim.framework.MobsimAgent;
+import org.matsim.core.utils.geometry.GeometryUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.function.Predicate;
+
+/**
+ * Grid index of the BDI agents in the simulation, keyed by the current link of each agent.
+ * <p>
+ * An agent is filed in the grid cell that holds the fromNode of its current link, which is
+ * the point that zone queries test against. The index is seeded once from the mobsim and is
+ * then kept up to date from departure, link enter and arrival events, so a zone query only
+ * has to look at the agents in the cells that overlap the zone.
+ */
+public class AgentPositionIndex implements
+        LinkEnterEventHandler,
+        VehicleEntersTrafficEventHandler,
+        VehicleLeavesTrafficEventHandler,
+        PersonDepartureEventHandler,
+        PersonArrivalEventHandler {
+
+    private static final Logger log = LoggerFactory.getLogger(AgentPositionIndex.class);
+
+    private final Network network;
+    private final NetworkSpatialIndex networkIndex;
+    private final Predicate<Id<Person>> isTracked;
+    private final double cellSize;
+
+    private final Map<Id<Person>, Id<Link>> linkOfPerson = new HashMap<>();
+    private final Map<Id<Person>, Long> cellOfPerson = new HashMap<>();
+    private final Map<Long, Set<Id<Person>>> personsInCell = new HashMap<>();
+    private final Vehicle2DriverEventHandler vehicle2Driver = new Vehicle2DriverEventHandler();
+    private boolean seeded = false;
+
+    public AgentPositionIndex(Network network, NetworkSpatialIndex networkIndex, PAAgentManager agentManager,
+                              double cellSizeInMetres) {
+        this(network, networkIndex, personId -> agentManager.getAgent(personId.toString()) != null, cellSizeInMetres);
+    }
+
+    /**
+     * Indexes the persons that the given test holds for, rather than the BDI agents of a manager
+     */
+    AgentPositionIndex(Network network, NetworkSpatialIndex networkIndex, Predicate<Id<Person>> isTracked,
+                       double cellSizeInMetres) {
+        if (cellSizeInMetres <= 0) {
+            throw new IllegalArgumentException("Grid cell size must be positive, found " + cellSizeInMetres);
+        }
+        this.network = network;
+        this.networkIndex = networkIndex;
+        this.isTracked = isTracked;
+        this.cellSize = cellSizeInMetres;
+    }
+
+    public synchronized boolean isSeeded() {
+        return seeded;
+    }
+
+    /**
+     * Places every BDI agent in the given collection at its current link; positions are
+     * maintained from events after that
+     */
+    public synchronized void seed(Collection<? extends MobsimAgent> agents) {
+        for (MobsimAgent agent : agents) {
+            update(agent.getId(), agent.getCurrentLinkId());
+        }
+        seeded = true;
+        log.info("Seeded agent position index with {} agents in {} cells", linkOfPerson.size(), personsInCell.size());
+    }
+
+    /**
+     * Gets all indexed agents whose current link has a fromNode within the given shape
+     */
+    public synchronized List<Id<Person>> getPersonsWithin(Geometry shape) {
+        if (shape == null || shape.isEmpty() || personsInCell.isEmpty()) {
+            return new ArrayList<>();
+        }
+        PreparedGeometry prepared = PreparedGeometryFactory.prepare(shape);
+        return getPersonsWithin(shape.getEnvelopeInternal(), prepared::contains, prepared);
+    }
+
+    /**
+     * Gets all indexed agents whose current link has a fromNode for which the given test holds,
+     * where such nodes must all be in the given envelope (e.g., a raster hazard)
+     */
+    public synchronized List<Id<Person>> getPersonsWithin(Envelope env, Predicate<Point> within) {
+        if (env.isNull() || personsInCell.isEmpty()) {
+            return new ArrayList<>();
+        }
+        return getPersonsWithin(env, within, null);
+    }
+
+    private List<Id<Person>> getPersonsWithin(Envelope env, Predicate<Point> within, PreparedGeometry shape) {
+        List<Id<Person>> personsWithin = new ArrayList<>();
+        long minX = cell(env.getMinX()), maxX = cell(env.getMaxX());
+        long minY = cell(env.getMinY()), maxY = cell(env.getMaxY());
+        if ((maxX - minX + 1) * (maxY - minY + 1) <= personsInCell.size()) {
+            for (long cx = minX; cx <= maxX; cx++) {
+                for (long cy = minY; cy <= maxY; cy++) {
+                    Set<Id<Person>> persons = personsInCell.get(key(cx, cy));
+                    if (persons != null) {
+                        addPersonsWithin(shape, within, cx, cy, persons, personsWithin);
+                    }
+                }
+            }
+        } else {
+            // zone spans more cells than are occupied, so walk the occupied cells instead
+            for (Map.Entry<Long, Set<Id<Person>>> entry : personsInCell.entrySet()) {
+                long cx = entry.getKey() >> 32;
+                long cy = (int) entry.getKey().longValue();
+                if (cx >= minX && cx <= maxX && cy >= minY && cy <= maxY) {
+                    addPersonsWithin(shape, within, cx, cy, entry.getValue(), personsWithin);
+                }
+            }
+        }
+        return personsWithin;
+    }
+
+    private void addPersonsWithin(PreparedGeometry shape, Predicate<Point> within, long cx, long cy,
+                                  Set<Id<Person>> persons, List<Id<Person>> personsWithin) {
+        Envelope box = new Envelope(cx * cellSize, (cx + 1) * cellSize, cy * cellSize, (cy + 1) * cellSize);
+        if (shape != null && shape.containsProperly(GeometryUtils.createGeotoolsPolygon(Arrays.asList(
+                new Coord(box.getMinX(), box.getMinY()), new Coord(box.getMaxX(), box.getMinY()),
+                new Coord(box.getMaxX(), box.getMaxY()), new Coord(box.getMinX(), box.getMaxY()))))) {
+            // whole cell is strictly inside the shape
+            personsWithin.addAll(persons);
+            return;
+        }
+        for (Id<Person> personId : persons) {
+            Link link = network.getLinks().get(linkOfPerson.get(personId));
+            Point fromPoint = networkIndex.getPoint(link.getFromNode());
+            if (within.test(fromPoint)) {
+                personsWithin.add(personId);
+            }
+        }
+    }
+
+    private void update(Id<Person> personId, Id<Link> linkId) {
+        if (personId == null || linkId == null || !isTracked.test(personId)) {
+            return; // only track BDI-like agents
+        }
+        Link link = network.getLinks().get(linkId);
+        if (link == null) {
+            return;
+        }
+        Coordinate c = networkIndex.getPoint(link.getFromNode()).getCoordinate();
+        long newCell = key(cell(c.x), cell(c.y));
+        linkOfPerson.put(personId, linkId);
+        Long oldCell = cellOfPerson.put(personId, newCell);
+        if (oldCell != null && oldCell == newCell) {
+            return;
+        }
+        if (oldCell != null) {
+            Set<Id<Person>> persons = personsInCell.get(oldCell);
+            persons.remove(personId);
+            if (persons.isEmpty()) {
+                personsInCell.remove(oldCell);
+            }
+        }
+        personsInCell.computeIfAbsent(newCell, k -> new LinkedHashSet<>()).add(personId);
+    }
+
+    private long cell(double ordinate) {
+        return (long) Math.floor(ordinate / cellSize);
+    }
+
+    private static long key(long cx, long cy) {
+        return (cx << 32) | (cy & 0xffffffffL);
+    }
+
+    @Override
+    public synchronized void handleEvent(VehicleEntersTrafficEvent event) {
+        vehicle2Driver.handleEvent(event);
+        update(event.getPersonId(), event.getLinkId());
+    }
+
+    @Override
+    public synchronized void handleEvent(VehicleLeavesTrafficEvent event) {
+        vehicle2Driver.handleEvent(event);
+    }
+
+    @Override
+    public synchronized void handleEvent(LinkEnterEvent event) {
+        update(vehicle2Driver.getDriverOfVehicle(event.getVehicleId()), event.getLinkId());
+    }
+
+    @Override
+    public synchronized void handleEvent(PersonDepartureEvent event) {
+        update(event.getPersonId(), event.getLinkId());
+    }
+
+    @Override
+    public synchronized void handleEvent(PersonArrivalEvent event) {
+        update(event.getPersonId(), event.getLinkId());
+    }
+
+    @Override
+    public synchronized void reset(int iteration) {
+        vehicle2Driver.reset(iteration);
+        linkOfPerson.clear();
+        cellOfPerson.clear();
+        personsInCell.clear();
+        seeded = false;
+    }
+}
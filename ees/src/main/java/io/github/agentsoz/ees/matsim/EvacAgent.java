@@ -72,6 +72,9 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.inject.Inject;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 class EvacAgent implements MobsimDriverAgent, HasPerson, PlanAgent, HasModifiablePlan {
 
@@ -82,6 +85,10 @@ class EvacAgent implements MobsimDriverAgent, HasPerson, PlanAgent, HasModifiabl
 	private final PlanBasedDriverAgentImpl driverAgentDelegate ;
 
 	private final TripRouter tripRouter  ;
+	private final TripPreRouter preRouter ;
+	// if set, blocked links are looked up here, and reported once per blockage episode
+	private final LinkBlockageIndex blockages ;
+	private final Map<Id<Link>, Integer> reportedBlockages = new HashMap<>() ;
 	private final EditTrips editTrips ;
 	private final Network network;
 	private final MobsimTimer simTimer;
@@ -90,9 +97,12 @@ class EvacAgent implements MobsimDriverAgent, HasPerson, PlanAgent, HasModifiabl
 	private boolean planWasModified = false ;
 	private double expectedLinkLeaveTime;
 
-	EvacAgent(final Plan selectedPlan, final Netsim simulation, TripRouter tripRouter) {
+	EvacAgent(final Plan selectedPlan, final Netsim simulation, TripRouter tripRouter, TripPreRouter preRouter,
+			  LinkBlockageIndex blockages) {
 		TimeInterpretation timeInterpretation = TimeInterpretation.create(simulation.getScenario().getConfig());
 		this.tripRouter = tripRouter;
+		this.preRouter = preRouter;
+		this.blockages = blockages;
 		this.basicAgentDelegate = new BasicPlanAgentImpl(selectedPlan, simulation.getScenario(), simulation.getEventsManager(),
 				simulation.getSimTimer(), timeInterpretation) ;
 		this.driverAgentDelegate = new PlanBasedDriverAgentImpl(basicAgentDelegate) ;
@@ -148,7 +158,14 @@ class EvacAgent implements MobsimDriverAgent, HasPerson, PlanAgent, HasModifiabl
 						Trip trip = TripStructureUtils.findTripStartingAtActivity(act, this.getModifiablePlan()) ;
 						String mainMode = TripStructureUtils.identifyMainMode(trip.getTripElements()) ;
 						log.debug("identified main mode=" + mainMode ) ;
-						editTrips.replanFutureTrip(trip, this.getModifiablePlan(), mainMode, now ) ;
+						List<? extends PlanElement> preRouted = (preRouter != null) ? preRouter.take(this, trip) : null ;
+						if ( preRouted != null ) {
+							// (routed ahead of time, and nothing has changed since)
+							TripRouter.insertTrip(this.getModifiablePlan(), trip.getOriginActivity(), preRouted, trip.getDestinationActivity()) ;
+							resetCaches() ;
+						} else {
+							editTrips.replanFutureTrip(trip, this.getModifiablePlan(), mainMode, now ) ;
+						}
 
 						Trip newTrip = TripStructureUtils.findTripStartingAtActivity(act, this.getModifiablePlan()) ;
 
@@ -313,7 +330,21 @@ class EvacAgent implements MobsimDriverAgent, HasPerson, PlanAgent, HasModifiabl
 	public final boolean isWantingToArriveOnCurrentLink() {
 		boolean retVal = driverAgentDelegate.isWantingToArriveOnCurrentLink();
 
-		if (retVal==false) {
+		if (retVal==false && blockages != null) {
+			Id<Link> nextLinkId = this.chooseNextLinkId() ;
+			if (nextLinkId != null && blockages.isBlocked(nextLinkId)) {
+				int episode = blockages.getEpisode(nextLinkId) ;
+				Integer reported = reportedBlockages.put(nextLinkId, episode) ;
+				if (reported == null || reported != episode) {
+					final double now = this.simTimer.getTimeOfDay();
+					NextLinkBlockedEvent nextLinkBlockedEvent = new NextLinkBlockedEvent(
+							now, this.getVehicle().getId(), this.getId(), this.getCurrentLinkId(),
+							nextLinkId );
+					log.debug(nextLinkBlockedEvent.toString());
+					this.eventsManager.processEvent( nextLinkBlockedEvent );
+				}
+			}
+		} else if (retVal==false) {
 			Link nextLink = this.network.getLinks().get( this.chooseNextLinkId() ) ;
 			final double now = this.simTimer.getTimeOfDay();
 			if (nextLink.getFreespeed(now) < 0.1) {
@@ -363,8 +394,11 @@ class EvacAgent implements MobsimDriverAgent, HasPerson, PlanAgent, HasModifiabl
 	public static class Factory implements AgentFactory {
 		@Inject Netsim simulation;
 		@Inject TripRouter tripRouter ;
+		@Inject TripPreRouter preRouter ;
+		@Inject LinkBlockageIndex blockages ;
 		@Override public MobsimAgent createMobsimAgentFromPerson(final Person p) {
-			return new EvacAgent( p.getSelectedPlan(), this.simulation, tripRouter );
+			return new EvacAgent( p.getSelectedPlan(), this.simulation, tripRouter, preRouter.isEnabled() ? preRouter : null,
+					blockages.isEnabled() ? blockages : null );
 		}
 	}
 }
\ No newline at end of file
@@ -38,6 +38,7 @@ import org.matsim.vehicles.Vehicle;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
 public class EvacAgentTracker implements
@@ -56,12 +57,22 @@ public class EvacAgentTracker implements
 	private Map<Id<Vehicle>,VehicleTrackingData> linkEnterEventsMap = Collections.synchronizedMap( new LinkedHashMap<>() );
 	private Vehicle2DriverEventHandler vehicle2Driver = new Vehicle2DriverEventHandler() ;
 	private DeckglTripsData deckglTripsData;
+	private final EvacNetworkSimplifier networkSimplifier;
 
 	public EvacAgentTracker(EvacConfig evacConfig, Network network, EventsManager events, DeckglTripsData deckglTripsData) {
+		this(evacConfig, network, events, deckglTripsData, null);
+	}
+
+	/**
+	 * @param networkSimplifier if the network was simplified, used to write DeckGL paths along the original links
+	 */
+	public EvacAgentTracker(EvacConfig evacConfig, Network network, EventsManager events, DeckglTripsData deckglTripsData,
+							EvacNetworkSimplifier networkSimplifier) {
 		this.evacConfig = evacConfig;
 		this.network = network ;
 		this.events = events ;
 		this.deckglTripsData = deckglTripsData;
+		this.networkSimplifier = networkSimplifier;
 	}
 	
 	double getDelay(Id<Person> personId, double now) {
@@ -155,6 +166,7 @@ public class EvacAgentTracker implements
 				// Below we amplify the relative speed difference (squared)
 				// to make the colours more sensitive to drops in speed
 				//relativeSpeed = Math.pow(relativeSpeed,2);
+				addOriginalLinkEvents(link, vehicleData.getLastLinkEnterTime(), event.getTime(), vehicleId, relativeSpeed);
 				deckglTripsData.addEvent(Double.valueOf(event.getTime()).intValue(),
 						vehicleId.toString(),
 						link.getToNode().getCoord(),
@@ -164,6 +176,28 @@ public class EvacAgentTracker implements
 		}
 	}
 	
+	/**
+	 * For a merged link, adds the inner nodes of the original links it replaced, at times
+	 * interpolated by distance, so that the path does not cut corners
+	 */
+	private void addOriginalLinkEvents(Link link, double enterTime, double leaveTime, Id<Vehicle> vehicleId,
+									   double relativeSpeed) {
+		List<Link> originalLinks = (networkSimplifier == null) ? null : networkSimplifier.getOriginalLinks(link.getId());
+		if (originalLinks == null) {
+			return;
+		}
+		double distance = 0;
+		for (int i = 0; i < originalLinks.size() - 1; i++) {
+			Link originalLink = originalLinks.get(i);
+			distance += originalLink.getLength();
+			double time = enterTime + (leaveTime - enterTime) * distance / link.getLength();
+			deckglTripsData.addEvent(Double.valueOf(time).intValue(),
+					vehicleId.toString(),
+					originalLink.getToNode().getCoord(),
+					relativeSpeed);
+		}
+	}
+
 	@Override
 	public void handleEvent(PersonArrivalEvent event) {
 	
@@ -43,16 +43,37 @@ import org.matsim.core.gbl.Gbl;
 import org.matsim.core.mobsim.framework.MobsimAgent;
 import org.matsim.core.mobsim.qsim.agents.WithinDayAgentUtils;
 import org.matsim.core.network.NetworkUtils;
+import org.matsim.core.router.TripRouter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.List;
+
 public final class EvacDrivetoActionHandlerV2 implements BDIActionHandler {
 	private static final Logger log = LoggerFactory.getLogger(EvacDrivetoActionHandlerV2.class ) ;
 
 	private final MATSimModel model;
+	private final ReplanningExecutor executor;
+	private final NearestLinkResolver linkResolver;
+	private final TripPreRouter preRouter;
+	private final ReplanningCoalescer coalescer;
 	public EvacDrivetoActionHandlerV2(MATSimModel model ) {
+		this(model, null, null, null, null);
+	}
+	/**
+	 * @param executor batches the replanning of this handler, or null to replan straight away
+	 * @param linkResolver finds the destination links, or null to search the network every time
+	 * @param preRouter routes the trip after a replan activity ahead of departure, or null
+	 * @param coalescer keeps only the latest replanning of each agent per step, or null to replan every time
+	 */
+	public EvacDrivetoActionHandlerV2(MATSimModel model, ReplanningExecutor executor, NearestLinkResolver linkResolver,
+						TripPreRouter preRouter, ReplanningCoalescer coalescer ) {
 //		log.setLevel(Level.DEBUG);
 		this.model = model;
+		this.executor = executor;
+		this.linkResolver = linkResolver;
+		this.preRouter = preRouter;
+		this.coalescer = coalescer;
 	}
 	@Override
 	public ActionContent.State handle(String agentID, String actionID, Object[] args) {
@@ -86,16 +107,6 @@ public final class EvacDrivetoActionHandlerV2 implements BDIActionHandler {
 			return ActionContent.State.FAILED;
 		}
 
-		final Link nearestLink = NetworkUtils.getNearestLink(model.getScenario().getNetwork(), coord );
-		Gbl.assertNotNull(nearestLink);
-		Id<Link> newLinkId = nearestLink.getId();
-		//  could give just coordinates to matsim, but for time being need the linkId in the percept anyways
-		
-		// new departure time:
-		if ( model.getReplanner().editPlans().isAtRealActivity(mobsimAgent) ) {
-			model.getReplanner().editPlans().rescheduleCurrentActivityEndtime(mobsimAgent, (double)args[2]);
-		}
-		
 		// routingMode:
 		String routingMode = null ; // could have some default
 		switch (((Constants.EvacRoutingMode) args[3])) {
@@ -112,6 +123,50 @@ public final class EvacDrivetoActionHandlerV2 implements BDIActionHandler {
 				throw new RuntimeException("not implemented" ) ;
 		}
 
+		boolean addReplanActivity = (args.length >=  6 && args[5] instanceof Boolean) ? (Boolean)args[5] : false;
+
+		if (coalescer != null) {
+			final String mode = routingMode;
+			coalescer.submit(agentID, ReplanningCoalescer.Kind.NEW_DESTINATION, () -> {
+				if (model.getMobsimAgentFromIdString(agentID) != null) {
+					replanTo(agentID, mobsimAgent, coord, mode, addReplanActivity, args);
+				}
+			});
+		} else {
+			replanTo(agentID, mobsimAgent, coord, routingMode, addReplanActivity, args);
+		}
+
+		log.debug("------------------------------------------------------------------------------------------"); ;
+		return ActionContent.State.RUNNING;
+	}
+
+	private void replanTo(String agentID, MobsimAgent mobsimAgent, Coord coord, String routingMode,
+						  boolean addReplanActivity, Object[] args) {
+		if (executor != null) {
+			// the trip is only worth routing ahead if it is not replaced by an empty one below
+			executor.submit(mobsimAgent, coord, routingMode, (double)args[2], !addReplanActivity,
+					(newLinkId, trip) -> replan(agentID, mobsimAgent, newLinkId, trip, routingMode, args));
+		} else {
+			final Link nearestLink = (linkResolver != null) ? linkResolver.getNearestLink(coord) :
+					NetworkUtils.getNearestLink(model.getScenario().getNetwork(), coord );
+			Gbl.assertNotNull(nearestLink);
+			//  could give just coordinates to matsim, but for time being need the linkId in the percept anyways
+			replan(agentID, mobsimAgent, nearestLink.getId(), null, routingMode, args);
+		}
+	}
+
+	/**
+	 * Replaces the rest of the plan with a trip to the given link
+	 *
+	 * @param trip the trip to the link if it was already routed, or null
+	 */
+	private void replan(String agentID, MobsimAgent mobsimAgent, Id<Link> newLinkId, List<? extends PlanElement> trip,
+						String routingMode, Object[] args) {
+		// new departure time:
+		if ( model.getReplanner().editPlans().isAtRealActivity(mobsimAgent) ) {
+			model.getReplanner().editPlans().rescheduleCurrentActivityEndtime(mobsimAgent, (double)args[2]);
+		}
+
 		System.out.println("Before flush:");
 		printPlan("before flush: ", mobsimAgent);
 		model.getReplanner().editPlans().flushEverythingBeyondCurrent(mobsimAgent);
@@ -137,7 +192,15 @@ public final class EvacDrivetoActionHandlerV2 implements BDIActionHandler {
 		// new evac destination
 		String activity = (args.length >=  5 && args[4] instanceof String) ? (String)args[4] : "DriveTo";
 		Activity newAct = model.getReplanner().editPlans().createFinalActivity( activity, newLinkId ) ;
-		model.getReplanner().editPlans().addActivityAtEnd(mobsimAgent, newAct, routingMode) ;
+		if (trip != null && !addReplanActivity) {
+			Plan plan = WithinDayAgentUtils.getModifiablePlan(mobsimAgent) ;
+			Activity currentAct = (Activity) WithinDayAgentUtils.getCurrentPlanElement(mobsimAgent) ;
+			plan.getPlanElements().add(newAct) ;
+			TripRouter.insertTrip(plan, currentAct, trip, newAct) ;
+			WithinDayAgentUtils.resetCaches(mobsimAgent) ;
+		} else {
+			model.getReplanner().editPlans().addActivityAtEnd(mobsimAgent, newAct, routingMode) ;
+		}
 		printPlan("after adding act: " , mobsimAgent ) ;
 
 		// add an empty leg between the replan and evac activities
@@ -145,13 +208,13 @@ public final class EvacDrivetoActionHandlerV2 implements BDIActionHandler {
 			model.getReplanner().editTrips().insertEmptyTrip(
 					WithinDayAgentUtils.getModifiablePlan(mobsimAgent),
 					rnewAct, newAct, routingMode);
+			if (preRouter != null) {
+				preRouter.register(mobsimAgent, rnewAct);
+			}
 		}
 
 		// Record that this agent is driving
 		model.getAgentManager().getAgentsPerformingBdiDriveTo().put(agentID, newLinkId.toString());
-
-		log.debug("------------------------------------------------------------------------------------------"); ;
-		return ActionContent.State.RUNNING;
 	}
 	
 	private void printPlan(String str ,MobsimAgent agent1) {
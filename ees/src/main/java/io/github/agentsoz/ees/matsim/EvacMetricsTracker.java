@@ -41,7 +41,9 @@ import java.io.Writer;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.Collections;
+import java.util.EnumSet;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 public class EvacMetricsTracker implements
@@ -54,12 +56,39 @@ public class EvacMetricsTracker implements
 	private final CoordinateTransformation transform;
 	private final Network network;
 	private final int binSizeInSecs;
+	private final EvacNetworkSimplifier networkSimplifier;
+	private final LinkHazardTable hazardTable;
+
+	// the hazards that are recorded against the links, as opposed to the fire penalty buffers
+	private static final LinkHazardTable.Hazard[] trackedHazards = {
+			LinkHazardTable.Hazard.FIRE,
+			LinkHazardTable.Hazard.EMBERS,
+			LinkHazardTable.Hazard.CYCLONE,
+			LinkHazardTable.Hazard.FLOOD};
 
 	private Map<Integer,Map<Id<Link>,LinkData>> store;
 
 	public EvacMetricsTracker(String crs, Network network, int binSizeInSecs) {
+		this(crs, network, binSizeInSecs, null);
+	}
+
+	/**
+	 * @param networkSimplifier if the network was simplified, used to write the metrics against the original links
+	 */
+	public EvacMetricsTracker(String crs, Network network, int binSizeInSecs, EvacNetworkSimplifier networkSimplifier) {
+		this(crs, network, binSizeInSecs, networkSimplifier, null);
+	}
+
+	/**
+	 * @param networkSimplifier if the network was simplified, used to write the metrics against the original links
+	 * @param hazardTable if given, each link's metrics also list the hazards it was in when used in that bin
+	 */
+	public EvacMetricsTracker(String crs, Network network, int binSizeInSecs, EvacNetworkSimplifier networkSimplifier,
+							  LinkHazardTable hazardTable) {
 		this.crs = crs;
 		this.network = network;
+		this.networkSimplifier = networkSimplifier;
+		this.hazardTable = hazardTable;
 		this.binSizeInSecs = (binSizeInSecs < 1 ) ? 1 : (binSizeInSecs > 60*60*24) ? 60*60*24 : binSizeInSecs;
 		this.transform = TransformationFactory.getCoordinateTransformation(
 				TransformationFactory.WGS84, crs);
@@ -121,7 +150,15 @@ public class EvacMetricsTracker implements
 					Math.round(link.getCapacity()*100.0)/100.0,
 					Math.round(link.getFreespeed()*100.0)/100.0));
 		}
-		return linksMap.get(hasLinkId.getLinkId());
+		LinkData data = linksMap.get(hasLinkId.getLinkId());
+		if (hazardTable != null) {
+			for (LinkHazardTable.Hazard hazard : trackedHazards) {
+				if (hazardTable.isIntersecting(hazard, hasLinkId.getLinkId())) {
+					data.addHazard(hazard);
+				}
+			}
+		}
+		return data;
 	}
 
 
@@ -131,7 +168,7 @@ public class EvacMetricsTracker implements
 			Gson gson = new GsonBuilder()
 					.setPrettyPrinting()
 					.create();
-			gson.toJson(store, writer);
+			gson.toJson((networkSimplifier == null) ? store : getStoreOfOriginalLinks(), writer);
 			writer.close();
 
 		} catch (IOException e) {
@@ -139,6 +176,50 @@ public class EvacMetricsTracker implements
 		}
 	}
 
+	/**
+	 * Spreads the metrics of each merged link over the original links it replaced. Every vehicle
+	 * that entered or left a merged link passed through all of them, but activities (which were
+	 * moved to the merged link) are put on its first original link, as where they were is not known.
+	 */
+	private Map<Integer,Map<Id<Link>,LinkData>> getStoreOfOriginalLinks() {
+		CoordinateTransformation transform = TransformationFactory.getCoordinateTransformation(
+				crs, TransformationFactory.WGS84);
+		Map<Integer,Map<Id<Link>,LinkData>> originalStore = new HashMap<>();
+		synchronized (store) {
+			for (Map.Entry<Integer, Map<Id<Link>, LinkData>> bin : store.entrySet()) {
+				Map<Id<Link>, LinkData> linksMap = new HashMap<>();
+				for (Map.Entry<Id<Link>, LinkData> entry : bin.getValue().entrySet()) {
+					List<Link> originalLinks = networkSimplifier.getOriginalLinks(entry.getKey());
+					if (originalLinks == null) {
+						linksMap.put(entry.getKey(), entry.getValue());
+						continue;
+					}
+					LinkData merged = entry.getValue();
+					for (int i = 0; i < originalLinks.size(); i++) {
+						Link link = originalLinks.get(i);
+						Coord from = transform.transform(link.getFromNode().getCoord());
+						Coord to = transform.transform(link.getToNode().getCoord());
+						LinkData data = new LinkData(
+								new Coord(from.getX(), from.getY(), 0),
+								new Coord(to.getX(), to.getY(), 0),
+								merged.capacity,
+								merged.freespeed);
+						data.hazards = merged.hazards;
+						data.setVehiclesEntered(merged.getVehiclesEntered());
+						data.setVehiclesExited(merged.getVehiclesExited());
+						if (i == 0) {
+							data.setActivitiesStarted(merged.getActivitiesStarted());
+							data.setActivitiesEnded(merged.getActivitiesEnded());
+						}
+						linksMap.put(link.getId(), data);
+					}
+				}
+				originalStore.put(bin.getKey(), linksMap);
+			}
+		}
+		return originalStore;
+	}
+
 	class LinkData {
 		final private Coord from;
 		final private Coord to;
@@ -148,6 +229,8 @@ public class EvacMetricsTracker implements
 		private int vehiclesExited;
 		private int activitiesStarted;
 		private int activitiesEnded;
+		// left null (and so out of the output) if hazards are not tracked
+		private EnumSet<LinkHazardTable.Hazard> hazards;
 
 		public LinkData(Coord from, Coord to, double capacity, double freespeed) {
 			this.from = from;
@@ -187,5 +270,12 @@ public class EvacMetricsTracker implements
 		public void setActivitiesEnded(int activitiesEnded) {
 			this.activitiesEnded = activitiesEnded;
 		}
+
+		void addHazard(LinkHazardTable.Hazard hazard) {
+			if (hazards == null) {
+				hazards = EnumSet.noneOf(LinkHazardTable.Hazard.class);
+			}
+			hazards.add(hazard);
+		}
 	}
 }
@@ -0,0 +1,309 @@
+package io.github.agentsoz.ees.matsim;
+
+/*
+ * #%L
+ * Emergency Evacuation Simulator
+ * %%
+ * Copyright (C) 2014 - 2025 by its authors. See AUTHORS file.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.LineString;
+import org.locationtech.jts.geom.prep.PreparedGeometry;
+import org.locationtech.jts.geom.prep.PreparedGeometryFactory;
+import org.locationtech.jts.index.strtree.STRtree;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.Scenario;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.api.core.v01.population.Activity;
+import org.matsim.api.core.v01.population.Leg;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.api.core.v01.population.Plan;
+import org.matsim.api.core.v01.population.PlanElement;
+import org.matsim.api.core.v01.population.Route;
+import org.matsim.core.network.NetworkChangeEvent;
+import org.matsim.core.network.NetworkUtils;
+import org.matsim.core.population.routes.NetworkRoute;
+import org.matsim.utils.objectattributes.attributable.AttributesUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+
+/**
+ * Merges chains of links that pass through degree-2 nodes (nodes where the road simply
+ * continues, in one or both directions) into single links, wherever the links of a chain have
+ * identical attributes. Fewer links means less hazard mapping, smaller routing graphs and less
+ * work in the QSim, without changing any route choice.
+ * <p>
+ * A merged link keeps the id of the first link of its chain and the sum of the lengths, but not
+ * the positions of the nodes in between. Links with network change events, any links given to
+ * keep, and any links that reach into the areas given to keep are never merged, so that wherever
+ * hazards or zones are tested against the network it keeps its original links and geometry, and
+ * links given in original ids (such as disruptions or destinations) need no mapping. Activities on
+ * merged links are moved to the merged link and any routes through them are dropped, so that
+ * they get routed afresh. The mapping between merged and original links is kept, so that
+ * inputs given in original link ids (such as disruptions) and outputs meant for the original
+ * network can still be resolved.
+ */
+public final class EvacNetworkSimplifier {
+
+    private static final Logger log = LoggerFactory.getLogger(EvacNetworkSimplifier.class);
+
+    private final Set<Id<Link>> linksToKeep;
+    private final Collection<Geometry> areasToKeep;
+    private final Map<Id<Link>, List<Link>> originalLinksOfLink = new HashMap<>();
+    private final Map<Id<Link>, Id<Link>> simplifiedLinkIds = new HashMap<>();
+
+    public EvacNetworkSimplifier(Collection<Id<Link>> linksToKeep, Collection<Geometry> areasToKeep) {
+        this.linksToKeep = new HashSet<>(linksToKeep);
+        this.areasToKeep = new ArrayList<>(areasToKeep);
+    }
+
+    /**
+     * Simplifies the network of the given scenario in place, and updates its population to match
+     */
+    public void simplify(Scenario scenario) {
+        long start = System.currentTimeMillis();
+        Network network = scenario.getNetwork();
+        int linksBefore = network.getLinks().size();
+        int nodesBefore = network.getNodes().size();
+        Set<Id<Link>> changing = new HashSet<>(linksToKeep);
+        for (NetworkChangeEvent event : NetworkUtils.getNetworkChangeEvents(network)) {
+            for (Link link : event.getLinks()) {
+                changing.add(link.getId());
+            }
+        }
+        changing.addAll(getLinksInAreasToKeep(network));
+
+        // find all chains on the unchanged network first
+        List<List<Link>> chains = new ArrayList<>();
+        Set<Id<Link>> visited = new HashSet<>();
+        List<Link> links = new ArrayList<>(network.getLinks().values());
+        links.sort(Comparator.comparing(Link::getId));
+        for (Link link : links) {
+            if (visited.contains(link.getId()) || !isMergeable(link, changing)) {
+                continue;
+            }
+            Link previous = getPrevious(link);
+            if (previous != null && isMergeable(previous, changing) && haveSameAttributes(previous, link)) {
+                continue; // not the start of its chain, so will be reached from there
+            }
+            List<Link> chain = new ArrayList<>();
+            chain.add(link);
+            visited.add(link.getId());
+            Link current = link;
+            Link next;
+            while ((next = getNext(current)) != null && !visited.contains(next.getId())
+                    && isMergeable(next, changing) && haveSameAttributes(current, next)) {
+                chain.add(next);
+                visited.add(next.getId());
+                current = next;
+            }
+            // (a chain that comes back to where it started would become a loop, so is left alone)
+            if (chain.size() > 1 && chain.get(0).getFromNode() != current.getToNode()) {
+                chains.add(chain);
+            }
+        }
+
+        Set<Node> passedThrough = new HashSet<>();
+        for (List<Link> chain : chains) {
+            merge(network, chain);
+            for (int i = 1; i < chain.size(); i++) {
+                passedThrough.add(chain.get(i).getFromNode());
+            }
+        }
+        for (Node node : passedThrough) {
+            if (node.getInLinks().isEmpty() && node.getOutLinks().isEmpty()) {
+                network.removeNode(node.getId());
+            }
+        }
+        updatePopulation(scenario);
+        log.info("Simplified network from {} to {} links and {} to {} nodes by merging {} chains ({} ms)",
+                linksBefore, network.getLinks().size(), nodesBefore, network.getNodes().size(),
+                chains.size(), System.currentTimeMillis() - start);
+    }
+
+    /**
+     * Gets the links whose straight line from node to node intersects any of the areas to keep
+     */
+    private Set<Id<Link>> getLinksInAreasToKeep(Network network) {
+        Set<Id<Link>> inAreas = new HashSet<>();
+        if (areasToKeep.isEmpty()) {
+            return inAreas;
+        }
+        STRtree areas = new STRtree();
+        for (Geometry area : areasToKeep) {
+            areas.insert(area.getEnvelopeInternal(), PreparedGeometryFactory.prepare(area));
+        }
+        GeometryFactory factory = new GeometryFactory();
+        for (Link link : network.getLinks().values()) {
+            LineString line = factory.createLineString(new Coordinate[]{
+                    new Coordinate(link.getFromNode().getCoord().getX(), link.getFromNode().getCoord().getY()),
+                    new Coordinate(link.getToNode().getCoord().getX(), link.getToNode().getCoord().getY())});
+            for (Object area : areas.query(line.getEnvelopeInternal())) {
+                if (((PreparedGeometry) area).intersects(line)) {
+                    inAreas.add(link.getId());
+                    break;
+                }
+            }
+        }
+        log.info("Keeping {} links within {} hazard and zone areas as they are", inAreas.size(), areasToKeep.size());
+        return inAreas;
+    }
+
+    private void merge(Network network, List<Link> chain) {
+        Link first = chain.get(0);
+        Link last = chain.get(chain.size() - 1);
+        double length = 0;
+        for (Link link : chain) {
+            length += link.getLength();
+            network.removeLink(link.getId());
+        }
+        Link merged = NetworkUtils.createLink(first.getId(), first.getFromNode(), last.getToNode(), network,
+                length, first.getFreespeed(), first.getCapacity(), first.getNumberOfLanes());
+        merged.setAllowedModes(first.getAllowedModes());
+        AttributesUtils.copyTo(first.getAttributes(), merged.getAttributes());
+        network.addLink(merged);
+        originalLinksOfLink.put(merged.getId(), chain);
+        for (Link link : chain) {
+            simplifiedLinkIds.put(link.getId(), merged.getId());
+        }
+    }
+
+    /**
+     * Moves activities onto the merged links and drops routes that used the original ones
+     */
+    private void updatePopulation(Scenario scenario) {
+        for (Person person : scenario.getPopulation().getPersons().values()) {
+            for (Plan plan : person.getPlans()) {
+                for (PlanElement element : plan.getPlanElements()) {
+                    if (element instanceof Activity) {
+                        Activity activity = (Activity) element;
+                        if (activity.getLinkId() != null) {
+                            activity.setLinkId(getSimplifiedLinkId(activity.getLinkId()));
+                        }
+                    } else if (element instanceof Leg && usesMergedLinks(((Leg) element).getRoute())) {
+                        ((Leg) element).setRoute(null);
+                    }
+                }
+            }
+        }
+    }
+
+    private boolean usesMergedLinks(Route route) {
+        if (route == null) {
+            return false;
+        }
+        if (simplifiedLinkIds.containsKey(route.getStartLinkId()) || simplifiedLinkIds.containsKey(route.getEndLinkId())) {
+            return true;
+        }
+        if (route instanceof NetworkRoute) {
+            for (Id<Link> linkId : ((NetworkRoute) route).getLinkIds()) {
+                if (simplifiedLinkIds.containsKey(linkId)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static boolean isMergeable(Link link, Set<Id<Link>> changing) {
+        return !changing.contains(link.getId());
+    }
+
+    private static boolean haveSameAttributes(Link a, Link b) {
+        return a.getFreespeed() == b.getFreespeed()
+                && a.getCapacity() == b.getCapacity()
+                && a.getNumberOfLanes() == b.getNumberOfLanes()
+                && a.getAllowedModes().equals(b.getAllowedModes())
+                && a.getAttributes().getAsMap().equals(b.getAttributes().getAsMap());
+    }
+
+    /**
+     * A node that the road simply passes through: one link in and one out (that do not just
+     * turn back), or a two-way road with two links in from, and two out to, the same two nodes
+     */
+    private static boolean isPassThrough(Node node) {
+        Collection<? extends Link> in = node.getInLinks().values();
+        Collection<? extends Link> out = node.getOutLinks().values();
+        Set<Node> fromNodes = new HashSet<>();
+        Set<Node> toNodes = new HashSet<>();
+        for (Link link : in) {
+            fromNodes.add(link.getFromNode());
+        }
+        for (Link link : out) {
+            toNodes.add(link.getToNode());
+        }
+        if (in.size() == 1 && out.size() == 1) {
+            return !fromNodes.equals(toNodes) && !fromNodes.contains(node);
+        }
+        return in.size() == 2 && out.size() == 2 && fromNodes.size() == 2
+                && fromNodes.equals(toNodes) && !fromNodes.contains(node);
+    }
+
+    private static Link getNext(Link link) {
+        Node node = link.getToNode();
+        if (!isPassThrough(node)) {
+            return null;
+        }
+        for (Link out : node.getOutLinks().values()) {
+            if (out.getToNode() != link.getFromNode()) {
+                return out;
+            }
+        }
+        return null;
+    }
+
+    private static Link getPrevious(Link link) {
+        Node node = link.getFromNode();
+        if (!isPassThrough(node)) {
+            return null;
+        }
+        for (Link in : node.getInLinks().values()) {
+            if (in.getFromNode() != link.getToNode()) {
+                return in;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Gets the link that the given original link is now part of, which is the link itself if it
+     * was not merged
+     */
+    public Id<Link> getSimplifiedLinkId(Id<Link> originalLinkId) {
+        return simplifiedLinkIds.getOrDefault(originalLinkId, originalLinkId);
+    }
+
+    /**
+     * Gets the original links, in order, that the given link was merged from, or null if the
+     * link was not merged
+     */
+    public List<Link> getOriginalLinks(Id<Link> linkId) {
+        return originalLinksOfLink.get(linkId);
+    }
+
+    public int getNumberOfMergedLinks() {
+        return originalLinksOfLink.size();
+    }
+}
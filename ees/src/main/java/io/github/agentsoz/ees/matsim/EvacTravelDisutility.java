@@ -42,20 +42,16 @@ package io.github.agentsoz.ees.matsim;
  * #L%
  */
 
-import org.matsim.api.core.v01.Id;
 import org.matsim.api.core.v01.network.Link;
 import org.matsim.api.core.v01.population.Person;
 import org.matsim.core.gbl.Gbl;
 import org.matsim.core.router.costcalculators.TravelDisutilityFactory;
 import org.matsim.core.router.util.TravelDisutility;
 import org.matsim.core.router.util.TravelTime;
-import org.matsim.core.utils.misc.Time;
 import org.matsim.vehicles.Vehicle;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.Map;
-
 
 /**
  *  A Travel Cost Calculator that uses the travel times as travel disutility.
@@ -67,48 +63,86 @@ public final class EvacTravelDisutility implements TravelDisutility {
 
 	private static final Logger log = LoggerFactory.getLogger(EvacTravelDisutility.class) ;
 
-	private final Map<Id<Link>, Double> linksInFireArea;
+	private final LinkPenaltyField linksInFireArea;
+	// time-dependent penalties from when the fire reaches each link; null if not used
+	private final FireArrivalField fireArrival;
 	
 	private final TravelTime travelTime;
 
-	private EvacTravelDisutility(final TravelTime travelTime, Map<Id<Link>, Double> linksInFireArea) {
+	private EvacTravelDisutility(final TravelTime travelTime, LinkPenaltyField linksInFireArea, FireArrivalField fireArrival) {
 //		((ch.qos.logback.classic.Logger) log).setLevel(Level.DEBUG);
 		this.linksInFireArea = linksInFireArea;
+		this.fireArrival = fireArrival;
 		Gbl.assertNotNull(travelTime);
 		this.travelTime = travelTime;
 	}
 	
 	@Override
 	public double getLinkTravelDisutility(final Link link, final double time, final Person person, final Vehicle vehicle) {
-		double factor = 1. ;
-		Double result = linksInFireArea.get(link.getId());;
-		if ( result != null ) {
-			factor = result ;
-			log.debug("found link {} in fire area, set factor={}" , link.getId(), factor );
-		}
+		// (a plain array read; links outside the fire area have factor 1)
+		final double factor = linksInFireArea.getFactor(link.getId()) * getFireArrivalFactor(link, time);
 		return factor * this.travelTime.getLinkTravelTime(link, time, person, vehicle);
 	}
 
+	/**
+	 * The travel time bound to this disutility may be a congested one, so the bound is taken from the
+	 * length and the (base) freespeed of the link instead, as MATSim's own disutilities do
+	 */
 	@Override
 	public double getLinkMinimumTravelDisutility(final Link link) {
-		double factor = 1. ;
-		Double result = linksInFireArea.get(link.getId());;
-		if ( result != null ) {
-			log.debug("found link in fire area:" + link.getId() );
-			factor = result ;
-		}
-		return factor * this.travelTime.getLinkTravelTime(link, Time.MIDNIGHT, null, null);
+		final double factor = linksInFireArea.getFactor(link.getId());
+		return factor * link.getLength() / link.getFreespeed();
+	}
+
+	/**
+	 * Same as {@link #getLinkTravelDisutility(Link, double, Person, Vehicle)}, but with the penalty factors
+	 * taken from the given snapshot of the penalty field, so that a whole route search sees the same penalties
+	 */
+	public double getLinkTravelDisutility(final double[] penaltySnapshot, final Link link, final double time,
+										  final Person person, final Vehicle vehicle) {
+		final double factor = LinkPenaltyField.getFactor(penaltySnapshot, link.getId()) * getFireArrivalFactor(link, time);
+		return factor * this.travelTime.getLinkTravelTime(link, time, person, vehicle);
+	}
+
+	/**
+	 * Lower bound of the disutility of the given link under the given snapshot of the penalty field, for
+	 * the given lower bound of its travel time (e.g., its length at the highest freespeed it ever has)
+	 */
+	public double getLinkMinimumTravelDisutility(final double[] penaltySnapshot, final Link link,
+												 final double minimumTravelTime) {
+		return LinkPenaltyField.getFactor(penaltySnapshot, link.getId()) * minimumTravelTime;
+	}
+
+	/**
+	 * The fire arrival factor is never below 1, so the minimum disutilities above, which leave it
+	 * out, remain valid lower bounds
+	 */
+	private double getFireArrivalFactor(final Link link, final double time) {
+		return (fireArrival == null) ? 1. : fireArrival.getFactor(link.getId(), time);
+	}
+
+	public LinkPenaltyField getPenaltyField() {
+		return linksInFireArea;
+	}
+
+	public TravelTime getTravelTime() {
+		return travelTime;
 	}
 	
 	public static final class Factory implements TravelDisutilityFactory {
-		private final Map<Id<Link>, Double> linksInFireArea;
+		private final LinkPenaltyField linksInFireArea;
+		private final FireArrivalField fireArrival;
 		
-		public Factory(Map<Id<Link>, Double> linksInFireArea ) {
+		public Factory(LinkPenaltyField linksInFireArea ) {
+			this(linksInFireArea, null);
+		}
+		public Factory(LinkPenaltyField linksInFireArea, FireArrivalField fireArrival ) {
 			this.linksInFireArea = linksInFireArea ;
+			this.fireArrival = fireArrival ;
 		}
 		@Override
 		public TravelDisutility createTravelDisutility(TravelTime timeCalculator) {
-			return new EvacTravelDisutility(timeCalculator, linksInFireArea);
+			return new EvacTravelDisutility(timeCalculator, linksInFireArea, fireArrival);
 		}
 	}
 	
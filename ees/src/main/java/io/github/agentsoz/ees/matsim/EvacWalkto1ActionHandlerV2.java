@@ -41,16 +41,37 @@ import org.matsim.core.mobsim.framework.MobsimAgent;
 import org.matsim.core.mobsim.framework.PlanAgent;
 import org.matsim.core.mobsim.qsim.agents.WithinDayAgentUtils;
 import org.matsim.core.network.NetworkUtils;
+import org.matsim.core.router.TripRouter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.List;
+
 public final class EvacWalkto1ActionHandlerV2 implements BDIActionHandler {
 	private static final Logger log = LoggerFactory.getLogger(EvacWalkto1ActionHandlerV2.class ) ;
 
 	private final MATSimModel model;
+	private final ReplanningExecutor executor;
+	private final NearestLinkResolver linkResolver;
+	private final TripPreRouter preRouter;
+	private final ReplanningCoalescer coalescer;
 	public EvacWalkto1ActionHandlerV2(MATSimModel model ) {
+		this(model, null, null, null, null);
+	}
+	/**
+	 * @param executor batches the replanning of this handler, or null to replan straight away
+	 * @param linkResolver finds the destination links, or null to search the network every time
+	 * @param preRouter routes the trip after a replan activity ahead of departure, or null
+	 * @param coalescer keeps only the latest replanning of each agent per step, or null to replan every time
+	 */
+	public EvacWalkto1ActionHandlerV2(MATSimModel model, ReplanningExecutor executor, NearestLinkResolver linkResolver,
+						TripPreRouter preRouter, ReplanningCoalescer coalescer ) {
 //		log.setLevel(Level.DEBUG);
 		this.model = model;
+		this.executor = executor;
+		this.linkResolver = linkResolver;
+		this.preRouter = preRouter;
+		this.coalescer = coalescer;
 	}
 	@Override
 	public ActionContent.State handle(String agentID, String actionID, Object[] args) {
@@ -88,18 +109,6 @@ public final class EvacWalkto1ActionHandlerV2 implements BDIActionHandler {
 		System.out.println("[DEBUG] Agent " + agentID + " Current Plan Element Type: " +
 				(currentPlanElement != null ? currentPlanElement.getClass().getSimpleName() : "NULL"));
 
-		// Find the nearest link to the target coordinates
-		final Link nearestLink = NetworkUtils.getNearestLink(model.getScenario().getNetwork(), coord);
-		Gbl.assertNotNull(nearestLink);
-		Id<Link> newLinkId = nearestLink.getId();
-		System.out.println("[DEBUG] Agent " + agentID + " New Destination Link ID: " + newLinkId);
-
-		// Reschedule activity if agent is at a real activity
-		if (model.getReplanner().editPlans().isAtRealActivity(mobsimAgent)) {
-			System.out.println("[DEBUG] Rescheduling current activity end time for Agent " + agentID);
-			model.getReplanner().editPlans().rescheduleCurrentActivityEndtime(mobsimAgent, (double) args[2]);
-		}
-
 		// Determine routing mode
 		String routingMode = null;
 		switch (((Constants.EvacRoutingMode) args[3])) {
@@ -115,6 +124,55 @@ public final class EvacWalkto1ActionHandlerV2 implements BDIActionHandler {
 		}
 		System.out.println("[DEBUG] Agent " + agentID + " Selected Routing Mode: " + routingMode);
 
+		// Determine if a replan activity should be added
+		boolean addReplanActivity = (args.length >= 6 && args[5] instanceof Boolean) ? (Boolean) args[5] : false;
+
+		if (coalescer != null) {
+			// Keep only the latest replanning of this agent, carried out at the next step
+			final String mode = routingMode;
+			coalescer.submit(agentID, ReplanningCoalescer.Kind.NEW_DESTINATION, () -> {
+				if (model.getMobsimAgentFromIdString(agentID) != null) {
+					replanTo(agentID, mobsimAgent, coord, mode, addReplanActivity, args);
+				}
+			});
+		} else {
+			replanTo(agentID, mobsimAgent, coord, routingMode, addReplanActivity, args);
+		}
+
+		log.debug("------------------------------------------------------------------------------------------");
+		return ActionContent.State.RUNNING;
+	}
+
+	private void replanTo(String agentID, MobsimAgent mobsimAgent, Coord coord, String routingMode,
+						  boolean addReplanActivity, Object[] args) {
+		if (executor != null) {
+			// Queue for the next batch; the trip is only routed ahead if it is kept below
+			executor.submit(mobsimAgent, coord, routingMode, (double) args[2], !addReplanActivity,
+					(newLinkId, trip) -> replan(agentID, mobsimAgent, newLinkId, trip, routingMode, args));
+		} else {
+			// Find the nearest link to the target coordinates
+			final Link nearestLink = (linkResolver != null) ? linkResolver.getNearestLink(coord) :
+					NetworkUtils.getNearestLink(model.getScenario().getNetwork(), coord);
+			Gbl.assertNotNull(nearestLink);
+			replan(agentID, mobsimAgent, nearestLink.getId(), null, routingMode, args);
+		}
+	}
+
+	/**
+	 * Replaces the rest of the plan with a trip to the given link
+	 *
+	 * @param trip the trip to the link if it was already routed, or null
+	 */
+	private void replan(String agentID, MobsimAgent mobsimAgent, Id<Link> newLinkId, List<? extends PlanElement> trip,
+						String routingMode, Object[] args) {
+		System.out.println("[DEBUG] Agent " + agentID + " New Destination Link ID: " + newLinkId);
+
+		// Reschedule activity if agent is at a real activity
+		if (model.getReplanner().editPlans().isAtRealActivity(mobsimAgent)) {
+			System.out.println("[DEBUG] Rescheduling current activity end time for Agent " + agentID);
+			model.getReplanner().editPlans().rescheduleCurrentActivityEndtime(mobsimAgent, (double) args[2]);
+		}
+
 		// Print plan before flushing
 		System.out.println("[DEBUG] Before flush:");
 		printPlan("Before flush", mobsimAgent);
@@ -129,7 +187,6 @@ public final class EvacWalkto1ActionHandlerV2 implements BDIActionHandler {
 		System.out.println("[DEBUG] After flush:");
 		printPlan("After flush", mobsimAgent);
 
-		// Determine if a replan activity should be added
 		boolean addReplanActivity = (args.length >= 6 && args[5] instanceof Boolean) ? (Boolean) args[5] : false;
 		int replanTime = (args.length >= 7 && args[6] instanceof Integer) ? (int) args[6] : 0;
 
@@ -148,7 +205,16 @@ public final class EvacWalkto1ActionHandlerV2 implements BDIActionHandler {
 		String activity = (args.length >= 5 && args[4] instanceof String) ? (String) args[4] : "WalkTo1";
 		System.out.println("[DEBUG] Adding new evacuation activity: " + activity + " for Agent " + agentID);
 		Activity newAct = model.getReplanner().editPlans().createFinalActivity(activity, newLinkId);
-		model.getReplanner().editPlans().addActivityAtEnd(mobsimAgent, newAct, routingMode);
+		if (trip != null && !addReplanActivity) {
+			// Trip was already routed, so just put it between the current and the new activity
+			Plan plan = WithinDayAgentUtils.getModifiablePlan(mobsimAgent);
+			Activity currentAct = (Activity) WithinDayAgentUtils.getCurrentPlanElement(mobsimAgent);
+			plan.getPlanElements().add(newAct);
+			TripRouter.insertTrip(plan, currentAct, trip, newAct);
+			WithinDayAgentUtils.resetCaches(mobsimAgent);
+		} else {
+			model.getReplanner().editPlans().addActivityAtEnd(mobsimAgent, newAct, routingMode);
+		}
 		printPlan("After adding evac activity", mobsimAgent);
 
 		// Insert empty trip if replan activity was added
@@ -157,13 +223,13 @@ public final class EvacWalkto1ActionHandlerV2 implements BDIActionHandler {
 			model.getReplanner().editTrips().insertEmptyTrip(
 					WithinDayAgentUtils.getModifiablePlan(mobsimAgent),
 					rnewAct, newAct, routingMode);
+			if (preRouter != null) {
+				preRouter.register(mobsimAgent, rnewAct);
+			}
 		}
 
 		// Register agent in evacuation manager
 		model.getAgentManager().getAgentsPerformingBdiWalkTo1().put(agentID, newLinkId.toString());
-
-		log.debug("------------------------------------------------------------------------------------------");
-		return ActionContent.State.RUNNING;
 	}
 
 
@@ -0,0 +1,110 @@
+package io.github.agentsoz.ees.matsim;
+
+/*
+ * #%L
+ * Emergency Evacuation Simulator
+ * %%
+ * Copyright (C) 2014 - 2025 by its authors. See AUTHORS file.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+
+import io.github.agentsoz.ees.util.FireArrivalGrid;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.Node;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Times at which the fire is expected to reach each link, as read by the routers, used to
+ * penalise links by how soon they will burn rather than by where the fire is right now.
+ * <p>
+ * The times are worked out once, when the fire arrival data comes in, and published as a dense
+ * array indexed by {@link Id#index()}. A link that is already burning gets the in-fire penalty,
+ * one that will burn within the horizon gets a penalty that grows (quadratically, like the
+ * static buffer penalties) as the time of burning nears, and all others have factor 1.
+ */
+public final class FireArrivalField {
+
+    private static final double[] NO_ARRIVALS = new double[0];
+
+    private final AtomicReference<double[]> arrivals = new AtomicReference<>(NO_ARRIVALS);
+    private final double horizonInSecs;
+    private final double factorInFire;
+
+    public FireArrivalField(double horizonInSecs, double factorInFire) {
+        if (horizonInSecs <= 0) {
+            throw new IllegalArgumentException("Fire arrival horizon must be positive, found " + horizonInSecs);
+        }
+        this.horizonInSecs = horizonInSecs;
+        this.factorInFire = factorInFire;
+    }
+
+    /**
+     * Replaces the current arrival times with the given ones, indexed by link id index, where
+     * links that never burn have arrival time infinity
+     */
+    public void publish(double[] arrivalTimesOfLinks) {
+        arrivals.set(arrivalTimesOfLinks);
+    }
+
+    /**
+     * Works out when the fire reaches each link of the network, which is when it reaches the
+     * first of the link's two nodes, as arrival times to {@link #publish}
+     */
+    public static double[] getArrivalTimesOfLinks(FireArrivalGrid grid, Network network) {
+        Map<Id<Node>, Double> arrivalAtNodes = new HashMap<>();
+        for (Node node : network.getNodes().values()) {
+            arrivalAtNodes.put(node.getId(), grid.getFireArrivalTime(node.getCoord().getX(), node.getCoord().getY()));
+        }
+        double[] arrivalAtLinks = new double[Id.getNumberOfIds(Link.class)];
+        Arrays.fill(arrivalAtLinks, Double.POSITIVE_INFINITY);
+        for (Link link : network.getLinks().values()) {
+            arrivalAtLinks[link.getId().index()] = Math.min(arrivalAtNodes.get(link.getFromNode().getId()),
+                    arrivalAtNodes.get(link.getToNode().getId()));
+        }
+        return arrivalAtLinks;
+    }
+
+    public boolean isPublished() {
+        return arrivals.get() != NO_ARRIVALS;
+    }
+
+    /**
+     * Gets the penalty factor of the link for a traveller entering it at the given time
+     */
+    public double getFactor(Id<Link> linkId, double time) {
+        double[] snapshot = arrivals.get();
+        int index = linkId.index();
+        if (index >= snapshot.length) {
+            return 1.;
+        }
+        double timeToArrival = snapshot[index] - time;
+        if (timeToArrival <= 0) {
+            return factorInFire;
+        }
+        if (timeToArrival >= horizonInSecs) {
+            return 1.;
+        }
+        double nearness = 1. - timeToArrival / horizonInSecs;
+        return Math.max(1., factorInFire * nearness * nearness);
+    }
+}
@@ -0,0 +1,148 @@
+package io.github.agentsoz.ees.matsim;
+
+/*
+ * #%L
+ * Emergency Evacuation Simulator
+ * %%
+ * Copyright (C) 2014 - 2025 by its authors. See AUTHORS file.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+
+import io.github.agentsoz.ees.util.NetworkSpatialIndex;
+import io.github.agentsoz.ees.util.Utils;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.Point;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Maps a fire and its avoidance buffers onto the fire columns of a {@link LinkHazardTable}, and works out
+ * the penalty factors of the links from those columns. A fire comes either as a polygon, or as a raster
+ * only known through its distances (see {@link io.github.agentsoz.ees.util.FireDistanceGrid}); both read the
+ * penalised links from the same columns, so they agree up to the resolution of the distances.
+ */
+final class FirePenaltyMapper {
+
+    private final LinkHazardTable hazardTable;
+    private final Network network;
+    private final NetworkSpatialIndex networkIndex;
+    // the fire last mapped into the fire area column, so that both penalty recomputes share it
+    private Geometry fireInHazardTable;
+
+    FirePenaltyMapper(LinkHazardTable hazardTable, Network network, NetworkSpatialIndex networkIndex) {
+        this.hazardTable = hazardTable;
+        this.network = network;
+        this.networkIndex = networkIndex;
+    }
+
+    /**
+     * Recomputes the given penalties in full for the given fire and buffer, mapping both onto the
+     * hazard table first (the fire only once per update) and reading the penalised links from it
+     */
+    void putFirePenalties(Geometry fire, Geometry buffer, LinkHazardTable.Hazard bufferHazard,
+                          double bufferWidth, Map<Id<Link>, Double> penaltyFactorsOfLinks,
+                          ToDoubleFunction<Point> distanceToFire) {
+        if (fire != fireInHazardTable) {
+            hazardTable.update(LinkHazardTable.Hazard.FIRE_AREA, fire, network, networkIndex);
+            fireInHazardTable = fire;
+        }
+        hazardTable.update(bufferHazard, buffer, network, networkIndex);
+        putFirePenalties(bufferHazard, bufferWidth, penaltyFactorsOfLinks, distanceToFire);
+    }
+
+    /**
+     * Maps a fire only known through its distances onto the fire area column of the hazard table,
+     * ahead of {@link #putFirePenalties(Envelope, LinkHazardTable.Hazard, double, Map, ToDoubleFunction)}
+     */
+    void putFireArea(Envelope fireEnvelope, ToDoubleFunction<Point> distanceToFire) {
+        hazardTable.update(LinkHazardTable.Hazard.FIRE_AREA, fireEnvelope,
+                point -> distanceToFire.applyAsDouble(point) <= 0, network, networkIndex);
+        fireInHazardTable = null;
+    }
+
+    /**
+     * Same as {@link #putFirePenalties(Geometry, Geometry, LinkHazardTable.Hazard, double, Map, ToDoubleFunction)},
+     * for a fire only known through its distances; the fire area must already be in the hazard table
+     */
+    void putFirePenalties(Envelope fireEnvelope, LinkHazardTable.Hazard bufferHazard,
+                          double bufferWidth, Map<Id<Link>, Double> penaltyFactorsOfLinks,
+                          ToDoubleFunction<Point> distanceToFire) {
+        Envelope zone = new Envelope(fireEnvelope);
+        zone.expandBy(bufferWidth);
+        hazardTable.update(bufferHazard, zone, point -> distanceToFire.applyAsDouble(point) <= bufferWidth,
+                network, networkIndex);
+        putFirePenalties(bufferHazard, bufferWidth, penaltyFactorsOfLinks, distanceToFire);
+    }
+
+    /**
+     * Updates the given penalties, which were computed for the previous fire and buffer, for the new ones.
+     * Only the links around the nodes whose inputs changed are recomputed (see
+     * {@link Utils#getLinksWithChangedPenaltyInputs}), and the fire area and buffer columns of the hazard
+     * table are updated around the same changes, so that the table stays in step with the penalties.
+     * @return false if there is no previous state to update from, in which case nothing was changed
+     */
+    boolean putFirePenaltiesIncrementally(Geometry previousFire, Geometry previousBuffer, Geometry fire,
+                                          Geometry buffer, LinkHazardTable.Hazard bufferHazard,
+                                          double bufferWidth, Map<Id<Link>, Double> penaltyFactorsOfLinks) {
+        final Set<Link> changedLinks = Utils.getLinksWithChangedPenaltyInputs(previousFire, previousBuffer,
+                fire, buffer, bufferWidth, networkIndex);
+        if (changedLinks == null) {
+            return false;
+        }
+        if (fire != fireInHazardTable) {
+            hazardTable.updateIncrementally(LinkHazardTable.Hazard.FIRE_AREA, fire, network, networkIndex);
+            fireInHazardTable = fire;
+        }
+        hazardTable.updateIncrementally(bufferHazard, buffer, network, networkIndex);
+        final List<Link> linksWithToNodeInBuffer = new ArrayList<>();
+        for (Link link : changedLinks) {
+            penaltyFactorsOfLinks.remove(link.getId());
+            if (hazardTable.isToNodeWithin(bufferHazard, link.getId())) {
+                linksWithToNodeInBuffer.add(link);
+            }
+        }
+        putFirePenalties(linksWithToNodeInBuffer, bufferHazard, bufferWidth, penaltyFactorsOfLinks,
+                point -> point.distance(fire));
+        return true;
+    }
+
+    private void putFirePenalties(LinkHazardTable.Hazard bufferHazard, double bufferWidth,
+                                  Map<Id<Link>, Double> penaltyFactorsOfLinks, ToDoubleFunction<Point> distanceToFire) {
+        penaltyFactorsOfLinks.clear();
+        putFirePenalties(hazardTable.getLinksWithToNodeWithin(bufferHazard), bufferHazard, bufferWidth,
+                penaltyFactorsOfLinks, distanceToFire);
+    }
+
+    private void putFirePenalties(Collection<Link> linksWithToNodeInBuffer, LinkHazardTable.Hazard bufferHazard,
+                                  double bufferWidth, Map<Id<Link>, Double> penaltyFactorsOfLinks,
+                                  ToDoubleFunction<Point> distanceToFire) {
+        Utils.penaltyMethod2(linksWithToNodeInBuffer,
+                link -> hazardTable.isToNodeWithin(LinkHazardTable.Hazard.FIRE_AREA, link.getId()),
+                link -> hazardTable.isFromNodeWithin(LinkHazardTable.Hazard.FIRE_AREA, link.getId()),
+                link -> hazardTable.isFromNodeWithin(bufferHazard, link.getId()),
+                bufferWidth, penaltyFactorsOfLinks, networkIndex, distanceToFire);
+    }
+}
@@ -0,0 +1,110 @@
+package io.github.agentsoz.ees.matsim;
+
+/*
+ * #%L
+ * Emergency Evacuation Simulator
+ * %%
+ * Copyright (C) 2014 - 2025 by its authors. See AUTHORS file.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+
+import java.util.*;
+
+/**
+ * Decides which hazard percepts are worth sending, so that agents are told when they come
+ * into a hazard zone, and when the hazard around them gets more severe, but not again and
+ * again while nothing changes for them.
+ * <p>
+ * Each agent gets a dense index the first time it is seen. Per hazard there is a bitset of the
+ * agents currently known to be in its zone, plus the severity they were last told about.
+ * Agents leave a zone (and so will be told again when they come back) when they are seen
+ * outside it. Severities are small non-negative levels worked out by the caller, where
+ * {@link #UNTRACKED} means the agent is known to be in the zone but not how severe it is there
+ * (e.g., when seen entering a link). The first severity that comes in for such an agent is then
+ * taken as what it was told, so it is not told about the same hazard twice.
+ */
+public final class HazardPerceptFilter {
+
+    public enum Hazard {FIRE, EMBERS}
+
+    public static final int UNTRACKED = 0;
+
+    private final Map<String, Integer> agentIndices = new HashMap<>();
+    private final BitSet[] inZone = new BitSet[Hazard.values().length];
+    private final byte[][] severities = new byte[Hazard.values().length][];
+
+    public HazardPerceptFilter() {
+        for (Hazard hazard : Hazard.values()) {
+            inZone[hazard.ordinal()] = new BitSet();
+            severities[hazard.ordinal()] = new byte[0];
+        }
+    }
+
+    /**
+     * Records that the agent is in the zone of the given hazard, and returns whether it should
+     * be told, i.e., whether it has just come into the zone or the severity has gone up since
+     * it was last told
+     */
+    public synchronized boolean enter(String agentId, Hazard hazard, int severity) {
+        int index = getIndex(agentId);
+        int h = hazard.ordinal();
+        byte level = (byte) Math.min(Math.max(severity, 0), Byte.MAX_VALUE);
+        if (index >= severities[h].length) {
+            severities[h] = Arrays.copyOf(severities[h], Math.max(index + 1, severities[h].length * 2));
+        }
+        if (!inZone[h].get(index)) {
+            inZone[h].set(index);
+            severities[h][index] = level;
+            return true;
+        }
+        if (severities[h][index] == UNTRACKED) {
+            severities[h][index] = level;
+            return false;
+        }
+        if (level > severities[h][index]) {
+            severities[h][index] = level;
+            return true;
+        }
+        return false;
+    }
+
+    public synchronized void leave(String agentId, Hazard hazard) {
+        Integer index = agentIndices.get(agentId);
+        if (index != null) {
+            inZone[hazard.ordinal()].clear(index);
+        }
+    }
+
+    /**
+     * Takes all agents that are not in the given collection out of the zone of the given hazard,
+     * for when the whole zone has been reassessed
+     */
+    public synchronized void retain(Collection<String> agentIdsInZone, Hazard hazard) {
+        BitSet still = new BitSet();
+        for (String agentId : agentIdsInZone) {
+            Integer index = agentIndices.get(agentId);
+            if (index != null) {
+                still.set(index);
+            }
+        }
+        inZone[hazard.ordinal()].and(still);
+    }
+
+    private int getIndex(String agentId) {
+        return agentIndices.computeIfAbsent(agentId, k -> agentIndices.size());
+    }
+}
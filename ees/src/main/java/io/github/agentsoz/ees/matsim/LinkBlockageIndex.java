@@ -0,0 +1,187 @@
+package io.github.agentsoz.ees.matsim;
+
+/*
+ * #%L
+ * Emergency Evacuation Simulator
+ * %%
+ * Copyright (C) 2014 - 2025 by its authors. See AUTHORS file.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.core.mobsim.framework.events.MobsimAfterSimStepEvent;
+import org.matsim.core.mobsim.framework.events.MobsimBeforeSimStepEvent;
+import org.matsim.core.mobsim.framework.events.MobsimInitializedEvent;
+import org.matsim.core.mobsim.framework.listeners.MobsimAfterSimStepListener;
+import org.matsim.core.mobsim.framework.listeners.MobsimBeforeSimStepListener;
+import org.matsim.core.mobsim.framework.listeners.MobsimInitializedListener;
+import org.matsim.core.mobsim.qsim.QSim;
+import org.matsim.core.network.NetworkChangeEvent;
+import org.matsim.core.network.NetworkUtils;
+
+import java.util.*;
+import java.util.function.LongSupplier;
+
+/**
+ * Bitset of the links that are currently blocked (free speed below {@link #BLOCKED_SPEED}),
+ * so that agents can tell whether their next link is blocked with one bit test.
+ * <p>
+ * The bits only change when network change events take effect, so only the links of those
+ * events are looked at, at the start of the sim step in which they become due. The mobsim only
+ * applies the events during that step, so the bits are set from the scheduled speeds where the
+ * events give them, and every due link is checked again against its actual free speed after the
+ * step. Events added to the network are picked up whenever the network change epoch moves;
+ * events that are handed to the mobsim directly must be scheduled here too. Each time a link
+ * becomes blocked a new
+ * blockage episode starts, which lets agents report a blocked link once per episode rather
+ * than on every step that they wait for it.
+ */
+public class LinkBlockageIndex implements MobsimInitializedListener, MobsimBeforeSimStepListener,
+        MobsimAfterSimStepListener {
+
+    public static final double BLOCKED_SPEED = 0.1;
+
+    private static final class Change {
+        final double time;
+        final Link link;
+        final double speed; // NaN if the event does not say
+
+        Change(double time, Link link, double speed) {
+            this.time = time;
+            this.link = link;
+            this.speed = speed;
+        }
+    }
+
+    private final Network network;
+    private final boolean enabled;
+    private final LongSupplier networkChangeEpoch;
+    private final BitSet blocked = new BitSet();
+    private int[] episodes = new int[0];
+    private final PriorityQueue<Change> pending = new PriorityQueue<>(Comparator.comparingDouble((Change c) -> c.time));
+    private final List<Link> due = new ArrayList<>();
+    private final Set<NetworkChangeEvent> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+    private long lastEpoch = Long.MIN_VALUE;
+
+    public LinkBlockageIndex(Network network, boolean enabled, LongSupplier networkChangeEpoch) {
+        this.network = network;
+        this.enabled = enabled;
+        this.networkChangeEpoch = networkChangeEpoch;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Tells the index that the free speed of the given link changes to the given one at the given
+     * time. Must be called from the sim thread.
+     */
+    public void schedule(Link link, double time, double speed) {
+        if (enabled) {
+            pending.add(new Change(time, link, speed));
+        }
+    }
+
+    public boolean isBlocked(Id<Link> linkId) {
+        return blocked.get(linkId.index());
+    }
+
+    /**
+     * Gets the number of times the link has become blocked so far, which identifies the current
+     * blockage episode while the link is blocked
+     */
+    public int getEpisode(Id<Link> linkId) {
+        int index = linkId.index();
+        return (index < episodes.length) ? episodes[index] : 0;
+    }
+
+    @Override
+    public void notifyMobsimInitialized(MobsimInitializedEvent e) {
+        if (!enabled) {
+            return;
+        }
+        blocked.clear();
+        double now = ((QSim) e.getQueueSimulation()).getSimTimer().getTimeOfDay();
+        for (Link link : network.getLinks().values()) {
+            update(link, now);
+        }
+        collectNetworkChangeEvents();
+    }
+
+    @Override
+    public void notifyMobsimBeforeSimStep(MobsimBeforeSimStepEvent e) {
+        if (!enabled) {
+            return;
+        }
+        if (networkChangeEpoch.getAsLong() != lastEpoch) {
+            collectNetworkChangeEvents();
+        }
+        double now = e.getSimulationTime();
+        while (!pending.isEmpty() && pending.peek().time <= now) {
+            Change change = pending.poll();
+            if (!Double.isNaN(change.speed)) {
+                setBlocked(change.link, change.speed < BLOCKED_SPEED);
+            }
+            due.add(change.link);
+        }
+    }
+
+    @Override
+    public void notifyMobsimAfterSimStep(MobsimAfterSimStepEvent e) {
+        if (!enabled || due.isEmpty()) {
+            return;
+        }
+        // the changes have been applied by now, so this catches relative changes and any others due at the same time
+        double now = e.getSimulationTime();
+        for (Link link : due) {
+            update(link, now);
+        }
+        due.clear();
+    }
+
+    private void collectNetworkChangeEvents() {
+        lastEpoch = networkChangeEpoch.getAsLong();
+        for (NetworkChangeEvent event : NetworkUtils.getNetworkChangeEvents(network)) {
+            if (seen.add(event)) {
+                double speed = (event.getFreespeedChange() != null
+                        && event.getFreespeedChange().getType() == NetworkChangeEvent.ChangeType.ABSOLUTE_IN_SI_UNITS) ?
+                        event.getFreespeedChange().getValue() : Double.NaN;
+                for (Link link : event.getLinks()) {
+                    pending.add(new Change(event.getStartTime(), link, speed));
+                }
+            }
+        }
+    }
+
+    private void update(Link link, double now) {
+        setBlocked(link, link.getFreespeed(now) < BLOCKED_SPEED);
+    }
+
+    private void setBlocked(Link link, boolean isBlocked) {
+        int index = link.getId().index();
+        if (isBlocked && !blocked.get(index)) {
+            if (index >= episodes.length) {
+                episodes = Arrays.copyOf(episodes, Math.max(index + 1, Id.getNumberOfIds(Link.class)));
+            }
+            episodes[index]++;
+        }
+        blocked.set(index, isBlocked);
+    }
+}
@@ -0,0 +1,246 @@
+package io.github.agentsoz.ees.matsim;
+
+/*
+ * #%L
+ * Emergency Evacuation Simulator
+ * %%
+ * Copyright (C) 2014 - 2025 by its authors. See AUTHORS file.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+
+import io.github.agentsoz.ees.util.NetworkSpatialIndex;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.Point;
+import org.locationtech.jts.geom.prep.PreparedGeometry;
+import org.locationtech.jts.geom.prep.PreparedGeometryFactory;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * Per-link hazard state, filled once per hazard update and read by everything that needs to
+ * know which links a hazard covers (danger zone monitoring, speed reductions, fire penalties,
+ * metrics), so that each update maps its geometry onto the network only once.
+ * <p>
+ * For every hazard type the table keeps three bitset columns indexed by {@link Id#index()}:
+ * links whose geometry intersects the hazard, and of those, links whose from node or to node
+ * lies within it. Each update replaces the columns of its hazard in one go and bumps that
+ * hazard's epoch, so readers on other threads see either the old or the new state.
+ */
+public final class LinkHazardTable {
+
+    public enum Hazard {
+        FIRE, EMBERS, CYCLONE, FLOOD,
+        // the fire itself and its avoidance buffers, as used for the routing penalties
+        FIRE_AREA, FIRE_BUFFER_FOR_VEHICLES, FIRE_BUFFER_FOR_EMERGENCY_VEHICLES
+    }
+
+    private static final class Columns {
+        final BitSet intersecting;
+        final BitSet fromNodeWithin;
+        final BitSet toNodeWithin;
+        final long epoch;
+        final Geometry shape; // if the columns are for a single shape, else null
+
+        Columns(BitSet intersecting, BitSet fromNodeWithin, BitSet toNodeWithin, long epoch, Geometry shape) {
+            this.intersecting = intersecting;
+            this.fromNodeWithin = fromNodeWithin;
+            this.toNodeWithin = toNodeWithin;
+            this.epoch = epoch;
+            this.shape = shape;
+        }
+    }
+
+    private static final Columns EMPTY = new Columns(new BitSet(), new BitSet(), new BitSet(), 0, null);
+
+    private final Columns[] columns = new Columns[Hazard.values().length];
+    private Link[] linksByIndex = new Link[0];
+
+    public LinkHazardTable() {
+        Arrays.fill(columns, EMPTY);
+    }
+
+    /**
+     * Replaces the state of the given hazard with the union of the given shapes. Each shape is
+     * prepared once, and the ends of each candidate link are tested first, so that only links
+     * with neither end inside need their (cached) line tested.
+     */
+    public void update(Hazard hazard, Geometry[] shapes, Network network, NetworkSpatialIndex index) {
+        BitSet intersecting = new BitSet();
+        BitSet fromNodeWithin = new BitSet();
+        BitSet toNodeWithin = new BitSet();
+        for (Geometry shape : shapes) {
+            if (shape == null || shape.isEmpty()) {
+                continue;
+            }
+            map(PreparedGeometryFactory.prepare(shape), index.getLinkCandidates(shape.getEnvelopeInternal()),
+                    index, intersecting, fromNodeWithin, toNodeWithin);
+        }
+        publish(hazard, intersecting, fromNodeWithin, toNodeWithin, network,
+                (shapes.length == 1) ? shapes[0] : null);
+    }
+
+    public void update(Hazard hazard, Geometry shape, Network network, NetworkSpatialIndex index) {
+        update(hazard, new Geometry[]{shape}, network, index);
+    }
+
+    /**
+     * Same as {@link #update(Hazard, Geometry, Network, NetworkSpatialIndex)}, but if the hazard was
+     * last updated with a single shape, only the links near where the two shapes differ are mapped
+     * again, and the others keep their state. Does nothing if the shape is the very same one.
+     */
+    public void updateIncrementally(Hazard hazard, Geometry shape, Network network, NetworkSpatialIndex index) {
+        final Columns previous = get(hazard);
+        if (previous.shape == shape && shape != null) {
+            return;
+        }
+        if (previous.shape == null || shape == null || shape.isEmpty()) {
+            update(hazard, shape, network, index);
+            return;
+        }
+        Envelope changed;
+        try {
+            changed = shape.symDifference(previous.shape).getEnvelopeInternal();
+        } catch (RuntimeException e) {
+            update(hazard, shape, network, index); // could not be diffed
+            return;
+        }
+        BitSet intersecting = (BitSet) previous.intersecting.clone();
+        BitSet fromNodeWithin = (BitSet) previous.fromNodeWithin.clone();
+        BitSet toNodeWithin = (BitSet) previous.toNodeWithin.clone();
+        // links that do not reach into the difference meet both shapes the same way
+        List<Link> candidates = index.getLinkCandidates(changed);
+        for (Link link : candidates) {
+            int i = link.getId().index();
+            intersecting.clear(i);
+            fromNodeWithin.clear(i);
+            toNodeWithin.clear(i);
+        }
+        map(PreparedGeometryFactory.prepare(shape), candidates, index, intersecting, fromNodeWithin, toNodeWithin);
+        publish(hazard, intersecting, fromNodeWithin, toNodeWithin, network, shape);
+    }
+
+    /**
+     * Sets the bits of those of the given links that meet the given shape. The ends of each link
+     * are tested first, so that only links with neither end inside need their (cached) line tested.
+     */
+    private static void map(PreparedGeometry prepared, List<Link> links, NetworkSpatialIndex index,
+                            BitSet intersecting, BitSet fromNodeWithin, BitSet toNodeWithin) {
+        for (Link link : links) {
+            int i = link.getId().index();
+            boolean fromWithin = prepared.contains(index.getPoint(link.getFromNode()));
+            boolean toWithin = prepared.contains(index.getPoint(link.getToNode()));
+            if (fromWithin) {
+                fromNodeWithin.set(i);
+            }
+            if (toWithin) {
+                toNodeWithin.set(i);
+            }
+            if (fromWithin || toWithin || (!intersecting.get(i) && prepared.intersects(index.getLine(link)))) {
+                intersecting.set(i);
+            }
+        }
+    }
+
+    /**
+     * Replaces the state of the given hazard with the zone of points for which the given test holds,
+     * which must all be in the given envelope (e.g., a raster hazard). Links are taken to intersect
+     * the zone if either end is in it.
+     */
+    public void update(Hazard hazard, Envelope envelope, Predicate<Point> within,
+                       Network network, NetworkSpatialIndex index) {
+        BitSet intersecting = new BitSet();
+        BitSet fromNodeWithin = new BitSet();
+        BitSet toNodeWithin = new BitSet();
+        for (Link link : index.getLinkCandidates(envelope)) {
+            int i = link.getId().index();
+            if (within.test(index.getPoint(link.getFromNode()))) {
+                fromNodeWithin.set(i);
+                intersecting.set(i);
+            }
+            if (within.test(index.getPoint(link.getToNode()))) {
+                toNodeWithin.set(i);
+                intersecting.set(i);
+            }
+        }
+        publish(hazard, intersecting, fromNodeWithin, toNodeWithin, network, null);
+    }
+
+    private void publish(Hazard hazard, BitSet intersecting, BitSet fromNodeWithin, BitSet toNodeWithin,
+                         Network network, Geometry shape) {
+        synchronized (this) {
+            if (linksByIndex.length < Id.getNumberOfIds(Link.class)) {
+                linksByIndex = new Link[Id.getNumberOfIds(Link.class)];
+                for (Link link : network.getLinks().values()) {
+                    linksByIndex[link.getId().index()] = link;
+                }
+            }
+            columns[hazard.ordinal()] = new Columns(intersecting, fromNodeWithin, toNodeWithin,
+                    columns[hazard.ordinal()].epoch + 1, shape);
+        }
+    }
+
+    private synchronized Columns get(Hazard hazard) {
+        return columns[hazard.ordinal()];
+    }
+
+    public boolean isIntersecting(Hazard hazard, Id<Link> linkId) {
+        return get(hazard).intersecting.get(linkId.index());
+    }
+
+    public boolean isFromNodeWithin(Hazard hazard, Id<Link> linkId) {
+        return get(hazard).fromNodeWithin.get(linkId.index());
+    }
+
+    public boolean isToNodeWithin(Hazard hazard, Id<Link> linkId) {
+        return get(hazard).toNodeWithin.get(linkId.index());
+    }
+
+    /**
+     * Gets the number of updates of the given hazard so far
+     */
+    public long getEpoch(Hazard hazard) {
+        return get(hazard).epoch;
+    }
+
+    public List<Link> getLinksIntersecting(Hazard hazard) {
+        return getLinks(get(hazard).intersecting);
+    }
+
+    public List<Link> getLinksWithFromNodeWithin(Hazard hazard) {
+        return getLinks(get(hazard).fromNodeWithin);
+    }
+
+    public List<Link> getLinksWithToNodeWithin(Hazard hazard) {
+        return getLinks(get(hazard).toNodeWithin);
+    }
+
+    private synchronized List<Link> getLinks(BitSet bits) {
+        List<Link> links = new ArrayList<>(bits.cardinality());
+        for (int i = bits.nextSetBit(0); i >= 0; i = bits.nextSetBit(i + 1)) {
+            links.add(linksByIndex[i]);
+        }
+        return links;
+    }
+}
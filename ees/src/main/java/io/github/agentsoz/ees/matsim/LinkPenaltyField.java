@@ -0,0 +1,84 @@
+package io.github.agentsoz.ees.matsim;
+
+/*
+ * #%L
+ * Emergency Evacuation Simulator
+ * %%
+ * Copyright (C) 2014 - 2025 by its authors. See AUTHORS file.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Read-mostly field of travel disutility penalty factors, one per link, as read by the routers.
+ * <p>
+ * Penalties are worked out elsewhere (in a map that only the hazard processing touches) and
+ * then published here as a dense array indexed by {@link Id#index()}, swapped in atomically.
+ * Readers never see a half-updated field, and looking up a factor is a single array read.
+ * Links without a penalty have factor 1.
+ */
+public final class LinkPenaltyField {
+
+    private static final double[] NO_PENALTIES = new double[0];
+
+    private final AtomicReference<double[]> factors = new AtomicReference<>(NO_PENALTIES);
+    private volatile long epoch = 0;
+
+    /**
+     * Replaces the current field with the given penalty factors
+     */
+    public void publish(Map<Id<Link>, Double> penaltyFactorsOfLinks) {
+        double[] next = new double[Id.getNumberOfIds(Link.class)];
+        Arrays.fill(next, 1.);
+        for (Map.Entry<Id<Link>, Double> entry : penaltyFactorsOfLinks.entrySet()) {
+            next[entry.getKey().index()] = entry.getValue();
+        }
+        factors.set(next);
+        epoch++;
+    }
+
+    /**
+     * Gets the current field; the returned array must not be modified. Callers that need a
+     * consistent view over several lookups (e.g., for a whole route search) should hold on to
+     * it and use {@link #getFactor(double[], Id)}.
+     */
+    public double[] getSnapshot() {
+        return factors.get();
+    }
+
+    public double getFactor(Id<Link> linkId) {
+        return getFactor(factors.get(), linkId);
+    }
+
+    public static double getFactor(double[] snapshot, Id<Link> linkId) {
+        int index = linkId.index();
+        return (index < snapshot.length) ? snapshot[index] : 1.;
+    }
+
+    /**
+     * Gets the number of times the field has been published, which changes whenever the penalties may have
+     */
+    public long getEpoch() {
+        return epoch;
+    }
+}
@@ -37,11 +37,20 @@ import io.github.agentsoz.dataInterface.DataServer;
 import io.github.agentsoz.ees.Constants;
 import io.github.agentsoz.ees.Disruption;
 import io.github.agentsoz.ees.EmergencyMessage;
+import io.github.agentsoz.ees.matsim.router.DestinationTreeCache;
+import io.github.agentsoz.ees.matsim.router.DrivingDistanceOracle;
+import io.github.agentsoz.ees.matsim.router.EvacRoutingAlgorithmFactory;
 import io.github.agentsoz.ees.matsim.router.ExampleRoutingAlgorithmFactory;
-import io.github.agentsoz.ees.util.Utils;
+import io.github.agentsoz.ees.util.FireArrivalGrid;
+import io.github.agentsoz.ees.util.FireDistanceGrid;
+import io.github.agentsoz.ees.util.HazardBuffers;
+import io.github.agentsoz.ees.util.HazardRaster;
+import io.github.agentsoz.ees.util.NetworkSpatialIndex;
 import io.github.agentsoz.nonmatsim.PAAgent;
 import io.github.agentsoz.nonmatsim.PAAgentManager;
+import org.locationtech.jts.geom.Envelope;
 import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
 import org.locationtech.jts.geom.Point;
 import org.locationtech.jts.geom.Polygon;
 import org.matsim.api.core.v01.Coord;
@@ -49,7 +58,9 @@ import org.matsim.api.core.v01.Id;
 import org.matsim.api.core.v01.Scenario;
 import org.matsim.api.core.v01.TransportMode;
 import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.population.Activity;
 import org.matsim.api.core.v01.population.Person;
+import org.matsim.api.core.v01.population.PlanElement;
 import org.matsim.core.api.experimental.events.EventsManager;
 import org.matsim.core.config.Config;
 import org.matsim.core.config.ConfigUtils;
@@ -73,6 +84,9 @@ import org.slf4j.LoggerFactory;
 
 import javax.inject.Singleton;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+import java.util.function.ToDoubleFunction;
 import java.util.stream.Stream;
 
 import static io.github.agentsoz.bdimatsim.MATSimModel.convertTimeToSeconds;
@@ -95,6 +109,50 @@ public final class MATSimEvacModel implements ABMServerInterface, QueryPerceptIn
 
     private final Map<Id<Link>,Double> penaltyFactorsOfLinks = new HashMap<>() ;
     private final Map<Id<Link>,Double> penaltyFactorsOfLinksForEmergencyVehicles = new HashMap<>() ;
+    // the penalties above are worked out off to the side and then published to these fields for the routers
+    private final LinkPenaltyField penaltyFieldOfLinks = new LinkPenaltyField();
+    private final LinkPenaltyField penaltyFieldOfLinksForEmergencyVehicles = new LinkPenaltyField();
+    private final LinkHazardTable hazardTable = new LinkHazardTable();
+    // when the fire reaches each link, for time-dependent civilian penalties if so configured, else null
+    private FireArrivalField fireArrivalOfLinks;
+    // bumped whenever we add network change events, so that cached routing results can tell they are stale
+    private final AtomicLong networkChangeEpoch = new AtomicLong();
+
+    // merged degree-2 chains of the input network, and how they map back, if so configured, else null
+    private EvacNetworkSimplifier networkSimplifier;
+    // what the simplifier must leave as it is: disrupted links (original ids), hazard extents and broadcast zones (lon/lat)
+    private final Set<String> linkIdsToKeepDetailed = new LinkedHashSet<>();
+    private final List<Envelope> hazardExtentsToKeepDetailed = new ArrayList<>();
+    private final List<Double[][]> zonesToKeepDetailed = new ArrayList<>();
+    // spatial index over the (prepared) network, used to map hazards onto nodes and links
+    private NetworkSpatialIndex networkIndex;
+    // grid index of where the BDI agents currently are, used for hazard and messaging zone queries
+    private AgentPositionIndex agentPositionIndex;
+    // batches DRIVETO and WALKTO1 replanning when replanning threads are configured, else null
+    private ReplanningExecutor replanningExecutor;
+    // shared by the action handlers for finding the links nearest to their destinations
+    private NearestLinkResolver linkResolver;
+    // answers driving distance queries in place of the MATSim model if so configured, else null
+    private DrivingDistanceOracle drivingDistanceOracle;
+    // routes trips ahead of departure; bound in the QSim even when disabled, as agents ask for it
+    private TripPreRouter tripPreRouter;
+    // which agents have been told about which hazards, if percepts are edge-triggered, else null
+    private HazardPerceptFilter hazardPerceptFilter;
+    // keeps only the latest replanning of each agent per step if so configured, else null
+    private ReplanningCoalescer replanningCoalescer;
+    // which links are blocked right now; bound in the QSim even when disabled, as agents ask for it
+    private LinkBlockageIndex linkBlockageIndex;
+    // congested travel times as read by the routers if taken as periodic snapshots, else null
+    private TravelTimeSnapshot travelTimeSnapshot;
+    // the one path for hazard and disruption speed changes, so that only real changes are added
+    private NetworkChangeManager networkChangeManager;
+
+    // fire and buffers that the current penalties were computed from, for incremental updates
+    private Geometry penalisedFireForVehicles;
+    private Geometry penalisedBufferForVehicles;
+    private Geometry penalisedFireForEmergencyVehicles;
+    private Geometry penalisedBufferForEmergencyVehicles;
+    private FirePenaltyMapper firePenaltyMapper;
 
     private static final String eMaxDistanceForCycloneVisual = "maxDistanceForCycloneVisual";
     private static final String eMaxDistanceForFireVisual = "maxDistanceForFireVisual";
@@ -102,8 +160,31 @@ public final class MATSimEvacModel implements ABMServerInterface, QueryPerceptIn
     private static final String eFireAvoidanceBufferForVehicles = "fireAvoidanceBufferForVehicles";
     private static final String eFireAvoidanceBufferForEmergencyVehicles = "fireAvoidanceBufferForEmergencyVehicles";
     private static final String eRoutingAlgorithmType = "routingAlgorithmType";
-
-    public enum EvacuationRoutingAlgorithmType {MATSimDefault, ExampleRoutingAlgorithm}
+    private static final String eAgentIndexCellSizeInMetres = "agentIndexCellSizeInMetres";
+    private static final String eIncrementalFirePenalties = "incrementalFirePenalties";
+    private static final String eFireDistanceGridCellSizeInMetres = "fireDistanceGridCellSizeInMetres";
+    private static final String eRouterLandmarks = "routerLandmarks";
+    private static final String eDestinationTreeCacheSize = "destinationTreeCacheSize";
+    private static final String eDestinationTreeValidityInSecs = "destinationTreeValidityInSecs";
+    private static final String eReplanningThreads = "replanningThreads";
+    private static final String eLinkResolutionQuantumInMetres = "linkResolutionQuantumInMetres";
+    private static final String eDrivingDistanceOracle = "drivingDistanceOracle";
+    private static final String ePreRoutingThreads = "preRoutingThreads";
+    private static final String ePreRoutingLookAheadInSecs = "preRoutingLookAheadInSecs";
+    private static final String eFireArrivalPenalties = "fireArrivalPenalties";
+    private static final String eFireArrivalHorizonInSecs = "fireArrivalHorizonInSecs";
+    private static final String eTravelTimeSnapshotIntervalInSecs = "travelTimeSnapshotIntervalInSecs";
+    private static final String eSimplifyNetwork = "simplifyNetwork";
+    private static final String eLinkBlockageIndex = "linkBlockageIndex";
+    private static final String eCoalesceReplanning = "coalesceReplanning";
+    private static final String eMinReplanIntervalInSecs = "minReplanIntervalInSecs";
+    private static final String eMaxReplansPerStep = "maxReplansPerStep";
+    private static final String eEdgeTriggeredHazardPercepts = "edgeTriggeredHazardPercepts";
+    private static final String eHazardPerceptSeverityBandInMetres = "hazardPerceptSeverityBandInMetres";
+    private static final String eNetworkChangeCompactionThreshold = "networkChangeCompactionThreshold";
+    private static final String eHazardSimplificationToleranceInMetres = "hazardSimplificationToleranceInMetres";
+
+    public enum EvacuationRoutingAlgorithmType {MATSimDefault, ExampleRoutingAlgorithm, EvacRoutingAlgorithm}
 
     MonitorPersonsInDangerZone monitorPersonsEnteringDangerZones;
 
@@ -116,6 +197,29 @@ public final class MATSimEvacModel implements ABMServerInterface, QueryPerceptIn
     private double optFireAvoidanceBufferForEmergencyVehicles = 1000;
     private EvacuationRoutingAlgorithmType optRoutingAlgorithmType =
             EvacuationRoutingAlgorithmType.MATSimDefault;
+    private double optAgentIndexCellSizeInMetres = 1000;
+    private boolean optIncrementalFirePenalties = false;
+    private double optFireDistanceGridCellSizeInMetres = 0; // 0 means use exact distances
+    private int optRouterLandmarks = EvacRoutingAlgorithmFactory.DEFAULT_NUMBER_OF_LANDMARKS;
+    private int optDestinationTreeCacheSize = 0; // 0 means no cache
+    private double optDestinationTreeValidityInSecs = 300;
+    private int optReplanningThreads = 0; // 0 means replan in the action handlers
+    private double optLinkResolutionQuantumInMetres = NearestLinkResolver.DEFAULT_QUANTUM_IN_METRES;
+    private boolean optDrivingDistanceOracle = false;
+    private int optPreRoutingThreads = 2;
+    private double optPreRoutingLookAheadInSecs = 0; // 0 means route trips at departure
+    private boolean optFireArrivalPenalties = false;
+    private double optFireArrivalHorizonInSecs = 3600;
+    private double optTravelTimeSnapshotIntervalInSecs = 0; // 0 means routers read the live travel times
+    private boolean optSimplifyNetwork = false;
+    private boolean optLinkBlockageIndex = false;
+    private boolean optCoalesceReplanning = false;
+    private double optMinReplanIntervalInSecs = 0; // 0 means no limit
+    private int optMaxReplansPerStep = 0; // 0 means no limit
+    private boolean optEdgeTriggeredHazardPercepts = false;
+    private double optHazardPerceptSeverityBandInMetres = 0; // 0 means percepts only on coming into a zone
+    private int optNetworkChangeCompactionThreshold = 0; // 0 means never compact
+    private double optHazardSimplificationToleranceInMetres = 0; // 0 means buffer the hazard shapes as given
 
     public MATSimEvacModel(Map<String, String> opts, DataServer server) {
         matsimModel = new MATSimModel(opts, server);
@@ -125,7 +229,7 @@ public final class MATSimEvacModel implements ABMServerInterface, QueryPerceptIn
         this.cycloneWriter = new Shape2XyWriter( matsimModel.getConfig(), "cyclone" ) ;
         this.floodWriter = new Shape2XyWriter( matsimModel.getConfig(), "flood" ) ;
         this.disruptionWriter = new DisruptionWriter( matsimModel.getConfig() ) ;
-        this.monitorPersonsEnteringDangerZones = new MonitorPersonsInDangerZone(getAgentManager());
+        this.monitorPersonsEnteringDangerZones = new MonitorPersonsInDangerZone(getAgentManager(), hazardTable);
 
         if (opts == null) {
             return;
@@ -152,6 +256,75 @@ public final class MATSimEvacModel implements ABMServerInterface, QueryPerceptIn
                     optRoutingAlgorithmType =
                             EvacuationRoutingAlgorithmType.valueOf(opts.get(opt));
                     break;
+                case eAgentIndexCellSizeInMetres:
+                    optAgentIndexCellSizeInMetres = Double.parseDouble(opts.get(opt));
+                    break;
+                case eIncrementalFirePenalties:
+                    optIncrementalFirePenalties = Boolean.parseBoolean(opts.get(opt));
+                    break;
+                case eFireDistanceGridCellSizeInMetres:
+                    optFireDistanceGridCellSizeInMetres = Double.parseDouble(opts.get(opt));
+                    break;
+                case eRouterLandmarks:
+                    optRouterLandmarks = Integer.parseInt(opts.get(opt));
+                    break;
+                case eDestinationTreeCacheSize:
+                    optDestinationTreeCacheSize = Integer.parseInt(opts.get(opt));
+                    break;
+                case eDestinationTreeValidityInSecs:
+                    optDestinationTreeValidityInSecs = Double.parseDouble(opts.get(opt));
+                    break;
+                case eReplanningThreads:
+                    optReplanningThreads = Integer.parseInt(opts.get(opt));
+                    break;
+                case eLinkResolutionQuantumInMetres:
+                    optLinkResolutionQuantumInMetres = Double.parseDouble(opts.get(opt));
+                    break;
+                case eDrivingDistanceOracle:
+                    optDrivingDistanceOracle = Boolean.parseBoolean(opts.get(opt));
+                    break;
+                case ePreRoutingThreads:
+                    optPreRoutingThreads = Integer.parseInt(opts.get(opt));
+                    break;
+                case ePreRoutingLookAheadInSecs:
+                    optPreRoutingLookAheadInSecs = Double.parseDouble(opts.get(opt));
+                    break;
+                case eFireArrivalPenalties:
+                    optFireArrivalPenalties = Boolean.parseBoolean(opts.get(opt));
+                    break;
+                case eFireArrivalHorizonInSecs:
+                    optFireArrivalHorizonInSecs = Double.parseDouble(opts.get(opt));
+                    break;
+                case eTravelTimeSnapshotIntervalInSecs:
+                    optTravelTimeSnapshotIntervalInSecs = Double.parseDouble(opts.get(opt));
+                    break;
+                case eSimplifyNetwork:
+                    optSimplifyNetwork = Boolean.parseBoolean(opts.get(opt));
+                    break;
+                case eLinkBlockageIndex:
+                    optLinkBlockageIndex = Boolean.parseBoolean(opts.get(opt));
+                    break;
+                case eCoalesceReplanning:
+                    optCoalesceReplanning = Boolean.parseBoolean(opts.get(opt));
+                    break;
+                case eMinReplanIntervalInSecs:
+                    optMinReplanIntervalInSecs = Double.parseDouble(opts.get(opt));
+                    break;
+                case eMaxReplansPerStep:
+                    optMaxReplansPerStep = Integer.parseInt(opts.get(opt));
+                    break;
+                case eEdgeTriggeredHazardPercepts:
+                    optEdgeTriggeredHazardPercepts = Boolean.parseBoolean(opts.get(opt));
+                    break;
+                case eHazardPerceptSeverityBandInMetres:
+                    optHazardPerceptSeverityBandInMetres = Double.parseDouble(opts.get(opt));
+                    break;
+                case eNetworkChangeCompactionThreshold:
+                    optNetworkChangeCompactionThreshold = Integer.parseInt(opts.get(opt));
+                    break;
+                case eHazardSimplificationToleranceInMetres:
+                    optHazardSimplificationToleranceInMetres = Double.parseDouble(opts.get(opt));
+                    break;
                 default:
                     log.warn("Ignoring option: " + opt + "=" + opts.get(opt));
             }
@@ -173,6 +346,10 @@ public final class MATSimEvacModel implements ABMServerInterface, QueryPerceptIn
 
     @Override
     public Object queryPercept(String agentID, String perceptID, Object args) throws AgentNotFoundException {
+        if (drivingDistanceOracle != null && Constants.REQUEST_DRIVING_DISTANCE_TO.equals(perceptID)
+                && args instanceof double[]) {
+            return getDrivingDistanceTo(agentID, (double[]) args);
+        }
         try {
             return matsimModel.queryPercept(agentID, perceptID, args);
         } catch (Exception e) {
@@ -180,8 +357,26 @@ public final class MATSimEvacModel implements ABMServerInterface, QueryPerceptIn
         }
     }
 
+    /**
+     * Gets the driving distance from where the agent is to the given location, or, if a third
+     * value is given, a lower bound on that distance if the bound already exceeds that value
+     */
+    private double getDrivingDistanceTo(String agentID, double[] args) throws AgentNotFoundException {
+        MobsimAgent agent = matsimModel.getMobsimAgentFromIdString(agentID);
+        if (agent == null) {
+            throw new AgentNotFoundException("MobsimAgent " + agentID + " not found");
+        }
+        Link fromLink = getScenario().getNetwork().getLinks().get(agent.getCurrentLinkId());
+        Link toLink = linkResolver.getNearestLink(new Coord(args[0], args[1]));
+        double now = matsimModel.getTime();
+        return (args.length > 2) ?
+                drivingDistanceOracle.getDistance(fromLink, toLink, now, networkChangeEpoch.get(), args[2]) :
+                drivingDistanceOracle.getDistance(fromLink, toLink, now, networkChangeEpoch.get());
+    }
+
     private void registerDataServer( DataServer server ) {
         server.subscribe(this, Constants.FIRE_DATA);
+        server.subscribe(this, Constants.FIRE_ARRIVAL_DATA);
         server.subscribe(this, Constants.EMBERS_DATA);
         server.subscribe(this, Constants.DISRUPTION);
         server.subscribe(this, Constants.EMERGENCY_MESSAGE);
@@ -195,6 +390,7 @@ public final class MATSimEvacModel implements ABMServerInterface, QueryPerceptIn
             case Constants.CYCLONE_DATA:
             case Constants.FLOOD_DATA:
             case Constants.FIRE_DATA:
+            case Constants.FIRE_ARRIVAL_DATA:
             case Constants.EMBERS_DATA:
             case Constants.DISRUPTION:
             case Constants.EMERGENCY_MESSAGE:
@@ -218,12 +414,27 @@ public final class MATSimEvacModel implements ABMServerInterface, QueryPerceptIn
         listeners.put(Constants.FLOOD_DATA, (DataClient<Geometry[]>) (time, dataType, data)
                 -> processFloodData(data, time, penaltyFactorsOfLinks, matsimModel.getScenario(), floodWriter));
 
-        listeners.put(Constants.FIRE_DATA, (DataClient<Geometry>) (time, dataType, data)
-                -> processFireData(data, time, penaltyFactorsOfLinks, matsimModel.getScenario(),
-                penaltyFactorsOfLinksForEmergencyVehicles, fireWriter));
+        // fire and embers come as polygons, or as rasters from grid-based fire models
+        listeners.put(Constants.FIRE_DATA, (DataClient<Object>) (time, dataType, data) -> {
+            if (data instanceof HazardRaster) {
+                processFireRaster((HazardRaster) data, time, penaltyFactorsOfLinks, matsimModel.getScenario(),
+                        penaltyFactorsOfLinksForEmergencyVehicles, fireWriter);
+            } else {
+                processFireData((Geometry) data, time, penaltyFactorsOfLinks, matsimModel.getScenario(),
+                        penaltyFactorsOfLinksForEmergencyVehicles, fireWriter);
+            }
+        });
+
+        listeners.put(Constants.FIRE_ARRIVAL_DATA, (DataClient<FireArrivalGrid>) (time, dataType, data)
+                -> processFireArrivalData(data, time, matsimModel.getScenario()));
 
-        listeners.put(Constants.EMBERS_DATA, (DataClient<Geometry>) (time, dataType, data)
-                -> processEmbersData(data, time, matsimModel.getScenario(), emberWriter));
+        listeners.put(Constants.EMBERS_DATA, (DataClient<Object>) (time, dataType, data) -> {
+            if (data instanceof HazardRaster) {
+                processEmbersRaster((HazardRaster) data, time, matsimModel.getScenario(), emberWriter);
+            } else {
+                processEmbersData((Geometry) data, time, matsimModel.getScenario(), emberWriter);
+            }
+        });
 
         listeners.put(Constants.DISRUPTION, (DataClient<Map<Double,Disruption>>) (time, dataType, data)
                 -> processDisruptionData(data, time, matsimModel.getScenario(), disruptionWriter));
@@ -240,21 +451,33 @@ public final class MATSimEvacModel implements ABMServerInterface, QueryPerceptIn
         log.debug("received flood data: {}", dataList);
         for(Geometry floodPolygon: dataList){
            // Geometry buffer = floodPolygon.buffer(optMaxDistanceForFloodVisual);
-            monitorPersonsEnteringDangerZones.setFloodZone(getLinksWithin(scenario, floodPolygon));
             floodWriter.write( now, floodPolygon);
         }
+        hazardTable.update(LinkHazardTable.Hazard.FLOOD, dataList, scenario.getNetwork(), getNetworkIndex());
         penaltyFactorsOfLinks.clear();
-        Utils.reduceSpeed2(dataList, now, 0.000001, scenario);
+        penalisedFireForVehicles = null; // next fire update must start afresh
+        penalisedBufferForVehicles = null;
+        penaltyFieldOfLinks.publish(penaltyFactorsOfLinks);
+        if (getNetworkChangeManager().setFreespeed(
+                hazardTable.getLinksIntersecting(LinkHazardTable.Hazard.FLOOD), now, 0.000001) > 0) {
+            networkChangeEpoch.incrementAndGet();
+        }
+        getNetworkChangeManager().compactIfDue(now);
 
     }
         private void processCycloneData(Geometry[] polygonlist, double now, Map<Id<Link>, Double> penaltyFactorsOfLinks, Scenario scenario, Shape2XyWriter cycloneWriter){
         log.debug("received cyclone data: {}", polygonlist);
         for(Geometry poly: polygonlist) {
-            monitorPersonsEnteringDangerZones.setCycloneZone(getLinksWithin(scenario, poly));
             cycloneWriter.write( now, poly);
         }
+        hazardTable.update(LinkHazardTable.Hazard.CYCLONE, polygonlist, scenario.getNetwork(), getNetworkIndex());
             {
-                Utils.reduceSpeed(polygonlist, now, 0.000001, scenario);
+                // links leading into the cyclone
+                if (getNetworkChangeManager().setFreespeed(
+                        hazardTable.getLinksWithToNodeWithin(LinkHazardTable.Hazard.CYCLONE), now, 0.000001) > 0) {
+                    networkChangeEpoch.incrementAndGet();
+                }
+                getNetworkChangeManager().compactIfDue(now);
             }
 
     }
@@ -262,25 +485,44 @@ public final class MATSimEvacModel implements ABMServerInterface, QueryPerceptIn
 
     private void processEmbersData(Geometry data, double now, Scenario scenario, Shape2XyWriter emberWriter) {
         log.debug("received embers data: {}", data);
-        Geometry buffer = data.buffer(optMaxDistanceForSmokeVisual);
-        monitorPersonsEnteringDangerZones.setEmbersZone(getLinksWithin(scenario, buffer));
+        Geometry buffer = new HazardBuffers(data, optHazardSimplificationToleranceInMetres).getBuffer(optMaxDistanceForSmokeVisual);
+        hazardTable.update(LinkHazardTable.Hazard.EMBERS, buffer, scenario.getNetwork(), getNetworkIndex());
         List<Id<Person>> personsMatched = getPersonsWithin(scenario, buffer);
         if (!personsMatched.isEmpty()) {
             log.info("Embers/smoke seen at time {} by {} persons ... use DEBUG to see full list",
                     now, personsMatched.size());
             log.debug("Embers/smoke seen by {} persons: {} ", personsMatched.size(), Arrays.toString(personsMatched.toArray()));
         }
-        // package the messages up to send to the BDI side
-        for (Id<Person> personId : personsMatched) {
-            PAAgent agent = this.getAgentManager().getAgent(personId.toString());
-            if (agent != null) { // only do this if this is a BDI-like agent
-                PerceptContent pc = new PerceptContent(Constants.FIELD_OF_VIEW, Constants.SIGHTED_EMBERS);
-                getAgentManager().getAgentDataContainerV2().putPercept(agent.getAgentID(), Constants.FIELD_OF_VIEW, pc);
-            }
-        }
+        putPercepts(personsMatched, HazardPerceptFilter.Hazard.EMBERS, Constants.SIGHTED_EMBERS,
+                point -> point.distance(data), optMaxDistanceForSmokeVisual);
         emberWriter.write( now, data);
     }
 
+    /**
+     * Same as {@link #processEmbersData}, for embers sent as a raster, where the zone follows from
+     * distances looked up in a grid over the raster cells instead of from a buffer polygon
+     */
+    private void processEmbersRaster(HazardRaster data, double now, Scenario scenario, Shape2XyWriter emberWriter) {
+        log.debug("received embers data as raster of {} cells", data.getNumberOfCells());
+        if (data.isEmpty()) {
+            return;
+        }
+        final FireDistanceGrid distanceGrid = new FireDistanceGrid(data, optMaxDistanceForSmokeVisual);
+        Envelope zone = data.getEnvelope();
+        zone.expandBy(optMaxDistanceForSmokeVisual);
+        Predicate<Point> inZone = point -> distanceGrid.distance(point) <= optMaxDistanceForSmokeVisual;
+        hazardTable.update(LinkHazardTable.Hazard.EMBERS, zone, inZone, scenario.getNetwork(), getNetworkIndex());
+        List<Id<Person>> personsMatched = getPersonsWithin(zone, inZone);
+        if (!personsMatched.isEmpty()) {
+            log.info("Embers/smoke seen at time {} by {} persons ... use DEBUG to see full list",
+                    now, personsMatched.size());
+            log.debug("Embers/smoke seen by {} persons: {} ", personsMatched.size(), Arrays.toString(personsMatched.toArray()));
+        }
+        putPercepts(personsMatched, HazardPerceptFilter.Hazard.EMBERS, Constants.SIGHTED_EMBERS,
+                distanceGrid::distance, optMaxDistanceForSmokeVisual);
+        emberWriter.write(now, data);
+    }
+
     private void processDisruptionData(Map<Double, Disruption> data, double now, Scenario scenario, DisruptionWriter disruptionWriter ) {
         log.info("receiving disruption data at time={}", now);
         log.info( "{}", new Gson().toJson(data) ) ;
@@ -301,9 +543,9 @@ public final class MATSimEvacModel implements ABMServerInterface, QueryPerceptIn
                     .replaceAll("\\[", "")
                     .replaceAll("\\]", "")
                     .replaceAll(",", " ");
-            List<Link> links = NetworkUtils.getLinks(scenario.getNetwork(),NetworkUtils.getLinkIds(linkIds));
+            List<Link> links = NetworkUtils.getLinks(scenario.getNetwork(),getSimplifiedLinkIds(NetworkUtils.getLinkIds(linkIds)));
             for (Link link : links) {
-                double prevSpeed = link.getFreespeed(now);
+                double prevSpeed = getNetworkChangeManager().getFreespeed(link, now);
                 log.info("Updating freespeed on link {} from {} to {} due to disruption",
                         link.getId(), prevSpeed, speedInMpS);
                 {
@@ -311,19 +553,64 @@ public final class MATSimEvacModel implements ABMServerInterface, QueryPerceptIn
                     if (startTime < now) {
                         startTime = now;
                     }
-                    matsimModel.addNetworkChangeEvent(speedInMpS, link, startTime);
-                    disruptionWriter.write(startTime, link.getId(), link.getCoord(), speedInMpS);
+                    applyDisruption(disruptionWriter, startTime, link, speedInMpS);
                 }
                 {
                     double startTime = convertTimeToSeconds(dd.getEndHHMM());
                     if (startTime < now) {
                         startTime = now;
                     }
-                    matsimModel.addNetworkChangeEvent(prevSpeed, link, startTime);
-                    disruptionWriter.write(startTime, link.getId(), link.getCoord(), prevSpeed);
+                    applyDisruption(disruptionWriter, startTime, link, prevSpeed);
                 }
             }
         }
+        networkChangeEpoch.incrementAndGet();
+        getNetworkChangeManager().compactIfDue(now);
+    }
+
+    /**
+     * Changes the freespeed of the given link through the mobsim, if it is not already that
+     */
+    private void applyDisruption(DisruptionWriter disruptionWriter, double time, Link link, double speed) {
+        getNetworkChangeManager().setFreespeed(Collections.singletonList(link), time, speed,
+                (changeTime, changeSpeed, changedLinks) -> {
+                    matsimModel.addNetworkChangeEvent(changeSpeed, link, changeTime);
+                    if (travelTimeSnapshot != null) {
+                        // the replanner only passes changes on to the within-day travel times it is bound to
+                        travelTimeSnapshot.addFreespeedChange(link, changeTime, changeSpeed);
+                    }
+                    linkBlockageIndex.schedule(link, changeTime, changeSpeed);
+                    writeDisruption(disruptionWriter, changeTime, link, changeSpeed);
+                });
+    }
+
+    /**
+     * Maps the given original link ids onto the (possibly simplified) network, where several may
+     * map to the same merged link, which then takes the disruption as a whole
+     */
+    private List<Id<Link>> getSimplifiedLinkIds(List<Id<Link>> linkIds) {
+        if (networkSimplifier == null) {
+            return linkIds;
+        }
+        Set<Id<Link>> simplified = new LinkedHashSet<>();
+        for (Id<Link> linkId : linkIds) {
+            simplified.add(networkSimplifier.getSimplifiedLinkId(linkId));
+        }
+        return new ArrayList<>(simplified);
+    }
+
+    /**
+     * Writes the disruption of the given link in terms of the original network
+     */
+    private void writeDisruption(DisruptionWriter disruptionWriter, double time, Link link, double speed) {
+        List<Link> originalLinks = (networkSimplifier == null) ? null : networkSimplifier.getOriginalLinks(link.getId());
+        if (originalLinks == null) {
+            disruptionWriter.write(time, link.getId(), link.getCoord(), speed);
+            return;
+        }
+        for (Link originalLink : originalLinks) {
+            disruptionWriter.write(time, originalLink.getId(), originalLink.getCoord(), speed);
+        }
     }
 
     private void processEmergencyMessageData(Map<Double, EmergencyMessage> data, double now, Scenario scenario) {
@@ -373,76 +660,250 @@ public final class MATSimEvacModel implements ABMServerInterface, QueryPerceptIn
                                  Shape2XyWriter fireWriter) {
 
         log.debug("received fire data: {}", data);
+        // each buffer distance below is buffered once, and all from the one simplified fire if simplifying
+        final HazardBuffers buffers = new HazardBuffers(data, optHazardSimplificationToleranceInMetres);
 
         {
-            Geometry buffer = data.buffer(optMaxDistanceForFireVisual);
-            monitorPersonsEnteringDangerZones.setFireZone(getLinksWithin(scenario, buffer));
+            Geometry buffer = buffers.getBuffer(optMaxDistanceForFireVisual);
+            hazardTable.update(LinkHazardTable.Hazard.FIRE, buffer, scenario.getNetwork(), getNetworkIndex());
             List<Id<Person>> personsMatched = getPersonsWithin(scenario, buffer);
             if (!personsMatched.isEmpty()) {
                 log.info("Fire seen at time {} by {} persons ... use DEBUG to see full list",
                         now, personsMatched.size());
                 log.debug("Fire seen by {} persons: {} ", personsMatched.size(), Arrays.toString(personsMatched.toArray()));
             }
-            // package the messages up to send to the BDI side
-            for (Id<Person> personId : personsMatched) {
-                PAAgent agent = this.getAgentManager().getAgent(personId.toString());
-                if (agent != null) { // only do this if this is a BDI-like agent
-                    PerceptContent pc = new PerceptContent(Constants.FIELD_OF_VIEW, Constants.SIGHTED_FIRE);
-                    getAgentManager().getAgentDataContainerV2().putPercept(agent.getAgentID(), Constants.FIELD_OF_VIEW, pc);
-                }
-            }
+            putPercepts(personsMatched, HazardPerceptFilter.Hazard.FIRE, Constants.SIGHTED_FIRE,
+                    point -> point.distance(data), optMaxDistanceForFireVisual);
         }
 		//https://stackoverflow.com/questions/38404095/how-to-calculate-the-distance-in-meters-between-a-geographic-point-and-a-given-p
-        {
+        // With a distance grid, distances to the fire are looked up rather than computed against the polygon.
+        // Grid distances are approximate, so incremental updates (which must match a full recompute) are not used then.
+        final FireDistanceGrid distanceGrid = (optFireDistanceGridCellSizeInMetres <= 0) ? null :
+                new FireDistanceGrid(data,
+                        Math.max(optFireAvoidanceBufferForVehicles, optFireAvoidanceBufferForEmergencyVehicles),
+                        optFireDistanceGridCellSizeInMetres);
+        // Buffers of simplified fires are not the exact buffers that the incremental update relies on, so not then either.
+        final boolean incremental = optIncrementalFirePenalties && optHazardSimplificationToleranceInMetres <= 0;
+        final FirePenaltyMapper fireMapper = getFirePenaltyMapper();
+        if (fireArrivalOfLinks == null || !fireArrivalOfLinks.isPublished()) {
+            // (else the civilian penalties follow from the fire arrival times, which already cover this fire)
             final double bufferWidth = optFireAvoidanceBufferForVehicles;
-            Geometry buffer = data.buffer(bufferWidth);
-            penaltyFactorsOfLinks.clear();
-            Utils.penaltyMethod2(data, buffer, bufferWidth, penaltyFactorsOfLinks, scenario);
+            Geometry buffer = buffers.getBuffer(bufferWidth);
+            if (distanceGrid != null) {
+                fireMapper.putFirePenalties(data, buffer, LinkHazardTable.Hazard.FIRE_BUFFER_FOR_VEHICLES,
+                        bufferWidth, penaltyFactorsOfLinks, distanceGrid::distance);
+            } else if (!incremental || !fireMapper.putFirePenaltiesIncrementally(
+                    penalisedFireForVehicles, penalisedBufferForVehicles, data, buffer,
+                    LinkHazardTable.Hazard.FIRE_BUFFER_FOR_VEHICLES, bufferWidth, penaltyFactorsOfLinks)) {
+                fireMapper.putFirePenalties(data, buffer, LinkHazardTable.Hazard.FIRE_BUFFER_FOR_VEHICLES,
+                        bufferWidth, penaltyFactorsOfLinks, point -> point.distance(data));
+            }
+            penalisedFireForVehicles = data;
+            penalisedBufferForVehicles = buffer;
             // I think that penaltyMethod2 looks nicer than method1.  kai, dec'17
             // yy could make this settable, but for the time being this pedestrian approach
             // seems sufficient.  kai, jan'18
         }
         {
             final double bufferWidth = optFireAvoidanceBufferForEmergencyVehicles;
-            Geometry buffer = data.buffer(bufferWidth);
-            penaltyFactorsOfLinksForEmergencyVehicles.clear();
-            Utils.penaltyMethod2(data, buffer, bufferWidth, penaltyFactorsOfLinksForEmergencyVehicles, scenario);
+            Geometry buffer = buffers.getBuffer(bufferWidth);
+            if (distanceGrid != null) {
+                fireMapper.putFirePenalties(data, buffer, LinkHazardTable.Hazard.FIRE_BUFFER_FOR_EMERGENCY_VEHICLES,
+                        bufferWidth, penaltyFactorsOfLinksForEmergencyVehicles, distanceGrid::distance);
+            } else if (!incremental || !fireMapper.putFirePenaltiesIncrementally(
+                    penalisedFireForEmergencyVehicles, penalisedBufferForEmergencyVehicles, data, buffer,
+                    LinkHazardTable.Hazard.FIRE_BUFFER_FOR_EMERGENCY_VEHICLES, bufferWidth,
+                    penaltyFactorsOfLinksForEmergencyVehicles)) {
+                fireMapper.putFirePenalties(data, buffer, LinkHazardTable.Hazard.FIRE_BUFFER_FOR_EMERGENCY_VEHICLES,
+                        bufferWidth, penaltyFactorsOfLinksForEmergencyVehicles, point -> point.distance(data));
+            }
+            penalisedFireForEmergencyVehicles = data;
+            penalisedBufferForEmergencyVehicles = buffer;
         }
+        // make the new penalties visible to the routers in one go
+        penaltyFieldOfLinks.publish(penaltyFactorsOfLinks);
+        penaltyFieldOfLinksForEmergencyVehicles.publish(penaltyFactorsOfLinksForEmergencyVehicles);
         fireWriter.write( now, data);
     }
 
+    /**
+     * Same as {@link #processFireData}, for a fire sent as a raster. The zone, the percepts and the
+     * penalties all come from one distance grid over the raster cells, so no polygons are involved.
+     */
+    private void processFireRaster(HazardRaster data, double now, Map<Id<Link>, Double> penaltyFactorsOfLinks,
+                                   Scenario scenario, Map<Id<Link>, Double> penaltyFactorsOfLinksForEmergencyVehicles,
+                                   Shape2XyWriter fireWriter) {
+        log.debug("received fire data as raster of {} cells", data.getNumberOfCells());
+        if (data.isEmpty()) {
+            return;
+        }
+        final FireDistanceGrid distanceGrid = new FireDistanceGrid(data, Math.max(optMaxDistanceForFireVisual,
+                Math.max(optFireAvoidanceBufferForVehicles, optFireAvoidanceBufferForEmergencyVehicles)));
+        final Envelope fireEnvelope = data.getEnvelope();
+        {
+            Envelope zone = new Envelope(fireEnvelope);
+            zone.expandBy(optMaxDistanceForFireVisual);
+            Predicate<Point> inZone = point -> distanceGrid.distance(point) <= optMaxDistanceForFireVisual;
+            hazardTable.update(LinkHazardTable.Hazard.FIRE, zone, inZone, scenario.getNetwork(), getNetworkIndex());
+            List<Id<Person>> personsMatched = getPersonsWithin(zone, inZone);
+            if (!personsMatched.isEmpty()) {
+                log.info("Fire seen at time {} by {} persons ... use DEBUG to see full list",
+                        now, personsMatched.size());
+                log.debug("Fire seen by {} persons: {} ", personsMatched.size(), Arrays.toString(personsMatched.toArray()));
+            }
+            putPercepts(personsMatched, HazardPerceptFilter.Hazard.FIRE, Constants.SIGHTED_FIRE,
+                    distanceGrid::distance, optMaxDistanceForFireVisual);
+        }
+        final FirePenaltyMapper fireMapper = getFirePenaltyMapper();
+        fireMapper.putFireArea(fireEnvelope, distanceGrid::distance);
+        if (fireArrivalOfLinks == null || !fireArrivalOfLinks.isPublished()) {
+            fireMapper.putFirePenalties(fireEnvelope, LinkHazardTable.Hazard.FIRE_BUFFER_FOR_VEHICLES,
+                    optFireAvoidanceBufferForVehicles, penaltyFactorsOfLinks, distanceGrid::distance);
+            penalisedFireForVehicles = null; // there are no polygons to update incrementally from
+            penalisedBufferForVehicles = null;
+        }
+        fireMapper.putFirePenalties(fireEnvelope, LinkHazardTable.Hazard.FIRE_BUFFER_FOR_EMERGENCY_VEHICLES,
+                optFireAvoidanceBufferForEmergencyVehicles, penaltyFactorsOfLinksForEmergencyVehicles,
+                distanceGrid::distance);
+        penalisedFireForEmergencyVehicles = null;
+        penalisedBufferForEmergencyVehicles = null;
+        penaltyFieldOfLinks.publish(penaltyFactorsOfLinks);
+        penaltyFieldOfLinksForEmergencyVehicles.publish(penaltyFactorsOfLinksForEmergencyVehicles);
+        fireWriter.write(now, data);
+    }
+
+    /**
+     * Tells the BDI agents in the zone of the given hazard that they can see it, if they need telling
+     */
+    private void putPercepts(List<Id<Person>> personsMatched, HazardPerceptFilter.Hazard hazard, String percept,
+                             ToDoubleFunction<Point> distanceToHazard, double visualDistance) {
+        retainInZone(personsMatched, hazard);
+        // package the messages up to send to the BDI side
+        for (Id<Person> personId : personsMatched) {
+            PAAgent agent = this.getAgentManager().getAgent(personId.toString());
+            if (agent != null && isNewToZone(agent, hazard, distanceToHazard, visualDistance)) {
+                PerceptContent pc = new PerceptContent(Constants.FIELD_OF_VIEW, percept);
+                getAgentManager().getAgentDataContainerV2().putPercept(agent.getAgentID(), Constants.FIELD_OF_VIEW, pc);
+            }
+        }
+    }
+
+    /**
+     * Takes the agents that are no longer in the zone of the given hazard out of it, so that they
+     * are told again if they come back
+     */
+    private void retainInZone(List<Id<Person>> personsInZone, HazardPerceptFilter.Hazard hazard) {
+        if (hazardPerceptFilter == null) {
+            return;
+        }
+        List<String> agentIds = new ArrayList<>(personsInZone.size());
+        for (Id<Person> personId : personsInZone) {
+            agentIds.add(personId.toString());
+        }
+        hazardPerceptFilter.retain(agentIds, hazard);
+    }
+
+    /**
+     * Whether the BDI agent (which is within the visual distance of the hazard) should be told about
+     * it, i.e., always, unless percepts are edge-triggered and the agent was already told, and the
+     * severity (one level per band of distance that it is closer to the hazard) has not gone up
+     */
+    private boolean isNewToZone(PAAgent agent, HazardPerceptFilter.Hazard hazard,
+                                ToDoubleFunction<Point> distanceToHazard, double visualDistance) {
+        if (hazardPerceptFilter == null) {
+            return true;
+        }
+        int severity = 0;
+        if (optHazardPerceptSeverityBandInMetres > 0) {
+            MobsimAgent mobsimAgent = matsimModel.getMobsimAgentFromIdString(agent.getAgentID());
+            Link link = (mobsimAgent == null) ? null : getScenario().getNetwork().getLinks().get(mobsimAgent.getCurrentLinkId());
+            if (link != null) {
+                double distance = distanceToHazard.applyAsDouble(getNetworkIndex().getPoint(link.getFromNode()));
+                severity = 1 + (int) (Math.max(0, visualDistance - distance) / optHazardPerceptSeverityBandInMetres);
+            }
+        }
+        return hazardPerceptFilter.enter(agent.getAgentID(), hazard, severity);
+    }
+
+    /**
+     * Works out, once for the whole fire, when the fire reaches each link (the earlier of its two
+     * nodes), so that civilian routing can penalise links by how soon they burn and the fire
+     * updates that follow no longer need to recompute civilian penalties from the fire shape
+     */
+    private void processFireArrivalData(FireArrivalGrid data, double now, Scenario scenario) {
+        if (fireArrivalOfLinks == null || data == null) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        double[] arrivalAtLinks = FireArrivalField.getArrivalTimesOfLinks(data, scenario.getNetwork());
+        int burning = 0;
+        for (double arrival : arrivalAtLinks) {
+            if (arrival < Double.POSITIVE_INFINITY) {
+                burning++;
+            }
+        }
+        fireArrivalOfLinks.publish(arrivalAtLinks);
+        // the civilian penalties now come from the arrival times, so drop the static ones;
+        // publishing also tells cached routing results that the disutilities have changed
+        penaltyFactorsOfLinks.clear();
+        penalisedFireForVehicles = null;
+        penalisedBufferForVehicles = null;
+        penaltyFieldOfLinks.publish(penaltyFactorsOfLinks);
+        log.info("Worked out fire arrival times for {} nodes at time {}; {} of {} links will burn ({} ms)",
+                scenario.getNetwork().getNodes().size(), now, burning, scenario.getNetwork().getLinks().size(),
+                System.currentTimeMillis() - start);
+    }
+
+    /**
+     * Gets all BDI agents whose current link has a fromNode within the given shape, i.e., agents
+     * that are in (or have potentially just exited) the given area
+     */
     private List<Id<Person>> getPersonsWithin(Scenario scenario, Geometry shape) {
-        List<Id<Person>> personsWithin = new ArrayList<>();
-        for(Id<Person> personId : matsimModel.getMobsimDataProvider().getAgents().keySet()) {
+        return isAgentPositionIndexSeeded() ? agentPositionIndex.getPersonsWithin(shape) : new ArrayList<>();
+    }
+
+    private List<Id<Person>> getPersonsWithin(Envelope envelope, Predicate<Point> within) {
+        return isAgentPositionIndexSeeded() ? agentPositionIndex.getPersonsWithin(envelope, within) : new ArrayList<>();
+    }
+
+    private boolean isAgentPositionIndexSeeded() {
+        if (!agentPositionIndex.isSeeded()) {
             Gbl.assertNotNull( matsimModel.getMobsimDataProvider() );
-            MobsimAgent agent = matsimModel.getMobsimDataProvider().getAgent(personId);
-            final Id<Link> linkId = agent.getCurrentLinkId();
-            final Link link = scenario.getNetwork().getLinks().get(linkId);
-            Point fromPoint = GeometryUtils.createGeotoolsPoint(link.getFromNode().getCoord());
-            if (shape.contains(fromPoint)) { // coming from polygon area
-                // this agent is in (or has potentially just exited) the messaging area
-                personsWithin.add(personId);
+            Map<Id<Person>, MobsimAgent> agents = matsimModel.getMobsimDataProvider().getAgents();
+            if (agents.isEmpty()) {
+                return false; // mobsim not running yet
             }
+            // positions are kept up to date from events after this
+            agentPositionIndex.seed(agents.values());
         }
-        return personsWithin;
+        return true;
     }
 
     /**
-     * Gets all links that have a fromNode within the given shape
-     * @param scenario
-     * @param shape
-     * @return
+     * Gets the spatial index of the network, building it if this was not already done
+     * in {@link #loadAndPrepareScenario()}
      */
-    private Set<Id<Link>> getLinksWithin(Scenario scenario, Geometry shape) {
-        Set<Id<Link>> links = new HashSet<>();
-        for(Id<Link> linkId : scenario.getNetwork().getLinks().keySet()) {
-            final Link link = scenario.getNetwork().getLinks().get(linkId);
-            Point fromPoint = GeometryUtils.createGeotoolsPoint(link.getFromNode().getCoord());
-            if (shape.contains(fromPoint)) {
-                links.add(linkId);
-            }
+    private NetworkSpatialIndex getNetworkIndex() {
+        if (networkIndex == null) {
+            networkIndex = NetworkSpatialIndex.of(matsimModel.getScenario().getNetwork());
         }
-        return links;
+        return networkIndex;
+    }
+
+    private FirePenaltyMapper getFirePenaltyMapper() {
+        if (firePenaltyMapper == null) {
+            firePenaltyMapper = new FirePenaltyMapper(hazardTable, matsimModel.getScenario().getNetwork(),
+                    getNetworkIndex());
+        }
+        return firePenaltyMapper;
+    }
+
+    private NetworkChangeManager getNetworkChangeManager() {
+        if (networkChangeManager == null) {
+            networkChangeManager = new NetworkChangeManager(matsimModel.getScenario().getNetwork(),
+                    optNetworkChangeCompactionThreshold);
+        }
+        return networkChangeManager;
     }
 
 
@@ -450,33 +911,68 @@ public final class MATSimEvacModel implements ABMServerInterface, QueryPerceptIn
         String[] acts = Stream.of(Constants.EvacActivity.values()).map(Constants.EvacActivity::name).toArray(String[]::new);
         matsimModel.init(ObjectArrays.concat(args, new Object[]{Arrays.asList(acts)}, Object.class));
         List<String> bdiAgentIDs = (List<String>)args[0];
+        agentPositionIndex = new AgentPositionIndex(getScenario().getNetwork(), getNetworkIndex(),
+                getAgentManager(), optAgentIndexCellSizeInMetres);
+        if (optEdgeTriggeredHazardPercepts) {
+            hazardPerceptFilter = new HazardPerceptFilter();
+            monitorPersonsEnteringDangerZones.setPerceptFilter(hazardPerceptFilter);
+        }
+        linkResolver = new NearestLinkResolver(getScenario().getNetwork(), optLinkResolutionQuantumInMetres);
+        {
+            List<Person> bdiPersons = new ArrayList<>();
+            for (String agentId : bdiAgentIDs) {
+                Person person = getScenario().getPopulation().getPersons().get(Id.createPersonId(agentId));
+                if (person != null) {
+                    bdiPersons.add(person);
+                }
+            }
+            linkResolver.seed(bdiPersons);
+        }
+        drivingDistanceOracle = optDrivingDistanceOracle ?
+                new DrivingDistanceOracle(getScenario().getNetwork(), optRouterLandmarks) : null;
+        fireArrivalOfLinks = optFireArrivalPenalties ? new FireArrivalField(optFireArrivalHorizonInSecs,
+                optFireAvoidanceBufferForVehicles * optFireAvoidanceBufferForVehicles) : null;
+        linkBlockageIndex = new LinkBlockageIndex(getScenario().getNetwork(), optLinkBlockageIndex, networkChangeEpoch::get);
+        travelTimeSnapshot = (optTravelTimeSnapshotIntervalInSecs > 0) ?
+                new TravelTimeSnapshot(optTravelTimeSnapshotIntervalInSecs, networkChangeEpoch::get) : null;
+        tripPreRouter = new TripPreRouter(optPreRoutingThreads, optPreRoutingLookAheadInSecs,
+                () -> networkChangeEpoch.get() + penaltyFieldOfLinks.getEpoch() + penaltyFieldOfLinksForEmergencyVehicles.getEpoch());
+        replanningExecutor = (optReplanningThreads > 0) ?
+                new ReplanningExecutor(matsimModel, optReplanningThreads, linkResolver) : null;
+        replanningCoalescer = optCoalesceReplanning ?
+                new ReplanningCoalescer(optMinReplanIntervalInSecs, optMaxReplansPerStep, replanningExecutor) : null;
         initialiseControllerForEvac(matsimModel.getControler());
         for(String agentId: bdiAgentIDs) {
             PAAgent paAgent = getAgentManager().getAgent( agentId );
 
             // replace the default action handlers with evacuation specific ones
             paAgent.getActionHandler().registerBDIAction(
-                    Constants.DRIVETO, new EvacDrivetoActionHandlerV2(matsimModel));
+                    Constants.DRIVETO, new EvacDrivetoActionHandlerV2(matsimModel, replanningExecutor, linkResolver,
+                            tripPreRouter.isEnabled() ? tripPreRouter : null, replanningCoalescer));
             paAgent.getActionHandler().registerBDIAction(
-                    Constants.REPLAN_CURRENT_DRIVETO, new ReplanDriveToDefaultActionHandlerV2(matsimModel));
+                    Constants.REPLAN_CURRENT_DRIVETO, new ReplanDriveToDefaultActionHandlerV2(matsimModel, replanningCoalescer));
 
             // replace the default action handlers with evacuation specific ones
             paAgent.getActionHandler().registerBDIAction(
-                    Constants.WALKTO1, new EvacWalkto1ActionHandlerV2(matsimModel));
+                    Constants.WALKTO1, new EvacWalkto1ActionHandlerV2(matsimModel, replanningExecutor, linkResolver,
+                            tripPreRouter.isEnabled() ? tripPreRouter : null, replanningCoalescer));
             paAgent.getActionHandler().registerBDIAction(
-                    Constants.REPLAN_CURRENT_WALKTO1, new ReplanWalkTo1DefaultActionHandlerV2(matsimModel));
+                    Constants.REPLAN_CURRENT_WALKTO1, new ReplanWalkTo1DefaultActionHandlerV2(matsimModel, replanningCoalescer));
         }
 
     }
 
     private void initialiseControllerForEvac(Controler controller) {
         controller.getEvents().addHandler(monitorPersonsEnteringDangerZones);
+        controller.getEvents().addHandler(agentPositionIndex);
         // infrastructure at QSim level (separating line not fully logical)
         controller.addOverridingQSimModule( new AbstractQSimModule() {
             @Override protected void configureQSim() {
                 this.bind( AgentFactory.class ).to( EvacAgent.Factory.class ) ;
                 this.bind(Replanner.class).in( Singleton.class ) ;
                 this.bind( MATSimModel.class ).toInstance( matsimModel );
+                this.bind( TripPreRouter.class ).toInstance( tripPreRouter );
+                this.bind( LinkBlockageIndex.class ).toInstance( linkBlockageIndex );
             }
         } );
         controller.addOverridingModule(new AbstractModule() {
@@ -484,6 +980,21 @@ public final class MATSimEvacModel implements ABMServerInterface, QueryPerceptIn
             public void install() {
                 // Attach our evacuation-based routing algorithm selector
                 bindEvacuationRoutingAlgorithm();
+                if (replanningExecutor != null) {
+                    addMobsimListenerBinding().toInstance(replanningExecutor);
+                }
+                if (replanningCoalescer != null) {
+                    addMobsimListenerBinding().toInstance(replanningCoalescer);
+                }
+                if (tripPreRouter.isEnabled()) {
+                    addMobsimListenerBinding().toInstance(tripPreRouter);
+                }
+                if (travelTimeSnapshot != null) {
+                    addMobsimListenerBinding().toInstance(travelTimeSnapshot);
+                }
+                if (linkBlockageIndex.isEnabled()) {
+                    addMobsimListenerBinding().toInstance(linkBlockageIndex);
+                }
                 // Set up the evacuation routers
                 setupEmergencyVehicleRouting();
                 setupCarGlobalInformationRouting();
@@ -504,9 +1015,24 @@ public final class MATSimEvacModel implements ABMServerInterface, QueryPerceptIn
                 setupsSevenGlobal();
             }
 
+            private void bindCongestedTravelTime(String routingMode) {
+                if (travelTimeSnapshot != null) {
+                    // routers read periodic snapshots of the within-day travel times, not the live ones
+                    addTravelTimeBinding(routingMode).toInstance(travelTimeSnapshot);
+                } else {
+                    addTravelTimeBinding(routingMode).to(WithinDayTravelTime.class);
+                }
+            }
+
             private void bindEvacuationRoutingAlgorithm() {
                 if (optRoutingAlgorithmType == EvacuationRoutingAlgorithmType.ExampleRoutingAlgorithm) {
                     this.bind(LeastCostPathCalculatorFactory.class).to(ExampleRoutingAlgorithmFactory.class);
+                } else if (optRoutingAlgorithmType == EvacuationRoutingAlgorithmType.EvacRoutingAlgorithm) {
+                    DestinationTreeCache trees = (optDestinationTreeCacheSize <= 0) ? null :
+                            new DestinationTreeCache(optDestinationTreeCacheSize,
+                                    optDestinationTreeValidityInSecs, networkChangeEpoch::get);
+                    this.bind(LeastCostPathCalculatorFactory.class).toInstance(
+                            new EvacRoutingAlgorithmFactory(optRouterLandmarks, trees));
                 }
             }
             public class CustomTransportMode {
@@ -532,7 +1058,7 @@ public final class MATSimEvacModel implements ABMServerInterface, QueryPerceptIn
                 addTravelTimeBinding(routingMode).to(FreeSpeedTravelTime.class);
                 // (this defines which travel time this routing mode should use.  Here: free speed))
 
-                TravelDisutilityFactory disutilityFactory = new EvacTravelDisutility.Factory(penaltyFactorsOfLinks);
+                TravelDisutilityFactory disutilityFactory = new EvacTravelDisutility.Factory(penaltyFieldOfLinks, fireArrivalOfLinks);
                 addTravelDisutilityFactoryBinding(routingMode).toInstance(disutilityFactory);
                 // (this defines which travel disutility this routing mode should use.  Here: a specific evac travel disutility, which takes
                 // penalty factors as input.  The penalty factors are filled from fire data; if there is no fire data, they remain empty)
@@ -549,7 +1075,7 @@ public final class MATSimEvacModel implements ABMServerInterface, QueryPerceptIn
                 addTravelTimeBinding(routingMode).to(FreeSpeedTravelTime.class);
                 // (this defines which travel time this routing mode should use.  Here: free speed))
 
-                TravelDisutilityFactory disutilityFactory = new EvacTravelDisutility.Factory(penaltyFactorsOfLinks);
+                TravelDisutilityFactory disutilityFactory = new EvacTravelDisutility.Factory(penaltyFieldOfLinks, fireArrivalOfLinks);
                 addTravelDisutilityFactoryBinding(routingMode).toInstance(disutilityFactory);
                 // (this defines which travel disutility this routing mode should use.  Here: a specific evac travel disutility, which takes
                 // penalty factors as input.  The penalty factors are filled from fire data; if there is no fire data, they remain empty)
@@ -566,7 +1092,7 @@ public final class MATSimEvacModel implements ABMServerInterface, QueryPerceptIn
                 addTravelTimeBinding(routingMode).to(FreeSpeedTravelTime.class);
                 // (this defines which travel time this routing mode should use.  Here: free speed))
 
-                TravelDisutilityFactory disutilityFactory = new EvacTravelDisutility.Factory(penaltyFactorsOfLinks);
+                TravelDisutilityFactory disutilityFactory = new EvacTravelDisutility.Factory(penaltyFieldOfLinks, fireArrivalOfLinks);
                 addTravelDisutilityFactoryBinding(routingMode).toInstance(disutilityFactory);
                 // (this defines which travel disutility this routing mode should use.  Here: a specific evac travel disutility, which takes
                 // penalty factors as input.  The penalty factors are filled from fire data; if there is no fire data, they remain empty)
@@ -583,7 +1109,7 @@ public final class MATSimEvacModel implements ABMServerInterface, QueryPerceptIn
                 addTravelTimeBinding(routingMode).to(FreeSpeedTravelTime.class);
                 // (this defines which travel time this routing mode should use.  Here: free speed))
 
-                TravelDisutilityFactory disutilityFactory = new EvacTravelDisutility.Factory(penaltyFactorsOfLinks);
+                TravelDisutilityFactory disutilityFactory = new EvacTravelDisutility.Factory(penaltyFieldOfLinks, fireArrivalOfLinks);
                 addTravelDisutilityFactoryBinding(routingMode).toInstance(disutilityFactory);
                 // (this defines which travel disutility this routing mode should use.  Here: a specific evac travel disutility, which takes
                 // penalty factors as input.  The penalty factors are filled from fire data; if there is no fire data, they remain empty)
@@ -600,7 +1126,7 @@ public final class MATSimEvacModel implements ABMServerInterface, QueryPerceptIn
                 addTravelTimeBinding(routingMode).to(FreeSpeedTravelTime.class);
                 // (this defines which travel time this routing mode should use.  Here: free speed))
 
-                TravelDisutilityFactory disutilityFactory = new EvacTravelDisutility.Factory(penaltyFactorsOfLinks);
+                TravelDisutilityFactory disutilityFactory = new EvacTravelDisutility.Factory(penaltyFieldOfLinks, fireArrivalOfLinks);
                 addTravelDisutilityFactoryBinding(routingMode).toInstance(disutilityFactory);
                 // (this defines which travel disutility this routing mode should use.  Here: a specific evac travel disutility, which takes
                 // penalty factors as input.  The penalty factors are filled from fire data; if there is no fire data, they remain empty)
@@ -618,7 +1144,7 @@ public final class MATSimEvacModel implements ABMServerInterface, QueryPerceptIn
                 addTravelTimeBinding(routingMode).to(FreeSpeedTravelTime.class);
                 // (this defines which travel time this routing mode should use.  Here: free speed))
 
-                TravelDisutilityFactory disutilityFactory = new EvacTravelDisutility.Factory(penaltyFactorsOfLinks);
+                TravelDisutilityFactory disutilityFactory = new EvacTravelDisutility.Factory(penaltyFieldOfLinks, fireArrivalOfLinks);
                 addTravelDisutilityFactoryBinding(routingMode).toInstance(disutilityFactory);
                 // (this defines which travel disutility this routing mode should use.  Here: a specific evac travel disutility, which takes
                 // penalty factors as input.  The penalty factors are filled from fire data; if there is no fire data, they remain empty)
@@ -635,7 +1161,7 @@ public final class MATSimEvacModel implements ABMServerInterface, QueryPerceptIn
                 addTravelTimeBinding(routingMode).to(FreeSpeedTravelTime.class);
                 // (this defines which travel time this routing mode should use.  Here: free speed))
 
-                TravelDisutilityFactory disutilityFactory = new EvacTravelDisutility.Factory(penaltyFactorsOfLinks);
+                TravelDisutilityFactory disutilityFactory = new EvacTravelDisutility.Factory(penaltyFieldOfLinks, fireArrivalOfLinks);
                 addTravelDisutilityFactoryBinding(routingMode).toInstance(disutilityFactory);
                 // (this defines which travel disutility this routing mode should use.  Here: a specific evac travel disutility, which takes
                 // penalty factors as input.  The penalty factors are filled from fire data; if there is no fire data, they remain empty)
@@ -651,7 +1177,7 @@ public final class MATSimEvacModel implements ABMServerInterface, QueryPerceptIn
                 addTravelTimeBinding(routingMode).to(FreeSpeedTravelTime.class);
                 // (this defines which travel time this routing mode should use.  Here: free speed))
 
-                TravelDisutilityFactory disutilityFactory = new EvacTravelDisutility.Factory(penaltyFactorsOfLinks);
+                TravelDisutilityFactory disutilityFactory = new EvacTravelDisutility.Factory(penaltyFieldOfLinks, fireArrivalOfLinks);
                 addTravelDisutilityFactoryBinding(routingMode).toInstance(disutilityFactory);
                 // (this defines which travel disutility this routing mode should use.  Here: a specific evac travel disutility, which takes
                 // penalty factors as input.  The penalty factors are filled from fire data; if there is no fire data, they remain empty)
@@ -666,10 +1192,10 @@ public final class MATSimEvacModel implements ABMServerInterface, QueryPerceptIn
                 bind(WithinDayTravelTime.class).in(Singleton.class);
                 addEventHandlerBinding().to(WithinDayTravelTime.class);
                 addMobsimListenerBinding().to(WithinDayTravelTime.class);
-                addTravelTimeBinding(routingMode).to(WithinDayTravelTime.class) ;
+                bindCongestedTravelTime(routingMode);
 
                 // travel disutility includes the fire penalty. If no data arrives, it makes no difference.
-                TravelDisutilityFactory disutilityFactory = new EvacTravelDisutility.Factory(penaltyFactorsOfLinks);
+                TravelDisutilityFactory disutilityFactory = new EvacTravelDisutility.Factory(penaltyFieldOfLinks, fireArrivalOfLinks);
                 // (yyyyyy the now following cases are just there because of the different tests.  Solve by config,
                 addTravelDisutilityFactoryBinding(routingMode).toInstance(disutilityFactory);
             }
@@ -684,10 +1210,10 @@ public final class MATSimEvacModel implements ABMServerInterface, QueryPerceptIn
                 bind(WithinDayTravelTime.class).in(Singleton.class);
                 addEventHandlerBinding().to(WithinDayTravelTime.class);
                 addMobsimListenerBinding().to(WithinDayTravelTime.class);
-                addTravelTimeBinding(routingMode).to(WithinDayTravelTime.class) ;
+                bindCongestedTravelTime(routingMode);
 
                 // travel disutility includes the fire penalty. If no data arrives, it makes no difference.
-                TravelDisutilityFactory disutilityFactory = new EvacTravelDisutility.Factory(penaltyFactorsOfLinks);
+                TravelDisutilityFactory disutilityFactory = new EvacTravelDisutility.Factory(penaltyFieldOfLinks, fireArrivalOfLinks);
                 // (yyyyyy the now following cases are just there because of the different tests.  Solve by config,
                 addTravelDisutilityFactoryBinding(routingMode).toInstance(disutilityFactory);
             }
@@ -702,10 +1228,10 @@ public final class MATSimEvacModel implements ABMServerInterface, QueryPerceptIn
                 bind(WithinDayTravelTime.class).in(Singleton.class);
                 addEventHandlerBinding().to(WithinDayTravelTime.class);
                 addMobsimListenerBinding().to(WithinDayTravelTime.class);
-                addTravelTimeBinding(routingMode).to(WithinDayTravelTime.class) ;
+                bindCongestedTravelTime(routingMode);
 
                 // travel disutility includes the fire penalty. If no data arrives, it makes no difference.
-                TravelDisutilityFactory disutilityFactory = new EvacTravelDisutility.Factory(penaltyFactorsOfLinks);
+                TravelDisutilityFactory disutilityFactory = new EvacTravelDisutility.Factory(penaltyFieldOfLinks, fireArrivalOfLinks);
                 // (yyyyyy the now following cases are just there because of the different tests.  Solve by config,
                 addTravelDisutilityFactoryBinding(routingMode).toInstance(disutilityFactory);
             }
@@ -719,10 +1245,10 @@ public final class MATSimEvacModel implements ABMServerInterface, QueryPerceptIn
                 bind(WithinDayTravelTime.class).in(Singleton.class);
                 addEventHandlerBinding().to(WithinDayTravelTime.class);
                 addMobsimListenerBinding().to(WithinDayTravelTime.class);
-                addTravelTimeBinding(routingMode).to(WithinDayTravelTime.class) ;
+                bindCongestedTravelTime(routingMode);
 
                 // travel disutility includes the fire penalty. If no data arrives, it makes no difference.
-                TravelDisutilityFactory disutilityFactory = new EvacTravelDisutility.Factory(penaltyFactorsOfLinks);
+                TravelDisutilityFactory disutilityFactory = new EvacTravelDisutility.Factory(penaltyFieldOfLinks, fireArrivalOfLinks);
                 // (yyyyyy the now following cases are just there because of the different tests.  Solve by config,
                 addTravelDisutilityFactoryBinding(routingMode).toInstance(disutilityFactory);
             }
@@ -736,10 +1262,10 @@ public final class MATSimEvacModel implements ABMServerInterface, QueryPerceptIn
                 bind(WithinDayTravelTime.class).in(Singleton.class);
                 addEventHandlerBinding().to(WithinDayTravelTime.class);
                 addMobsimListenerBinding().to(WithinDayTravelTime.class);
-                addTravelTimeBinding(routingMode).to(WithinDayTravelTime.class) ;
+                bindCongestedTravelTime(routingMode);
 
                 // travel disutility includes the fire penalty. If no data arrives, it makes no difference.
-                TravelDisutilityFactory disutilityFactory = new EvacTravelDisutility.Factory(penaltyFactorsOfLinks);
+                TravelDisutilityFactory disutilityFactory = new EvacTravelDisutility.Factory(penaltyFieldOfLinks, fireArrivalOfLinks);
                 // (yyyyyy the now following cases are just there because of the different tests.  Solve by config,
                 addTravelDisutilityFactoryBinding(routingMode).toInstance(disutilityFactory);
             }
@@ -753,10 +1279,10 @@ public final class MATSimEvacModel implements ABMServerInterface, QueryPerceptIn
                 bind(WithinDayTravelTime.class).in(Singleton.class);
                 addEventHandlerBinding().to(WithinDayTravelTime.class);
                 addMobsimListenerBinding().to(WithinDayTravelTime.class);
-                addTravelTimeBinding(routingMode).to(WithinDayTravelTime.class) ;
+                bindCongestedTravelTime(routingMode);
 
                 // travel disutility includes the fire penalty. If no data arrives, it makes no difference.
-                TravelDisutilityFactory disutilityFactory = new EvacTravelDisutility.Factory(penaltyFactorsOfLinks);
+                TravelDisutilityFactory disutilityFactory = new EvacTravelDisutility.Factory(penaltyFieldOfLinks, fireArrivalOfLinks);
                 // (yyyyyy the now following cases are just there because of the different tests.  Solve by config,
                 addTravelDisutilityFactoryBinding(routingMode).toInstance(disutilityFactory);
             }
@@ -771,10 +1297,10 @@ public final class MATSimEvacModel implements ABMServerInterface, QueryPerceptIn
                 bind(WithinDayTravelTime.class).in(Singleton.class);
                 addEventHandlerBinding().to(WithinDayTravelTime.class);
                 addMobsimListenerBinding().to(WithinDayTravelTime.class);
-                addTravelTimeBinding(routingMode).to(WithinDayTravelTime.class) ;
+                bindCongestedTravelTime(routingMode);
 
                 // travel disutility includes the fire penalty. If no data arrives, it makes no difference.
-                TravelDisutilityFactory disutilityFactory = new EvacTravelDisutility.Factory(penaltyFactorsOfLinks);
+                TravelDisutilityFactory disutilityFactory = new EvacTravelDisutility.Factory(penaltyFieldOfLinks, fireArrivalOfLinks);
                 // (yyyyyy the now following cases are just there because of the different tests.  Solve by config,
                 addTravelDisutilityFactoryBinding(routingMode).toInstance(disutilityFactory);
             }
@@ -789,10 +1315,10 @@ public final class MATSimEvacModel implements ABMServerInterface, QueryPerceptIn
                 bind(WithinDayTravelTime.class).in(Singleton.class);
                 addEventHandlerBinding().to(WithinDayTravelTime.class);
                 addMobsimListenerBinding().to(WithinDayTravelTime.class);
-                addTravelTimeBinding(routingMode).to(WithinDayTravelTime.class) ;
+                bindCongestedTravelTime(routingMode);
 
                 // travel disutility includes the fire penalty. If no data arrives, it makes no difference.
-                TravelDisutilityFactory disutilityFactory = new EvacTravelDisutility.Factory(penaltyFactorsOfLinks);
+                TravelDisutilityFactory disutilityFactory = new EvacTravelDisutility.Factory(penaltyFieldOfLinks, fireArrivalOfLinks);
                 // (yyyyyy the now following cases are just there because of the different tests.  Solve by config,
                 addTravelDisutilityFactoryBinding(routingMode).toInstance(disutilityFactory);
             }
@@ -805,10 +1331,10 @@ public final class MATSimEvacModel implements ABMServerInterface, QueryPerceptIn
                 bind(WithinDayTravelTime.class).in(Singleton.class);
                 addEventHandlerBinding().to(WithinDayTravelTime.class);
                 addMobsimListenerBinding().to(WithinDayTravelTime.class);
-                addTravelTimeBinding(routingMode).to(WithinDayTravelTime.class) ;
+                bindCongestedTravelTime(routingMode);
 
                 // travel disutility includes the fire penalty:
-                TravelDisutilityFactory disutilityFactory = new EvacTravelDisutility.Factory(penaltyFactorsOfLinksForEmergencyVehicles);
+                TravelDisutilityFactory disutilityFactory = new EvacTravelDisutility.Factory(penaltyFieldOfLinksForEmergencyVehicles);
                 // yyyyyy This uses the same disutility as the evacuees.  May not be what we want.
                 // But what do we want?  kai, dec'17/jan'18
 
@@ -883,9 +1409,97 @@ public final class MATSimEvacModel implements ABMServerInterface, QueryPerceptIn
                 }
             }
         }
+        if (optSimplifyNetwork) {
+            Scenario scenario = matsimModel.getScenario();
+            networkSimplifier = new EvacNetworkSimplifier(getLinksToKeepDetailed(scenario), getAreasToKeepDetailed(scenario));
+            networkSimplifier.simplify(scenario);
+        }
+        // index the final network once, so that hazard updates do not have to scan it
+        networkIndex = NetworkSpatialIndex.of(matsimModel.getScenario().getNetwork());
         return matsimModel.getScenario();
     }
 
+    /**
+     * Tells the network simplifier where the network must keep its detail: the given links (in
+     * original ids, as disruptions give them) and every link within the given hazard extents (in
+     * the scenario's coordinate system) or broadcast zones (as lon/lat pairs, as messages give
+     * them), since hazards and zones are tested against the geometry of the links they cover. The
+     * hazard extents are widened by the largest distance at which hazards are seen or avoided.
+     * Must be called before {@link #loadAndPrepareScenario()} to have any effect.
+     */
+    public void keepNetworkDetailFor(Collection<String> linkIds, Collection<Envelope> hazardExtents,
+                                     Collection<Double[][]> broadcastZones) {
+        linkIdsToKeepDetailed.addAll(linkIds);
+        hazardExtentsToKeepDetailed.addAll(hazardExtents);
+        zonesToKeepDetailed.addAll(broadcastZones);
+    }
+
+    /**
+     * Gets the disrupted links, and the links that the activities and location attributes of the
+     * population resolve to (where agents go), which all must keep their original ids
+     */
+    private Set<Id<Link>> getLinksToKeepDetailed(Scenario scenario) {
+        Set<Id<Link>> linkIds = new HashSet<>(NetworkUtils.getLinkIds(String.join(" ", linkIdsToKeepDetailed)));
+        NearestLinkResolver destinations = new NearestLinkResolver(scenario.getNetwork(), optLinkResolutionQuantumInMetres);
+        destinations.seed(scenario.getPopulation().getPersons().values());
+        for (Link link : destinations.getResolvedLinks()) {
+            linkIds.add(link.getId());
+        }
+        for (Person person : scenario.getPopulation().getPersons().values()) {
+            if (person.getSelectedPlan() != null) {
+                for (PlanElement element : person.getSelectedPlan().getPlanElements()) {
+                    if (element instanceof Activity && ((Activity) element).getLinkId() != null) {
+                        linkIds.add(((Activity) element).getLinkId());
+                    }
+                }
+            }
+        }
+        return linkIds;
+    }
+
+    private List<Geometry> getAreasToKeepDetailed(Scenario scenario) {
+        GeometryFactory factory = new GeometryFactory();
+        List<Geometry> areas = new ArrayList<>();
+        // hazards reach the links within their visual distances and avoidance buffers, not just those they cover
+        final double reach = Math.max(
+                Math.max(optFireAvoidanceBufferForVehicles, optFireAvoidanceBufferForEmergencyVehicles),
+                Math.max(Math.max(optMaxDistanceForFireVisual, optMaxDistanceForSmokeVisual),
+                        Math.max(optMaxDistanceForFloodVisual, optMaxDistanceForCycloneVisual)));
+        for (Envelope extent : hazardExtentsToKeepDetailed) {
+            if (!extent.isNull()) {
+                Envelope area = new Envelope(extent);
+                area.expandBy(reach);
+                areas.add(factory.toGeometry(area));
+            }
+        }
+        CoordinateTransformation transform = TransformationFactory.getCoordinateTransformation(
+                TransformationFactory.WGS84, scenario.getConfig().global().getCoordinateSystem());
+        for (Double[][] zone : zonesToKeepDetailed) {
+            Envelope extent = new Envelope();
+            for (Double[] pair : zone) {
+                Coord coord = transform.transform(new Coord(pair[0], pair[1]));
+                extent.expandToInclude(coord.getX(), coord.getY());
+            }
+            areas.add(factory.toGeometry(extent));
+        }
+        return areas;
+    }
+
+    /**
+     * Gets the mapping between the simplified and the original network, or null if the network
+     * was not simplified
+     */
+    public EvacNetworkSimplifier getNetworkSimplifier() {
+        return networkSimplifier;
+    }
+
+    /**
+     * Gets the per-link state of the hazards seen so far
+     */
+    public LinkHazardTable getHazardTable() {
+        return hazardTable;
+    }
+
     public PAAgentManager getAgentManager() {
         return matsimModel.getAgentManager();
     }
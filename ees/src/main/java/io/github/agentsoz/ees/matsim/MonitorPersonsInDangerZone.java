@@ -26,61 +26,56 @@ import io.github.agentsoz.bdiabm.data.PerceptContent;
 import io.github.agentsoz.ees.Constants;
 import io.github.agentsoz.nonmatsim.PAAgent;
 import io.github.agentsoz.nonmatsim.PAAgentManager;
-import org.matsim.api.core.v01.Id;
 import org.matsim.api.core.v01.events.LinkEnterEvent;
 import org.matsim.api.core.v01.events.handler.LinkEnterEventHandler;
-import org.matsim.api.core.v01.network.Link;
 import org.matsim.api.core.v01.population.Person;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.HashSet;
-import java.util.Set;
-
 public class MonitorPersonsInDangerZone implements LinkEnterEventHandler {
 
     private static final Logger log = LoggerFactory.getLogger(MonitorPersonsInDangerZone.class);
 
     private PAAgentManager agentManager;
 
-    private Set<Id<Link>> linksInFireBuffer = new HashSet<>();
-    private Set<Id<Link>> linksInEmbersBuffer = new HashSet<>();
-    private Set<Id<Link>> linksInCycloneBuffer = new HashSet<>();
-    private Set<Id<Link>> linksInFloodBuffer = new HashSet<>();
+    // agents are in a zone if the fromNode of the link they enter is within it
+    private final LinkHazardTable hazardTable;
+    // if set, agents are only told about a zone when they come into it
+    private HazardPerceptFilter perceptFilter;
 
-    public MonitorPersonsInDangerZone(PAAgentManager agentManager) {
+    public MonitorPersonsInDangerZone(PAAgentManager agentManager, LinkHazardTable hazardTable) {
         this.agentManager = agentManager;
+        this.hazardTable = hazardTable;
     }
 
-    public void setFireZone(Set<Id<Link>> linksWithin) {
-        linksInFireBuffer = linksWithin;
-    }
-
-    public void setEmbersZone(Set<Id<Link>> linksWithin) {
-        linksInEmbersBuffer = linksWithin;
-    }
-
-    public void setCycloneZone(Set<Id<Link>> linksWithin) {
-        linksInCycloneBuffer = linksWithin;
-    }
-    public void setFloodZone(Set<Id<Link>> linksWithin) {
-        linksInFloodBuffer = linksWithin;
+    public void setPerceptFilter(HazardPerceptFilter perceptFilter) {
+        this.perceptFilter = perceptFilter;
     }
 
     @Override
     public void handleEvent(LinkEnterEvent linkEnterEvent) {
         PAAgent agent = agentManager.getAgent(linkEnterEvent.getVehicleId().toString());
         if (agent != null) { // only do this if this is a BDI-like agent
-            if(linksInFireBuffer.contains(linkEnterEvent.getLinkId())) {
-                PerceptContent pc = new PerceptContent(Constants.FIELD_OF_VIEW, Constants.SIGHTED_FIRE);
-                agentManager.getAgentDataContainerV2().putPercept(agent.getAgentID(), Constants.FIELD_OF_VIEW, pc);
+            if(hazardTable.isFromNodeWithin(LinkHazardTable.Hazard.FIRE, linkEnterEvent.getLinkId())) {
+                if (isNewToZone(agent, HazardPerceptFilter.Hazard.FIRE)) {
+                    PerceptContent pc = new PerceptContent(Constants.FIELD_OF_VIEW, Constants.SIGHTED_FIRE);
+                    agentManager.getAgentDataContainerV2().putPercept(agent.getAgentID(), Constants.FIELD_OF_VIEW, pc);
+                }
+            } else if (perceptFilter != null) {
+                perceptFilter.leave(agent.getAgentID(), HazardPerceptFilter.Hazard.FIRE);
             }
-            if(linksInEmbersBuffer.contains(linkEnterEvent.getLinkId())) {
-                PerceptContent pc = new PerceptContent(Constants.FIELD_OF_VIEW, Constants.SIGHTED_EMBERS);
-                agentManager.getAgentDataContainerV2().putPercept(agent.getAgentID(), Constants.FIELD_OF_VIEW, pc);
+            if(hazardTable.isFromNodeWithin(LinkHazardTable.Hazard.EMBERS, linkEnterEvent.getLinkId())) {
+                if (isNewToZone(agent, HazardPerceptFilter.Hazard.EMBERS)) {
+                    PerceptContent pc = new PerceptContent(Constants.FIELD_OF_VIEW, Constants.SIGHTED_EMBERS);
+                    agentManager.getAgentDataContainerV2().putPercept(agent.getAgentID(), Constants.FIELD_OF_VIEW, pc);
+                }
+            } else if (perceptFilter != null) {
+                perceptFilter.leave(agent.getAgentID(), HazardPerceptFilter.Hazard.EMBERS);
             }
         }
     }
 
-
+    private boolean isNewToZone(PAAgent agent, HazardPerceptFilter.Hazard hazard) {
+        return perceptFilter == null || perceptFilter.enter(agent.getAgentID(), hazard, HazardPerceptFilter.UNTRACKED);
+    }
 }
@@ -0,0 +1,135 @@
+package io.github.agentsoz.ees.matsim;
+
+/*
+ * #%L
+ * Emergency Evacuation Simulator
+ * %%
+ * Copyright (C) 2014 - 2025 by its authors. See AUTHORS file.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.population.Activity;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.api.core.v01.population.PlanElement;
+import org.matsim.core.gbl.Gbl;
+import org.matsim.core.network.NetworkUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Memoized nearest-link lookup for action destinations.
+ * <p>
+ * Agents are sent to a fairly small set of places (homes, evacuation and invacuation points,
+ * dependents), each shared by many agents, so the result of each network search is kept,
+ * keyed by the coordinate rounded to the given quantum. Coordinates that round to the same key
+ * get the link found for whichever of them was looked up first. The cache is seeded up front
+ * from the locations in the population, and is safe to use from several threads.
+ */
+public final class NearestLinkResolver {
+
+    private static final Logger log = LoggerFactory.getLogger(NearestLinkResolver.class);
+
+    public static final double DEFAULT_QUANTUM_IN_METRES = 1.0;
+
+    private final Network network;
+    private final double quantum;
+    private final Map<Long, Link> links = new ConcurrentHashMap<>();
+
+    public NearestLinkResolver(Network network, double quantumInMetres) {
+        if (quantumInMetres <= 0) {
+            throw new IllegalArgumentException("Quantum must be positive, found " + quantumInMetres);
+        }
+        this.network = network;
+        this.quantum = quantumInMetres;
+    }
+
+    /**
+     * Gets the link nearest to the given coordinate, as {@link NetworkUtils#getNearestLink} would
+     */
+    public Link getNearestLink(Coord coord) {
+        return links.computeIfAbsent(key(coord), k -> {
+            Link link = NetworkUtils.getNearestLink(network, coord);
+            Gbl.assertNotNull(link);
+            return link;
+        });
+    }
+
+    /**
+     * Resolves the activity locations of the given persons, and any of their attributes that
+     * hold a location (such as the evacuation and invacuation preferences, or where their
+     * dependents are), in the same {@code [name,]x,y} format that the BDI agents read them in
+     */
+    public void seed(Collection<? extends Person> persons) {
+        long start = System.currentTimeMillis();
+        for (Person person : persons) {
+            if (person.getSelectedPlan() != null) {
+                for (PlanElement element : person.getSelectedPlan().getPlanElements()) {
+                    if (element instanceof Activity && ((Activity) element).getCoord() != null) {
+                        getNearestLink(((Activity) element).getCoord());
+                    }
+                }
+            }
+            for (Object value : person.getAttributes().getAsMap().values()) {
+                Coord coord = (value instanceof String) ? parseLocation((String) value) : null;
+                if (coord != null) {
+                    getNearestLink(coord);
+                }
+            }
+        }
+        log.info("Resolved {} distinct locations of {} persons to links in {} ms",
+                links.size(), persons.size(), System.currentTimeMillis() - start);
+    }
+
+    public int size() {
+        return links.size();
+    }
+
+    /**
+     * Gets the distinct links resolved so far
+     */
+    public Set<Link> getResolvedLinks() {
+        return new HashSet<>(links.values());
+    }
+
+    private long key(Coord coord) {
+        long qx = Math.round(coord.getX() / quantum);
+        long qy = Math.round(coord.getY() / quantum);
+        return (qx << 32) | (qy & 0xffffffffL);
+    }
+
+    private static Coord parseLocation(String location) {
+        String[] tokens = location.replaceAll("\\[", "").replaceAll("\\]", "").split(",");
+        if (tokens.length < 2 || tokens.length > 3) {
+            return null;
+        }
+        int x = (tokens.length == 3) ? 1 : 0;
+        try {
+            return new Coord(Double.parseDouble(tokens[x].trim()), Double.parseDouble(tokens[x + 1].trim()));
+        } catch (NumberFormatException e) {
+            return null; // not a location
+        }
+    }
+}
@@ -0,0 +1,246 @@
+package io.github.agentsoz.ees.matsim;
+
+/*
+ * #%L
+ * Emergency Evacuation Simulator
+ * %%
+ * Copyright (C) 2014 - 2025 by its authors. See AUTHORS file.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.core.network.NetworkChangeEvent;
+import org.matsim.core.network.NetworkUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+
+/**
+ * Single path through which the hazards change link speeds, so that repeated updates (such as a
+ * flood that sends every polygon so far each time) only add network change events for links whose
+ * freespeed actually changes.
+ * <p>
+ * The manager keeps the freespeed changes it has made per link, since changes handed to the mobsim
+ * only show on the link once they take effect, and falls back to the time-variant freespeed of the
+ * link itself for links it has not changed (e.g. those with network change events read with the
+ * scenario). All links changed to the same speed at the same time go into one change event. If
+ * compaction is enabled, future changes that would leave a link at the speed it already has then
+ * are dropped once enough new events have been added. Events that have already taken effect are
+ * never touched, as the mobsim has applied them; the manager only forgets its own record of changes
+ * that have been superseded by a later past change, which keeps its per-link lookups short.
+ */
+public final class NetworkChangeManager {
+
+    private static final Logger log = LoggerFactory.getLogger(NetworkChangeManager.class);
+
+    /**
+     * Applies a freespeed change to the given links, which are all those that need it
+     */
+    @FunctionalInterface
+    public interface ChangeSink {
+        void apply(double time, double speed, List<Link> links);
+    }
+
+    private final Network network;
+    private final int compactionThreshold;
+    private final ChangeSink networkSink;
+    private final Map<Link, TreeMap<Double, Double>> changesOfLink = new HashMap<>();
+    private int eventsSinceCompaction = 0;
+
+    /**
+     * @param compactionThreshold number of new change events after which the event history is
+     *                            compacted; 0 means never compact
+     */
+    public NetworkChangeManager(Network network, int compactionThreshold) {
+        this.network = network;
+        this.compactionThreshold = compactionThreshold;
+        this.networkSink = (time, speed, links) -> {
+            NetworkChangeEvent event = new NetworkChangeEvent(time);
+            event.setFreespeedChange(new NetworkChangeEvent.ChangeValue(
+                    NetworkChangeEvent.ChangeType.ABSOLUTE_IN_SI_UNITS, speed));
+            event.addLinks(links);
+            NetworkUtils.addNetworkChangeEvent(network, event);
+        };
+    }
+
+    /**
+     * Sets the freespeed of the given links from the given time on, adding one change event for
+     * all links that are not already at that speed then
+     *
+     * @return the number of links whose freespeed was changed
+     */
+    public int setFreespeed(Collection<Link> links, double time, double speed) {
+        return setFreespeed(links, time, speed, networkSink);
+    }
+
+    /**
+     * As {@link #setFreespeed(Collection, double, double)}, but hands the links that need changing
+     * to the given sink rather than adding the change event itself
+     */
+    public synchronized int setFreespeed(Collection<Link> links, double time, double speed, ChangeSink sink) {
+        List<Link> changed = new ArrayList<>();
+        Set<Link> seen = new HashSet<>();
+        for (Link link : links) {
+            if (seen.add(link) && getFreespeed(link, time) != speed) {
+                changed.add(link);
+            }
+        }
+        for (Link link : changed) {
+            changesOfLink.computeIfAbsent(link, k -> new TreeMap<>()).put(time, speed);
+        }
+        if (!changed.isEmpty()) {
+            sink.apply(time, speed, changed);
+            eventsSinceCompaction++;
+            log.info("Freespeed {} from time {} applied to {} of {} links", speed, time, changed.size(), seen.size());
+        }
+        return changed.size();
+    }
+
+    /**
+     * Gets the freespeed the given link will have at the given time, as far as known here
+     */
+    public synchronized double getFreespeed(Link link, double time) {
+        TreeMap<Double, Double> changes = changesOfLink.get(link);
+        Map.Entry<Double, Double> change = (changes == null) ? null : changes.floorEntry(time);
+        return (change != null) ? change.getValue() : link.getFreespeed(time);
+    }
+
+    /**
+     * Compacts the event history if enough events have been added since it was last done
+     */
+    public synchronized void compactIfDue(double now) {
+        if (compactionThreshold > 0 && eventsSinceCompaction >= compactionThreshold) {
+            compact(now);
+        }
+    }
+
+    /**
+     * Drops, per link, the freespeed changes after the given time that would not change anything,
+     * as the link is already at that speed then (e.g. because an earlier change was added later, or
+     * the same change was added twice). Events at or before the given time have already been applied
+     * by the mobsim and are kept as they are, as are the events of links that have events changing
+     * anything other than the freespeed to an absolute value, so the freespeed of every link at every
+     * time stays the same. Changes at the same time to different speeds are kept, as their order is
+     * not known here. Links whose freespeed now no longer matches the changes made here (because a
+     * change was applied to the link without being in the network's list of events) get it back.
+     */
+    public synchronized void compact(double now) {
+        eventsSinceCompaction = 0;
+        for (TreeMap<Double, Double> changes : changesOfLink.values()) {
+            Double last = changes.lowerKey(now);
+            if (last != null) {
+                changes.headMap(last, false).clear();
+            }
+        }
+        Collection<NetworkChangeEvent> events = NetworkUtils.getNetworkChangeEvents(network);
+        if (events == null || events.isEmpty()) {
+            return;
+        }
+        // the future events of each link, by time
+        Map<Link, TreeMap<Double, List<NetworkChangeEvent>>> futureEventsOfLink = new HashMap<>();
+        Set<Link> keepAll = new HashSet<>();
+        for (NetworkChangeEvent event : events) {
+            boolean pureFreespeed = isAbsoluteFreespeedOnly(event);
+            for (Link link : event.getLinks()) {
+                if (!pureFreespeed) {
+                    keepAll.add(link);
+                } else if (event.getStartTime() > now) {
+                    futureEventsOfLink.computeIfAbsent(link, k -> new TreeMap<>())
+                            .computeIfAbsent(event.getStartTime(), k -> new ArrayList<>()).add(event);
+                }
+            }
+        }
+        Map<NetworkChangeEvent, Set<Link>> droppedLinksOfEvent = new IdentityHashMap<>();
+        for (Map.Entry<Link, TreeMap<Double, List<NetworkChangeEvent>>> entry : futureEventsOfLink.entrySet()) {
+            Link link = entry.getKey();
+            if (keepAll.contains(link)) {
+                continue;
+            }
+            double speed = link.getFreespeed(now);
+            for (List<NetworkChangeEvent> eventsAtTime : entry.getValue().values()) {
+                double speedAtTime = eventsAtTime.get(0).getFreespeedChange().getValue();
+                boolean sameSpeed = true;
+                for (NetworkChangeEvent event : eventsAtTime) {
+                    sameSpeed &= event.getFreespeedChange().getValue() == speedAtTime;
+                }
+                if (!sameSpeed) {
+                    speed = Double.NaN; // not known until the next time all changes agree
+                    continue;
+                }
+                // keep the first of these changes unless the link is already at that speed
+                for (int i = (speedAtTime == speed) ? 0 : 1; i < eventsAtTime.size(); i++) {
+                    droppedLinksOfEvent.computeIfAbsent(eventsAtTime.get(i), k -> new HashSet<>()).add(link);
+                }
+                speed = speedAtTime;
+            }
+        }
+        if (droppedLinksOfEvent.isEmpty()) {
+            return;
+        }
+        List<NetworkChangeEvent> compacted = new ArrayList<>();
+        int dropped = 0;
+        for (NetworkChangeEvent event : events) {
+            Set<Link> droppedLinks = droppedLinksOfEvent.get(event);
+            if (droppedLinks == null) {
+                compacted.add(event);
+                continue;
+            }
+            List<Link> kept = new ArrayList<>();
+            for (Link link : event.getLinks()) {
+                if (!droppedLinks.contains(link)) {
+                    kept.add(link);
+                }
+            }
+            dropped += event.getLinks().size() - kept.size();
+            if (!kept.isEmpty()) {
+                NetworkChangeEvent copy = new NetworkChangeEvent(event.getStartTime());
+                copy.setFreespeedChange(event.getFreespeedChange());
+                copy.addLinks(kept);
+                compacted.add(copy);
+            }
+        }
+        compacted.sort(Comparator.comparingDouble(NetworkChangeEvent::getStartTime));
+        NetworkUtils.setNetworkChangeEvents(network, compacted);
+        log.info("Compacted network change events from {} to {} at time {}, dropping {} redundant future link changes",
+                events.size(), compacted.size(), now, dropped);
+        restore(now);
+    }
+
+    private void restore(double now) {
+        Map<Double, List<Link>> linksToRestore = new TreeMap<>();
+        for (Map.Entry<Link, TreeMap<Double, Double>> entry : changesOfLink.entrySet()) {
+            Map.Entry<Double, Double> change = entry.getValue().floorEntry(now);
+            if (change != null && entry.getKey().getFreespeed(now) != change.getValue()) {
+                linksToRestore.computeIfAbsent(change.getValue(), k -> new ArrayList<>()).add(entry.getKey());
+            }
+        }
+        for (Map.Entry<Double, List<Link>> entry : linksToRestore.entrySet()) {
+            networkSink.apply(now, entry.getKey(), entry.getValue());
+            log.warn("Restored freespeed {} on {} links after compacting network change events at time {}",
+                    entry.getKey(), entry.getValue().size(), now);
+        }
+    }
+
+    private static boolean isAbsoluteFreespeedOnly(NetworkChangeEvent event) {
+        return event.getFreespeedChange() != null
+                && event.getFreespeedChange().getType() == NetworkChangeEvent.ChangeType.ABSOLUTE_IN_SI_UNITS
+                && event.getFlowCapacityChange() == null
+                && event.getLanesChange() == null;
+    }
+}
@@ -38,8 +38,16 @@ public final class ReplanDriveToDefaultActionHandlerV2 implements BDIActionHandl
 	private static final Logger log = LoggerFactory.getLogger(ReplanDriveToDefaultActionHandlerV2.class ) ;
 
 	private final MATSimModel model;
+	private final ReplanningCoalescer coalescer;
 	public ReplanDriveToDefaultActionHandlerV2(MATSimModel model ) {
+		this(model, null);
+	}
+	/**
+	 * @param coalescer keeps only the latest replanning of each agent per step, or null to replan every time
+	 */
+	public ReplanDriveToDefaultActionHandlerV2(MATSimModel model, ReplanningCoalescer coalescer ) {
 		this.model = model;
+		this.coalescer = coalescer;
 	}
 	@Override
 	public ActionContent.State handle(String agentID, String actionID, Object[] args) {
@@ -55,11 +63,23 @@ public final class ReplanDriveToDefaultActionHandlerV2 implements BDIActionHandl
 		Gbl.assertIf( args.length >= 1 );
 		Gbl.assertIf( args[0] instanceof Constants.EvacRoutingMode) ; // could have some default
 		Constants.EvacRoutingMode routingMode = (Constants.EvacRoutingMode)args[0];
+		if (coalescer != null) {
+			coalescer.submit(agentID, ReplanningCoalescer.Kind.CURRENT_TRIP, () -> {
+				if (model.getMobsimAgentFromIdString(agentID) != null) {
+					replanCurrentTrip(mobsimAgent, routingMode);
+				}
+			});
+		} else {
+			replanCurrentTrip(mobsimAgent, routingMode);
+		}
+		return ActionContent.State.PASSED;
+	}
+
+	private void replanCurrentTrip(MobsimAgent mobsimAgent, Constants.EvacRoutingMode routingMode) {
 		PlanElement currentPlanElement = WithinDayAgentUtils.getCurrentPlanElement(mobsimAgent);
 
 		if (currentPlanElement instanceof Leg) { // Check if the current plan element is a Leg
 			model.getReplanner().editTrips().replanCurrentTrip(mobsimAgent, 0.0, routingMode.name());
 		}
-		return ActionContent.State.PASSED;
 	}
 }
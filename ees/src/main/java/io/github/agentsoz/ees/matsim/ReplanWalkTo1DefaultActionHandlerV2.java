@@ -39,8 +39,16 @@ public final class ReplanWalkTo1DefaultActionHandlerV2 implements BDIActionHandl
 	private static final Logger log = LoggerFactory.getLogger(ReplanWalkTo1DefaultActionHandlerV2.class ) ;
 
 	private final MATSimModel model;
+	private final ReplanningCoalescer coalescer;
 	public ReplanWalkTo1DefaultActionHandlerV2(MATSimModel model ) {
+		this(model, null);
+	}
+	/**
+	 * @param coalescer keeps only the latest replanning of each agent per step, or null to replan every time
+	 */
+	public ReplanWalkTo1DefaultActionHandlerV2(MATSimModel model, ReplanningCoalescer coalescer ) {
 		this.model = model;
+		this.coalescer = coalescer;
 	}
 	@Override
 
@@ -61,6 +69,20 @@ public final class ReplanWalkTo1DefaultActionHandlerV2 implements BDIActionHandl
 		Gbl.assertIf(args[0] instanceof Constants.EvacRoutingMode);
 		Constants.EvacRoutingMode routingMode = (Constants.EvacRoutingMode) args[0];
 
+		if (coalescer != null) {
+			coalescer.submit(agentID, ReplanningCoalescer.Kind.CURRENT_TRIP, () -> {
+				if (model.getMobsimAgentFromIdString(agentID) != null) {
+					replanCurrentTrip(agentID, mobsimAgent, routingMode);
+				}
+			});
+		} else {
+			replanCurrentTrip(agentID, mobsimAgent, routingMode);
+		}
+
+		return ActionContent.State.PASSED;
+	}
+
+	private void replanCurrentTrip(String agentID, MobsimAgent mobsimAgent, Constants.EvacRoutingMode routingMode) {
 		// Retrieve the current plan element
 		PlanElement currentPlanElement = WithinDayAgentUtils.getCurrentPlanElement(mobsimAgent);
 		System.out.println("[DEBUG] Agent " + agentID + " Current Plan Element: " +
@@ -85,8 +107,6 @@ public final class ReplanWalkTo1DefaultActionHandlerV2 implements BDIActionHandl
 		} else {
 			System.out.println("[WARNING] Agent " + agentID + " is not in a LEG; skipping trip replanning.");
 		}
-
-		return ActionContent.State.PASSED;
 	}
 
 }
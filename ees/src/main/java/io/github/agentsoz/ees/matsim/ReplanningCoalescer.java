@@ -0,0 +1,148 @@
+package io.github.agentsoz.ees.matsim;
+
+/*
+ * #%L
+ * Emergency Evacuation Simulator
+ * %%
+ * Copyright (C) 2014 - 2025 by its authors. See AUTHORS file.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+
+import org.matsim.core.mobsim.framework.events.MobsimBeforeCleanupEvent;
+import org.matsim.core.mobsim.framework.events.MobsimBeforeSimStepEvent;
+import org.matsim.core.mobsim.framework.listeners.MobsimBeforeCleanupListener;
+import org.matsim.core.mobsim.framework.listeners.MobsimBeforeSimStepListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+
+/**
+ * Queue in front of the replanning action handlers that keeps only the latest replanning
+ * intent of each agent, and carries it out once, at the start of the next sim step.
+ * <p>
+ * Congestion and blocked link events, and the BDI reactions to them, can ask for the same
+ * agent to be replanned several times within a step, and each request would otherwise redo
+ * the plan surgery and routing. A newer intent replaces an older one, except that a request
+ * to replan just the current trip is dropped if a new destination is already pending, since
+ * that replans the trip anyway. Intents can also be rate limited, per agent and per step, in
+ * which case they wait in the queue (and may be replaced) until they are allowed through.
+ */
+public class ReplanningCoalescer implements MobsimBeforeSimStepListener, MobsimBeforeCleanupListener {
+
+    private static final Logger log = LoggerFactory.getLogger(ReplanningCoalescer.class);
+
+    public enum Kind {
+        /** replans the trip the agent is on */
+        CURRENT_TRIP,
+        /** replaces the rest of the plan with a trip to a new destination */
+        NEW_DESTINATION
+    }
+
+    private static final class Intent {
+        final Kind kind;
+        final Runnable replan;
+
+        Intent(Kind kind, Runnable replan) {
+            this.kind = kind;
+            this.replan = replan;
+        }
+    }
+
+    private final double minIntervalInSecs;
+    private final int maxPerStep;
+    private final ReplanningExecutor executor;
+    private final Map<String, Intent> pending = new LinkedHashMap<>();
+    private final Map<String, Double> lastReplanTimes = new HashMap<>();
+    private int coalesced = 0;
+
+    /**
+     * @param minIntervalInSecs least time between two replans of the same agent, or 0 for no limit
+     * @param maxPerStep most replans carried out per step, or 0 for no limit
+     * @param executor batches the replanning that the intents submit, or null
+     */
+    public ReplanningCoalescer(double minIntervalInSecs, int maxPerStep, ReplanningExecutor executor) {
+        this.minIntervalInSecs = minIntervalInSecs;
+        this.maxPerStep = maxPerStep;
+        this.executor = executor;
+    }
+
+    /**
+     * Queues the replanning intent of the given agent, replacing any it has pending
+     */
+    public synchronized void submit(String agentId, Kind kind, Runnable replan) {
+        Intent previous = pending.get(agentId);
+        if (previous != null) {
+            coalesced++;
+            if (previous.kind == Kind.NEW_DESTINATION && kind == Kind.CURRENT_TRIP) {
+                return;
+            }
+        }
+        pending.put(agentId, new Intent(kind, replan));
+    }
+
+    /**
+     * Carries out the pending intents that the rate limits allow
+     */
+    public void flush(double now) {
+        List<Intent> due = new ArrayList<>();
+        int deferred = 0;
+        synchronized (this) {
+            Iterator<Map.Entry<String, Intent>> it = pending.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<String, Intent> entry = it.next();
+                Double lastReplanTime = lastReplanTimes.get(entry.getKey());
+                if ((maxPerStep > 0 && due.size() >= maxPerStep)
+                        || (lastReplanTime != null && now < lastReplanTime + minIntervalInSecs)) {
+                    deferred++;
+                    continue;
+                }
+                due.add(entry.getValue());
+                if (minIntervalInSecs > 0) {
+                    lastReplanTimes.put(entry.getKey(), now);
+                }
+                it.remove();
+            }
+        }
+        for (Intent intent : due) {
+            intent.replan.run();
+        }
+        if (executor != null) {
+            executor.flush();
+        }
+        if (!due.isEmpty() || deferred > 0) {
+            log.debug("Replanned {} agents at time {} ({} deferred by rate limits, {} coalesced so far)",
+                    due.size(), now, deferred, coalesced);
+        }
+    }
+
+    @Override
+    public void notifyMobsimBeforeSimStep(MobsimBeforeSimStepEvent e) {
+        flush(e.getSimulationTime());
+    }
+
+    @Override
+    public void notifyMobsimBeforeCleanup(MobsimBeforeCleanupEvent e) {
+        synchronized (this) {
+            if (!pending.isEmpty()) {
+                log.info("Dropping {} replanning intents at the end of the simulation", pending.size());
+                pending.clear();
+            }
+            log.info("Coalesced {} replanning intents in total", coalesced);
+        }
+    }
+}
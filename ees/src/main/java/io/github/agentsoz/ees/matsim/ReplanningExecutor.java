@@ -0,0 +1,227 @@
+package io.github.agentsoz.ees.matsim;
+
+/*
+ * #%L
+ * Emergency Evacuation Simulator
+ * %%
+ * Copyright (C) 2014 - 2025 by its authors. See AUTHORS file.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+
+import io.github.agentsoz.bdimatsim.MATSimModel;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.api.core.v01.population.PlanElement;
+import org.matsim.core.mobsim.framework.HasPerson;
+import org.matsim.core.mobsim.framework.MobsimAgent;
+import org.matsim.core.mobsim.framework.events.MobsimAfterSimStepEvent;
+import org.matsim.core.mobsim.framework.events.MobsimBeforeCleanupEvent;
+import org.matsim.core.mobsim.framework.events.MobsimBeforeSimStepEvent;
+import org.matsim.core.mobsim.framework.listeners.MobsimAfterSimStepListener;
+import org.matsim.core.mobsim.framework.listeners.MobsimBeforeCleanupListener;
+import org.matsim.core.mobsim.framework.listeners.MobsimBeforeSimStepListener;
+import org.matsim.core.router.TripRouter;
+import org.matsim.facilities.FacilitiesUtils;
+import org.matsim.facilities.Facility;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Provider;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * Batches the DRIVETO and WALKTO1 replanning requests of a time step so that their expensive
+ * parts run in parallel.
+ * <p>
+ * Action handlers {@link #submit} their requests instead of replanning straight away. At the
+ * next flush (before or after the current sim step, whichever comes first) the destination
+ * links are resolved, and trips of agents that are waiting at an activity are routed, on a pool
+ * of worker threads with a trip router each. The plan edits themselves are then applied on the
+ * sim thread, one request at a time and in the order the requests were submitted, so the
+ * outcome does not depend on how the work was split between the threads.
+ */
+public class ReplanningExecutor implements
+        MobsimBeforeSimStepListener,
+        MobsimAfterSimStepListener,
+        MobsimBeforeCleanupListener {
+
+    private static final Logger log = LoggerFactory.getLogger(ReplanningExecutor.class);
+
+    /**
+     * Applies the plan edits of a request once its destination link (and possibly the trip to
+     * it) is known
+     */
+    public interface PlanEdit {
+        /**
+         * @param destinationLinkId link nearest to the requested destination
+         * @param trip route to the destination link, or null if the edit should route by itself
+         */
+        void apply(Id<Link> destinationLinkId, List<? extends PlanElement> trip);
+    }
+
+    private static final class Request {
+        final MobsimAgent agent;
+        final Coord destination;
+        final String routingMode;
+        final double departureTime;
+        final boolean routeAhead;
+        final PlanEdit edit;
+        Id<Link> destinationLinkId;
+        List<? extends PlanElement> trip;
+
+        Request(MobsimAgent agent, Coord destination, String routingMode, double departureTime,
+                boolean routeAhead, PlanEdit edit) {
+            this.agent = agent;
+            this.destination = destination;
+            this.routingMode = routingMode;
+            this.departureTime = departureTime;
+            this.routeAhead = routeAhead;
+            this.edit = edit;
+        }
+    }
+
+    private final MATSimModel model;
+    private final int numberOfThreads;
+    private final NearestLinkResolver linkResolver;
+    private final List<Request> requests = new ArrayList<>();
+    private ExecutorService pool;
+    private ThreadLocal<TripRouter> tripRouters;
+    private Provider<TripRouter> tripRouterProvider;
+
+    public ReplanningExecutor(MATSimModel model, int numberOfThreads, NearestLinkResolver linkResolver) {
+        this.model = model;
+        this.numberOfThreads = numberOfThreads;
+        this.linkResolver = linkResolver;
+    }
+
+    @Inject
+    void setTripRouterProvider(Provider<TripRouter> tripRouterProvider) {
+        this.tripRouterProvider = tripRouterProvider;
+    }
+
+    /**
+     * Queues a replanning request for the next flush
+     *
+     * @param agent the agent to replan
+     * @param destination coordinate of the new destination
+     * @param routingMode routing mode of the trip to the destination
+     * @param departureTime when the agent is expected to leave for the destination
+     * @param routeAhead whether the trip should be routed ahead, in which case it is only
+     *                   passed on to the edit if the agent is (still) at a real activity
+     * @param edit the plan edits to apply
+     */
+    public synchronized void submit(MobsimAgent agent, Coord destination, String routingMode,
+                                    double departureTime, boolean routeAhead, PlanEdit edit) {
+        routeAhead = routeAhead && model.getReplanner().editPlans().isAtRealActivity(agent);
+        requests.add(new Request(agent, destination, routingMode, departureTime, routeAhead, edit));
+    }
+
+    /**
+     * Processes all queued requests
+     */
+    public void flush() {
+        final List<Request> batch;
+        synchronized (this) {
+            if (requests.isEmpty()) {
+                return;
+            }
+            batch = new ArrayList<>(requests);
+            requests.clear();
+        }
+        long start = System.currentTimeMillis();
+        final Network network = model.getScenario().getNetwork();
+        // first lookup builds the network quad tree, which must not happen concurrently
+        batch.get(0).destinationLinkId = linkResolver.getNearestLink(batch.get(0).destination).getId();
+
+        List<Future<?>> futures = new ArrayList<>(batch.size());
+        for (Request request : batch) {
+            futures.add(getPool().submit(() -> prepare(request, network)));
+        }
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            } catch (ExecutionException e) {
+                throw new RuntimeException("Could not prepare replanning request", e.getCause());
+            }
+        }
+        long prepared = System.currentTimeMillis();
+
+        for (Request request : batch) {
+            boolean useTrip = request.trip != null && model.getReplanner().editPlans().isAtRealActivity(request.agent);
+            request.edit.apply(request.destinationLinkId, useTrip ? request.trip : null);
+        }
+        log.debug("Replanned {} agents at time {} in {} ms ({} ms preparing on {} threads)",
+                batch.size(), model.getTime(), System.currentTimeMillis() - start, prepared - start, numberOfThreads);
+    }
+
+    private void prepare(Request request, Network network) {
+        if (request.destinationLinkId == null) {
+            request.destinationLinkId = linkResolver.getNearestLink(request.destination).getId();
+        }
+        if (!request.routeAhead || tripRouterProvider == null) {
+            return;
+        }
+        Link fromLink = network.getLinks().get(request.agent.getCurrentLinkId());
+        Link toLink = network.getLinks().get(request.destinationLinkId);
+        Facility from = FacilitiesUtils.wrapLinkAndCoord(fromLink.getId(), fromLink.getCoord());
+        Facility to = FacilitiesUtils.wrapLinkAndCoord(toLink.getId(), toLink.getCoord());
+        Person person = (request.agent instanceof HasPerson) ? ((HasPerson) request.agent).getPerson() : null;
+        double time = Math.max(model.getTime(), request.departureTime);
+        request.trip = tripRouters.get().calcRoute(request.routingMode, from, to, time, person,
+                (person != null) ? person.getAttributes() : null);
+    }
+
+    private ExecutorService getPool() {
+        if (pool == null) {
+            tripRouters = ThreadLocal.withInitial(() -> tripRouterProvider.get());
+            pool = Executors.newFixedThreadPool(numberOfThreads, runnable -> {
+                Thread thread = new Thread(runnable, "ReplanningExecutor");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return pool;
+    }
+
+    @Override
+    public void notifyMobsimBeforeSimStep(MobsimBeforeSimStepEvent e) {
+        flush();
+    }
+
+    @Override
+    public void notifyMobsimAfterSimStep(MobsimAfterSimStepEvent e) {
+        flush();
+    }
+
+    @Override
+    public void notifyMobsimBeforeCleanup(MobsimBeforeCleanupEvent e) {
+        flush();
+        if (pool != null) {
+            pool.shutdown();
+            pool = null;
+        }
+    }
+}
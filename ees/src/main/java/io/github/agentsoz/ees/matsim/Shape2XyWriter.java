@@ -22,6 +22,7 @@ package io.github.agentsoz.ees.matsim;
  * #L%
  */
 
+import io.github.agentsoz.ees.util.HazardRaster;
 import org.locationtech.jts.geom.Coordinate;
 import org.locationtech.jts.geom.Envelope;
 import org.locationtech.jts.geom.Geometry;
@@ -34,6 +35,7 @@ import org.slf4j.LoggerFactory;
 import java.io.File;
 import java.io.PrintStream;
 import java.net.MalformedURLException;
+import java.util.function.Supplier;
 
 class Shape2XyWriter {
 	private static final Logger log = LoggerFactory.getLogger( Shape2XyWriter.class);
@@ -41,11 +43,29 @@ class Shape2XyWriter {
 	private final Config config;
 	private final String name;
 	private PrintStream writer;
+
+	private interface Shape {
+		boolean contains(double x, double y);
+	}
+
 	Shape2XyWriter( Config config1, final String name ) {
 		config = config1 ;
 		this.name = name;
 	}
 	void write(double now, Geometry fire) {
+		write(now, fire.getEnvelopeInternal(),
+				(x, y) -> fire.contains(new GeometryFactory().createPoint(new Coordinate(x, y))),
+				() -> fire.getCentroid().getCoordinate());
+	}
+
+	void write(double now, HazardRaster fire) {
+		if (fire.isEmpty()) {
+			return;
+		}
+		write(now, fire.getEnvelope(), fire::contains, fire::getCentroid);
+	}
+
+	private void write(double now, Envelope fireEnvelope, Shape fire, Supplier<Coordinate> centroid) {
 		if ( writer == null) {
 			final String filename = config.controler().getOutputDirectory() + "/output_" + name + "Coords.txt.gz";
 			log.info("writing " + name + " data to " + filename);
@@ -59,13 +79,13 @@ class Shape2XyWriter {
 		// can't do this earlier since the output directories are not yet prepared by the controler.  kai, dec'17
 		
 		Envelope env = new Envelope();
-		env.expandToInclude(fire.getEnvelopeInternal());
+		env.expandToInclude(fireEnvelope);
 		double gridsize = 200.;
 		boolean atLeastOnePixel = false;
 		StringBuilder str = new StringBuilder();
 		for (double yy = env.getMinY(); yy <= env.getMaxY(); yy += gridsize) {
 			for (double xx = env.getMinX(); xx <= env.getMaxX(); xx += gridsize) {
-				if (fire.contains(new GeometryFactory().createPoint(new Coordinate(xx, yy)))) {
+				if (fire.contains(xx, yy)) {
 					str.append(now);
 					str.append("\t");
 					str.append(xx);
@@ -80,7 +100,7 @@ class Shape2XyWriter {
 		if(atLeastOnePixel) {
 			writer.print(str);
 		} else {
-			final String strn = now + "\t" + fire.getCentroid().getX() + "\t" + fire.getCentroid().getY();
+			final String strn = now + "\t" + centroid.get().x + "\t" + centroid.get().y;
 			writer.println(strn);
 		}
 	}
@@ -0,0 +1,158 @@
+package io.github.agentsoz.ees.matsim;
+
+/*
+ * #%L
+ * Emergency Evacuation Simulator
+ * %%
+ * Copyright (C) 2014 - 2025 by its authors. See AUTHORS file.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.Scenario;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.core.mobsim.framework.events.MobsimAfterSimStepEvent;
+import org.matsim.core.mobsim.framework.events.MobsimInitializedEvent;
+import org.matsim.core.mobsim.framework.listeners.MobsimAfterSimStepListener;
+import org.matsim.core.mobsim.framework.listeners.MobsimInitializedListener;
+import org.matsim.core.network.NetworkChangeEvent;
+import org.matsim.core.router.util.TravelTime;
+import org.matsim.vehicles.Vehicle;
+import org.matsim.withinday.trafficmonitoring.WithinDayTravelTime;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+
+/**
+ * Congested travel times for the routers, taken from {@link WithinDayTravelTime} as an immutable
+ * snapshot of all links and swapped in atomically every so many seconds of simulation time.
+ * <p>
+ * The within-day travel times are updated from events while the QSim runs, so routers that
+ * read them directly must not run alongside the mobsim. Routers reading this snapshot instead
+ * only ever see a complete set of travel times, can run on any number of threads, and never
+ * touch the live estimates. The snapshot is also retaken as soon as the network changes, as
+ * told by the given epoch, so that speed reductions are not missed for a whole interval.
+ * <p>
+ * What is kept per link is the congestion factor, i.e., the live travel time over the free speed
+ * travel time at the time of the snapshot, and a query scales the free speed travel time at the
+ * queried time by it. Speed changes that take effect after the snapshot are therefore seen by
+ * routers planning ahead. Until the first snapshot, links take their free speed travel time.
+ * <p>
+ * Speed changes must be passed on through {@link #addNetworkChangeEvent(NetworkChangeEvent)},
+ * since with the snapshot bound the replanner no longer sees the within-day travel times.
+ */
+public class TravelTimeSnapshot implements TravelTime, MobsimInitializedListener, MobsimAfterSimStepListener {
+
+    private static final Logger log = LoggerFactory.getLogger(TravelTimeSnapshot.class);
+
+    private static final double[] NO_FACTORS = new double[0];
+
+    private final AtomicReference<double[]> congestionFactors = new AtomicReference<>(NO_FACTORS);
+    private final double intervalInSecs;
+    private final LongSupplier networkChangeEpoch;
+    private TravelTime liveTravelTime;
+    private Consumer<NetworkChangeEvent> liveChanges;
+    private Network network;
+    private double lastSnapshotTime = Double.NEGATIVE_INFINITY;
+    private long lastSnapshotEpoch;
+
+    public TravelTimeSnapshot(double intervalInSecs, LongSupplier networkChangeEpoch) {
+        if (intervalInSecs <= 0) {
+            throw new IllegalArgumentException("Travel time snapshot interval must be positive, found " + intervalInSecs);
+        }
+        this.intervalInSecs = intervalInSecs;
+        this.networkChangeEpoch = networkChangeEpoch;
+    }
+
+    @Inject
+    void setLiveTravelTime(WithinDayTravelTime liveTravelTime, Scenario scenario) {
+        setLiveTravelTime(liveTravelTime, liveTravelTime::addNetworkChangeEvent, scenario.getNetwork());
+    }
+
+    /**
+     * Sets the live travel times to snapshot, and where to pass on the network changes they must see
+     */
+    void setLiveTravelTime(TravelTime liveTravelTime, Consumer<NetworkChangeEvent> liveChanges, Network network) {
+        this.liveTravelTime = liveTravelTime;
+        this.liveChanges = liveChanges;
+        this.network = network;
+    }
+
+    @Override
+    public double getLinkTravelTime(Link link, double time, Person person, Vehicle vehicle) {
+        double[] snapshot = congestionFactors.get();
+        int index = link.getId().index();
+        double freespeedTravelTime = link.getLength() / link.getFreespeed(time);
+        return (index < snapshot.length) ? snapshot[index] * freespeedTravelTime : freespeedTravelTime;
+    }
+
+    /**
+     * Passes the change on to the live travel times, which are then snapshot again at the end of
+     * the current step
+     */
+    public void addNetworkChangeEvent(NetworkChangeEvent changeEvent) {
+        liveChanges.accept(changeEvent);
+        lastSnapshotTime = Double.NEGATIVE_INFINITY;
+    }
+
+    /**
+     * Passes on a change of the given link's freespeed from the given time
+     */
+    public void addFreespeedChange(Link link, double time, double speedInMpS) {
+        NetworkChangeEvent changeEvent = new NetworkChangeEvent(time);
+        changeEvent.setFreespeedChange(new NetworkChangeEvent.ChangeValue(
+                NetworkChangeEvent.ChangeType.ABSOLUTE_IN_SI_UNITS, speedInMpS));
+        changeEvent.addLink(link);
+        addNetworkChangeEvent(changeEvent);
+    }
+
+    @Override
+    public void notifyMobsimInitialized(MobsimInitializedEvent e) {
+        lastSnapshotTime = Double.NEGATIVE_INFINITY;
+    }
+
+    @Override
+    public void notifyMobsimAfterSimStep(MobsimAfterSimStepEvent e) {
+        double now = e.getSimulationTime();
+        long epoch = networkChangeEpoch.getAsLong();
+        if (now < lastSnapshotTime + intervalInSecs && epoch == lastSnapshotEpoch) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        double[] next = new double[Id.getNumberOfIds(Link.class)];
+        Arrays.fill(next, 1.);
+        for (Link link : network.getLinks().values()) {
+            double freespeedTravelTime = link.getLength() / link.getFreespeed(now);
+            double travelTime = liveTravelTime.getLinkTravelTime(link, now, null, null);
+            if (freespeedTravelTime > 0) {
+                next[link.getId().index()] = Math.max(1., travelTime / freespeedTravelTime);
+            }
+        }
+        congestionFactors.set(next);
+        lastSnapshotTime = now;
+        lastSnapshotEpoch = epoch;
+        log.debug("Took travel time snapshot of {} links at time {} in {} ms",
+                network.getLinks().size(), now, System.currentTimeMillis() - start);
+    }
+}
@@ -0,0 +1,332 @@
+package io.github.agentsoz.ees.matsim;
+
+/*
+ * #%L
+ * Emergency Evacuation Simulator
+ * %%
+ * Copyright (C) 2014 - 2025 by its authors. See AUTHORS file.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.Scenario;
+import org.matsim.api.core.v01.population.Activity;
+import org.matsim.api.core.v01.population.Leg;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.api.core.v01.population.Plan;
+import org.matsim.api.core.v01.population.PlanElement;
+import org.matsim.core.mobsim.framework.HasPerson;
+import org.matsim.core.mobsim.framework.MobsimAgent;
+import org.matsim.core.mobsim.framework.events.MobsimAfterSimStepEvent;
+import org.matsim.core.mobsim.framework.events.MobsimBeforeCleanupEvent;
+import org.matsim.core.mobsim.framework.events.MobsimInitializedEvent;
+import org.matsim.core.mobsim.framework.listeners.MobsimAfterSimStepListener;
+import org.matsim.core.mobsim.framework.listeners.MobsimBeforeCleanupListener;
+import org.matsim.core.mobsim.framework.listeners.MobsimInitializedListener;
+import org.matsim.core.mobsim.qsim.QSim;
+import org.matsim.core.mobsim.qsim.agents.WithinDayAgentUtils;
+import org.matsim.core.router.TripRouter;
+import org.matsim.core.router.TripStructureUtils;
+import org.matsim.core.router.TripStructureUtils.Trip;
+import org.matsim.facilities.FacilitiesUtils;
+import org.matsim.facilities.Facility;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Provider;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.LongSupplier;
+
+/**
+ * Routes trips that have no route yet ahead of their departure, so that agents leaving at the
+ * same time (such as at the evacuation peak) do not all have to be routed right then.
+ * <p>
+ * Trips are registered with the origin activity that they start at. Once that activity is due
+ * to end within the look-ahead window, the trip is routed on a worker thread. The trips that
+ * become due are routed in parallel at the end of each sim step, which then waits for all of
+ * them, so the workers never run alongside the QSim or other mobsim listeners that update the
+ * network, the penalties or the travel times. The end time of the origin activity is read again
+ * just before routing, so trips whose departure has moved are queued again or dropped.
+ * <p>
+ * At departure, {@link EvacAgent} asks for the route with {@link #take}. A route is only handed
+ * out if the trip is still the one that was routed, for the departure time it was routed for,
+ * and the routing epoch (which moves on with every penalty update and network change) is still
+ * the one it was routed under; otherwise the agent routes the trip itself, as it would without
+ * this service.
+ */
+public class TripPreRouter implements
+        MobsimInitializedListener,
+        MobsimAfterSimStepListener,
+        MobsimBeforeCleanupListener {
+
+    private static final Logger log = LoggerFactory.getLogger(TripPreRouter.class);
+
+    private static final class Pending {
+        final MobsimAgent agent;
+        final Activity origin;
+        final Activity destination;
+        final String mainMode;
+        double departureTime;
+        Future<List<? extends PlanElement>> route;
+        long epoch;
+
+        Pending(MobsimAgent agent, Activity origin, Activity destination, String mainMode, double departureTime) {
+            this.agent = agent;
+            this.origin = origin;
+            this.destination = destination;
+            this.mainMode = mainMode;
+            this.departureTime = departureTime;
+        }
+    }
+
+    /**
+     * Routes one trip, on a worker thread
+     */
+    interface TripRouting {
+        List<? extends PlanElement> route(MobsimAgent agent, String mainMode, Activity origin, Activity destination,
+                                          double departureTime);
+    }
+
+    private final int numberOfThreads;
+    private final double lookAheadInSecs;
+    private final LongSupplier routingEpoch;
+    private final PriorityQueue<Pending> waiting =
+            new PriorityQueue<>(Comparator.comparingDouble((Pending p) -> p.departureTime));
+    private final Map<Id<Person>, Pending> pending = new HashMap<>();
+    private final List<Future<?>> outstanding = new ArrayList<>();
+    private ExecutorService pool;
+    private ThreadLocal<TripRouter> tripRouters;
+    private Provider<TripRouter> tripRouterProvider;
+    private Scenario scenario;
+    private TripRouting routing = this::routeWithTripRouter;
+    private long lastEpoch = Long.MIN_VALUE;
+    private int taken = 0;
+    private int missed = 0;
+
+    /**
+     * @param numberOfThreads worker threads to route on; 0 disables pre-routing
+     * @param lookAheadInSecs how long before departure to route a trip; 0 disables pre-routing
+     * @param routingEpoch changes whenever previously computed routes may no longer be the best
+     */
+    public TripPreRouter(int numberOfThreads, double lookAheadInSecs, LongSupplier routingEpoch) {
+        this.numberOfThreads = numberOfThreads;
+        this.lookAheadInSecs = lookAheadInSecs;
+        this.routingEpoch = routingEpoch;
+    }
+
+    @Inject
+    void setTripRouterProvider(Provider<TripRouter> tripRouterProvider, Scenario scenario) {
+        this.tripRouterProvider = tripRouterProvider;
+        this.scenario = scenario;
+    }
+
+    /**
+     * Routes the trips with the given routing rather than with the injected trip routers
+     */
+    void setTripRouting(TripRouting routing) {
+        this.routing = routing;
+    }
+
+    public boolean isEnabled() {
+        return numberOfThreads > 0 && lookAheadInSecs > 0;
+    }
+
+    /**
+     * Registers the trip starting at the given activity of the agent's plan for pre-routing, if
+     * it still needs a route. Must be called from the sim thread.
+     */
+    public synchronized void register(MobsimAgent agent, Activity origin) {
+        if (!isEnabled() || origin.getEndTime().isUndefined()) {
+            return;
+        }
+        Plan plan = WithinDayAgentUtils.getModifiablePlan(agent);
+        Trip trip = TripStructureUtils.findTripStartingAtActivity(origin, plan);
+        if (trip == null || !needsRoute(trip)) {
+            return;
+        }
+        Pending p = new Pending(agent, origin, trip.getDestinationActivity(),
+                TripStructureUtils.identifyMainMode(trip.getTripElements()), origin.getEndTime().seconds());
+        Pending old = pending.put(agent.getId(), p);
+        if (old != null) {
+            if (old.route == null) {
+                waiting.remove(old);
+            } else {
+                old.route.cancel(false);
+            }
+        }
+        waiting.add(p);
+    }
+
+    /**
+     * Gets the route computed for the given trip, or null if there is none or it may be out of
+     * date. Must be called from the sim thread.
+     */
+    public synchronized List<? extends PlanElement> take(MobsimAgent agent, Trip trip) {
+        Pending p = pending.remove(agent.getId());
+        if (p == null) {
+            return null;
+        }
+        if (p.route == null) {
+            waiting.remove(p);
+        }
+        List<? extends PlanElement> route = null;
+        if (p.route != null && p.route.isDone() && !p.route.isCancelled()
+                && p.origin == trip.getOriginActivity() && p.destination == trip.getDestinationActivity()
+                && p.origin.getEndTime().isDefined() && p.origin.getEndTime().seconds() == p.departureTime
+                && p.epoch == routingEpoch.getAsLong()) {
+            try {
+                route = p.route.get();
+            } catch (InterruptedException | ExecutionException e) {
+                log.warn("Could not pre-route trip of agent {}; will route it at departure", agent.getId(), e);
+            }
+        }
+        if (route != null) {
+            taken++;
+        } else {
+            missed++;
+        }
+        return route;
+    }
+
+    private static boolean needsRoute(Trip trip) {
+        for (Leg leg : trip.getLegsOnly()) {
+            if (leg.getRoute() == null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void notifyMobsimInitialized(MobsimInitializedEvent e) {
+        if (!isEnabled()) {
+            return;
+        }
+        for (MobsimAgent agent : ((QSim) e.getQueueSimulation()).getAgents().values()) {
+            PlanElement current = WithinDayAgentUtils.getCurrentPlanElement(agent);
+            if (current instanceof Activity) {
+                register(agent, (Activity) current);
+            }
+        }
+        log.info("Registered {} trips for pre-routing", pending.size());
+    }
+
+    @Override
+    public void notifyMobsimAfterSimStep(MobsimAfterSimStepEvent e) {
+        if (!isEnabled()) {
+            return;
+        }
+        final double horizon = e.getSimulationTime() + lookAheadInSecs;
+        final long epoch = routingEpoch.getAsLong();
+        synchronized (this) {
+            if (epoch != lastEpoch) {
+                // re-route anything routed under an earlier epoch that has not left yet
+                for (Pending p : pending.values()) {
+                    if (p.route != null) {
+                        p.route.cancel(false);
+                        p.route = null;
+                        waiting.add(p);
+                    }
+                }
+                lastEpoch = epoch;
+            }
+            while (!waiting.isEmpty() && waiting.peek().departureTime <= horizon) {
+                Pending p = waiting.poll();
+                if (p.origin.getEndTime().isUndefined()) {
+                    pending.remove(p.agent.getId(), p); // no longer leaves at a known time
+                    continue;
+                }
+                if (p.origin.getEndTime().seconds() != p.departureTime) {
+                    p.departureTime = p.origin.getEndTime().seconds(); // moved since it was registered
+                    waiting.add(p);
+                    continue;
+                }
+                p.epoch = epoch;
+                p.route = getPool().submit(() -> route(p));
+                outstanding.add(p.route);
+            }
+        }
+        awaitOutstanding();
+    }
+
+    @Override
+    public void notifyMobsimBeforeCleanup(MobsimBeforeCleanupEvent e) {
+        awaitOutstanding();
+        if (pool != null) {
+            pool.shutdownNow();
+            pool = null;
+        }
+        if (isEnabled()) {
+            log.info("Pre-routed trips used at departure: {}; routed at departure instead: {}", taken, missed);
+        }
+        synchronized (this) {
+            pending.clear();
+            waiting.clear();
+            lastEpoch = Long.MIN_VALUE;
+        }
+        taken = 0;
+        missed = 0;
+    }
+
+    private void awaitOutstanding() {
+        List<Future<?>> futures;
+        synchronized (this) {
+            if (outstanding.isEmpty()) {
+                return;
+            }
+            futures = new ArrayList<>(outstanding);
+            outstanding.clear();
+        }
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (CancellationException | ExecutionException ignored) {
+                // reported (or not needed) when the route is taken
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private List<? extends PlanElement> route(Pending p) {
+        return routing.route(p.agent, p.mainMode, p.origin, p.destination, p.departureTime);
+    }
+
+    private List<? extends PlanElement> routeWithTripRouter(MobsimAgent agent, String mainMode, Activity origin,
+                                                            Activity destination, double departureTime) {
+        Facility from = FacilitiesUtils.toFacility(origin, scenario.getActivityFacilities());
+        Facility to = FacilitiesUtils.toFacility(destination, scenario.getActivityFacilities());
+        Person person = (agent instanceof HasPerson) ? ((HasPerson) agent).getPerson() : null;
+        return tripRouters.get().calcRoute(mainMode, from, to, departureTime, person,
+                (person != null) ? person.getAttributes() : null);
+    }
+
+    private ExecutorService getPool() {
+        if (pool == null) {
+            tripRouters = ThreadLocal.withInitial(() -> tripRouterProvider.get());
+            pool = Executors.newFixedThreadPool(numberOfThreads, runnable -> {
+                Thread thread = new Thread(runnable, "TripPreRouter");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return pool;
+    }
+}
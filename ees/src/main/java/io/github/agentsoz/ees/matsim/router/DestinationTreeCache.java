@@ -0,0 +1,235 @@
+package io.github.agentsoz.ees.matsim.router;
+
+/*
+ * #%L
+ * Emergency Evacuation Simulator
+ * %%
+ * Copyright (C) 2014 - 2025 by its authors. See AUTHORS file.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+
+import io.github.agentsoz.ees.matsim.EvacTravelDisutility;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.core.router.util.LeastCostPathCalculator.Path;
+import org.matsim.core.router.util.TravelDisutility;
+import org.matsim.core.router.util.TravelTime;
+import org.matsim.vehicles.Vehicle;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.LongSupplier;
+
+/**
+ * Cache of reverse shortest path trees, each rooted at a destination node, shared by all
+ * {@link EvacRoutingAlgorithm}s of a factory. When many agents are sent to the same place at
+ * about the same time, one backward search serves all of them, and each route is then just a
+ * walk down the tree.
+ * <p>
+ * A tree is computed with the link costs at the start of its time slot, and is dropped when the
+ * slot ends, when new hazard penalties are published, or when the network change epoch moves on,
+ * whichever comes first. Trees are only shared between routers with the same graph, travel time
+ * and penalty field; the least recently used tree is evicted once the cache is full.
+ */
+public final class DestinationTreeCache {
+
+    private static final Logger log = LoggerFactory.getLogger(DestinationTreeCache.class);
+
+    private final int maxTrees;
+    private final double slotInSecs;
+    private final LongSupplier networkChangeEpoch;
+    private final Map<Key, CompletableFuture<Tree>> trees;
+
+    /**
+     * @param maxTrees maximum number of trees to keep
+     * @param slotInSecs how long a tree is used for before its costs are considered stale
+     * @param networkChangeEpoch changes whenever network change events have been added
+     */
+    public DestinationTreeCache(int maxTrees, double slotInSecs, LongSupplier networkChangeEpoch) {
+        this.maxTrees = maxTrees;
+        this.slotInSecs = slotInSecs;
+        this.networkChangeEpoch = networkChangeEpoch;
+        this.trees = new LinkedHashMap<Key, CompletableFuture<Tree>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, CompletableFuture<Tree>> eldest) {
+                return size() > DestinationTreeCache.this.maxTrees;
+            }
+        };
+    }
+
+    /**
+     * Gets the route to the target by walking down the tree rooted at it, computing the tree
+     * first if there is no fresh one. Returns null if the tree cannot be used, in which case the
+     * caller should search as usual.
+     */
+    Path route(RoutingGraph graph, TravelDisutility travelDisutility, TravelTime travelTime,
+               int source, int target, double starttime, Person person, Vehicle vehicle) {
+        Tree tree = getTree(graph, travelDisutility, travelTime, target, starttime);
+        if (tree == null) {
+            return null;
+        }
+        List<Node> nodes = new ArrayList<>();
+        List<Link> links = new ArrayList<>();
+        double time = starttime;
+        double cost = 0;
+        int node = source;
+        nodes.add(graph.nodes[node]);
+        while (node != target) {
+            int e = tree.nextEdge[node];
+            if (e < 0 || links.size() > graph.getNumberOfNodes()) {
+                return null; // not reachable in this tree
+            }
+            Link link = graph.links[e];
+            cost += (tree.penalties != null) ?
+                    ((EvacTravelDisutility) travelDisutility).getLinkTravelDisutility(tree.penalties, link, time, person, vehicle) :
+                    travelDisutility.getLinkTravelDisutility(link, time, person, vehicle);
+            time += travelTime.getLinkTravelTime(link, time, person, vehicle);
+            links.add(link);
+            node = graph.edgeTo[e];
+            nodes.add(graph.nodes[node]);
+        }
+        return new Path(nodes, links, time - starttime, cost);
+    }
+
+    /**
+     * Makes sure there is a fresh tree rooted at the given node, e.g., ahead of a batch of route
+     * requests to that destination
+     */
+    void prepare(RoutingGraph graph, TravelDisutility travelDisutility, TravelTime travelTime,
+                 int target, double time) {
+        getTree(graph, travelDisutility, travelTime, target, time);
+    }
+
+    private Tree getTree(RoutingGraph graph, TravelDisutility travelDisutility, TravelTime travelTime,
+                         int target, double time) {
+        final double[] penalties = (travelDisutility instanceof EvacTravelDisutility) ?
+                ((EvacTravelDisutility) travelDisutility).getPenaltyField().getSnapshot() : null;
+        final Key key = new Key(graph, travelTime,
+                (penalties != null) ? ((EvacTravelDisutility) travelDisutility).getPenaltyField() : travelDisutility,
+                target);
+        final long slot = (long) Math.floor(time / slotInSecs);
+        final long epoch = networkChangeEpoch.getAsLong();
+
+        CompletableFuture<Tree> future;
+        boolean build = false;
+        synchronized (trees) {
+            future = trees.get(key);
+            if (future == null || (future.isDone() && !future.join().isFreshFor(penalties, slot, epoch))) {
+                future = new CompletableFuture<>();
+                trees.put(key, future);
+                build = true;
+            }
+        }
+        if (build) {
+            try {
+                future.complete(new Tree(graph, travelDisutility, penalties, target, slot, epoch));
+            } catch (RuntimeException e) {
+                future.completeExceptionally(e);
+                synchronized (trees) {
+                    trees.remove(key, future);
+                }
+                throw e;
+            }
+        }
+        Tree tree = future.join();
+        // (a tree for older costs may still have been in the making when we looked)
+        return tree.isFreshFor(penalties, slot, epoch) ? tree : null;
+    }
+
+    private final class Tree {
+        final double[] penalties;
+        final long slot;
+        final long epoch;
+        final int[] nextEdge; // of each node on its way to the root, or -1
+
+        Tree(RoutingGraph graph, TravelDisutility travelDisutility, double[] penalties, int root, long slot, long epoch) {
+            long start = System.currentTimeMillis();
+            this.penalties = penalties;
+            this.slot = slot;
+            this.epoch = epoch;
+            final double time = slot * slotInSecs;
+            final int n = graph.getNumberOfNodes();
+            nextEdge = new int[n];
+            Arrays.fill(nextEdge, -1);
+            double[] dist = new double[n];
+            Arrays.fill(dist, Double.POSITIVE_INFINITY);
+            boolean[] settled = new boolean[n];
+            NodeMinHeap heap = new NodeMinHeap(n);
+            dist[root] = 0;
+            heap.insertOrDecrease(root, 0);
+            while (!heap.isEmpty()) {
+                int v = heap.poll();
+                settled[v] = true;
+                for (int k = graph.inStart[v]; k < graph.inStart[v + 1]; k++) {
+                    int e = graph.inEdges[k];
+                    int u = graph.edgeFrom[e];
+                    if (settled[u]) {
+                        continue;
+                    }
+                    Link link = graph.links[e];
+                    double cost = (penalties != null) ?
+                            ((EvacTravelDisutility) travelDisutility).getLinkTravelDisutility(penalties, link, time, null, null) :
+                            travelDisutility.getLinkTravelDisutility(link, time, null, null);
+                    double du = dist[v] + cost;
+                    if (du < dist[u]) {
+                        dist[u] = du;
+                        nextEdge[u] = e;
+                        heap.insertOrDecrease(u, du);
+                    }
+                }
+            }
+            log.debug("Computed shortest path tree to node {} for time {} in {} ms",
+                    graph.nodes[root].getId(), time, System.currentTimeMillis() - start);
+        }
+
+        boolean isFreshFor(double[] currentPenalties, long currentSlot, long currentEpoch) {
+            return penalties == currentPenalties && slot == currentSlot && epoch == currentEpoch;
+        }
+    }
+
+    private static final class Key {
+        private final Object graph;
+        private final Object travelTime;
+        private final Object costs;
+        private final int target;
+
+        Key(Object graph, Object travelTime, Object costs, int target) {
+            this.graph = graph;
+            this.travelTime = travelTime;
+            this.costs = costs;
+            this.target = target;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return graph == other.graph && travelTime == other.travelTime && costs == other.costs && target == other.target;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(System.identityHashCode(graph), System.identityHashCode(travelTime),
+                    System.identityHashCode(costs), target);
+        }
+    }
+}
@@ -0,0 +1,197 @@
+package io.github.agentsoz.ees.matsim.router;
+
+/*
+ * #%L
+ * Emergency Evacuation Simulator
+ * %%
+ * Copyright (C) 2014 - 2025 by its authors. See AUTHORS file.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+
+import org.matsim.api.core.v01.TransportMode;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.core.utils.geometry.CoordUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Answers driving distance queries from many agents to a few destinations.
+ * <p>
+ * The distance is the length of the fastest car route at the free speeds in force at the time
+ * of the query (so including network change events, but not congestion or hazard penalties),
+ * counting the destination link but not the link the agent is on, as for a MATSim network route.
+ * It can therefore differ from the length of the route that an agent would actually be given.
+ * Rather than searching once per query, a reverse shortest path tree of these free speed routes
+ * is grown from each destination the first time it is asked about in a time step, and every other
+ * query to it in that step is a lookup. Trees are regrown in later steps, or once new network
+ * change events have come in. Only the trees of the destinations asked about most recently are
+ * kept, evicting the least recently used ones.
+ * <p>
+ * Callers that only want to know whether a destination is within some distance can pass that
+ * threshold, in which case a lower bound (the straight line distance, or a landmark bound on
+ * route lengths, whichever is larger) is returned without growing a tree if it already exceeds
+ * the threshold.
+ * <p>
+ * Safe to use from several threads.
+ */
+public final class DrivingDistanceOracle {
+
+    private static final Logger log = LoggerFactory.getLogger(DrivingDistanceOracle.class);
+
+    // trees are cheap to regrow, so keep only those of the destinations asked about most recently
+    static final int DEFAULT_MAX_TREES = 256;
+
+    private final RoutingGraph graph;
+    private final Landmarks lengthBounds;
+    private final Map<Integer, Tree> trees;
+
+    public DrivingDistanceOracle(Network network, int numberOfLandmarks) {
+        this(network, numberOfLandmarks, DEFAULT_MAX_TREES);
+    }
+
+    DrivingDistanceOracle(Network network, int numberOfLandmarks, int maxTrees) {
+        long start = System.currentTimeMillis();
+        trees = new LinkedHashMap<Integer, Tree>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Tree> eldest) {
+                return size() > maxTrees;
+            }
+        };
+        graph = new RoutingGraph(network);
+        double[] lengths = new double[graph.getNumberOfLinks()];
+        for (int e = 0; e < lengths.length; e++) {
+            lengths[e] = isDrivable(graph.links[e]) ? graph.links[e].getLength() : Double.POSITIVE_INFINITY;
+        }
+        lengthBounds = Landmarks.select(graph, lengths, numberOfLandmarks);
+        log.info("Prepared driving distance oracle with {} landmarks in {} ms",
+                numberOfLandmarks, System.currentTimeMillis() - start);
+    }
+
+    /**
+     * Gets the driving distance in metres from the end of one link to the end of the other,
+     * or infinity if there is no route
+     *
+     * @param now current time, for the link speeds
+     * @param epoch changes whenever network change events have been added
+     */
+    public double getDistance(Link fromLink, Link toLink, double now, long epoch) {
+        if (fromLink.getId().equals(toLink.getId())) {
+            return 0;
+        }
+        int source = graph.getIndex(fromLink.getToNode());
+        int target = graph.getIndex(toLink.getFromNode());
+        if (source < 0 || target < 0) {
+            return Double.POSITIVE_INFINITY;
+        }
+        Tree tree;
+        synchronized (trees) {
+            tree = trees.get(target);
+        }
+        if (tree == null || tree.time != now || tree.epoch != epoch) {
+            // grown outside the lock, so that other destinations can be looked up meanwhile
+            tree = new Tree(target, now, epoch);
+            synchronized (trees) {
+                trees.put(target, tree);
+            }
+        }
+        return tree.length[source] + toLink.getLength();
+    }
+
+    /**
+     * As {@link #getDistance(Link, Link, double, long)}, except that a lower bound on the
+     * distance is returned instead if that bound is already greater than the given threshold
+     */
+    public double getDistance(Link fromLink, Link toLink, double now, long epoch, double threshold) {
+        double bound = getLowerBound(fromLink, toLink);
+        return (bound > threshold) ? bound : getDistance(fromLink, toLink, now, epoch);
+    }
+
+    /**
+     * Lower bound on the driving distance from the end of one link to the end of the other
+     */
+    public double getLowerBound(Link fromLink, Link toLink) {
+        if (fromLink.getId().equals(toLink.getId())) {
+            return 0;
+        }
+        Node from = fromLink.getToNode();
+        Node to = toLink.getFromNode();
+        double bound = CoordUtils.calcEuclideanDistance(from.getCoord(), to.getCoord());
+        int source = graph.getIndex(from);
+        int target = graph.getIndex(to);
+        if (source >= 0 && target >= 0) {
+            bound = Math.max(bound, lengthBounds.estimate(source, target));
+        }
+        return bound + toLink.getLength();
+    }
+
+    int getNumberOfTrees() {
+        synchronized (trees) {
+            return trees.size();
+        }
+    }
+
+    private static boolean isDrivable(Link link) {
+        return link.getAllowedModes().contains(TransportMode.car);
+    }
+
+    /**
+     * Route lengths to the root along the fastest routes at free speed
+     */
+    private final class Tree {
+        final double time;
+        final long epoch;
+        final float[] length;
+
+        Tree(int root, double time, long epoch) {
+            this.time = time;
+            this.epoch = epoch;
+            int n = graph.getNumberOfNodes();
+            double[] cost = new double[n];
+            Arrays.fill(cost, Double.POSITIVE_INFINITY);
+            length = new float[n];
+            Arrays.fill(length, Float.POSITIVE_INFINITY);
+            NodeMinHeap heap = new NodeMinHeap(n);
+            cost[root] = 0;
+            length[root] = 0;
+            heap.insertOrDecrease(root, 0);
+            while (!heap.isEmpty()) {
+                int v = heap.poll();
+                for (int k = graph.inStart[v]; k < graph.inStart[v + 1]; k++) {
+                    int e = graph.inEdges[k];
+                    Link link = graph.links[e];
+                    double speed = link.getFreespeed(time);
+                    if (!isDrivable(link) || speed <= 0) {
+                        continue;
+                    }
+                    int u = graph.edgeFrom[e];
+                    double cu = cost[v] + link.getLength() / speed;
+                    if (cu < cost[u]) {
+                        cost[u] = cu;
+                        length[u] = (float) (length[v] + link.getLength());
+                        heap.insertOrDecrease(u, cu);
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,215 @@
+package io.github.agentsoz.ees.matsim.router;
+
+/*
+ * #%L
+ * Emergency Evacuation Simulator
+ * %%
+ * Copyright (C) 2014 - 2025 by its authors. See AUTHORS file.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+
+import io.github.agentsoz.ees.matsim.EvacTravelDisutility;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.core.router.util.LeastCostPathCalculator;
+import org.matsim.core.router.util.TravelDisutility;
+import org.matsim.core.router.util.TravelTime;
+import org.matsim.vehicles.Vehicle;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Time-dependent A* router with landmarks (ALT) over a shared {@link RoutingGraph}.
+ * <p>
+ * The landmark tables are computed from lower bounds of the link disutilities, which include the
+ * hazard penalties. When the disutility is an {@link EvacTravelDisutility}, each search pins one
+ * snapshot of the penalty field, and the tables are re-customised (same landmarks, new costs)
+ * whenever a new field has been published since they were last computed. The tables come from
+ * a {@link LandmarksCache}, so routers with the same graph and costs share them.
+ * <p>
+ * The search runs forwards only: link costs depend on the time the link is entered, which is
+ * not known when searching backwards from the destination. The exception is the optional
+ * {@link DestinationTreeCache}, which trades that time dependence within a short time slot for
+ * answering all requests to a popular destination from a single backward search.
+ * <p>
+ * Instances hold per-search state and are not thread-safe; MATSim creates one per routing thread.
+ */
+public class EvacRoutingAlgorithm implements LeastCostPathCalculator {
+
+    private static final Logger log = LoggerFactory.getLogger(EvacRoutingAlgorithm.class);
+
+    private final RoutingGraph graph;
+    private final TravelDisutility costFunction;
+    private final EvacTravelDisutility evacCostFunction;
+    private final TravelTime timeFunction;
+    private final LandmarksCache landmarksCache;
+    private final DestinationTreeCache trees;
+
+    private Landmarks landmarks;
+    private double[] customisedFor;
+    private double[] customisedForTravelTimes;
+
+    // per-search labels, reset lazily using the search counter
+    private final double[] cost;
+    private final double[] time;
+    private final double[] heuristic; // of each labelled node, so it is worked out once per search
+    private final int[] predecessorEdge;
+    private final int[] visited;
+    private final int[] closed;
+    private final NodeMinHeap heap;
+    private int search = 0;
+
+    public EvacRoutingAlgorithm(RoutingGraph graph, TravelDisutility travelDisutility, TravelTime travelTime,
+                                int numberOfLandmarks) {
+        this(graph, travelDisutility, travelTime, new LandmarksCache(numberOfLandmarks, 1), null);
+    }
+
+    EvacRoutingAlgorithm(RoutingGraph graph, TravelDisutility travelDisutility, TravelTime travelTime,
+                         LandmarksCache landmarksCache, DestinationTreeCache trees) {
+        this.graph = graph;
+        this.trees = trees;
+        this.costFunction = travelDisutility;
+        this.evacCostFunction = (travelDisutility instanceof EvacTravelDisutility) ?
+                (EvacTravelDisutility) travelDisutility : null;
+        this.timeFunction = travelTime;
+        this.landmarksCache = landmarksCache;
+        int n = graph.getNumberOfNodes();
+        cost = new double[n];
+        time = new double[n];
+        heuristic = new double[n];
+        predecessorEdge = new int[n];
+        visited = new int[n];
+        closed = new int[n];
+        heap = new NodeMinHeap(n);
+    }
+
+    @Override
+    public Path calcLeastCostPath(Node fromNode, Node toNode, double starttime, Person person, Vehicle vehicle) {
+        final int source = graph.getIndex(fromNode);
+        final int target = graph.getIndex(toNode);
+        if (source < 0 || target < 0) {
+            log.warn("No route from node {} to node {}; at least one of them is not in the routing network",
+                    fromNode.getId(), toNode.getId());
+            return null;
+        }
+        if (trees != null) {
+            Path path = trees.route(graph, costFunction, timeFunction, source, target, starttime, person, vehicle);
+            if (path != null) {
+                return path;
+            }
+        }
+        final double[] penalties = (evacCostFunction != null) ? evacCostFunction.getPenaltyField().getSnapshot() : null;
+        customise(penalties);
+
+        if (++search == Integer.MAX_VALUE) {
+            Arrays.fill(visited, 0);
+            Arrays.fill(closed, 0);
+            search = 1;
+        }
+        heap.clear();
+        label(source, 0, starttime, -1);
+        heuristic[source] = landmarks.estimate(source, target);
+        heap.insertOrDecrease(source, heuristic[source]);
+        boolean found = false;
+        while (!heap.isEmpty()) {
+            final int u = heap.poll();
+            if (u == target) {
+                found = true;
+                break;
+            }
+            closed[u] = search;
+            final double costU = cost[u];
+            final double timeU = time[u];
+            for (int e = graph.outStart[u]; e < graph.outStart[u + 1]; e++) {
+                final int v = graph.edgeTo[e];
+                if (closed[v] == search) {
+                    continue;
+                }
+                final Link link = graph.links[e];
+                final double linkCost = (penalties != null) ?
+                        evacCostFunction.getLinkTravelDisutility(penalties, link, timeU, person, vehicle) :
+                        costFunction.getLinkTravelDisutility(link, timeU, person, vehicle);
+                final double costV = costU + linkCost;
+                if (visited[v] != search) {
+                    heuristic[v] = landmarks.estimate(v, target);
+                } else if (costV >= cost[v]) {
+                    continue;
+                }
+                label(v, costV, timeU + timeFunction.getLinkTravelTime(link, timeU, person, vehicle), e);
+                heap.insertOrDecrease(v, costV + heuristic[v]);
+            }
+        }
+        if (!found) {
+            log.warn("No route was found from node {} to node {}", fromNode.getId(), toNode.getId());
+            return null;
+        }
+        return toPath(source, target, starttime);
+    }
+
+    private void label(int node, double nodeCost, double nodeTime, int edge) {
+        visited[node] = search;
+        cost[node] = nodeCost;
+        time[node] = nodeTime;
+        predecessorEdge[node] = edge;
+    }
+
+    private Path toPath(int source, int target, double starttime) {
+        List<Link> links = new ArrayList<>();
+        List<Node> nodes = new ArrayList<>();
+        int node = target;
+        nodes.add(graph.nodes[node]);
+        while (node != source) {
+            int e = predecessorEdge[node];
+            links.add(graph.links[e]);
+            node = graph.edgeFrom[e];
+            nodes.add(graph.nodes[node]);
+        }
+        Collections.reverse(links);
+        Collections.reverse(nodes);
+        return new Path(nodes, links, time[target] - starttime, cost[target]);
+    }
+
+    /**
+     * (Re)computes the landmark tables if the penalties or the freespeeds the links can have changed
+     * since they were last computed. With an {@link EvacTravelDisutility} the edge costs are the
+     * penalty factors times the lengths at the highest freespeeds, rather than anything taken from
+     * the travel time, which may be a congested one that later eases; they thus stay lower bounds,
+     * and so the landmark estimates stay admissible, whatever the travel times do.
+     */
+    private void customise(double[] penalties) {
+        final double[] minimumTravelTimes = (penalties != null) ? graph.getMinimumTravelTimes() : null;
+        if (landmarks != null && (penalties == null ||
+                (penalties == customisedFor && minimumTravelTimes == customisedForTravelTimes))) {
+            return;
+        }
+        double[] edgeCost = new double[graph.getNumberOfLinks()];
+        for (int e = 0; e < edgeCost.length; e++) {
+            edgeCost[e] = (penalties != null) ?
+                    evacCostFunction.getLinkMinimumTravelDisutility(penalties, graph.links[e], minimumTravelTimes[e]) :
+                    costFunction.getLinkMinimumTravelDisutility(graph.links[e]);
+        }
+        landmarks = landmarksCache.get(graph, edgeCost);
+        customisedFor = penalties;
+        customisedForTravelTimes = minimumTravelTimes;
+    }
+}
@@ -0,0 +1,124 @@
+package io.github.agentsoz.ees.matsim.router;
+
+/*
+ * #%L
+ * Emergency Evacuation Simulator
+ * %%
+ * Copyright (C) 2014 - 2025 by its authors. See AUTHORS file.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.core.router.util.LeastCostPathCalculator;
+import org.matsim.core.router.util.LeastCostPathCalculatorFactory;
+import org.matsim.core.router.util.TravelDisutility;
+import org.matsim.core.router.util.TravelTime;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Factory for {@link EvacRoutingAlgorithm}. Routers share as much as they can: one routing graph
+ * is built for all networks with the same nodes and links (MATSim filters a separate copy of the
+ * network for every routing mode), the landmark tables are shared by all routers whose graph and
+ * minimum edge costs are the same, and so is the {@link DestinationTreeCache}, if any.
+ */
+public class EvacRoutingAlgorithmFactory implements LeastCostPathCalculatorFactory {
+
+    private static final Logger log = LoggerFactory.getLogger(EvacRoutingAlgorithmFactory.class);
+
+    public static final int DEFAULT_NUMBER_OF_LANDMARKS = 8;
+    // enough for a civilian and an emergency penalty field on a few distinct graphs
+    private static final int MAX_LANDMARK_TABLES = 16;
+
+    private final DestinationTreeCache trees;
+    private final LandmarksCache landmarks;
+    private final Map<Network, RoutingGraph> graphs = new WeakHashMap<>();
+    private final Map<Topology, RoutingGraph> graphsByTopology = new HashMap<>();
+
+    public EvacRoutingAlgorithmFactory() {
+        this(DEFAULT_NUMBER_OF_LANDMARKS);
+    }
+
+    public EvacRoutingAlgorithmFactory(int numberOfLandmarks) {
+        this(numberOfLandmarks, null);
+    }
+
+    /**
+     * @param trees cache of shortest path trees to the destinations, or null to search every route
+     */
+    public EvacRoutingAlgorithmFactory(int numberOfLandmarks, DestinationTreeCache trees) {
+        this.landmarks = new LandmarksCache(numberOfLandmarks, MAX_LANDMARK_TABLES);
+        this.trees = trees;
+    }
+
+    @Override
+    public LeastCostPathCalculator createPathCalculator(Network network, TravelDisutility travelDisutility, TravelTime travelTime) {
+        return new EvacRoutingAlgorithm(getGraph(network), travelDisutility, travelTime, landmarks, trees);
+    }
+
+    synchronized RoutingGraph getGraph(Network network) {
+        return graphs.computeIfAbsent(network, net -> graphsByTopology.computeIfAbsent(new Topology(net), topology -> {
+            long start = System.currentTimeMillis();
+            RoutingGraph graph = new RoutingGraph(net);
+            log.info("Built routing graph with {} nodes and {} links in {} ms",
+                    graph.getNumberOfNodes(), graph.getNumberOfLinks(), System.currentTimeMillis() - start);
+            return graph;
+        }));
+    }
+
+    /**
+     * The ids of the nodes and links of a network, for telling whether two networks are the same
+     */
+    private static final class Topology {
+        private final int[] ids;
+        private final int hash;
+
+        Topology(Network network) {
+            int n = network.getNodes().size();
+            ids = new int[n + 1 + network.getLinks().size()];
+            int i = 0;
+            for (Id<Node> id : network.getNodes().keySet()) {
+                ids[i++] = id.index();
+            }
+            ids[i++] = -1; // separates nodes from links
+            for (Id<Link> id : network.getLinks().keySet()) {
+                ids[i++] = id.index();
+            }
+            Arrays.sort(ids, 0, n);
+            Arrays.sort(ids, n + 1, ids.length);
+            hash = Arrays.hashCode(ids);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return (o instanceof Topology) && hash == ((Topology) o).hash && Arrays.equals(ids, ((Topology) o).ids);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
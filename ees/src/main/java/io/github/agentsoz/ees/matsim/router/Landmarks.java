@@ -0,0 +1,139 @@
+package io.github.agentsoz.ees.matsim.router;
+
+/*
+ * #%L
+ * Emergency Evacuation Simulator
+ * %%
+ * Copyright (C) 2014 - 2025 by its authors. See AUTHORS file.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Landmark (ALT) lower bounds on the travel disutility between any two nodes of a
+ * {@link RoutingGraph}, from the triangle inequality on the stored costs from and to each
+ * landmark. Bounds are only valid while every edge costs at least what it cost when the
+ * tables were computed, so the tables are recomputed (customised) whenever the minimum
+ * disutilities may have changed, e.g., after new hazard penalties are published.
+ */
+final class Landmarks {
+
+    private static final Logger log = LoggerFactory.getLogger(Landmarks.class);
+
+    private final int[] landmarks;
+    // tables are floats to halve memory, so bounds are lowered by the rounding error
+    private final float[][] fromLandmark; // cost from landmark to node
+    private final float[][] toLandmark; // cost from node to landmark
+
+    /**
+     * Selects up to the given number of landmarks (farthest-first) and computes their tables
+     */
+    static Landmarks select(RoutingGraph graph, double[] edgeCost, int numberOfLandmarks) {
+        return new Landmarks(graph, edgeCost, selectLandmarks(graph, edgeCost, numberOfLandmarks));
+    }
+
+    /**
+     * Computes the tables for the given landmarks (e.g., ones selected earlier under other costs),
+     * given the minimum cost of each edge of the graph
+     */
+    Landmarks(RoutingGraph graph, double[] edgeCost, int[] landmarks) {
+        long start = System.currentTimeMillis();
+        this.landmarks = landmarks;
+        this.fromLandmark = new float[landmarks.length][];
+        this.toLandmark = new float[landmarks.length][];
+        for (int l = 0; l < landmarks.length; l++) {
+            fromLandmark[l] = toFloats(graph.dijkstra(landmarks[l], edgeCost, false));
+            toLandmark[l] = toFloats(graph.dijkstra(landmarks[l], edgeCost, true));
+        }
+        log.debug("Computed {} landmark tables over {} nodes in {} ms",
+                landmarks.length, graph.getNumberOfNodes(), System.currentTimeMillis() - start);
+    }
+
+    int[] getLandmarks() {
+        return landmarks;
+    }
+
+    /**
+     * Lower bound on the cost of getting from node to target
+     */
+    double estimate(int node, int target) {
+        double best = 0;
+        for (int l = 0; l < landmarks.length; l++) {
+            float[] from = fromLandmark[l];
+            float[] to = toLandmark[l];
+            // d(node,target) >= d(L,target) - d(L,node)
+            if (from[target] != Float.POSITIVE_INFINITY && from[node] != Float.POSITIVE_INFINITY) {
+                best = Math.max(best, bound(from[target], from[node]));
+            }
+            // d(node,target) >= d(node,L) - d(target,L)
+            if (to[node] != Float.POSITIVE_INFINITY && to[target] != Float.POSITIVE_INFINITY) {
+                best = Math.max(best, bound(to[node], to[target]));
+            }
+        }
+        return best;
+    }
+
+    private static double bound(float a, float b) {
+        return ((double) a - b) - Math.ulp(Math.max(a, b));
+    }
+
+    /**
+     * Farthest-first selection: each next landmark is the reachable node that is farthest from
+     * the landmarks chosen so far, which spreads them around the edge of the network
+     */
+    static int[] selectLandmarks(RoutingGraph graph, double[] edgeCost, int numberOfLandmarks) {
+        int n = graph.getNumberOfNodes();
+        int count = Math.min(numberOfLandmarks, n);
+        int[] selected = new int[count];
+        if (count == 0) {
+            return selected;
+        }
+        double[] nearest = graph.dijkstra(0, edgeCost, false);
+        selected[0] = farthest(nearest);
+        java.util.Arrays.fill(nearest, Double.POSITIVE_INFINITY);
+        for (int l = 1; l < count; l++) {
+            double[] dist = graph.dijkstra(selected[l - 1], edgeCost, false);
+            for (int v = 0; v < n; v++) {
+                nearest[v] = Math.min(nearest[v], dist[v]);
+            }
+            selected[l] = farthest(nearest);
+        }
+        return selected;
+    }
+
+    private static int farthest(double[] dist) {
+        int best = 0;
+        double bestDist = -1;
+        for (int v = 0; v < dist.length; v++) {
+            if (dist[v] != Double.POSITIVE_INFINITY && dist[v] > bestDist) {
+                bestDist = dist[v];
+                best = v;
+            }
+        }
+        return best;
+    }
+
+    private static float[] toFloats(double[] values) {
+        float[] result = new float[values.length];
+        for (int i = 0; i < values.length; i++) {
+            result[i] = (float) values[i];
+        }
+        return result;
+    }
+}
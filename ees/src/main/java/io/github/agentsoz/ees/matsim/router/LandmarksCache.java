@@ -0,0 +1,101 @@
+package io.github.agentsoz.ees.matsim.router;
+
+/*
+ * #%L
+ * Emergency Evacuation Simulator
+ * %%
+ * Copyright (C) 2014 - 2025 by its authors. See AUTHORS file.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Landmark tables shared by all routers of a factory, so that the preprocessing is done once
+ * per graph and set of edge costs rather than once per router. Routing modes whose networks
+ * and minimum costs turn out to be the same get the very same tables.
+ * <p>
+ * Landmarks are selected once per graph, under the first costs seen, and re-used for any later
+ * costs; only the tables are recomputed. The most recently used tables are kept.
+ */
+final class LandmarksCache {
+
+    private final int numberOfLandmarks;
+    private final int maxTables;
+    private final Map<RoutingGraph, int[]> selected = new WeakHashMap<>();
+    private final Map<Key, Landmarks> tables;
+
+    LandmarksCache(int numberOfLandmarks, int maxTables) {
+        this.numberOfLandmarks = numberOfLandmarks;
+        this.maxTables = maxTables;
+        this.tables = new LinkedHashMap<Key, Landmarks>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Landmarks> eldest) {
+                return size() > LandmarksCache.this.maxTables;
+            }
+        };
+    }
+
+    /**
+     * Gets the tables for the given graph and minimum edge costs, computing them if needed.
+     * Routers asking for the same tables at the same time wait for the first one to compute them.
+     */
+    synchronized Landmarks get(RoutingGraph graph, double[] edgeCost) {
+        Key key = new Key(graph, edgeCost);
+        Landmarks landmarks = tables.get(key);
+        if (landmarks == null) {
+            int[] chosen = selected.get(graph);
+            if (chosen == null) {
+                landmarks = Landmarks.select(graph, edgeCost, numberOfLandmarks);
+                selected.put(graph, landmarks.getLandmarks());
+            } else {
+                landmarks = new Landmarks(graph, edgeCost, chosen);
+            }
+            tables.put(key, landmarks);
+        }
+        return landmarks;
+    }
+
+    private static final class Key {
+        private final RoutingGraph graph;
+        private final double[] edgeCost;
+        private final int hash;
+
+        Key(RoutingGraph graph, double[] edgeCost) {
+            this.graph = graph;
+            this.edgeCost = edgeCost;
+            this.hash = 31 * System.identityHashCode(graph) + Arrays.hashCode(edgeCost);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return graph == other.graph && hash == other.hash && Arrays.equals(edgeCost, other.edgeCost);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package io.github.agentsoz.ees.matsim.router;
+
+/*
+ * #%L
+ * Emergency Evacuation Simulator
+ * %%
+ * Copyright (C) 2014 - 2025 by its authors. See AUTHORS file.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+
+import java.util.Arrays;
+
+/**
+ * Binary min-heap of dense node indices keyed by a double, with decrease-key.
+ */
+final class NodeMinHeap {
+
+    private final int[] heap;
+    private final double[] keys;
+    private final int[] position; // of each node in the heap, or -1
+    private int size = 0;
+
+    NodeMinHeap(int capacity) {
+        heap = new int[capacity];
+        keys = new double[capacity];
+        position = new int[capacity];
+        Arrays.fill(position, -1);
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    void clear() {
+        for (int i = 0; i < size; i++) {
+            position[heap[i]] = -1;
+        }
+        size = 0;
+    }
+
+    /**
+     * Adds the node with the given key, or lowers its key if it is already in the heap
+     */
+    void insertOrDecrease(int node, double key) {
+        int i = position[node];
+        if (i < 0) {
+            i = size++;
+            heap[i] = node;
+            position[node] = i;
+        } else if (key >= keys[node]) {
+            return;
+        }
+        keys[node] = key;
+        siftUp(i);
+    }
+
+    int poll() {
+        int top = heap[0];
+        position[top] = -1;
+        size--;
+        if (size > 0) {
+            heap[0] = heap[size];
+            position[heap[0]] = 0;
+            siftDown(0);
+        }
+        return top;
+    }
+
+    private void siftUp(int i) {
+        int node = heap[i];
+        double key = keys[node];
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            int p = heap[parent];
+            if (keys[p] <= key) {
+                break;
+            }
+            heap[i] = p;
+            position[p] = i;
+            i = parent;
+        }
+        heap[i] = node;
+        position[node] = i;
+    }
+
+    private void siftDown(int i) {
+        int node = heap[i];
+        double key = keys[node];
+        int half = size >>> 1;
+        while (i < half) {
+            int child = 2 * i + 1;
+            int right = child + 1;
+            if (right < size && keys[heap[right]] < keys[heap[child]]) {
+                child = right;
+            }
+            int c = heap[child];
+            if (key <= keys[c]) {
+                break;
+            }
+            heap[i] = c;
+            position[c] = i;
+            i = child;
+        }
+        heap[i] = node;
+        position[node] = i;
+    }
+}
@@ -0,0 +1,187 @@
+package io.github.agentsoz.ees.matsim.router;
+
+/*
+ * #%L
+ * Emergency Evacuation Simulator
+ * %%
+ * Copyright (C) 2014 - 2025 by its authors. See AUTHORS file.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.core.network.NetworkChangeEvent;
+import org.matsim.core.network.NetworkUtils;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Compact, immutable adjacency-array copy of a (mode filtered) MATSim network, as used by the
+ * evacuation routers. Nodes and links are renumbered densely; the out-edges of node {@code u}
+ * are {@code outStart[u] .. outStart[u+1]-1}, and the in-edges are listed the same way through
+ * {@code inEdges}.
+ */
+public final class RoutingGraph {
+
+    final Node[] nodes;
+    final Link[] links;
+    final int[] edgeFrom;
+    final int[] edgeTo;
+    final int[] outStart;
+    final int[] inStart;
+    final int[] inEdges;
+    private final Map<Id<Node>, Integer> nodeIndex;
+    private final Network network;
+    // lower bounds of the edge travel times, and the number of network change events they are for
+    private double[] minimumTravelTimes;
+    private int minimumTravelTimesEvents = -1;
+
+    public RoutingGraph(Network network) {
+        this.network = network;
+        int n = network.getNodes().size();
+        int m = network.getLinks().size();
+        nodes = new Node[n];
+        nodeIndex = new HashMap<>(n * 2);
+        int i = 0;
+        for (Node node : network.getNodes().values()) {
+            nodes[i] = node;
+            nodeIndex.put(node.getId(), i);
+            i++;
+        }
+        links = new Link[m];
+        edgeFrom = new int[m];
+        edgeTo = new int[m];
+        outStart = new int[n + 1];
+        int e = 0;
+        for (int u = 0; u < n; u++) {
+            outStart[u] = e;
+            for (Link link : nodes[u].getOutLinks().values()) {
+                links[e] = link;
+                edgeFrom[e] = u;
+                edgeTo[e] = nodeIndex.get(link.getToNode().getId());
+                e++;
+            }
+        }
+        outStart[n] = e;
+        inStart = new int[n + 1];
+        for (int k = 0; k < e; k++) {
+            inStart[edgeTo[k] + 1]++;
+        }
+        for (int v = 0; v < n; v++) {
+            inStart[v + 1] += inStart[v];
+        }
+        inEdges = new int[e];
+        int[] fill = Arrays.copyOf(inStart, n);
+        for (int k = 0; k < e; k++) {
+            inEdges[fill[edgeTo[k]]++] = k;
+        }
+    }
+
+    public int getNumberOfNodes() {
+        return nodes.length;
+    }
+
+    public int getNumberOfLinks() {
+        return outStart[nodes.length];
+    }
+
+    /**
+     * Gets the dense index of the given node, or -1 if it is not in this graph
+     */
+    public int getIndex(Node node) {
+        Integer index = nodeIndex.get(node.getId());
+        return (index == null) ? -1 : index;
+    }
+
+    public Node getNode(int index) {
+        return nodes[index];
+    }
+
+    public Link getLink(int edge) {
+        return links[edge];
+    }
+
+    /**
+     * Gets lower bounds of the travel times of all edges: their lengths at the highest freespeed their
+     * links have at any time, going by the network change events of the network. These are recomputed
+     * whenever the number of events has changed, and are the same array otherwise.
+     */
+    synchronized double[] getMinimumTravelTimes() {
+        Collection<NetworkChangeEvent> events = NetworkUtils.getNetworkChangeEvents(network);
+        int numberOfEvents = (events == null) ? 0 : events.size();
+        if (minimumTravelTimes != null && numberOfEvents == minimumTravelTimesEvents) {
+            return minimumTravelTimes;
+        }
+        double[] maxFreespeed = new double[links.length];
+        Map<Id<Link>, Integer> edgeOfLink = new HashMap<>(links.length * 2);
+        for (int e = 0; e < links.length; e++) {
+            maxFreespeed[e] = links[e].getFreespeed();
+            edgeOfLink.put(links[e].getId(), e);
+        }
+        if (events != null) {
+            for (NetworkChangeEvent event : events) {
+                for (Link link : event.getLinks()) {
+                    Integer e = edgeOfLink.get(link.getId());
+                    if (e != null) {
+                        // the speed from then on, with all events up to then applied
+                        maxFreespeed[e] = Math.max(maxFreespeed[e], links[e].getFreespeed(event.getStartTime()));
+                    }
+                }
+            }
+        }
+        double[] times = new double[links.length];
+        for (int e = 0; e < links.length; e++) {
+            times[e] = links[e].getLength() / maxFreespeed[e];
+        }
+        minimumTravelTimes = times;
+        minimumTravelTimesEvents = numberOfEvents;
+        return times;
+    }
+
+    /**
+     * One-to-all shortest path costs from (or, if reverse, to) the given node, using the given
+     * static cost per edge. Unreachable nodes get infinity.
+     */
+    double[] dijkstra(int source, double[] edgeCost, boolean reverse) {
+        double[] dist = new double[nodes.length];
+        Arrays.fill(dist, Double.POSITIVE_INFINITY);
+        NodeMinHeap heap = new NodeMinHeap(nodes.length);
+        dist[source] = 0;
+        heap.insertOrDecrease(source, 0);
+        while (!heap.isEmpty()) {
+            int u = heap.poll();
+            double du = dist[u];
+            int start = reverse ? inStart[u] : outStart[u];
+            int end = reverse ? inStart[u + 1] : outStart[u + 1];
+            for (int k = start; k < end; k++) {
+                int edge = reverse ? inEdges[k] : k;
+                int v = reverse ? edgeFrom[edge] : edgeTo[edge];
+                double dv = du + edgeCost[edge];
+                if (dv < dist[v]) {
+                    dist[v] = dv;
+                    heap.insertOrDecrease(v, dv);
+                }
+            }
+        }
+        return dist;
+    }
+}
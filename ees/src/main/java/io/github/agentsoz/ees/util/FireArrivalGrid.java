@@ -0,0 +1,208 @@
+package io.github.agentsoz.ees.util;
+
+/*
+ * #%L
+ * Emergency Evacuation Simulator
+ * %%
+ * Copyright (C) 2014 - 2025 by its authors. See AUTHORS file.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Times at which the fire, and the embers ahead of it, are expected to reach each cell of a
+ * regular fire grid (such as the Phoenix grid, where every cell records the hour it burnt and
+ * the hour it was spotted), so that the arrival time at any point is a single lookup.
+ * <p>
+ * Cells are addressed by their centres, which must all lie on one lattice with the given cell
+ * size. Points outside every cell that was added are never reached.
+ */
+public final class FireArrivalGrid {
+
+	private final double cellSize;
+	private double originX = Double.NaN;
+	private double originY = Double.NaN;
+	private final Map<Long, Double> fireArrival = new HashMap<>();
+	private final Map<Long, Double> embersArrival = new HashMap<>();
+
+	public FireArrivalGrid(double cellSizeInMetres) {
+		if (cellSizeInMetres <= 0) {
+			throw new IllegalArgumentException("Grid cell size must be positive, found " + cellSizeInMetres);
+		}
+		this.cellSize = cellSizeInMetres;
+	}
+
+	/**
+	 * Creates an empty grid on the lattice with the given origin, for restoring a saved grid
+	 */
+	FireArrivalGrid(double cellSizeInMetres, double originX, double originY) {
+		this(cellSizeInMetres);
+		this.originX = originX;
+		this.originY = originY;
+	}
+
+	/**
+	 * Records that the cell centred at the given point burns at the given time, unless it was
+	 * already recorded to burn earlier
+	 */
+	public void addFire(double x, double y, double timeInSecs) {
+		fireArrival.merge(key(x, y), timeInSecs, Math::min);
+	}
+
+	/**
+	 * Records that embers reach the cell centred at the given point at the given time, unless
+	 * they were already recorded to reach it earlier
+	 */
+	public void addEmbers(double x, double y, double timeInSecs) {
+		embersArrival.merge(key(x, y), timeInSecs, Math::min);
+	}
+
+	/**
+	 * Time at which the point burns, or infinity if it never does
+	 */
+	public double getFireArrivalTime(double x, double y) {
+		return fireArrival.isEmpty() ? Double.POSITIVE_INFINITY :
+				fireArrival.getOrDefault(key(x, y), Double.POSITIVE_INFINITY);
+	}
+
+	/**
+	 * Time at which embers reach the point, or infinity if they never do
+	 */
+	public double getEmbersArrivalTime(double x, double y) {
+		return embersArrival.isEmpty() ? Double.POSITIVE_INFINITY :
+				embersArrival.getOrDefault(key(x, y), Double.POSITIVE_INFINITY);
+	}
+
+	/**
+	 * Cells that are burning by the given time, as a raster over all cells of the grid
+	 */
+	public HazardRaster getFireRaster(double timeInSecs) {
+		return getRaster(fireArrival, timeInSecs);
+	}
+
+	/**
+	 * Cells that embers have reached by the given time, as a raster over all cells of the grid
+	 */
+	public HazardRaster getEmbersRaster(double timeInSecs) {
+		return getRaster(embersArrival, timeInSecs);
+	}
+
+	private HazardRaster getRaster(Map<Long, Double> arrival, double timeInSecs) {
+		int[] bounds = getBounds();
+		if (bounds[2] == 0) {
+			return new HazardRaster(0, 0, cellSize, 0, 0, 0, 0, new BitSet());
+		}
+		int minCol = bounds[0], minRow = bounds[1], cols = bounds[2];
+		BitSet cells = new BitSet();
+		for (Map.Entry<Long, Double> entry : arrival.entrySet()) {
+			if (entry.getValue() <= timeInSecs) {
+				cells.set((row(entry.getKey()) - minRow) * cols + (col(entry.getKey()) - minCol));
+			}
+		}
+		return new HazardRaster(originX, originY, cellSize, minCol, minRow, cols, bounds[3], cells);
+	}
+
+	/**
+	 * Gets the {min column, min row, columns, rows} of the smallest box of cells that holds every
+	 * cell that was added, or all zeros if there are none
+	 */
+	int[] getBounds() {
+		int minCol = Integer.MAX_VALUE, maxCol = Integer.MIN_VALUE;
+		int minRow = Integer.MAX_VALUE, maxRow = Integer.MIN_VALUE;
+		for (long key : fireArrival.keySet()) {
+			minCol = Math.min(minCol, col(key));
+			maxCol = Math.max(maxCol, col(key));
+			minRow = Math.min(minRow, row(key));
+			maxRow = Math.max(maxRow, row(key));
+		}
+		for (long key : embersArrival.keySet()) {
+			minCol = Math.min(minCol, col(key));
+			maxCol = Math.max(maxCol, col(key));
+			minRow = Math.min(minRow, row(key));
+			maxRow = Math.max(maxRow, row(key));
+		}
+		if (maxCol < minCol) {
+			return new int[]{0, 0, 0, 0};
+		}
+		return new int[]{minCol, minRow, maxCol - minCol + 1, maxRow - minRow + 1};
+	}
+
+	double getCellSize() {
+		return cellSize;
+	}
+
+	double getOriginX() {
+		return originX;
+	}
+
+	double getOriginY() {
+		return originY;
+	}
+
+	double getFireArrivalTimeOfCell(int col, int row) {
+		return fireArrival.getOrDefault(cellKey(col, row), Double.POSITIVE_INFINITY);
+	}
+
+	double getEmbersArrivalTimeOfCell(int col, int row) {
+		return embersArrival.getOrDefault(cellKey(col, row), Double.POSITIVE_INFINITY);
+	}
+
+	/**
+	 * Sets the time the given cell burns, where infinity (never) leaves the cell out
+	 */
+	void setFireArrivalTimeOfCell(int col, int row, double timeInSecs) {
+		if (timeInSecs != Double.POSITIVE_INFINITY) {
+			fireArrival.put(cellKey(col, row), timeInSecs);
+		}
+	}
+
+	/**
+	 * Sets the time embers reach the given cell, where infinity (never) leaves the cell out
+	 */
+	void setEmbersArrivalTimeOfCell(int col, int row, double timeInSecs) {
+		if (timeInSecs != Double.POSITIVE_INFINITY) {
+			embersArrival.put(cellKey(col, row), timeInSecs);
+		}
+	}
+
+	private static int col(long key) {
+		return (int) (key >> 32);
+	}
+
+	private static int row(long key) {
+		return (int) key;
+	}
+
+	public int getNumberOfFireCells() {
+		return fireArrival.size();
+	}
+
+	private long key(double x, double y) {
+		if (Double.isNaN(originX)) {
+			originX = x;
+			originY = y;
+		}
+		return cellKey(Math.round((x - originX) / cellSize), Math.round((y - originY) / cellSize));
+	}
+
+	private static long cellKey(long col, long row) {
+		return (col << 32) | (row & 0xffffffffL);
+	}
+}
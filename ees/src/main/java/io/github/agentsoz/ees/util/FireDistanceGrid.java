@@ -0,0 +1,296 @@
+package io.github.agentsoz.ees.util;
+
+/*
+ * #%L
+ * Emergency Evacuation Simulator
+ * %%
+ * Copyright (C) 2014 - 2025 by its authors. See AUTHORS file.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+
+import org.locationtech.jts.algorithm.locate.IndexedPointInAreaLocator;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.LineString;
+import org.locationtech.jts.geom.Location;
+import org.locationtech.jts.geom.Point;
+import org.locationtech.jts.geom.util.LinearComponentExtracter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Distance-to-fire raster, computed once per fire update with a Euclidean distance transform,
+ * that answers distance queries in constant time irrespective of how complex the fire polygon is.
+ * <p>
+ * The grid covers the fire envelope plus a margin (normally the widest avoidance buffer).
+ * Cells whose centre lies in the fire, or that the fire boundary passes through, are the fire
+ * cells, and every other cell stores the distance from its centre to the nearest fire cell centre.
+ * Distances are therefore within one cell diagonal of the exact ones. Queries outside the grid
+ * fall back to the exact geometric distance. An empty fire is infinitely far from everywhere.
+ * <p>
+ * The grid can also be built straight from a {@link HazardRaster}, on the raster's own cells, in
+ * which case no geometry is involved unless a query falls outside the grid.
+ */
+public final class FireDistanceGrid {
+
+	private static final Logger log = LoggerFactory.getLogger(FireDistanceGrid.class);
+
+	// keeps the grid within a few hundred MB whatever cell size is configured
+	private static final long MAX_CELLS = 25_000_000L;
+	private static final double FAR = 1e20;
+
+	private final Geometry fire;
+	private final HazardRaster raster;
+	private final double minX;
+	private final double minY;
+	private final double cellSize;
+	private final int cols;
+	private final int rows;
+	private final float[] distances;
+	private final boolean empty;
+
+	public FireDistanceGrid(Geometry fire, double margin, double cellSizeInMetres) {
+		this(fire, margin, cellSizeInMetres, MAX_CELLS);
+	}
+
+	FireDistanceGrid(Geometry fire, double margin, double cellSizeInMetres, long maxCells) {
+		if (cellSizeInMetres <= 0) {
+			throw new IllegalArgumentException("Grid cell size must be positive, found " + cellSizeInMetres);
+		}
+		long start = System.currentTimeMillis();
+		this.fire = fire;
+		this.raster = null;
+		this.empty = fire.isEmpty();
+		Envelope env = new Envelope(fire.getEnvelopeInternal());
+		env.expandBy(margin + cellSizeInMetres);
+		double size = cellSizeInMetres;
+		long cells = numCells(env, size);
+		if (cells > maxCells) {
+			size = size * Math.sqrt((double) cells / maxCells) * 1.01;
+			log.warn("Fire distance grid with cell size {}m would need {} cells, so will use cell size {}m instead",
+					cellSizeInMetres, cells, size);
+		}
+		this.cellSize = size;
+		this.minX = env.getMinX();
+		this.minY = env.getMinY();
+		this.cols = (int) Math.ceil(env.getWidth() / size);
+		this.rows = (int) Math.ceil(env.getHeight() / size);
+		this.distances = computeDistances(rasterise());
+		log.debug("Built {}x{} fire distance grid with cell size {}m in {} ms",
+				cols, rows, cellSize, System.currentTimeMillis() - start);
+	}
+
+	public FireDistanceGrid(HazardRaster raster, double margin) {
+		this(raster, margin, MAX_CELLS);
+	}
+
+	FireDistanceGrid(HazardRaster raster, double margin, long maxCells) {
+		long start = System.currentTimeMillis();
+		this.fire = null;
+		this.raster = raster;
+		this.empty = raster.isEmpty();
+		int pad = (int) Math.ceil(margin / raster.getCellSize()) + 1;
+		long cells = (long) (raster.getColumns() + 2 * pad) * (raster.getRows() + 2 * pad);
+		int factor = 1;
+		if (cells > maxCells) {
+			// merge whole raster cells, so that the grid stays aligned with the raster
+			factor = (int) Math.ceil(Math.sqrt((double) cells / maxCells));
+			log.warn("Fire distance grid with cell size {}m would need {} cells, so will use cell size {}m instead",
+					raster.getCellSize(), cells, raster.getCellSize() * factor);
+		}
+		int coarsePad = (pad + factor - 1) / factor;
+		this.cellSize = raster.getCellSize() * factor;
+		this.cols = (raster.getColumns() + factor - 1) / factor + 2 * coarsePad;
+		this.rows = (raster.getRows() + factor - 1) / factor + 2 * coarsePad;
+		this.minX = raster.getCentreX(0) - raster.getCellSize() / 2 - coarsePad * cellSize;
+		this.minY = raster.getCentreY(0) - raster.getCellSize() / 2 - coarsePad * cellSize;
+		double[] grid = new double[cols * rows];
+		java.util.Arrays.fill(grid, FAR);
+		for (int row = 0; row < raster.getRows(); row++) {
+			for (int col = 0; col < raster.getColumns(); col++) {
+				if (raster.isSet(col, row)) {
+					grid[(row / factor + coarsePad) * cols + (col / factor + coarsePad)] = 0;
+				}
+			}
+		}
+		this.distances = computeDistances(grid);
+		log.debug("Built {}x{} fire distance grid from raster with cell size {}m in {} ms",
+				cols, rows, cellSize, System.currentTimeMillis() - start);
+	}
+
+	private static long numCells(Envelope env, double size) {
+		return (long) Math.ceil(env.getWidth() / size) * (long) Math.ceil(env.getHeight() / size);
+	}
+
+	/**
+	 * The size of the grid cells, which is larger than asked for if the grid had to be coarsened
+	 */
+	double getCellSize() {
+		return cellSize;
+	}
+
+	/**
+	 * Distance in metres from the given point to the fire
+	 */
+	public double distance(Point point) {
+		return distance(point.getX(), point.getY());
+	}
+
+	public double distance(double x, double y) {
+		if (empty) {
+			return Double.POSITIVE_INFINITY; // (rather than the far marker of the grid, or the 0 of JTS)
+		}
+		int col = (int) Math.floor((x - minX) / cellSize);
+		int row = (int) Math.floor((y - minY) / cellSize);
+		if (col < 0 || row < 0 || col >= cols || row >= rows) {
+			Geometry shape = (fire != null) ? fire : raster.getGeometry();
+			return shape.getFactory().createPoint(new Coordinate(x, y)).distance(shape);
+		}
+		return distances[row * cols + col];
+	}
+
+	/**
+	 * Marks the fire cells with 0 and all others with {@link #FAR}
+	 */
+	private double[] rasterise() {
+		double[] grid = new double[cols * rows];
+		java.util.Arrays.fill(grid, FAR);
+		if (fire.isEmpty()) {
+			return grid;
+		}
+		// only cells inside the fire envelope can have their centre in the fire
+		Envelope env = fire.getEnvelopeInternal();
+		int c0 = Math.max(0, (int) Math.floor((env.getMinX() - minX) / cellSize));
+		int c1 = Math.min(cols - 1, (int) Math.floor((env.getMaxX() - minX) / cellSize));
+		int r0 = Math.max(0, (int) Math.floor((env.getMinY() - minY) / cellSize));
+		int r1 = Math.min(rows - 1, (int) Math.floor((env.getMaxY() - minY) / cellSize));
+		IndexedPointInAreaLocator locator = new IndexedPointInAreaLocator(fire);
+		Coordinate centre = new Coordinate();
+		for (int row = r0; row <= r1; row++) {
+			centre.y = minY + (row + 0.5) * cellSize;
+			for (int col = c0; col <= c1; col++) {
+				centre.x = minX + (col + 0.5) * cellSize;
+				if (locator.locate(centre) != Location.EXTERIOR) {
+					grid[row * cols + col] = 0;
+				}
+			}
+		}
+		// and the cells along the boundary, so that every point of the fire is within half a cell
+		// diagonal of a fire cell centre, and slivers thinner than a cell are not lost
+		for (Object line : LinearComponentExtracter.getLines(fire)) {
+			Coordinate[] coordinates = ((LineString) line).getCoordinates();
+			for (int i = 1; i < coordinates.length; i++) {
+				markCellsAlong(grid, coordinates[i - 1], coordinates[i]);
+			}
+		}
+		return grid;
+	}
+
+	/**
+	 * Marks every cell that the given segment passes through as a fire cell, stepping from cell
+	 * to cell across whichever cell edge the segment crosses next (Amanatides and Woo)
+	 */
+	private void markCellsAlong(double[] grid, Coordinate from, Coordinate to) {
+		double x0 = (from.x - minX) / cellSize;
+		double y0 = (from.y - minY) / cellSize;
+		double dx = (to.x - minX) / cellSize - x0;
+		double dy = (to.y - minY) / cellSize - y0;
+		int col = (int) Math.floor(x0);
+		int row = (int) Math.floor(y0);
+		int steps = Math.abs((int) Math.floor(x0 + dx) - col) + Math.abs((int) Math.floor(y0 + dy) - row);
+		double stepX = (dx == 0) ? Double.POSITIVE_INFINITY : Math.abs(1 / dx);
+		double stepY = (dy == 0) ? Double.POSITIVE_INFINITY : Math.abs(1 / dy);
+		double nextX = (dx == 0) ? Double.POSITIVE_INFINITY : ((dx > 0) ? col + 1 - x0 : x0 - col) * stepX;
+		double nextY = (dy == 0) ? Double.POSITIVE_INFINITY : ((dy > 0) ? row + 1 - y0 : y0 - row) * stepY;
+		grid[row * cols + col] = 0;
+		for (int i = 0; i < steps; i++) {
+			if (nextX < nextY) {
+				nextX += stepX;
+				col += (dx > 0) ? 1 : -1;
+			} else {
+				nextY += stepY;
+				row += (dy > 0) ? 1 : -1;
+			}
+			if (col >= 0 && row >= 0 && col < cols && row < rows) {
+				grid[row * cols + col] = 0;
+			}
+		}
+	}
+
+	/**
+	 * Exact Euclidean distance transform (Felzenszwalb and Huttenlocher), done as one pass of
+	 * the 1D transform over the columns and then one over the rows
+	 */
+	private float[] computeDistances(double[] grid) {
+		int n = Math.max(cols, rows);
+		double[] f = new double[n];
+		double[] d = new double[n];
+		int[] v = new int[n];
+		double[] z = new double[n + 1];
+		for (int col = 0; col < cols; col++) {
+			for (int row = 0; row < rows; row++) {
+				f[row] = grid[row * cols + col];
+			}
+			transform(f, rows, d, v, z);
+			for (int row = 0; row < rows; row++) {
+				grid[row * cols + col] = d[row];
+			}
+		}
+		float[] result = new float[cols * rows];
+		for (int row = 0; row < rows; row++) {
+			System.arraycopy(grid, row * cols, f, 0, cols);
+			transform(f, cols, d, v, z);
+			for (int col = 0; col < cols; col++) {
+				result[row * cols + col] = (float) (Math.sqrt(d[col]) * cellSize);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * 1D squared distance transform of the sampled function f
+	 */
+	private static void transform(double[] f, int n, double[] d, int[] v, double[] z) {
+		int k = 0;
+		v[0] = 0;
+		z[0] = -FAR;
+		z[1] = FAR;
+		for (int q = 1; q < n; q++) {
+			double s = intersection(f, q, v[k]);
+			while (s <= z[k]) {
+				k--;
+				s = intersection(f, q, v[k]);
+			}
+			k++;
+			v[k] = q;
+			z[k] = s;
+			z[k + 1] = FAR;
+		}
+		k = 0;
+		for (int q = 0; q < n; q++) {
+			while (z[k + 1] < q) {
+				k++;
+			}
+			d[q] = (double) (q - v[k]) * (q - v[k]) + f[v[k]];
+		}
+	}
+
+	private static double intersection(double[] f, int q, int p) {
+		return ((f[q] + (double) q * q) - (f[p] + (double) p * p)) / (2.0 * q - 2.0 * p);
+	}
+}
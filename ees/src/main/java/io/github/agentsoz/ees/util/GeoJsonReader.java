@@ -0,0 +1,280 @@
+package io.github.agentsoz.ees.util;
+
+/*
+ * #%L
+ * Emergency Evacuation Simulator
+ * %%
+ * Copyright (C) 2014 - 2025 by its authors. See AUTHORS file.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.ContentHandler;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+
+import java.io.*;
+import java.util.*;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Streaming reader of GeoJSON feature collections that hands out one feature at a time, so that
+ * memory use is bounded by the largest feature rather than by the size of the file.
+ * <p>
+ * The coordinates of a feature come as its position lists: every innermost array of positions
+ * (a ring of a polygon, a line string, or the one position of a point) in document order, each
+ * packed as {@code [x0, y0, x1, y1, ...]}. Only the first two ordinates of a position are kept.
+ * Properties are kept as parsed by json-simple. Files ending in {@code .gz} are read as gzipped.
+ * <pre>{@code
+ * try (GeoJsonReader reader = new GeoJsonReader(file)) {
+ *     for (GeoJsonReader.Feature feature = reader.next(); feature != null; feature = reader.next()) {
+ *         ...
+ *     }
+ * }
+ * }</pre>
+ */
+public final class GeoJsonReader implements Closeable {
+
+	/**
+	 * One feature of the collection
+	 */
+	public static final class Feature {
+		private final Map<String, Object> properties = new HashMap<>();
+		private final List<double[]> positionLists = new ArrayList<>();
+		private String geometryType;
+
+		public Map<String, Object> getProperties() {
+			return properties;
+		}
+
+		public Object getProperty(String name) {
+			return properties.get(name);
+		}
+
+		/**
+		 * Gets the type of the geometry, e.g., Polygon, or null if the feature has no geometry
+		 */
+		public String getGeometryType() {
+			return geometryType;
+		}
+
+		public List<double[]> getPositionLists() {
+			return positionLists;
+		}
+
+		/**
+		 * Gets the first position list, e.g., the exterior ring of a polygon, or null if there is none
+		 */
+		public double[] getFirstPositionList() {
+			return positionLists.isEmpty() ? null : positionLists.get(0);
+		}
+	}
+
+	// nesting depths of the parts of a feature collection that are read
+	private static final int FEATURES = 2;
+	private static final int FEATURE = 3;
+	private static final int MEMBER = 4; // properties or geometry
+	private static final int COORDINATES = 5;
+
+	private final Reader reader;
+	private final JSONParser parser = new JSONParser();
+	private final Handler handler = new Handler();
+
+	public GeoJsonReader(String file) throws IOException {
+		this((file.endsWith(".gz")) ?
+				new InputStreamReader(new GZIPInputStream(new FileInputStream(file))) :
+				new FileReader(file));
+	}
+
+	public GeoJsonReader(Reader reader) {
+		this.reader = new BufferedReader(reader);
+	}
+
+	/**
+	 * Reads the next feature, or returns null at the end of the collection
+	 */
+	public Feature next() throws IOException, ParseException {
+		while (!handler.done) {
+			parser.parse(reader, handler, true);
+			if (handler.feature != null && handler.featureDone) {
+				Feature feature = handler.feature;
+				handler.feature = null;
+				handler.featureDone = false;
+				return feature;
+			}
+		}
+		return null;
+	}
+
+	@Override
+	public void close() throws IOException {
+		reader.close();
+	}
+
+	private static final class Handler implements ContentHandler {
+		// key of the current entry of the object at each depth (root object being depth 1)
+		private String[] path = new String[16];
+		private int depth = 0;
+		private boolean done = false;
+		private Feature feature;
+		private boolean featureDone = false;
+		// json-simple values being built for properties that are themselves objects or arrays
+		private final Deque<Object> values = new ArrayDeque<>();
+		// depth below the coordinates member of the innermost arrays of numbers, i.e., positions
+		private int positionLevel = -1;
+		private int ordinate = 0;
+		private double[] list = new double[64];
+		private int listSize = 0;
+
+		private boolean in(int level, String key) {
+			return depth >= level && key.equals(path[level]) && "features".equals(path[1]);
+		}
+
+		private boolean inProperties() {
+			return feature != null && depth >= MEMBER && in(FEATURE, "properties");
+		}
+
+		private boolean inGeometry() {
+			return feature != null && depth >= MEMBER && in(FEATURE, "geometry");
+		}
+
+		private int coordinateLevel() {
+			return (inGeometry() && in(MEMBER, "coordinates")) ? depth - MEMBER : 0;
+		}
+
+		private void enter() {
+			depth++;
+			if (depth == path.length) {
+				path = Arrays.copyOf(path, depth * 2);
+			}
+			path[depth] = null;
+		}
+
+		@Override
+		public void startJSON() {
+		}
+
+		@Override
+		public void endJSON() {
+			done = true;
+		}
+
+		@Override
+		public boolean startObject() {
+			enter();
+			if (depth == FEATURE && "features".equals(path[1])) {
+				feature = new Feature();
+				positionLevel = -1;
+			} else if (depth > MEMBER && inProperties()) {
+				values.push(new JSONObject());
+			}
+			return true;
+		}
+
+		@Override
+		public boolean endObject() {
+			boolean more = true;
+			if (depth == FEATURE && feature != null) {
+				featureDone = true;
+				more = false; // hand the feature out before reading on
+			} else if (depth > MEMBER && inProperties()) {
+				depth--;
+				addValue(values.pop());
+				return true;
+			}
+			depth--;
+			return more;
+		}
+
+		@Override
+		public boolean startObjectEntry(String key) {
+			path[depth] = key;
+			return true;
+		}
+
+		@Override
+		public boolean endObjectEntry() {
+			return true;
+		}
+
+		@Override
+		public boolean startArray() {
+			enter();
+			if (depth > MEMBER && inProperties()) {
+				values.push(new JSONArray());
+			}
+			return true;
+		}
+
+		@Override
+		public boolean endArray() {
+			int level = coordinateLevel();
+			if (level > 0) {
+				if (level == positionLevel) {
+					ordinate = 0;
+				}
+				// a point is a single position, anything else ends a list one level up
+				if ((level == positionLevel && level == 1) || level == positionLevel - 1) {
+					feature.positionLists.add(Arrays.copyOf(list, listSize));
+					listSize = 0;
+				}
+			} else if (depth > MEMBER && inProperties()) {
+				depth--;
+				addValue(values.pop());
+				return true;
+			}
+			depth--;
+			return true;
+		}
+
+		@Override
+		public boolean primitive(Object value) {
+			if (feature == null) {
+				return true;
+			}
+			int level = coordinateLevel();
+			if (level > 0) {
+				if (value instanceof Number) {
+					positionLevel = level;
+					if (ordinate < 2) {
+						if (listSize == list.length) {
+							list = Arrays.copyOf(list, list.length * 2);
+						}
+						list[listSize++] = ((Number) value).doubleValue();
+					}
+					ordinate++;
+				}
+			} else if (depth == MEMBER && inGeometry() && "type".equals(path[MEMBER])) {
+				feature.geometryType = (String) value;
+			} else if (inProperties()) {
+				addValue(value);
+			}
+			return true;
+		}
+
+		@SuppressWarnings("unchecked")
+		private void addValue(Object value) {
+			if (values.isEmpty()) {
+				feature.properties.put(path[MEMBER], value);
+			} else if (values.peek() instanceof JSONArray) {
+				((JSONArray) values.peek()).add(value);
+			} else {
+				((JSONObject) values.peek()).put(path[depth], value);
+			}
+		}
+	}
+}
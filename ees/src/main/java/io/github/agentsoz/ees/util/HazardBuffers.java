@@ -0,0 +1,126 @@
+package io.github.agentsoz.ees.util;
+
+/*
+ * #%L
+ * Emergency Evacuation Simulator
+ * %%
+ * Copyright (C) 2014 - 2025 by its authors. See AUTHORS file.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.operation.buffer.BufferOp;
+import org.locationtech.jts.operation.buffer.BufferParameters;
+import org.locationtech.jts.simplify.TopologyPreservingSimplifier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.TreeMap;
+
+/**
+ * Buffers of one hazard shape at several distances, worked out lazily and cached, so that each
+ * distance is buffered at most once per hazard update.
+ * <p>
+ * With a positive tolerance, the shape is simplified once (preserving its topology) to within
+ * that tolerance, and every buffer is grown from that simplified shape with just enough segments
+ * per quadrant to stay close to the tolerance, so the cost of buffering follows the tolerance
+ * rather than the resolution of the hazard data. The simplified boundary may lie up to the
+ * tolerance inside the exact one, and the chords of the rounded corners cut inside their arcs, so
+ * each buffer distance is padded by the tolerance plus that chord error, which keeps every buffer
+ * covering the exact one. With a zero tolerance the buffers are exactly those of the given shape.
+ */
+public final class HazardBuffers {
+
+	private static final Logger log = LoggerFactory.getLogger(HazardBuffers.class);
+
+	private final Geometry hazard;
+	private final double tolerance;
+	private final TreeMap<Double, Geometry> buffers = new TreeMap<>();
+	private Geometry simplified;
+
+	public HazardBuffers(Geometry hazard, double toleranceInMetres) {
+		if (toleranceInMetres < 0) {
+			throw new IllegalArgumentException("Simplification tolerance must not be negative, found " + toleranceInMetres);
+		}
+		this.hazard = hazard;
+		this.tolerance = toleranceInMetres;
+	}
+
+	public Geometry getHazard() {
+		return hazard;
+	}
+
+	/**
+	 * Gets the hazard shape as simplified to within the tolerance
+	 */
+	public Geometry getSimplifiedHazard() {
+		if (simplified == null) {
+			simplified = simplify(hazard);
+			if (tolerance > 0) {
+				log.debug("Simplified hazard from {} to {} vertices with tolerance {}m",
+						hazard.getNumPoints(), simplified.getNumPoints(), tolerance);
+			}
+		}
+		return simplified;
+	}
+
+	/**
+	 * Gets the buffer of the hazard at the given distance
+	 */
+	public Geometry getBuffer(double distance) {
+		Geometry buffer = buffers.get(distance);
+		if (buffer != null) {
+			return buffer;
+		}
+		if (tolerance <= 0) {
+			buffer = hazard.buffer(distance);
+		} else {
+			int segments = quadrantSegments(distance + tolerance, tolerance);
+			buffer = BufferOp.bufferOp(getSimplifiedHazard(), paddedDistance(distance, tolerance, segments), segments);
+		}
+		buffers.put(distance, buffer);
+		return buffer;
+	}
+
+	private Geometry simplify(Geometry shape) {
+		return (tolerance > 0) ? TopologyPreservingSimplifier.simplify(shape, tolerance) : shape;
+	}
+
+	/**
+	 * Distance to buffer a shape simplified to within the tolerance by, so that the result covers the
+	 * exact buffer at the given distance. The chords of a quarter circle drawn with the given number
+	 * of segments come within r(1-cos(pi/(4*segments))) of radius r, and that radius is itself padded,
+	 * so the chord error is solved for rather than just added.
+	 */
+	static double paddedDistance(double distance, double tolerance, int quadrantSegments) {
+		double c = 1 - Math.cos(Math.PI / (4 * quadrantSegments));
+		double radius = distance + tolerance;
+		return radius + c * radius / (1 - c);
+	}
+
+	/**
+	 * Fewest segments per quarter circle for which the chords of a circle of the given radius stay
+	 * within the given tolerance of it, but no more than the JTS default
+	 */
+	static int quadrantSegments(double radius, double tolerance) {
+		if (radius <= tolerance) {
+			return 1;
+		}
+		double maxAngle = 2 * Math.acos(1 - tolerance / radius);
+		int segments = (int) Math.ceil((Math.PI / 2) / maxAngle);
+		return Math.max(1, Math.min(BufferParameters.DEFAULT_QUADRANT_SEGMENTS, segments));
+	}
+}
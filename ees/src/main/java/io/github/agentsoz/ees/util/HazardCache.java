@@ -0,0 +1,371 @@
+package io.github.agentsoz.ees.util;
+
+/*
+ * #%L
+ * Emergency Evacuation Simulator
+ * %%
+ * Copyright (C) 2014 - 2025 by its authors. See AUTHORS file.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.io.ParseException;
+import org.locationtech.jts.io.WKBReader;
+import org.locationtech.jts.io.WKBWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * On-disk cache of the hazard shapes and arrival grids built from a hazard input file, so that
+ * runs that share inputs (e.g., the variants of a scenario) parse and build them only once.
+ * <p>
+ * The cache is written next to the input on first load, to a file named after the input and
+ * the variant, i.e., the model options that the built hazards depend on (such as the CRS or
+ * the time offset). It records the size, modification time and SHA-256 of the input it was
+ * built from. It is reused as is if the size and modification time still match, or if
+ * otherwise the content hash still does, and is rebuilt if not.
+ * <p>
+ * The format is versioned and big-endian: a header (magic, version, input size, modification
+ * time and hash, variant) followed by named sections. A section is either a time series of
+ * geometries in WKB, or a dense raster of fire and embers arrival times. Any problem reading
+ * or writing the cache is logged and the model falls back to its input, so a cache can always
+ * be deleted safely.
+ */
+public final class HazardCache {
+
+	private static final Logger log = LoggerFactory.getLogger(HazardCache.class);
+
+	/**
+	 * Whether to use the cache
+	 */
+	public enum Mode {off, on}
+
+	private static final int MAGIC = 0x45455348; // "EESH"
+	private static final int VERSION = 1;
+	private static final byte GEOMETRIES = 1;
+	private static final byte ARRIVAL_GRID = 2;
+	private static final String SUFFIX = ".hazard";
+
+	private final Path input;
+	private final Path cache;
+	private final String variant;
+	private final Mode mode;
+
+	public HazardCache(String inputFile, String variant, Mode mode) {
+		this.input = Paths.get(inputFile);
+		this.variant = variant;
+		this.mode = mode;
+		this.cache = Paths.get(inputFile + "." + toHex(sha256(variant.getBytes(StandardCharsets.UTF_8))).substring(0, 8) + SUFFIX);
+	}
+
+	/**
+	 * Parses the given option value (in any case) into a mode
+	 *
+	 * @throws IllegalArgumentException if it is not one of the modes
+	 */
+	public static Mode parseMode(String value) {
+		try {
+			return Mode.valueOf(value.trim().toLowerCase(Locale.ROOT));
+		} catch (IllegalArgumentException | NullPointerException e) {
+			throw new IllegalArgumentException("Unknown hazard cache mode '" + value + "', expected one of "
+					+ Arrays.toString(Mode.values()), e);
+		}
+	}
+
+	public boolean isEnabled() {
+		return mode != Mode.off;
+	}
+
+	/**
+	 * Reads the cached contents, or returns null if the cache is off, missing, or was not built
+	 * from the current input with the same variant
+	 */
+	public Contents read() {
+		if (!isEnabled() || !Files.isRegularFile(cache)) {
+			return null;
+		}
+		long start = System.currentTimeMillis();
+		try {
+			ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(cache));
+			if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+				log.info("Ignoring hazard cache {} as it is not of version {}", cache, VERSION);
+				return null;
+			}
+			long size = buffer.getLong();
+			long modified = buffer.getLong();
+			byte[] hash = new byte[32];
+			buffer.get(hash);
+			if (!variant.equals(getString(buffer))) {
+				log.info("Ignoring hazard cache {} as it was built with other options", cache);
+				return null;
+			}
+			if ((size != Files.size(input) || modified != Files.getLastModifiedTime(input).toMillis())
+					&& !Arrays.equals(hash, hash(input))) {
+				log.info("Ignoring hazard cache {} as {} has changed since", cache, input);
+				return null;
+			}
+			Contents contents = new Contents();
+			WKBReader reader = new WKBReader();
+			for (int sections = buffer.getInt(); sections > 0; sections--) {
+				byte kind = buffer.get();
+				String name = getString(buffer);
+				if (kind == GEOMETRIES) {
+					contents.series.put(name, readGeometries(buffer, reader));
+				} else if (kind == ARRIVAL_GRID) {
+					contents.grids.put(name, readArrivalGrid(buffer));
+				} else {
+					throw new IOException("unknown section type " + kind);
+				}
+			}
+			log.info("Read hazards from cache {} in {} ms", cache, System.currentTimeMillis() - start);
+			return contents;
+		} catch (IOException | ParseException | RuntimeException e) {
+			log.warn("Could not read hazard cache " + cache + ", so will load " + input + " instead", e);
+			return null;
+		}
+	}
+
+	/**
+	 * Writes the given contents to the cache, replacing any previous cache of this input and variant
+	 */
+	public void write(Contents contents) {
+		if (!isEnabled()) {
+			return;
+		}
+		long start = System.currentTimeMillis();
+		Path temp = null;
+		try {
+			// read the input's size and time before hashing it, so that a later change is never missed
+			long size = Files.size(input);
+			long modified = Files.getLastModifiedTime(input).toMillis();
+			byte[] hash = hash(input);
+			Path dir = cache.toAbsolutePath().getParent();
+			temp = Files.createTempFile(dir, cache.getFileName().toString(), ".tmp");
+			try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				out.writeLong(size);
+				out.writeLong(modified);
+				out.write(hash);
+				putString(out, variant);
+				out.writeInt(contents.series.size() + contents.grids.size());
+				WKBWriter writer = new WKBWriter();
+				for (Map.Entry<String, TreeMap<Double, ArrayList<Geometry>>> entry : contents.series.entrySet()) {
+					out.writeByte(GEOMETRIES);
+					putString(out, entry.getKey());
+					writeGeometries(out, entry.getValue(), writer);
+				}
+				for (Map.Entry<String, FireArrivalGrid> entry : contents.grids.entrySet()) {
+					out.writeByte(ARRIVAL_GRID);
+					putString(out, entry.getKey());
+					writeArrivalGrid(out, entry.getValue());
+				}
+			}
+			// concurrent runs sharing the input must never see a partly written cache
+			Files.move(temp, cache, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			log.info("Wrote hazards to cache {} in {} ms", cache, System.currentTimeMillis() - start);
+		} catch (IOException | RuntimeException e) {
+			log.warn("Could not write hazard cache " + cache, e);
+			if (temp != null) {
+				try {
+					Files.deleteIfExists(temp);
+				} catch (IOException ignored) {
+				}
+			}
+		}
+	}
+
+	private static TreeMap<Double, ArrayList<Geometry>> readGeometries(ByteBuffer buffer, WKBReader reader) throws ParseException {
+		TreeMap<Double, ArrayList<Geometry>> series = new TreeMap<>();
+		for (int times = buffer.getInt(); times > 0; times--) {
+			double time = buffer.getDouble();
+			int count = buffer.getInt();
+			ArrayList<Geometry> geometries = new ArrayList<>(count);
+			for (int i = 0; i < count; i++) {
+				byte[] wkb = new byte[buffer.getInt()];
+				buffer.get(wkb);
+				geometries.add(reader.read(wkb));
+			}
+			series.put(time, geometries);
+		}
+		return series;
+	}
+
+	private static void writeGeometries(DataOutputStream out, TreeMap<Double, ArrayList<Geometry>> series,
+										WKBWriter writer) throws IOException {
+		out.writeInt(series.size());
+		for (Map.Entry<Double, ArrayList<Geometry>> entry : series.entrySet()) {
+			out.writeDouble(entry.getKey());
+			out.writeInt(entry.getValue().size());
+			for (Geometry geometry : entry.getValue()) { // (no nulls, see Contents)
+				byte[] wkb = writer.write(geometry);
+				out.writeInt(wkb.length);
+				out.write(wkb);
+			}
+		}
+	}
+
+	private static FireArrivalGrid readArrivalGrid(ByteBuffer buffer) {
+		FireArrivalGrid grid = new FireArrivalGrid(buffer.getDouble(), buffer.getDouble(), buffer.getDouble());
+		int minCol = buffer.getInt();
+		int minRow = buffer.getInt();
+		int cols = buffer.getInt();
+		int rows = buffer.getInt();
+		for (int row = 0; row < rows; row++) {
+			for (int col = 0; col < cols; col++) {
+				grid.setFireArrivalTimeOfCell(minCol + col, minRow + row, buffer.getDouble());
+			}
+		}
+		for (int row = 0; row < rows; row++) {
+			for (int col = 0; col < cols; col++) {
+				grid.setEmbersArrivalTimeOfCell(minCol + col, minRow + row, buffer.getDouble());
+			}
+		}
+		return grid;
+	}
+
+	private static void writeArrivalGrid(DataOutputStream out, FireArrivalGrid grid) throws IOException {
+		out.writeDouble(grid.getCellSize());
+		out.writeDouble(grid.getOriginX());
+		out.writeDouble(grid.getOriginY());
+		int[] bounds = grid.getBounds();
+		for (int bound : bounds) {
+			out.writeInt(bound);
+		}
+		for (int row = 0; row < bounds[3]; row++) {
+			for (int col = 0; col < bounds[2]; col++) {
+				out.writeDouble(grid.getFireArrivalTimeOfCell(bounds[0] + col, bounds[1] + row));
+			}
+		}
+		for (int row = 0; row < bounds[3]; row++) {
+			for (int col = 0; col < bounds[2]; col++) {
+				out.writeDouble(grid.getEmbersArrivalTimeOfCell(bounds[0] + col, bounds[1] + row));
+			}
+		}
+	}
+
+	private static String getString(ByteBuffer buffer) {
+		byte[] bytes = new byte[buffer.getInt()];
+		buffer.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private static void putString(DataOutputStream out, String string) throws IOException {
+		byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static byte[] hash(Path path) throws IOException {
+		MessageDigest digest = newDigest();
+		try (InputStream in = new DigestInputStream(Files.newInputStream(path), digest)) {
+			in.transferTo(OutputStream.nullOutputStream());
+		}
+		return digest.digest();
+	}
+
+	private static byte[] sha256(byte[] bytes) {
+		return newDigest().digest(bytes);
+	}
+
+	private static MessageDigest newDigest() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-256 is not available", e);
+		}
+	}
+
+	private static String toHex(byte[] bytes) {
+		StringBuilder sb = new StringBuilder(bytes.length * 2);
+		for (byte b : bytes) {
+			sb.append(String.format("%02x", b));
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Named hazards held in a cache: time series of geometries, and fire arrival grids. Null
+	 * geometries are left out, as is any time that only has a null geometry.
+	 */
+	public static final class Contents {
+		private final Map<String, TreeMap<Double, ArrayList<Geometry>>> series = new LinkedHashMap<>();
+		private final Map<String, FireArrivalGrid> grids = new LinkedHashMap<>();
+
+		public Contents putGeometries(String name, Map<Double, ? extends Collection<Geometry>> geometries) {
+			TreeMap<Double, ArrayList<Geometry>> copy = new TreeMap<>();
+			for (Map.Entry<Double, ? extends Collection<Geometry>> entry : geometries.entrySet()) {
+				ArrayList<Geometry> list = new ArrayList<>(entry.getValue());
+				list.removeIf(Objects::isNull);
+				copy.put(entry.getKey(), list);
+			}
+			series.put(name, copy);
+			return this;
+		}
+
+		/**
+		 * Puts a series that has one geometry per time
+		 */
+		public Contents putGeometry(String name, Map<Double, Geometry> geometries) {
+			TreeMap<Double, ArrayList<Geometry>> copy = new TreeMap<>();
+			for (Map.Entry<Double, Geometry> entry : geometries.entrySet()) {
+				if (entry.getValue() != null) {
+					copy.put(entry.getKey(), new ArrayList<>(Collections.singletonList(entry.getValue())));
+				}
+			}
+			series.put(name, copy);
+			return this;
+		}
+
+		public Contents putArrivalGrid(String name, FireArrivalGrid grid) {
+			grids.put(name, grid);
+			return this;
+		}
+
+		/**
+		 * Gets the named series, or an empty one if there is none
+		 */
+		public TreeMap<Double, ArrayList<Geometry>> getGeometries(String name) {
+			return series.getOrDefault(name, new TreeMap<>());
+		}
+
+		/**
+		 * Gets the named series that has one geometry per time, or an empty one if there is none
+		 */
+		public TreeMap<Double, Geometry> getGeometry(String name) {
+			TreeMap<Double, Geometry> result = new TreeMap<>();
+			for (Map.Entry<Double, ArrayList<Geometry>> entry : getGeometries(name).entrySet()) {
+				if (!entry.getValue().isEmpty()) {
+					result.put(entry.getKey(), entry.getValue().get(0));
+				}
+			}
+			return result;
+		}
+
+		public FireArrivalGrid getArrivalGrid(String name) {
+			return grids.get(name);
+		}
+	}
+}
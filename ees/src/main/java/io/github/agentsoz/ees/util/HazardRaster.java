@@ -0,0 +1,175 @@
+package io.github.agentsoz.ees.util;
+
+/*
+ * #%L
+ * Emergency Evacuation Simulator
+ * %%
+ * Copyright (C) 2014 - 2025 by its authors. See AUTHORS file.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Hazard (such as the cells of a Phoenix grid that have burnt by some time) kept as the raster
+ * it comes as, so that containment is cell arithmetic and no polygons need to be built per update.
+ * <p>
+ * Cells are squares of the given size centred on a regular lattice through the origin, and the
+ * raster covers the columns and rows of the lattice from the given minimums on. Distances and
+ * buffers go through a {@link FireDistanceGrid} built from the raster, and a polygon of the cells
+ * is only made if something asks for one.
+ */
+public final class HazardRaster {
+
+	private static final GeometryFactory FACTORY = new GeometryFactory();
+
+	private final double originX;
+	private final double originY;
+	private final double cellSize;
+	private final int minCol;
+	private final int minRow;
+	private final int cols;
+	private final int rows;
+	private final BitSet cells;
+	private Geometry geometry;
+
+	/**
+	 * @param cells the hazard cells, with the cell at column c and row r at bit
+	 *              {@code (r - minRow) * cols + (c - minCol)}
+	 */
+	public HazardRaster(double originX, double originY, double cellSizeInMetres,
+						int minCol, int minRow, int cols, int rows, BitSet cells) {
+		if (cellSizeInMetres <= 0) {
+			throw new IllegalArgumentException("Grid cell size must be positive, found " + cellSizeInMetres);
+		}
+		this.originX = originX;
+		this.originY = originY;
+		this.cellSize = cellSizeInMetres;
+		this.minCol = minCol;
+		this.minRow = minRow;
+		this.cols = cols;
+		this.rows = rows;
+		this.cells = cells;
+	}
+
+	public boolean isEmpty() {
+		return cells.isEmpty();
+	}
+
+	public int getNumberOfCells() {
+		return cells.cardinality();
+	}
+
+	public double getCellSize() {
+		return cellSize;
+	}
+
+	/**
+	 * Whether the point is in a hazard cell
+	 */
+	public boolean contains(double x, double y) {
+		int col = (int) Math.round((x - originX) / cellSize) - minCol;
+		int row = (int) Math.round((y - originY) / cellSize) - minRow;
+		return col >= 0 && row >= 0 && col < cols && row < rows && cells.get(row * cols + col);
+	}
+
+	/**
+	 * Whether the cell at the given column and row (counted from the minimums) is a hazard cell
+	 */
+	boolean isSet(int col, int row) {
+		return cells.get(row * cols + col);
+	}
+
+	int getColumns() {
+		return cols;
+	}
+
+	int getRows() {
+		return rows;
+	}
+
+	/**
+	 * Envelope of the squares of all hazard cells, or an empty envelope if there are none
+	 */
+	public Envelope getEnvelope() {
+		Envelope env = new Envelope();
+		int minSetRow = Integer.MAX_VALUE, maxSetRow = -1, minSetCol = Integer.MAX_VALUE, maxSetCol = -1;
+		for (int i = cells.nextSetBit(0); i >= 0; i = cells.nextSetBit(i + 1)) {
+			int row = i / cols, col = i % cols;
+			minSetRow = Math.min(minSetRow, row);
+			maxSetRow = Math.max(maxSetRow, row);
+			minSetCol = Math.min(minSetCol, col);
+			maxSetCol = Math.max(maxSetCol, col);
+		}
+		if (maxSetRow >= 0) {
+			env.expandToInclude(getCentreX(minSetCol) - cellSize / 2, getCentreY(minSetRow) - cellSize / 2);
+			env.expandToInclude(getCentreX(maxSetCol) + cellSize / 2, getCentreY(maxSetRow) + cellSize / 2);
+		}
+		return env;
+	}
+
+	/**
+	 * Mean of the centres of the hazard cells, or null if there are none
+	 */
+	public Coordinate getCentroid() {
+		double sumX = 0, sumY = 0;
+		int n = 0;
+		for (int i = cells.nextSetBit(0); i >= 0; i = cells.nextSetBit(i + 1)) {
+			sumX += getCentreX(i % cols);
+			sumY += getCentreY(i / cols);
+			n++;
+		}
+		return (n == 0) ? null : new Coordinate(sumX / n, sumY / n);
+	}
+
+	double getCentreX(int col) {
+		return originX + (minCol + col) * cellSize;
+	}
+
+	double getCentreY(int row) {
+		return originY + (minRow + row) * cellSize;
+	}
+
+	/**
+	 * Polygon of the hazard cells, made on first use from one box per run of cells in a row
+	 */
+	public synchronized Geometry getGeometry() {
+		if (geometry == null) {
+			List<Geometry> runs = new ArrayList<>();
+			double half = cellSize / 2;
+			for (int row = 0; row < rows; row++) {
+				int from = cells.nextSetBit(row * cols);
+				while (from >= 0 && from < (row + 1) * cols) {
+					int to = Math.min(cells.nextClearBit(from), (row + 1) * cols);
+					double y = getCentreY(row);
+					runs.add(FACTORY.toGeometry(new Envelope(
+							getCentreX(from - row * cols) - half, getCentreX(to - 1 - row * cols) + half,
+							y - half, y + half)));
+					from = cells.nextSetBit(to);
+				}
+			}
+			geometry = runs.isEmpty() ? FACTORY.createPolygon() : HazardShapes.union(runs);
+		}
+		return geometry;
+	}
+}
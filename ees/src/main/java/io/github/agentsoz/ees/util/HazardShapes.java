@@ -0,0 +1,123 @@
+package io.github.agentsoz.ees.util;
+
+/*
+ * #%L
+ * Emergency Evacuation Simulator
+ * %%
+ * Copyright (C) 2014 - 2025 by its authors. See AUTHORS file.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+import org.locationtech.jts.algorithm.ConvexHull;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.PrecisionModel;
+import org.locationtech.jts.geom.TopologyException;
+import org.locationtech.jts.operation.union.UnaryUnionOp;
+import org.locationtech.jts.precision.GeometryPrecisionReducer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Unions and hulls of hazard shapes, done in one pass over all the shapes rather than by growing
+ * a result one shape at a time, which is quadratic in the number of shapes (or grid cells).
+ */
+public final class HazardShapes {
+
+	private static final Logger log = LoggerFactory.getLogger(HazardShapes.class);
+
+	private static final GeometryFactory FACTORY = new GeometryFactory();
+
+	private HazardShapes() {
+	}
+
+	/**
+	 * Cascaded union of the given shapes, ignoring nulls; null if there are none
+	 */
+	public static Geometry union(Collection<Geometry> shapes) {
+		List<Geometry> parts = nonNull(shapes);
+		if (parts.size() <= 1) {
+			return parts.isEmpty() ? null : parts.get(0);
+		}
+		try {
+			// Fix for JTS #288 requires reduction to floating.
+			// https://github.com/locationtech/jts/issues/288#issuecomment-396647804
+			return reduce(UnaryUnionOp.union(parts));
+		} catch (TopologyException e) {
+			log.warn("Cascaded union of {} shapes failed ({}), so will union them one at a time instead",
+					parts.size(), e.getMessage());
+			Geometry polygon = parts.get(0);
+			for (int i = 1; i < parts.size(); i++) {
+				polygon = reduce(polygon.union(parts.get(i)));
+			}
+			return polygon;
+		}
+	}
+
+	/**
+	 * Convex hull of the given shapes, ignoring nulls; null if there are none. Hulls can be
+	 * maintained incrementally this way, as the hull of a hull and new shapes is the hull of all.
+	 */
+	public static Geometry hull(Collection<Geometry> shapes) {
+		List<Geometry> parts = nonNull(shapes);
+		if (parts.isEmpty()) {
+			return null;
+		}
+		Geometry collection = (parts.size() == 1) ?
+				parts.get(0) :
+				FACTORY.createGeometryCollection(parts.toArray(new Geometry[0]));
+		return new ConvexHull(collection).getConvexHull();
+	}
+
+	/**
+	 * Convex hull of the grid squares of the given side centred on the given points, which is
+	 * the same as that of their union but only needs the corners; null if there are no points
+	 */
+	public static Geometry hullOfSquares(Collection<Coordinate> centroids, double squareSideInMetres) {
+		if (centroids.isEmpty()) {
+			return null;
+		}
+		double delta = squareSideInMetres / 2;
+		Coordinate[] corners = new Coordinate[centroids.size() * 4];
+		int i = 0;
+		for (Coordinate c : centroids) {
+			corners[i++] = new Coordinate(c.x - delta, c.y - delta);
+			corners[i++] = new Coordinate(c.x + delta, c.y - delta);
+			corners[i++] = new Coordinate(c.x + delta, c.y + delta);
+			corners[i++] = new Coordinate(c.x - delta, c.y + delta);
+		}
+		return new ConvexHull(corners, FACTORY).getConvexHull();
+	}
+
+	private static Geometry reduce(Geometry shape) {
+		return GeometryPrecisionReducer.reduce(shape, new PrecisionModel(PrecisionModel.FLOATING));
+	}
+
+	private static List<Geometry> nonNull(Collection<Geometry> shapes) {
+		List<Geometry> parts = new ArrayList<>(shapes.size());
+		for (Geometry shape : shapes) {
+			if (shape != null) {
+				parts.add(shape);
+			}
+		}
+		return parts;
+	}
+}
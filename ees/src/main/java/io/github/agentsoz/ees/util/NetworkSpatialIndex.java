@@ -0,0 +1,188 @@
+package io.github.agentsoz.ees.util;
+
+/*
+ * #%L
+ * Emergency Evacuation Simulator
+ * %%
+ * Copyright (C) 2014 - 2025 by its authors. See AUTHORS file.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ *
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.LineString;
+import org.locationtech.jts.geom.Point;
+import org.locationtech.jts.geom.prep.PreparedGeometry;
+import org.locationtech.jts.geom.prep.PreparedGeometryFactory;
+import org.locationtech.jts.index.strtree.STRtree;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.core.utils.geometry.GeometryUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+
+/**
+ * Static spatial index over the nodes and links of a MATSim network, used to map hazard
+ * geometries (fire, embers, flood, cyclone) onto the network without scanning every node
+ * and link on every update.
+ * <p>
+ * Node points and straight line link geometries are created once and cached, so containment
+ * and intersection tests do not allocate. The index
+ * must be built after the network has been loaded and prepared, and rebuilt if nodes or
+ * links are added, removed or moved afterwards. It is safe for concurrent reads once built.
+ */
+public final class NetworkSpatialIndex {
+
+	private static final Logger log = LoggerFactory.getLogger(NetworkSpatialIndex.class);
+
+	// indices handed out by of(), kept for as long as their networks are
+	private static final Map<Network, NetworkSpatialIndex> indices = new WeakHashMap<>();
+
+	private final STRtree nodeTree = new STRtree();
+	private final STRtree linkTree = new STRtree();
+	private final Map<Id<Node>, Point> nodePoints;
+	private final Map<Id<Link>, LineString> linkLines;
+	private final int numberOfNodes;
+	private final int numberOfLinks;
+
+	/**
+	 * Gets the index of the given network, building it on first use, or again if nodes or links
+	 * have been added or removed since. For callers that are not handed an index of their own.
+	 */
+	public static synchronized NetworkSpatialIndex of(Network network) {
+		NetworkSpatialIndex index = indices.get(network);
+		if (index == null || index.numberOfNodes != network.getNodes().size()
+				|| index.numberOfLinks != network.getLinks().size()) {
+			index = new NetworkSpatialIndex(network);
+			indices.put(network, index);
+		}
+		return index;
+	}
+
+	public NetworkSpatialIndex(Network network) {
+		long start = System.currentTimeMillis();
+		numberOfNodes = network.getNodes().size();
+		numberOfLinks = network.getLinks().size();
+		nodePoints = new HashMap<>(network.getNodes().size() * 2);
+		for (Node node : network.getNodes().values()) {
+			Point point = GeometryUtils.createGeotoolsPoint(node.getCoord());
+			nodePoints.put(node.getId(), point);
+			nodeTree.insert(point.getEnvelopeInternal(), node);
+		}
+		linkLines = new HashMap<>(network.getLinks().size() * 2);
+		for (Link link : network.getLinks().values()) {
+			linkLines.put(link.getId(), GeometryUtils.createGeotoolsLineString(link));
+			Coord from = link.getFromNode().getCoord();
+			Coord to = link.getToNode().getCoord();
+			Envelope env = new Envelope(
+					new Coordinate(from.getX(), from.getY()),
+					new Coordinate(to.getX(), to.getY()));
+			linkTree.insert(env, link);
+		}
+		// build now so that later queries do not race to build the trees
+		nodeTree.build();
+		linkTree.build();
+		log.info("Built spatial index over {} nodes and {} links in {} ms",
+				network.getNodes().size(), network.getLinks().size(), System.currentTimeMillis() - start);
+	}
+
+	/**
+	 * Returns the cached point for the given node, or a new point if the node is not indexed
+	 */
+	public Point getPoint(Node node) {
+		Point point = nodePoints.get(node.getId());
+		return (point != null) ? point : GeometryUtils.createGeotoolsPoint(node.getCoord());
+	}
+
+	/**
+	 * Returns the cached straight line geometry of the given link, or a new one if the link is not indexed
+	 */
+	public LineString getLine(Link link) {
+		LineString line = linkLines.get(link.getId());
+		return (line != null) ? line : GeometryUtils.createGeotoolsLineString(link);
+	}
+
+	/**
+	 * Returns all indexed nodes whose envelope intersects the given envelope
+	 */
+	@SuppressWarnings("unchecked")
+	public List<Node> getNodeCandidates(Envelope envelope) {
+		return nodeTree.query(envelope);
+	}
+
+	/**
+	 * Returns all indexed links whose envelope intersects the given envelope
+	 */
+	@SuppressWarnings("unchecked")
+	public List<Link> getLinkCandidates(Envelope envelope) {
+		return linkTree.query(envelope);
+	}
+
+	/**
+	 * Gets all nodes that are contained in the given shape
+	 */
+	public List<Node> getNodesWithin(Geometry shape) {
+		if (shape == null || shape.isEmpty()) {
+			return new ArrayList<>();
+		}
+		return getNodesWithin(PreparedGeometryFactory.prepare(shape));
+	}
+
+	public List<Node> getNodesWithin(PreparedGeometry shape) {
+		List<Node> nodes = new ArrayList<>();
+		for (Node node : getNodeCandidates(shape.getGeometry().getEnvelopeInternal())) {
+			if (shape.contains(getPoint(node))) {
+				nodes.add(node);
+			}
+		}
+		return nodes;
+	}
+
+	/**
+	 * Gets all links that have a fromNode within the given shape
+	 */
+	public Set<Id<Link>> getLinksWithFromNodeWithin(Geometry shape) {
+		Set<Id<Link>> links = new HashSet<>();
+		for (Node node : getNodesWithin(shape)) {
+			links.addAll(node.getOutLinks().keySet());
+		}
+		return links;
+	}
+
+	/**
+	 * Gets all links whose straight line geometry intersects the given shape
+	 */
+	public List<Link> getLinksIntersecting(Geometry shape) {
+		List<Link> links = new ArrayList<>();
+		if (shape == null || shape.isEmpty()) {
+			return links;
+		}
+		PreparedGeometry prepared = PreparedGeometryFactory.prepare(shape);
+		for (Link link : getLinkCandidates(shape.getEnvelopeInternal())) {
+			if (prepared.intersects(getLine(link))) {
+				links.add(link);
+			}
+		}
+		return links;
+	}
+}
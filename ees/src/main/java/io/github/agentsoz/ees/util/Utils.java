@@ -22,9 +22,13 @@ package io.github.agentsoz.ees.util;
  * #L%
  */
 
+import org.locationtech.jts.geom.Envelope;
 import org.locationtech.jts.geom.Geometry;
 import org.locationtech.jts.geom.LineString;
 import org.locationtech.jts.geom.Point;
+import org.locationtech.jts.geom.prep.PreparedGeometry;
+import org.locationtech.jts.geom.prep.PreparedGeometryFactory;
+import org.locationtech.jts.operation.distance.IndexedFacetDistance;
 import org.matsim.api.core.v01.Coord;
 import org.matsim.api.core.v01.Id;
 import org.matsim.api.core.v01.Scenario;
@@ -44,6 +48,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.*;
+import java.util.function.Predicate;
+import java.util.function.ToDoubleFunction;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -250,17 +256,22 @@ public final class Utils {
 								   double effectiveTime,
 								   double effectiveSpeed,
 								   Scenario scenario) {
+		reduceSpeed(polygons, effectiveTime, effectiveSpeed, scenario, NetworkSpatialIndex.of(scenario.getNetwork()));
+	}
+
+	public static void reduceSpeed(Geometry[]  polygons,
+								   double effectiveTime,
+								   double effectiveSpeed,
+								   Scenario scenario,
+								   NetworkSpatialIndex index) {
 
 		for (Geometry poly: polygons) {
-			for ( Node node : scenario.getNetwork().getNodes().values() ) {
-				Point point = GeometryUtils.createGeotoolsPoint(node.getCoord());
-				if (poly.contains(point)) {
-					for (Link link : node.getInLinks().values()) {
-						NetworkChangeEvent event = new NetworkChangeEvent( effectiveTime ) ;
-						event.setFreespeedChange(new NetworkChangeEvent.ChangeValue( NetworkChangeEvent.ChangeType.ABSOLUTE_IN_SI_UNITS,  effectiveSpeed ));
-						event.addLink(link);
-						NetworkUtils.addNetworkChangeEvent( scenario.getNetwork(),event);
-					}
+			for ( Node node : index.getNodesWithin(poly) ) {
+				for (Link link : node.getInLinks().values()) {
+					NetworkChangeEvent event = new NetworkChangeEvent( effectiveTime ) ;
+					event.setFreespeedChange(new NetworkChangeEvent.ChangeValue( NetworkChangeEvent.ChangeType.ABSOLUTE_IN_SI_UNITS,  effectiveSpeed ));
+					event.addLink(link);
+					NetworkUtils.addNetworkChangeEvent( scenario.getNetwork(),event);
 				}
 			}
 		}
@@ -272,22 +283,26 @@ public final class Utils {
 								   double effectiveTime,
 								   double effectiveSpeed,
 								   Scenario scenario) {
-		ArrayList<Link> intersectingLinks = new ArrayList<Link>();
+		reduceSpeed2(polygons, effectiveTime, effectiveSpeed, scenario, NetworkSpatialIndex.of(scenario.getNetwork()));
+	}
+
+	public static void reduceSpeed2(Geometry[]  polygons,
+								   double effectiveTime,
+								   double effectiveSpeed,
+								   Scenario scenario,
+								   NetworkSpatialIndex index) {
+		Set<Link> intersectingLinks = new HashSet<>();
 		int ct = 0;
 
 		for (Geometry poly: polygons) {
-			for ( Link link : scenario.getNetwork().getLinks().values() ) {
-				LineString line = GeometryUtils.createGeotoolsLineString(link);
-				//https://javadoc.io/static/org.locationtech.jts/jts-core/1.16.0/org/locationtech/jts/geom/Geometry.html#intersects-org.locationtech.jts.geom.Geometry-
-				if (poly.intersects(line) && !intersectingLinks.contains(link)) {
-//					for (Link link : node.getInLinks().values()) {
-						NetworkChangeEvent event = new NetworkChangeEvent( effectiveTime ) ;
-						event.setFreespeedChange(new NetworkChangeEvent.ChangeValue( NetworkChangeEvent.ChangeType.ABSOLUTE_IN_SI_UNITS,  effectiveSpeed ));
-						event.addLink(link);
-						NetworkUtils.addNetworkChangeEvent( scenario.getNetwork(),event);
-						intersectingLinks.add(link);
-						ct++;
-//					}
+			//https://javadoc.io/static/org.locationtech.jts/jts-core/1.16.0/org/locationtech/jts/geom/Geometry.html#intersects-org.locationtech.jts.geom.Geometry-
+			for ( Link link : index.getLinksIntersecting(poly) ) {
+				if (intersectingLinks.add(link)) {
+					NetworkChangeEvent event = new NetworkChangeEvent( effectiveTime ) ;
+					event.setFreespeedChange(new NetworkChangeEvent.ChangeValue( NetworkChangeEvent.ChangeType.ABSOLUTE_IN_SI_UNITS,  effectiveSpeed ));
+					event.addLink(link);
+					NetworkUtils.addNetworkChangeEvent( scenario.getNetwork(),event);
+					ct++;
 				}
 			}
 		}
@@ -335,37 +350,225 @@ public final class Utils {
 		// yy Am just doing inLinks.  I think that that should be enough ...
 		// yy Should be able to extract the "height" function ...
 		
-		for ( Node node : scenario.getNetwork().getNodes().values() ) {
-			Point point = GeometryUtils.createGeotoolsPoint(node.getCoord());
-			if (fire.contains(point)) {
+		penaltyMethod2(fire, buffer, bufferWidth, penaltyFactorsOfLinks, scenario,
+				NetworkSpatialIndex.of(scenario.getNetwork()));
+	}
+
+	public static void penaltyMethod2(Geometry fire, Geometry buffer, double bufferWidth,
+									  Map<Id<Link>, Double> penaltyFactorsOfLinks, Scenario scenario,
+									  NetworkSpatialIndex index) {
+		penaltyMethod2(fire, buffer, bufferWidth, penaltyFactorsOfLinks, index, point -> point.distance(fire));
+	}
+
+	/**
+	 * Same as {@link #penaltyMethod2(Geometry, Geometry, double, Map, Scenario)}, but gets the distance
+	 * of nodes to the fire from the given function, for instance a {@link FireDistanceGrid}
+	 */
+	public static void penaltyMethod2(Geometry fire, Geometry buffer, double bufferWidth,
+									  Map<Id<Link>, Double> penaltyFactorsOfLinks,
+									  NetworkSpatialIndex index, ToDoubleFunction<Point> distanceToFire) {
+		// Only nodes inside the buffer (which contains the fire) can be penalised, so only
+		// those need testing; prepared geometries make the repeated containment tests cheap
+		final PreparedGeometry preparedFire = PreparedGeometryFactory.prepare(fire);
+		final PreparedGeometry preparedBuffer = PreparedGeometryFactory.prepare(buffer);
+		final Envelope envelope = new Envelope(buffer.getEnvelopeInternal());
+		envelope.expandToInclude(fire.getEnvelopeInternal());
+		penaltyMethod2(envelope, preparedFire::contains, preparedBuffer::contains, bufferWidth,
+				penaltyFactorsOfLinks, index, distanceToFire);
+	}
+
+	/**
+	 * Same as {@link #penaltyMethod2(Geometry, Geometry, double, Map, Scenario)}, for a fire that
+	 * is only known through its distances (e.g., a {@link FireDistanceGrid} built from a
+	 * {@link HazardRaster}): nodes at distance 0 are in the fire and those up to {@code bufferWidth}
+	 * away are in the buffer. The given envelope must contain the fire.
+	 */
+	public static void penaltyMethod2(Envelope fireEnvelope, double bufferWidth,
+									  Map<Id<Link>, Double> penaltyFactorsOfLinks,
+									  NetworkSpatialIndex index, ToDoubleFunction<Point> distanceToFire) {
+		final Envelope envelope = new Envelope(fireEnvelope);
+		envelope.expandBy(bufferWidth);
+		penaltyMethod2(envelope, point -> distanceToFire.applyAsDouble(point) <= 0,
+				point -> distanceToFire.applyAsDouble(point) <= bufferWidth, bufferWidth,
+				penaltyFactorsOfLinks, index, distanceToFire);
+	}
+
+	private static void penaltyMethod2(Envelope envelope, Predicate<Point> inFire, Predicate<Point> inBuffer,
+									   double bufferWidth, Map<Id<Link>, Double> penaltyFactorsOfLinks,
+									   NetworkSpatialIndex index, ToDoubleFunction<Point> distanceToFire) {
+		for ( Node node : index.getNodeCandidates(envelope) ) {
+			Point point = index.getPoint(node);
+			if (inFire.test(point)) {
 				log.debug("node {} is IN fire area ", node.getId());
 				// in links
 				for (Link link : node.getInLinks().values()) {
 					penaltyFactorsOfLinks.put( link.getId(), bufferWidth*bufferWidth) ;
 				}
 			}
-			else if ( buffer.contains(point) ) {
+			else if ( inBuffer.test(point) ) {
 				log.debug("node {} is IN buffer", node.getId());
 				// in links
 				for (Link link : node.getInLinks().values()) {
-					Point fromPoint = GeometryUtils.createGeotoolsPoint(link.getFromNode().getCoord());
-					if (fire.contains(fromPoint)) { // coming from fire
-						penaltyFactorsOfLinks.put(link.getId(), bufferWidth*bufferWidth); // treat as "in fire".
-						// (yyyy probably too drastic; will avoid long links leading out of the fire)
-					} else if (buffer.contains(fromPoint)) {
-						final double heightAtFromNode = Math.pow(bufferWidth-fromPoint.distance(fire),2.) ;
-						final double heightAtToNode = Math.pow( bufferWidth - point.distance(fire),2.) ;
-						if ( heightAtToNode>heightAtFromNode) {
-							penaltyFactorsOfLinks.put( link.getId(), heightAtToNode-heightAtFromNode ) ;
-						}
-					} else { // coming from out
-						final double heightAtToNode = Math.pow( bufferWidth - point.distance(fire),2.) ;
-						penaltyFactorsOfLinks.put(link.getId(), heightAtToNode ) ;
-						// (height out will always be zero, and so height in will always be larger)
+					Point fromPoint = index.getPoint(link.getFromNode());
+					boolean fromInFire = inFire.test(fromPoint);
+					putBufferPenalty(link, point, distanceToFire, fromInFire, !fromInFire && inBuffer.test(fromPoint),
+							bufferWidth, penaltyFactorsOfLinks, index);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Same as {@link #penaltyMethod2(Geometry, Geometry, double, Map, Scenario)}, for when the fire and
+	 * buffer have already been mapped onto the links (e.g., into a hazard table), so that no geometry
+	 * needs testing here. The given links are those whose toNode is in the buffer (which contains the
+	 * fire), and the predicates tell which of their ends are in the fire, and whether their fromNode
+	 * is in the buffer.
+	 */
+	public static void penaltyMethod2(Collection<Link> linksWithToNodeInBuffer,
+									  Predicate<Link> toNodeInFire, Predicate<Link> fromNodeInFire,
+									  Predicate<Link> fromNodeInBuffer, double bufferWidth,
+									  Map<Id<Link>, Double> penaltyFactorsOfLinks,
+									  NetworkSpatialIndex index, ToDoubleFunction<Point> distanceToFire) {
+		for (Link link : linksWithToNodeInBuffer) {
+			if (toNodeInFire.test(link)) {
+				penaltyFactorsOfLinks.put(link.getId(), bufferWidth*bufferWidth);
+			} else {
+				boolean fromInFire = fromNodeInFire.test(link);
+				putBufferPenalty(link, index.getPoint(link.getToNode()), distanceToFire,
+						fromInFire, !fromInFire && fromNodeInBuffer.test(link),
+						bufferWidth, penaltyFactorsOfLinks, index);
+			}
+		}
+	}
+
+	/**
+	 * Penalises a link whose toNode (at the given point) is in the buffer but not in the fire
+	 */
+	private static void putBufferPenalty(Link link, Point point, ToDoubleFunction<Point> distanceToFire,
+										 boolean fromInFire, boolean fromInBuffer,
+										 double bufferWidth, Map<Id<Link>, Double> penaltyFactorsOfLinks,
+										 NetworkSpatialIndex index) {
+		if (fromInFire) { // coming from fire
+			penaltyFactorsOfLinks.put(link.getId(), bufferWidth*bufferWidth); // treat as "in fire".
+			// (yyyy probably too drastic; will avoid long links leading out of the fire)
+		} else if (fromInBuffer) {
+			Point fromPoint = index.getPoint(link.getFromNode());
+			final double heightAtFromNode = bufferHeight(distanceToFire.applyAsDouble(fromPoint), bufferWidth) ;
+			final double heightAtToNode = bufferHeight(distanceToFire.applyAsDouble(point), bufferWidth) ;
+			if ( heightAtToNode>heightAtFromNode) {
+				penaltyFactorsOfLinks.put( link.getId(), heightAtToNode-heightAtFromNode ) ;
+			}
+		} else { // coming from out
+			final double heightAtToNode = bufferHeight(distanceToFire.applyAsDouble(point), bufferWidth) ;
+			if (heightAtToNode > 0) {
+				penaltyFactorsOfLinks.put(link.getId(), heightAtToNode ) ;
+			}
+			// (height out will always be zero, and so height in will always be larger)
+		}
+	}
+
+	/**
+	 * Height of the penalty surface at the given distance from the fire. Buffers drawn from a
+	 * simplified fire (see {@link HazardBuffers}) reach a little further than {@code bufferWidth},
+	 * so nodes just beyond it can test as in the buffer; they must come out flat rather than
+	 * climbing back up as {@code (bufferWidth-distance)^2} would.
+	 */
+	static double bufferHeight(double distanceToFire, double bufferWidth) {
+		final double depth = Math.max(0., bufferWidth - distanceToFire) ;
+		return depth*depth ;
+	}
+
+	/**
+	 * Updates the penalties computed by {@link #penaltyMethod2} for a previous fire and buffer
+	 * to those for a new fire and buffer, touching only the links whose penalty can have changed.
+	 * <p>
+	 * A node's penalty inputs are whether it is in the fire, whether it is in the buffer, and its
+	 * distance to the fire. The first and last can only change within {@code bufferWidth} of the
+	 * region where the two fires differ, and the second only where the two buffers differ. Links
+	 * into or out of such nodes are recomputed and all others are left alone, so the result is
+	 * the same as clearing the map and doing a full recompute. This only holds for buffers that
+	 * are the exact buffers of their fires at {@code bufferWidth}; for buffers grown from
+	 * simplified fires (see {@link HazardBuffers}) do a full recompute instead.
+	 *
+	 * @return false, without touching the map, if there is no previous state or the geometries
+	 * could not be diffed; the caller should then do a full recompute
+	 */
+	public static boolean penaltyMethod2Incremental(Geometry previousFire, Geometry previousBuffer,
+													Geometry fire, Geometry buffer, double bufferWidth,
+													Map<Id<Link>, Double> penaltyFactorsOfLinks,
+													NetworkSpatialIndex index) {
+		final ToDoubleFunction<Point> distanceToFire = point -> point.distance(fire);
+		final Set<Link> changedLinks = getLinksWithChangedPenaltyInputs(previousFire, previousBuffer, fire, buffer,
+				bufferWidth, index);
+		if (changedLinks == null) {
+			return false;
+		}
+		final PreparedGeometry preparedFire = PreparedGeometryFactory.prepare(fire);
+		final PreparedGeometry preparedBuffer = PreparedGeometryFactory.prepare(buffer);
+		for (Link link : changedLinks) {
+			penaltyFactorsOfLinks.remove(link.getId());
+			Point point = index.getPoint(link.getToNode());
+			if (preparedFire.contains(point)) {
+				penaltyFactorsOfLinks.put(link.getId(), bufferWidth*bufferWidth);
+			} else if (preparedBuffer.contains(point)) {
+				Point fromPoint = index.getPoint(link.getFromNode());
+				boolean fromInFire = preparedFire.contains(fromPoint);
+				putBufferPenalty(link, point, distanceToFire, fromInFire, !fromInFire && preparedBuffer.contains(fromPoint),
+						bufferWidth, penaltyFactorsOfLinks, index);
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Gets the links into or out of the nodes whose penalty inputs differ between the previous and
+	 * the new fire and buffer (see {@link #penaltyMethod2Incremental}), which are the only links whose
+	 * penalties can have changed, or null if there is no previous state or the geometries could not
+	 * be diffed
+	 */
+	public static Set<Link> getLinksWithChangedPenaltyInputs(Geometry previousFire, Geometry previousBuffer,
+															 Geometry fire, Geometry buffer, double bufferWidth,
+															 NetworkSpatialIndex index) {
+		if (previousFire == null || previousBuffer == null) {
+			return null;
+		}
+		final Set<Node> changedNodes = new HashSet<>();
+		try {
+			Geometry fireDelta = fire.symDifference(previousFire);
+			if (!fireDelta.isEmpty()) {
+				PreparedGeometry preparedDelta = PreparedGeometryFactory.prepare(fireDelta);
+				IndexedFacetDistance deltaDistance = new IndexedFacetDistance(fireDelta);
+				Envelope envelope = new Envelope(fireDelta.getEnvelopeInternal());
+				envelope.expandBy(bufferWidth);
+				for (Node node : index.getNodeCandidates(envelope)) {
+					Point point = index.getPoint(node);
+					if (preparedDelta.intersects(point) || deltaDistance.distance(point) <= bufferWidth) {
+						changedNodes.add(node);
+					}
+				}
+			}
+			Geometry bufferDelta = buffer.symDifference(previousBuffer);
+			if (!bufferDelta.isEmpty()) {
+				PreparedGeometry preparedDelta = PreparedGeometryFactory.prepare(bufferDelta);
+				for (Node node : index.getNodeCandidates(bufferDelta.getEnvelopeInternal())) {
+					if (preparedDelta.intersects(index.getPoint(node))) {
+						changedNodes.add(node);
 					}
 				}
 			}
+		} catch (RuntimeException e) {
+			log.warn("Could not diff fire geometries, so will recompute all penalties: {}", e.getMessage());
+			return null;
+		}
+
+		final Set<Link> changedLinks = new HashSet<>();
+		for (Node node : changedNodes) {
+			changedLinks.addAll(node.getInLinks().values());
+			changedLinks.addAll(node.getOutLinks().values());
 		}
+		log.debug("penalties may have changed for {} links around {} changed nodes", changedLinks.size(), changedNodes.size());
+		return changedLinks;
 	}
 	
 	static void penaltyMethod1(Geometry fire, Geometry buffer,
@@ -0,0 +1,216 @@
+package io.github.agentsoz.ees.matsim;
+
+/*-
+ * #%L
+ * Emergency Evacuation Simulator
+ * %%
+ * Copyright (C) 2014 - 2025 by its authors. See AUTHORS file.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+
+import io.github.agentsoz.ees.util.GridNetworks;
+import io.github.agentsoz.ees.util.NetworkSpatialIndex;
+import org.junit.Test;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.Point;
+import org.locationtech.jts.geom.prep.PreparedGeometry;
+import org.locationtech.jts.geom.prep.PreparedGeometryFactory;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.TransportMode;
+import org.matsim.api.core.v01.events.LinkEnterEvent;
+import org.matsim.api.core.v01.events.PersonArrivalEvent;
+import org.matsim.api.core.v01.events.PersonDepartureEvent;
+import org.matsim.api.core.v01.events.VehicleEntersTrafficEvent;
+import org.matsim.api.core.v01.events.VehicleLeavesTrafficEvent;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.vehicles.Vehicle;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.function.Predicate;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that zone queries on the agent position index find the same persons as testing the
+ * current link of every person, as the persons depart, drive from link to link and arrive
+ */
+public class AgentPositionIndexTest {
+
+	private static final int SIZE = 10;
+	private static final double SPACING = 100;
+	// not a multiple of the spacing, so that some nodes lie inside cells and some on their edges
+	private static final double CELL_SIZE = 150;
+	private static final int PERSONS = 40;
+
+	private final GeometryFactory factory = new GeometryFactory();
+
+	/**
+	 * A lopsided polygon around the given centre
+	 */
+	private Geometry shape(double x, double y, double radius) {
+		int n = 24;
+		Coordinate[] ring = new Coordinate[n + 1];
+		for (int i = 0; i < n; i++) {
+			double angle = 2 * Math.PI * i / n;
+			double r = radius * (1 + 0.3 * Math.sin(3 * angle));
+			ring[i] = new Coordinate(x + r * Math.cos(angle), y + r * Math.sin(angle));
+		}
+		ring[n] = ring[0];
+		return factory.createPolygon(ring);
+	}
+
+	private static Id<Person> person(int i) {
+		return Id.createPersonId("api" + i);
+	}
+
+	private static Id<Vehicle> vehicle(int i) {
+		return Id.create("api" + i, Vehicle.class);
+	}
+
+	/**
+	 * Gets the tracked persons whose current link starts at a node for which the given test holds
+	 */
+	private static Set<Id<Person>> bruteForce(Map<Id<Person>, Link> linkOfPerson, NetworkSpatialIndex index,
+											  Predicate<Point> within) {
+		Set<Id<Person>> persons = new HashSet<>();
+		for (Map.Entry<Id<Person>, Link> entry : linkOfPerson.entrySet()) {
+			if (within.test(index.getPoint(entry.getValue().getFromNode()))) {
+				persons.add(entry.getKey());
+			}
+		}
+		return persons;
+	}
+
+	private static void assertSamePersons(Set<Id<Person>> expected, List<Id<Person>> actual) {
+		assertEquals("persons were found more than once", new HashSet<>(actual).size(), actual.size());
+		assertEquals(expected, new HashSet<>(actual));
+	}
+
+	/**
+	 * Whether the given shape properly contains any grid cell that holds one of the given links'
+	 * from nodes, so that the query can take all persons of that cell without testing them
+	 */
+	private boolean containsAnOccupiedCell(Geometry shape, Map<Id<Person>, Link> linkOfPerson,
+										   NetworkSpatialIndex index) {
+		PreparedGeometry prepared = PreparedGeometryFactory.prepare(shape);
+		for (Link link : linkOfPerson.values()) {
+			Coordinate c = index.getPoint(link.getFromNode()).getCoordinate();
+			double x = Math.floor(c.x / CELL_SIZE) * CELL_SIZE;
+			double y = Math.floor(c.y / CELL_SIZE) * CELL_SIZE;
+			if (prepared.containsProperly(factory.toGeometry(new Envelope(x, x + CELL_SIZE, y, y + CELL_SIZE)))) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@Test
+	public void queriesMatchBruteForceAsPersonsMove() {
+		Network network = GridNetworks.grid(SIZE, SPACING);
+		NetworkSpatialIndex index = new NetworkSpatialIndex(network);
+		// every fifth person is not a BDI agent, so is never indexed
+		Predicate<Id<Person>> isTracked = personId -> Integer.parseInt(personId.toString().substring(3)) % 5 != 0;
+		AgentPositionIndex positions = new AgentPositionIndex(network, index, isTracked, CELL_SIZE);
+
+		List<Link> links = new ArrayList<>(network.getLinks().values());
+		links.sort((a, b) -> a.getId().compareTo(b.getId()));
+		Random random = new Random(4711);
+		Map<Id<Person>, Link> linkOfPerson = new HashMap<>();
+		Map<Id<Person>, Boolean> driving = new HashMap<>();
+		// a small zone over a few cells, and one large enough to take whole cells at once
+		Geometry small = shape(420, 380, 160);
+		Geometry large = shape(450, 450, 420);
+		Envelope circle = new Envelope(150, 650, 250, 750);
+		Predicate<Point> inCircle = point -> point.getCoordinate().distance(new Coordinate(400, 500)) <= 250;
+		boolean tookWholeCell = false;
+
+		double time = 0;
+		for (int round = 0; round < 30; round++) {
+			for (int i = 0; i < PERSONS; i++) {
+				Id<Person> personId = person(i);
+				Id<Vehicle> vehicleId = vehicle(i);
+				time += 1;
+				if (!driving.getOrDefault(personId, false)) {
+					if (random.nextInt(3) == 0) {
+						continue; // still at its activity
+					}
+					Link link = linkOfPerson.containsKey(personId) ? linkOfPerson.get(personId)
+							: links.get(random.nextInt(links.size()));
+					positions.handleEvent(new PersonDepartureEvent(time, personId, link.getId(),
+							TransportMode.car, TransportMode.car));
+					positions.handleEvent(new VehicleEntersTrafficEvent(time, personId, link.getId(), vehicleId,
+							TransportMode.car, 1.0));
+					driving.put(personId, true);
+					if (isTracked.test(personId)) {
+						linkOfPerson.put(personId, link);
+					}
+				} else if (random.nextInt(5) == 0) {
+					Link link = linkOfPerson.getOrDefault(personId, links.get(0));
+					positions.handleEvent(new VehicleLeavesTrafficEvent(time, personId, link.getId(), vehicleId,
+							TransportMode.car, 1.0));
+					positions.handleEvent(new PersonArrivalEvent(time, personId, link.getId(), TransportMode.car));
+					driving.put(personId, false);
+				} else if (isTracked.test(personId)) {
+					List<Link> next = new ArrayList<>(linkOfPerson.get(personId).getToNode().getOutLinks().values());
+					next.sort((a, b) -> a.getId().compareTo(b.getId()));
+					Link link = next.get(random.nextInt(next.size()));
+					positions.handleEvent(new LinkEnterEvent(time, vehicleId, link.getId()));
+					linkOfPerson.put(personId, link);
+				}
+			}
+			for (Geometry shape : new Geometry[]{small, large}) {
+				PreparedGeometry prepared = PreparedGeometryFactory.prepare(shape);
+				assertSamePersons(bruteForce(linkOfPerson, index, prepared::contains),
+						positions.getPersonsWithin(shape));
+			}
+			assertSamePersons(bruteForce(linkOfPerson, index, inCircle), positions.getPersonsWithin(circle, inCircle));
+			tookWholeCell |= containsAnOccupiedCell(large, linkOfPerson, index);
+		}
+		assertTrue(tookWholeCell);
+		assertFalse(linkOfPerson.isEmpty());
+		assertTrue(positions.getPersonsWithin(shape(5000, 5000, 100)).isEmpty());
+		for (Id<Person> personId : positions.getPersonsWithin(large)) {
+			assertTrue(isTracked.test(personId));
+		}
+	}
+
+	@Test
+	public void forgetsEveryoneOnReset() {
+		Network network = GridNetworks.grid(SIZE, SPACING);
+		NetworkSpatialIndex index = new NetworkSpatialIndex(network);
+		AgentPositionIndex positions = new AgentPositionIndex(network, index, personId -> true, CELL_SIZE);
+		Link link = network.getLinks().get(Id.createLinkId("4_4-4_5"));
+		positions.handleEvent(new PersonDepartureEvent(0, person(1), link.getId(), TransportMode.car, TransportMode.car));
+		Geometry zone = shape(400, 400, 200);
+		assertEquals(1, positions.getPersonsWithin(zone).size());
+		positions.reset(1);
+		assertTrue(positions.getPersonsWithin(zone).isEmpty());
+	}
+}
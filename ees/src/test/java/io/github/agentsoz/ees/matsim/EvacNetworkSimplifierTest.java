@@ -0,0 +1,249 @@
+package io.github.agentsoz.ees.matsim;
+
+/*-
+ * #%L
+ * Emergency Evacuation Simulator
+ * %%
+ * Copyright (C) 2014 - 2025 by its authors. See AUTHORS file.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+
+import org.junit.Test;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.Scenario;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.core.config.Config;
+import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.network.NetworkChangeEvent;
+import org.matsim.core.network.NetworkUtils;
+import org.matsim.core.scenario.ScenarioUtils;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks which chains of links the network simplifier merges on small networks, and that the
+ * mapping between merged and original links goes both ways and keeps the lengths
+ */
+public class EvacNetworkSimplifierTest {
+
+	private static Scenario scenario() {
+		Config config = ConfigUtils.createConfig();
+		config.network().setTimeVariantNetwork(true);
+		return ScenarioUtils.createScenario(config);
+	}
+
+	/**
+	 * A straight road of the given number of links, running east along the given y
+	 */
+	private static Node[] road(Network network, String prefix, int links, double y) {
+		Node[] nodes = new Node[links + 1];
+		for (int i = 0; i <= links; i++) {
+			nodes[i] = NetworkUtils.createAndAddNode(network, Id.createNodeId(prefix + i), new Coord(100 * i, y));
+		}
+		return nodes;
+	}
+
+	/**
+	 * Adds a link with a length that differs from link to link, so that sums of lengths tell
+	 * which links went into them
+	 */
+	private static Link link(Network network, Node from, Node to, double freespeed) {
+		double length = 100 + Math.abs(from.getCoord().getX() + to.getCoord().getX()) / 20;
+		return NetworkUtils.createAndAddLink(network, Id.createLinkId(from.getId() + "-" + to.getId()),
+				from, to, length, freespeed, 1000, 1);
+	}
+
+	private static Map<Id<Link>, Double> lengths(Network network) {
+		Map<Id<Link>, Double> lengths = new HashMap<>();
+		for (Link link : network.getLinks().values()) {
+			lengths.put(link.getId(), link.getLength());
+		}
+		return lengths;
+	}
+
+	/**
+	 * Checks that every original link maps to a link of the simplified network that maps back to
+	 * it, that merged links run along their original links in order, and that no length is lost
+	 */
+	private static void assertMapsBothWays(EvacNetworkSimplifier simplifier, Network network,
+										   Map<Id<Link>, Double> lengthsBefore) {
+		for (Id<Link> original : lengthsBefore.keySet()) {
+			Id<Link> simplified = simplifier.getSimplifiedLinkId(original);
+			assertTrue(network.getLinks().containsKey(simplified));
+			List<Link> originals = simplifier.getOriginalLinks(simplified);
+			if (originals == null) {
+				assertEquals(original, simplified);
+			} else {
+				assertTrue(originals.stream().anyMatch(link -> link.getId().equals(original)));
+			}
+		}
+		double totalBefore = 0;
+		for (double length : lengthsBefore.values()) {
+			totalBefore += length;
+		}
+		double totalAfter = 0;
+		for (Link link : network.getLinks().values()) {
+			totalAfter += link.getLength();
+			List<Link> originals = simplifier.getOriginalLinks(link.getId());
+			if (originals == null) {
+				assertEquals(lengthsBefore.get(link.getId()), link.getLength(), 0);
+				continue;
+			}
+			assertSame(link.getFromNode(), originals.get(0).getFromNode());
+			assertSame(link.getToNode(), originals.get(originals.size() - 1).getToNode());
+			double length = 0;
+			for (int i = 0; i < originals.size(); i++) {
+				if (i > 0) {
+					assertSame(originals.get(i - 1).getToNode(), originals.get(i).getFromNode());
+				}
+				assertEquals(link.getId(), simplifier.getSimplifiedLinkId(originals.get(i).getId()));
+				length += lengthsBefore.get(originals.get(i).getId());
+			}
+			assertEquals(length, link.getLength(), 1e-9);
+		}
+		assertEquals(totalBefore, totalAfter, 1e-9);
+	}
+
+	@Test
+	public void mergesOneWayAndTwoWayChains() {
+		Scenario scenario = scenario();
+		Network network = scenario.getNetwork();
+		Node[] two = road(network, "w", 4, 0);
+		for (int i = 0; i < 4; i++) {
+			link(network, two[i], two[i + 1], 15);
+			link(network, two[i + 1], two[i], 15);
+		}
+		Node[] one = road(network, "o", 3, 1000);
+		for (int i = 0; i < 3; i++) {
+			link(network, one[i], one[i + 1], 15);
+		}
+		Map<Id<Link>, Double> lengthsBefore = lengths(network);
+
+		EvacNetworkSimplifier simplifier = new EvacNetworkSimplifier(Collections.emptySet(), Collections.emptySet());
+		simplifier.simplify(scenario);
+
+		// each direction of the two-way road becomes one link, as does the one-way road
+		assertEquals(3, network.getLinks().size());
+		assertEquals(3, simplifier.getNumberOfMergedLinks());
+		assertEquals(4, network.getNodes().size());
+		Link east = network.getLinks().get(Id.createLinkId("w0-w1"));
+		assertSame(two[0], east.getFromNode());
+		assertSame(two[4], east.getToNode());
+		assertEquals(4, simplifier.getOriginalLinks(east.getId()).size());
+		Link west = network.getLinks().get(Id.createLinkId("w4-w3"));
+		assertSame(two[4], west.getFromNode());
+		assertSame(two[0], west.getToNode());
+		Link oneWay = network.getLinks().get(Id.createLinkId("o0-o1"));
+		assertSame(one[0], oneWay.getFromNode());
+		assertSame(one[3], oneWay.getToNode());
+		assertEquals(Id.createLinkId("o0-o1"), simplifier.getSimplifiedLinkId(Id.createLinkId("o2-o3")));
+		assertMapsBothWays(simplifier, network, lengthsBefore);
+	}
+
+	@Test
+	public void splitsChainsWhereAttributesDiffer() {
+		Scenario scenario = scenario();
+		Network network = scenario.getNetwork();
+		// the middle two sections of this two-way road are faster than the outer ones
+		Node[] nodes = road(network, "d", 4, 0);
+		for (int i = 0; i < 4; i++) {
+			double freespeed = (i == 1 || i == 2) ? 25 : 15;
+			link(network, nodes[i], nodes[i + 1], freespeed);
+			link(network, nodes[i + 1], nodes[i], freespeed);
+		}
+		// and the middle section of this one-way road is a bridge, though as fast as the others
+		Node[] bridged = road(network, "b", 3, 1000);
+		for (int i = 0; i < 3; i++) {
+			Link link = link(network, bridged[i], bridged[i + 1], 15);
+			if (i == 1) {
+				link.getAttributes().putAttribute("type", "bridge");
+			}
+		}
+		Map<Id<Link>, Double> lengthsBefore = lengths(network);
+
+		EvacNetworkSimplifier simplifier = new EvacNetworkSimplifier(Collections.emptySet(), Collections.emptySet());
+		simplifier.simplify(scenario);
+
+		// only the two fast sections are merged, in either direction
+		assertEquals(2, simplifier.getNumberOfMergedLinks());
+		assertEquals(6 + 3, network.getLinks().size());
+		Link fast = network.getLinks().get(Id.createLinkId("d1-d2"));
+		assertSame(nodes[1], fast.getFromNode());
+		assertSame(nodes[3], fast.getToNode());
+		assertEquals(25, fast.getFreespeed(), 0);
+		assertNotNull(simplifier.getOriginalLinks(Id.createLinkId("d3-d2")));
+		assertNull(simplifier.getOriginalLinks(Id.createLinkId("d0-d1")));
+		assertNull(simplifier.getOriginalLinks(Id.createLinkId("d4-d3")));
+		assertTrue(network.getLinks().containsKey(Id.createLinkId("b1-b2")));
+		assertNull(simplifier.getOriginalLinks(Id.createLinkId("b0-b1")));
+		assertMapsBothWays(simplifier, network, lengthsBefore);
+	}
+
+	@Test
+	public void keepsChangingLinksKeptLinksAndLinksInKeptAreas() {
+		Scenario scenario = scenario();
+		Network network = scenario.getNetwork();
+		Node[] nodes = road(network, "k", 11, 0);
+		Link[] links = new Link[11];
+		for (int i = 0; i < 11; i++) {
+			links[i] = link(network, nodes[i], nodes[i + 1], 15);
+		}
+		NetworkChangeEvent event = new NetworkChangeEvent(3600);
+		event.setFreespeedChange(new NetworkChangeEvent.ChangeValue(NetworkChangeEvent.ChangeType.FACTOR, 0.5));
+		event.addLink(links[2]);
+		NetworkUtils.addNetworkChangeEvent(network, event);
+		// a small area around the middle of the ninth link
+		Geometry area = new GeometryFactory().toGeometry(new Envelope(840, 860, -10, 10));
+		Map<Id<Link>, Double> lengthsBefore = lengths(network);
+
+		EvacNetworkSimplifier simplifier = new EvacNetworkSimplifier(
+				Collections.singleton(links[5].getId()), Collections.singleton(area));
+		simplifier.simplify(scenario);
+
+		// the three links to keep split the road into four chains of two links each
+		assertEquals(3 + 4, network.getLinks().size());
+		assertEquals(4, simplifier.getNumberOfMergedLinks());
+		for (int kept : new int[]{2, 5, 8}) {
+			Id<Link> id = links[kept].getId();
+			assertSame(links[kept], network.getLinks().get(id));
+			assertNull(simplifier.getOriginalLinks(id));
+			assertEquals(id, simplifier.getSimplifiedLinkId(id));
+		}
+		for (int first : new int[]{0, 3, 6, 9}) {
+			Link merged = network.getLinks().get(links[first].getId());
+			assertSame(nodes[first], merged.getFromNode());
+			assertSame(nodes[first + 2], merged.getToNode());
+			assertEquals(merged.getId(), simplifier.getSimplifiedLinkId(links[first + 1].getId()));
+		}
+		assertMapsBothWays(simplifier, network, lengthsBefore);
+	}
+}
@@ -0,0 +1,137 @@
+package io.github.agentsoz.ees.matsim;
+
+/*-
+ * #%L
+ * Emergency Evacuation Simulator
+ * %%
+ * Copyright (C) 2014 - 2025 by its authors. See AUTHORS file.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+
+import io.github.agentsoz.ees.util.FireArrivalGrid;
+import io.github.agentsoz.ees.util.GridNetworks;
+import org.junit.Test;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.Node;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the times at which the fire reaches each link, and the penalty factors that follow from
+ * them as the time of burning nears
+ */
+public class FireArrivalFieldTest {
+
+	private static final int SIZE = 6;
+	private static final double SPACING = 100;
+	private static final double HORIZON = 3600;
+	private static final double FACTOR_IN_FIRE = 100;
+
+	/**
+	 * When the fire reaches node (i,j) in the test below, or infinity if it never does
+	 */
+	private static double burnTime(int i, int j) {
+		if (i == 1 && j == 1) {
+			return 500; // burns early, although also recorded later
+		}
+		return (i < 4 && j < 3) ? 3600 * (i + 1) : Double.POSITIVE_INFINITY;
+	}
+
+	@Test
+	public void linksBurnWhenTheFirstOfTheirNodesBurns() {
+		Network network = GridNetworks.grid(SIZE, SPACING);
+		FireArrivalGrid grid = new FireArrivalGrid(SPACING);
+		for (int i = 0; i < SIZE; i++) {
+			for (int j = 0; j < SIZE; j++) {
+				if (burnTime(i, j) < Double.POSITIVE_INFINITY) {
+					// the first cell sets the lattice, so the nodes lie off the cell centres, but
+					// nearer to the centre of their own cell than to any other
+					grid.addFire(i * SPACING + 20, j * SPACING - 30, 3600 * (i + 1));
+				}
+			}
+		}
+		grid.addFire(SPACING, SPACING, 500);
+		// embers alone do not make links burn
+		grid.addEmbers(5 * SPACING, 5 * SPACING, 100);
+
+		double[] arrivals = FireArrivalField.getArrivalTimesOfLinks(grid, network);
+		int burning = 0;
+		for (Link link : network.getLinks().values()) {
+			double expected = Math.min(burnTimeOf(link.getFromNode()), burnTimeOf(link.getToNode()));
+			assertEquals(link.getId().toString(), expected, arrivals[link.getId().index()], 0);
+			if (expected < Double.POSITIVE_INFINITY) {
+				burning++;
+			}
+		}
+		assertTrue(burning > 0 && burning < network.getLinks().size());
+		assertEquals(500, arrivals[Id.createLinkId("1_2-1_1").index()], 0);
+		assertEquals(Double.POSITIVE_INFINITY, arrivals[Id.createLinkId("5_4-5_5").index()], 0);
+	}
+
+	private static double burnTimeOf(Node node) {
+		String[] ij = node.getId().toString().split("_");
+		return burnTime(Integer.parseInt(ij[0]), Integer.parseInt(ij[1]));
+	}
+
+	@Test
+	public void factorsGrowAcrossTheHorizon() {
+		Id<Link> burns = Id.createLinkId("faf-burns");
+		Id<Link> never = Id.createLinkId("faf-never");
+		double[] arrivals = new double[Id.getNumberOfIds(Link.class)];
+		Arrays.fill(arrivals, Double.POSITIVE_INFINITY);
+		double arrival = 10000;
+		arrivals[burns.index()] = arrival;
+
+		FireArrivalField field = new FireArrivalField(HORIZON, FACTOR_IN_FIRE);
+		assertFalse(field.isPublished());
+		assertEquals(1, field.getFactor(burns, arrival), 0);
+		field.publish(arrivals);
+		assertTrue(field.isPublished());
+
+		// no penalty until the fire is within the horizon, then quadratic in the nearness
+		assertEquals(1, field.getFactor(burns, 0), 0);
+		assertEquals(1, field.getFactor(burns, arrival - HORIZON), 0);
+		assertEquals(FACTOR_IN_FIRE / 4, field.getFactor(burns, arrival - HORIZON / 2), 1e-9);
+		assertEquals(FACTOR_IN_FIRE * 0.81, field.getFactor(burns, arrival - HORIZON / 10), 1e-9);
+		// but never below no penalty at all
+		assertEquals(1, field.getFactor(burns, arrival - 0.95 * HORIZON), 0);
+		// and the in-fire penalty once it burns
+		assertEquals(FACTOR_IN_FIRE, field.getFactor(burns, arrival), 0);
+		assertEquals(FACTOR_IN_FIRE, field.getFactor(burns, arrival + 7200), 0);
+
+		double previous = 0;
+		for (double time = arrival - 2 * HORIZON; time <= arrival + 60; time += 60) {
+			double factor = field.getFactor(burns, time);
+			assertTrue(factor >= previous && factor >= 1 && factor <= FACTOR_IN_FIRE);
+			previous = factor;
+		}
+		assertEquals(1, field.getFactor(never, arrival), 0);
+		// links made after the times were published are not penalised
+		assertEquals(1, field.getFactor(Id.createLinkId("faf-later"), arrival), 0);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsHorizonsThatAreNotPositive() {
+		new FireArrivalField(0, FACTOR_IN_FIRE);
+	}
+}
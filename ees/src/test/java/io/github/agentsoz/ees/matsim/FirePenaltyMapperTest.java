@@ -0,0 +1,192 @@
+package io.github.agentsoz.ees.matsim;
+
+/*-
+ * #%L
+ * Emergency Evacuation Simulator
+ * %%
+ * Copyright (C) 2014 - 2025 by its authors. See AUTHORS file.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+
+import io.github.agentsoz.ees.util.FireArrivalGrid;
+import io.github.agentsoz.ees.util.FireDistanceGrid;
+import io.github.agentsoz.ees.util.GridNetworks;
+import io.github.agentsoz.ees.util.HazardBuffers;
+import io.github.agentsoz.ees.util.HazardRaster;
+import io.github.agentsoz.ees.util.NetworkSpatialIndex;
+import org.junit.Test;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.Point;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that a fire sent as the cells of a Phoenix grid gives the same fire columns in the hazard
+ * table, and the same penalties, whether it is mapped as a raster through its distance grid or as
+ * the polygon of the same cells, up to the one cell diagonal that grid distances can be out by
+ */
+public class FirePenaltyMapperTest {
+
+	// nodes are 70m apart from the origin and cell edges are at 28m (x) and 14m (y) past multiples
+	// of 30m, so no node sits on the edge of a cell, where the two ways could legitimately disagree
+	private static final int SIZE = 20;
+	private static final double SPACING = 70;
+	private static final double CELL_SIZE = 30;
+	private static final double ORIGIN_X = 13;
+	private static final double ORIGIN_Y = 29;
+	private static final double BUFFER_WIDTH = 300;
+	private static final double NOW = 4 * 3600;
+	private static final double TOLERANCE = CELL_SIZE * Math.sqrt(2) + 1e-6;
+	private static final LinkHazardTable.Hazard BUFFER = LinkHazardTable.Hazard.FIRE_BUFFER_FOR_VEHICLES;
+
+	/**
+	 * An elliptic fire front spreading out from the middle of the network over the hours, a line of
+	 * spotted cells and a lone cell, with the cells that burn after {@link #NOW} left out of the raster
+	 */
+	private static FireArrivalGrid phoenixCells() {
+		FireArrivalGrid cells = new FireArrivalGrid(CELL_SIZE);
+		for (int c = 0; c < 45; c++) {
+			for (int r = 0; r < 45; r++) {
+				double x = ORIGIN_X + c * CELL_SIZE, y = ORIGIN_Y + r * CELL_SIZE;
+				double reach = Math.hypot((x - 665) / 300, (y - 640) / 200);
+				if (reach <= 1) {
+					cells.addFire(x, y, reach * 6 * 3600);
+				}
+			}
+		}
+		for (int c = 8; c < 30; c++) {
+			cells.addFire(ORIGIN_X + c * CELL_SIZE, ORIGIN_Y + 38 * CELL_SIZE, 2 * 3600);
+		}
+		cells.addFire(ORIGIN_X + 40 * CELL_SIZE, ORIGIN_Y + 5 * CELL_SIZE, 3600);
+		return cells;
+	}
+
+	private static double height(double distanceToFire) {
+		double depth = Math.max(0, BUFFER_WIDTH - distanceToFire);
+		return depth * depth;
+	}
+
+	/**
+	 * How much the penalty height at the given exact distance can be out by, when it is worked out
+	 * from a grid distance instead
+	 */
+	private static double heightTolerance(double distanceToFire) {
+		return height(Math.max(0, distanceToFire - TOLERANCE)) - height(distanceToFire + TOLERANCE) + 1e-6;
+	}
+
+	@Test
+	public void rasterAndPolygonFiresGiveTheSameColumnsAndPenalties() {
+		Network network = GridNetworks.grid(SIZE, SPACING);
+		NetworkSpatialIndex index = new NetworkSpatialIndex(network);
+		HazardRaster raster = phoenixCells().getFireRaster(NOW);
+		Geometry polygon = raster.getGeometry();
+		assertFalse(raster.isEmpty());
+
+		LinkHazardTable rasterTable = new LinkHazardTable();
+		Map<Id<Link>, Double> rasterPenalties = new HashMap<>();
+		FireDistanceGrid distanceGrid = new FireDistanceGrid(raster, BUFFER_WIDTH);
+		FirePenaltyMapper rasterMapper = new FirePenaltyMapper(rasterTable, network, index);
+		rasterMapper.putFireArea(raster.getEnvelope(), distanceGrid::distance);
+		rasterMapper.putFirePenalties(raster.getEnvelope(), BUFFER, BUFFER_WIDTH, rasterPenalties,
+				distanceGrid::distance);
+
+		LinkHazardTable polygonTable = new LinkHazardTable();
+		Map<Id<Link>, Double> polygonPenalties = new HashMap<>();
+		new FirePenaltyMapper(polygonTable, network, index).putFirePenalties(polygon,
+				new HazardBuffers(polygon, 0).getBuffer(BUFFER_WIDTH), BUFFER, BUFFER_WIDTH, polygonPenalties,
+				point -> point.distance(polygon));
+
+		int inFire = 0, inBuffer = 0;
+		for (Link link : network.getLinks().values()) {
+			Id<Link> id = link.getId();
+			double from = index.getPoint(link.getFromNode()).distance(polygon);
+			double to = index.getPoint(link.getToNode()).distance(polygon);
+
+			// whether the ends are in the fire is exact, as no node is on a cell edge
+			assertEquals(id.toString(), polygonTable.isFromNodeWithin(LinkHazardTable.Hazard.FIRE_AREA, id),
+					rasterTable.isFromNodeWithin(LinkHazardTable.Hazard.FIRE_AREA, id));
+			assertEquals(id.toString(), polygonTable.isToNodeWithin(LinkHazardTable.Hazard.FIRE_AREA, id),
+					rasterTable.isToNodeWithin(LinkHazardTable.Hazard.FIRE_AREA, id));
+			// raster zones go by the ends of links, so miss links that only cut across a corner of the fire
+			if (rasterTable.isIntersecting(LinkHazardTable.Hazard.FIRE_AREA, id)) {
+				assertTrue(id.toString(), polygonTable.isIntersecting(LinkHazardTable.Hazard.FIRE_AREA, id));
+			}
+			// whether the ends are in the buffer only once they are clear of its edge by the grid tolerance
+			if (Math.abs(from - BUFFER_WIDTH) > TOLERANCE) {
+				assertEquals(id.toString(), polygonTable.isFromNodeWithin(BUFFER, id),
+						rasterTable.isFromNodeWithin(BUFFER, id));
+			}
+			if (Math.abs(to - BUFFER_WIDTH) > TOLERANCE) {
+				assertEquals(id.toString(), polygonTable.isToNodeWithin(BUFFER, id),
+						rasterTable.isToNodeWithin(BUFFER, id));
+			}
+
+			double polygonPenalty = polygonPenalties.getOrDefault(id, 0.);
+			double rasterPenalty = rasterPenalties.getOrDefault(id, 0.);
+			if (polygonTable.isToNodeWithin(LinkHazardTable.Hazard.FIRE_AREA, id)
+					|| polygonTable.isFromNodeWithin(LinkHazardTable.Hazard.FIRE_AREA, id)) {
+				assertEquals(id.toString(), BUFFER_WIDTH * BUFFER_WIDTH, polygonPenalty, 0);
+				assertEquals(id.toString(), BUFFER_WIDTH * BUFFER_WIDTH, rasterPenalty, 0);
+				inFire++;
+			} else {
+				assertEquals(id.toString(), polygonPenalty, rasterPenalty,
+						heightTolerance(from) + heightTolerance(to));
+				if (polygonPenalty > 0) {
+					inBuffer++;
+				}
+			}
+		}
+		// the fire must reach into the network and leave links penalised for the buffer only
+		assertTrue(inFire > 0);
+		assertTrue(inBuffer > 0);
+	}
+
+	@Test
+	public void polygonFireIsMappedAgainAfterARasterFire() {
+		Network network = GridNetworks.grid(SIZE, SPACING);
+		NetworkSpatialIndex index = new NetworkSpatialIndex(network);
+		FireArrivalGrid cells = phoenixCells();
+		Geometry early = cells.getFireRaster(3600).getGeometry();
+		HazardRaster late = cells.getFireRaster(NOW);
+
+		LinkHazardTable table = new LinkHazardTable();
+		FirePenaltyMapper mapper = new FirePenaltyMapper(table, network, index);
+		Map<Id<Link>, Double> penalties = new HashMap<>();
+		Geometry buffer = new HazardBuffers(early, 0).getBuffer(BUFFER_WIDTH);
+		mapper.putFirePenalties(early, buffer, BUFFER, BUFFER_WIDTH, penalties, point -> point.distance(early));
+		FireDistanceGrid distanceGrid = new FireDistanceGrid(late, BUFFER_WIDTH);
+		mapper.putFireArea(late.getEnvelope(), distanceGrid::distance);
+		mapper.putFirePenalties(early, buffer, BUFFER, BUFFER_WIDTH, penalties, point -> point.distance(early));
+
+		boolean lateFireHadMoreNodes = false;
+		for (Link link : network.getLinks().values()) {
+			Point to = index.getPoint(link.getToNode());
+			assertEquals(link.getId().toString(), early.contains(to),
+					table.isToNodeWithin(LinkHazardTable.Hazard.FIRE_AREA, link.getId()));
+			lateFireHadMoreNodes |= late.contains(to.getX(), to.getY()) && !early.contains(to);
+		}
+		assertTrue(lateFireHadMoreNodes);
+	}
+}
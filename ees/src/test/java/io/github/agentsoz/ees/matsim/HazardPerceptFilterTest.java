@@ -0,0 +1,68 @@
+package io.github.agentsoz.ees.matsim;
+
+/*-
+ * #%L
+ * Emergency Evacuation Simulator
+ * %%
+ * Copyright (C) 2014 - 2025 by its authors. See AUTHORS file.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+
+import org.junit.Test;
+
+import java.util.Collections;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class HazardPerceptFilterTest {
+
+	private static final HazardPerceptFilter.Hazard FIRE = HazardPerceptFilter.Hazard.FIRE;
+
+	@Test
+	public void linkEnterThenUpdateSendsOnePercept() {
+		HazardPerceptFilter filter = new HazardPerceptFilter();
+		// seen entering a link in the zone, where no severity is known
+		assertTrue(filter.enter("1", FIRE, HazardPerceptFilter.UNTRACKED));
+		// then the next hazard update works out the severity where the agent is
+		filter.retain(Collections.singletonList("1"), FIRE);
+		assertFalse(filter.enter("1", FIRE, 3));
+		// and only a real escalation after that is told
+		assertFalse(filter.enter("1", FIRE, 3));
+		assertTrue(filter.enter("1", FIRE, 4));
+	}
+
+	@Test
+	public void agentIsToldAgainAfterLeaving() {
+		HazardPerceptFilter filter = new HazardPerceptFilter();
+		assertTrue(filter.enter("1", FIRE, 2));
+		assertFalse(filter.enter("1", FIRE, 1));
+		filter.leave("1", FIRE);
+		assertTrue(filter.enter("1", FIRE, 1));
+		filter.retain(Collections.emptyList(), FIRE);
+		assertTrue(filter.enter("1", FIRE, HazardPerceptFilter.UNTRACKED));
+		assertFalse(filter.enter("1", FIRE, HazardPerceptFilter.UNTRACKED));
+	}
+
+	@Test
+	public void hazardsAreTrackedSeparately() {
+		HazardPerceptFilter filter = new HazardPerceptFilter();
+		assertTrue(filter.enter("1", FIRE, 1));
+		assertTrue(filter.enter("1", HazardPerceptFilter.Hazard.EMBERS, 1));
+		assertFalse(filter.enter("1", FIRE, 1));
+	}
+}
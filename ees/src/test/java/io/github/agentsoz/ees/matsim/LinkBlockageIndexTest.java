@@ -0,0 +1,166 @@
+package io.github.agentsoz.ees.matsim;
+
+/*-
+ * #%L
+ * Emergency Evacuation Simulator
+ * %%
+ * Copyright (C) 2014 - 2025 by its authors. See AUTHORS file.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+
+import io.github.agentsoz.ees.util.GridNetworks;
+import org.junit.Before;
+import org.junit.Test;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.core.config.Config;
+import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.mobsim.framework.events.MobsimAfterSimStepEvent;
+import org.matsim.core.mobsim.framework.events.MobsimBeforeSimStepEvent;
+import org.matsim.core.network.NetworkChangeEvent;
+import org.matsim.core.network.NetworkUtils;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that the blockage index follows links as network change events block, unblock and
+ * block them again, and counts a new episode each time a link becomes blocked
+ */
+public class LinkBlockageIndexTest {
+
+	private Network network;
+	private Link a, b, c;
+	private final AtomicLong epoch = new AtomicLong();
+	private LinkBlockageIndex index;
+
+	@Before
+	public void setUp() {
+		Config config = ConfigUtils.createConfig();
+		config.network().setTimeVariantNetwork(true);
+		network = GridNetworks.grid(NetworkUtils.createNetwork(config), 3, 100);
+		a = network.getLinks().get(Id.createLinkId("0_0-1_0"));
+		b = network.getLinks().get(Id.createLinkId("1_0-2_0"));
+		c = network.getLinks().get(Id.createLinkId("0_1-1_1"));
+		// a and b are closed at 100; a reopens at 200, is slowed to a crawl at 300 and reopens at 400
+		addEvent(100, NetworkChangeEvent.ChangeType.ABSOLUTE_IN_SI_UNITS, 0, a, b);
+		addEvent(200, NetworkChangeEvent.ChangeType.ABSOLUTE_IN_SI_UNITS, 15, a);
+		addEvent(300, NetworkChangeEvent.ChangeType.FACTOR, 0.001, a);
+		addEvent(400, NetworkChangeEvent.ChangeType.ABSOLUTE_IN_SI_UNITS, 15, a);
+		index = new LinkBlockageIndex(network, true, epoch::get);
+	}
+
+	private void addEvent(double time, NetworkChangeEvent.ChangeType type, double value, Link... links) {
+		NetworkChangeEvent event = new NetworkChangeEvent(time);
+		event.setFreespeedChange(new NetworkChangeEvent.ChangeValue(type, value));
+		for (Link link : links) {
+			event.addLink(link);
+		}
+		NetworkUtils.addNetworkChangeEvent(network, event);
+	}
+
+	private void beforeStep(double time) {
+		index.notifyMobsimBeforeSimStep(new MobsimBeforeSimStepEvent<>(null, time));
+	}
+
+	private void afterStep(double time) {
+		index.notifyMobsimAfterSimStep(new MobsimAfterSimStepEvent<>(null, time));
+	}
+
+	private void step(double time) {
+		beforeStep(time);
+		afterStep(time);
+	}
+
+	@Test
+	public void followsLinksAsTheyAreBlockedUnblockedAndBlockedAgain() {
+		step(50);
+		assertFalse(index.isBlocked(a.getId()));
+		assertEquals(0, index.getEpisode(a.getId()));
+
+		// absolute changes are seen before the step, so that agents see them in the step itself
+		beforeStep(100);
+		assertTrue(index.isBlocked(a.getId()));
+		assertTrue(index.isBlocked(b.getId()));
+		afterStep(100);
+		assertTrue(index.isBlocked(a.getId()));
+		assertEquals(1, index.getEpisode(a.getId()));
+		assertEquals(1, index.getEpisode(b.getId()));
+		// a link staying blocked stays in the same episode
+		step(150);
+		assertEquals(1, index.getEpisode(a.getId()));
+
+		step(200);
+		assertFalse(index.isBlocked(a.getId()));
+		assertEquals(1, index.getEpisode(a.getId()));
+		assertTrue(index.isBlocked(b.getId()));
+
+		// relative changes are only known once the step has applied them
+		beforeStep(300);
+		assertFalse(index.isBlocked(a.getId()));
+		afterStep(300);
+		assertTrue(index.isBlocked(a.getId()));
+		assertEquals(2, index.getEpisode(a.getId()));
+
+		step(400);
+		assertFalse(index.isBlocked(a.getId()));
+		assertEquals(2, index.getEpisode(a.getId()));
+
+		// events added later are picked up when the network change epoch moves
+		addEvent(500, NetworkChangeEvent.ChangeType.ABSOLUTE_IN_SI_UNITS, 0.05, a);
+		epoch.incrementAndGet();
+		step(450);
+		assertFalse(index.isBlocked(a.getId()));
+		step(500);
+		assertTrue(index.isBlocked(a.getId()));
+		assertEquals(3, index.getEpisode(a.getId()));
+		assertEquals(1, index.getEpisode(b.getId()));
+		assertTrue(index.isBlocked(b.getId()));
+		assertFalse(index.isBlocked(c.getId()));
+		assertEquals(0, index.getEpisode(c.getId()));
+	}
+
+	@Test
+	public void takesChangesScheduledDirectly() {
+		step(0);
+		// as handed to the mobsim, which applies it to the link, without going through the epoch
+		addEvent(600, NetworkChangeEvent.ChangeType.ABSOLUTE_IN_SI_UNITS, 0, c);
+		index.schedule(c, 600, 0);
+		step(599);
+		assertFalse(index.isBlocked(c.getId()));
+		beforeStep(600);
+		assertTrue(index.isBlocked(c.getId()));
+		afterStep(600);
+		assertTrue(index.isBlocked(c.getId()));
+		assertEquals(1, index.getEpisode(c.getId()));
+	}
+
+	@Test
+	public void doesNothingWhenDisabled() {
+		index = new LinkBlockageIndex(network, false, epoch::get);
+		index.schedule(c, 0, 0);
+		step(100);
+		step(300);
+		assertFalse(index.isBlocked(a.getId()));
+		assertFalse(index.isBlocked(c.getId()));
+		assertEquals(0, index.getEpisode(a.getId()));
+	}
+}
@@ -0,0 +1,206 @@
+package io.github.agentsoz.ees.matsim;
+
+/*-
+ * #%L
+ * Emergency Evacuation Simulator
+ * %%
+ * Copyright (C) 2014 - 2025 by its authors. See AUTHORS file.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+
+import io.github.agentsoz.ees.util.GridNetworks;
+import io.github.agentsoz.ees.util.HazardBuffers;
+import io.github.agentsoz.ees.util.NetworkSpatialIndex;
+import io.github.agentsoz.ees.util.Utils;
+import org.junit.Test;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.prep.PreparedGeometry;
+import org.locationtech.jts.geom.prep.PreparedGeometryFactory;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+/**
+ * Checks that the hazard table maps shapes onto the same links as testing each link's geometry,
+ * and that fire penalties read from it are the same as those computed from the geometries, also
+ * when both are updated incrementally as the fire moves
+ */
+public class LinkHazardTableTest {
+
+	private static final int SIZE = 20;
+	private static final double SPACING = 100;
+	private static final double BUFFER_WIDTH = 300;
+
+	/**
+	 * A lopsided polygon around the given centre, with edges that cut across links between nodes
+	 */
+	private static Geometry shape(double x, double y, double radius) {
+		int n = 7;
+		Coordinate[] ring = new Coordinate[n + 1];
+		for (int i = 0; i < n; i++) {
+			double angle = 2 * Math.PI * i / n;
+			double r = radius * (1 + 0.3 * Math.sin(3 * angle));
+			ring[i] = new Coordinate(x + r * Math.cos(angle), y + r * Math.sin(angle));
+		}
+		ring[n] = ring[0];
+		return new GeometryFactory().createPolygon(ring);
+	}
+
+	@Test
+	public void columnsMatchLinkGeometries() {
+		Network network = GridNetworks.grid(SIZE, SPACING);
+		NetworkSpatialIndex index = new NetworkSpatialIndex(network);
+		Geometry[] shapes = {shape(500, 500, 330), shape(1400, 1200, 260), null};
+		LinkHazardTable table = new LinkHazardTable();
+		table.update(LinkHazardTable.Hazard.FLOOD, shapes, network, index);
+
+		Set<Link> intersecting = new HashSet<>();
+		Set<Link> fromNodeWithin = new HashSet<>();
+		Set<Link> toNodeWithin = new HashSet<>();
+		for (Geometry shape : shapes) {
+			if (shape == null) {
+				continue;
+			}
+			intersecting.addAll(index.getLinksIntersecting(shape));
+			PreparedGeometry prepared = PreparedGeometryFactory.prepare(shape);
+			for (Link link : network.getLinks().values()) {
+				if (prepared.contains(index.getPoint(link.getFromNode()))) {
+					fromNodeWithin.add(link);
+				}
+				if (prepared.contains(index.getPoint(link.getToNode()))) {
+					toNodeWithin.add(link);
+				}
+			}
+		}
+		assertFalse(intersecting.isEmpty());
+		assertEquals(intersecting, new HashSet<>(table.getLinksIntersecting(LinkHazardTable.Hazard.FLOOD)));
+		assertEquals(fromNodeWithin, new HashSet<>(table.getLinksWithFromNodeWithin(LinkHazardTable.Hazard.FLOOD)));
+		assertEquals(toNodeWithin, new HashSet<>(table.getLinksWithToNodeWithin(LinkHazardTable.Hazard.FLOOD)));
+		assertEquals(1, table.getEpoch(LinkHazardTable.Hazard.FLOOD));
+		assertEquals(0, table.getEpoch(LinkHazardTable.Hazard.CYCLONE));
+	}
+
+	@Test
+	public void updateReplacesPreviousState() {
+		Network network = GridNetworks.grid(SIZE, SPACING);
+		NetworkSpatialIndex index = new NetworkSpatialIndex(network);
+		LinkHazardTable table = new LinkHazardTable();
+		table.update(LinkHazardTable.Hazard.CYCLONE, shape(500, 500, 330), network, index);
+		Geometry moved = shape(1400, 1200, 260);
+		table.update(LinkHazardTable.Hazard.CYCLONE, moved, network, index);
+		assertEquals(new HashSet<>(index.getLinksIntersecting(moved)),
+				new HashSet<>(table.getLinksIntersecting(LinkHazardTable.Hazard.CYCLONE)));
+		assertEquals(2, table.getEpoch(LinkHazardTable.Hazard.CYCLONE));
+	}
+
+	@Test
+	public void penaltiesFromTableMatchPenaltiesFromGeometries() {
+		Network network = GridNetworks.grid(SIZE, SPACING);
+		NetworkSpatialIndex index = new NetworkSpatialIndex(network);
+		LinkHazardTable table = new LinkHazardTable();
+		Geometry fire = shape(900, 900, 350);
+		Geometry buffer = new HazardBuffers(fire, 0).getBuffer(BUFFER_WIDTH);
+
+		Map<Id<Link>, Double> expected = new HashMap<>();
+		Utils.penaltyMethod2(fire, buffer, BUFFER_WIDTH, expected, index, point -> point.distance(fire));
+
+		table.update(LinkHazardTable.Hazard.FIRE_AREA, fire, network, index);
+		table.update(LinkHazardTable.Hazard.FIRE_BUFFER_FOR_VEHICLES, buffer, network, index);
+		Map<Id<Link>, Double> actual = new HashMap<>();
+		Utils.penaltyMethod2(table.getLinksWithToNodeWithin(LinkHazardTable.Hazard.FIRE_BUFFER_FOR_VEHICLES),
+				link -> table.isToNodeWithin(LinkHazardTable.Hazard.FIRE_AREA, link.getId()),
+				link -> table.isFromNodeWithin(LinkHazardTable.Hazard.FIRE_AREA, link.getId()),
+				link -> table.isFromNodeWithin(LinkHazardTable.Hazard.FIRE_BUFFER_FOR_VEHICLES, link.getId()),
+				BUFFER_WIDTH, actual, index, point -> point.distance(fire));
+
+		assertFalse(expected.isEmpty());
+		assertEquals(expected, actual);
+	}
+
+	@Test
+	public void incrementalUpdatesMatchFullUpdatesAndPenalties() {
+		Network network = GridNetworks.grid(SIZE, SPACING);
+		NetworkSpatialIndex index = new NetworkSpatialIndex(network);
+		LinkHazardTable table = new LinkHazardTable();
+		Geometry previousFire = null;
+		Geometry previousBuffer = null;
+		Map<Id<Link>, Double> penalties = new HashMap<>();
+		for (int step = 0; step < 6; step++) {
+			// the fire grows and drifts across the grid
+			Geometry fire = shape(600 + 80 * step, 700 + 40 * step, 200 + 40 * step);
+			Geometry buffer = new HazardBuffers(fire, 0).getBuffer(BUFFER_WIDTH);
+			table.updateIncrementally(LinkHazardTable.Hazard.FIRE_AREA, fire, network, index);
+			table.updateIncrementally(LinkHazardTable.Hazard.FIRE_BUFFER_FOR_VEHICLES, buffer, network, index);
+
+			LinkHazardTable full = new LinkHazardTable();
+			full.update(LinkHazardTable.Hazard.FIRE_AREA, fire, network, index);
+			full.update(LinkHazardTable.Hazard.FIRE_BUFFER_FOR_VEHICLES, buffer, network, index);
+			for (LinkHazardTable.Hazard hazard : new LinkHazardTable.Hazard[]{
+					LinkHazardTable.Hazard.FIRE_AREA, LinkHazardTable.Hazard.FIRE_BUFFER_FOR_VEHICLES}) {
+				assertEquals(new HashSet<>(full.getLinksIntersecting(hazard)),
+						new HashSet<>(table.getLinksIntersecting(hazard)));
+				assertEquals(new HashSet<>(full.getLinksWithFromNodeWithin(hazard)),
+						new HashSet<>(table.getLinksWithFromNodeWithin(hazard)));
+				assertEquals(new HashSet<>(full.getLinksWithToNodeWithin(hazard)),
+						new HashSet<>(table.getLinksWithToNodeWithin(hazard)));
+			}
+
+			// recompute the penalties of the changed links from the table, as the model does
+			Set<Link> changed = Utils.getLinksWithChangedPenaltyInputs(previousFire, previousBuffer, fire, buffer,
+					BUFFER_WIDTH, index);
+			if (changed == null) {
+				penalties.clear();
+				changed = new HashSet<>(network.getLinks().values());
+			}
+			List<Link> linksWithToNodeInBuffer = new ArrayList<>();
+			for (Link link : changed) {
+				penalties.remove(link.getId());
+				if (table.isToNodeWithin(LinkHazardTable.Hazard.FIRE_BUFFER_FOR_VEHICLES, link.getId())) {
+					linksWithToNodeInBuffer.add(link);
+				}
+			}
+			Utils.penaltyMethod2(linksWithToNodeInBuffer,
+					link -> table.isToNodeWithin(LinkHazardTable.Hazard.FIRE_AREA, link.getId()),
+					link -> table.isFromNodeWithin(LinkHazardTable.Hazard.FIRE_AREA, link.getId()),
+					link -> table.isFromNodeWithin(LinkHazardTable.Hazard.FIRE_BUFFER_FOR_VEHICLES, link.getId()),
+					BUFFER_WIDTH, penalties, index, point -> point.distance(fire));
+			Map<Id<Link>, Double> expected = new HashMap<>();
+			Utils.penaltyMethod2(fire, buffer, BUFFER_WIDTH, expected, index, point -> point.distance(fire));
+			assertFalse(expected.isEmpty());
+			assertEquals(expected, penalties);
+
+			previousFire = fire;
+			previousBuffer = buffer;
+		}
+		// the same shape again changes nothing
+		long epoch = table.getEpoch(LinkHazardTable.Hazard.FIRE_AREA);
+		table.updateIncrementally(LinkHazardTable.Hazard.FIRE_AREA, previousFire, network, index);
+		assertEquals(epoch, table.getEpoch(LinkHazardTable.Hazard.FIRE_AREA));
+	}
+}
@@ -0,0 +1,137 @@
+package io.github.agentsoz.ees.matsim;
+
+/*-
+ * #%L
+ * Emergency Evacuation Simulator
+ * %%
+ * Copyright (C) 2014 - 2025 by its authors. See AUTHORS file.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+
+import org.junit.Test;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.core.config.Config;
+import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.network.NetworkChangeEvent;
+import org.matsim.core.network.NetworkUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks that the network change manager only adds real changes, and that compacting leaves the
+ * events that have already taken effect alone and the freespeed of the link the same at all times
+ */
+public class NetworkChangeManagerTest {
+
+    private static final Id<Link> LINK = Id.createLinkId("ab");
+    private static final double[] TIMES = {0, 49, 50, 75, 100, 150, 199, 200, 250, 300, 1000};
+
+    /**
+     * A time variant network of one link with a freespeed of 10
+     */
+    private static Network network() {
+        Config config = ConfigUtils.createConfig();
+        config.network().setTimeVariantNetwork(true);
+        Network network = NetworkUtils.createNetwork(config);
+        Node a = NetworkUtils.createAndAddNode(network, Id.createNodeId("a"), new Coord(0, 0));
+        Node b = NetworkUtils.createAndAddNode(network, Id.createNodeId("b"), new Coord(100, 0));
+        NetworkUtils.createAndAddLink(network, LINK, a, b, 100, 10, 1000, 1);
+        return network;
+    }
+
+    private static double[] freespeeds(Link link) {
+        double[] speeds = new double[TIMES.length];
+        for (int i = 0; i < TIMES.length; i++) {
+            speeds[i] = link.getFreespeed(TIMES[i]);
+        }
+        return speeds;
+    }
+
+    private static List<Double> startTimes(Network network) {
+        List<Double> times = new ArrayList<>();
+        for (NetworkChangeEvent event : NetworkUtils.getNetworkChangeEvents(network)) {
+            times.add(event.getStartTime());
+        }
+        Collections.sort(times);
+        return times;
+    }
+
+    @Test
+    public void onlyRealChangesAreAdded() {
+        Network network = network();
+        Link link = network.getLinks().get(LINK);
+        NetworkChangeManager manager = new NetworkChangeManager(network, 0);
+        assertEquals(1, manager.setFreespeed(Collections.singletonList(link), 100, 5));
+        assertEquals(0, manager.setFreespeed(Arrays.asList(link, link), 100, 5));
+        assertEquals(0, manager.setFreespeed(Collections.singletonList(link), 150, 5));
+        assertEquals(Collections.singletonList(100.), startTimes(network));
+        assertEquals(10, manager.getFreespeed(link, 50), 0);
+        assertEquals(5, manager.getFreespeed(link, 150), 0);
+    }
+
+    @Test
+    public void compactingDropsOnlyRedundantFutureChanges() {
+        Network network = network();
+        Link link = network.getLinks().get(LINK);
+        NetworkChangeManager manager = new NetworkChangeManager(network, 0);
+        List<Link> links = Collections.singletonList(link);
+        // each change is a real one when added, but those at 100 (after the one at 75) and at 200
+        // (after the one at 150) end up not changing anything
+        manager.setFreespeed(links, 100, 5);
+        manager.setFreespeed(links, 200, 3);
+        manager.setFreespeed(links, 75, 5);
+        manager.setFreespeed(links, 150, 3);
+        manager.setFreespeed(links, 50, 7);
+        assertEquals(Arrays.asList(50., 75., 100., 150., 200.), startTimes(network));
+        double[] before = freespeeds(link);
+
+        manager.compact(120);
+
+        // the change at 100 has taken effect, so stays even though it changes nothing
+        assertEquals(Arrays.asList(50., 75., 100., 150.), startTimes(network));
+        assertArrayEquals(before, freespeeds(link), 0);
+        assertEquals(3, manager.getFreespeed(link, 250), 0);
+    }
+
+    @Test
+    public void compactingKeepsAllPastChanges() {
+        Network network = network();
+        Link link = network.getLinks().get(LINK);
+        NetworkChangeManager manager = new NetworkChangeManager(network, 0);
+        List<Link> links = Collections.singletonList(link);
+        manager.setFreespeed(links, 50, 7);
+        manager.setFreespeed(links, 100, 5);
+        manager.setFreespeed(links, 150, 3);
+        double[] before = freespeeds(link);
+
+        manager.compact(1000);
+
+        assertEquals(Arrays.asList(50., 100., 150.), startTimes(network));
+        assertArrayEquals(before, freespeeds(link), 0);
+        assertEquals(3, manager.getFreespeed(link, 1000), 0);
+    }
+}
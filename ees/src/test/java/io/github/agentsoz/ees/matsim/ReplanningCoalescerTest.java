@@ -0,0 +1,127 @@
+package io.github.agentsoz.ees.matsim;
+
+/*-
+ * #%L
+ * Emergency Evacuation Simulator
+ * %%
+ * Copyright (C) 2014 - 2025 by its authors. See AUTHORS file.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks which replanning intents the coalescer carries out, and when
+ */
+public class ReplanningCoalescerTest {
+
+	private final List<String> replanned = new ArrayList<>();
+
+	private void submit(ReplanningCoalescer coalescer, String agentId, ReplanningCoalescer.Kind kind, String name) {
+		coalescer.submit(agentId, kind, () -> replanned.add(name));
+	}
+
+	/**
+	 * Flushes the coalescer and gets what was replanned
+	 */
+	private List<String> flush(ReplanningCoalescer coalescer, double now) {
+		replanned.clear();
+		coalescer.flush(now);
+		return new ArrayList<>(replanned);
+	}
+
+	@Test
+	public void keepsOnlyTheLatestIntentOfEachAgent() {
+		ReplanningCoalescer coalescer = new ReplanningCoalescer(0, 0, null);
+		submit(coalescer, "a", ReplanningCoalescer.Kind.CURRENT_TRIP, "a1");
+		submit(coalescer, "b", ReplanningCoalescer.Kind.CURRENT_TRIP, "b1");
+		submit(coalescer, "a", ReplanningCoalescer.Kind.CURRENT_TRIP, "a2");
+		assertEquals(Arrays.asList("a2", "b1"), flush(coalescer, 0));
+		assertEquals(Collections.emptyList(), flush(coalescer, 1));
+	}
+
+	@Test
+	public void newDestinationBeatsCurrentTrip() {
+		ReplanningCoalescer coalescer = new ReplanningCoalescer(0, 0, null);
+		// a trip replan after a new destination is dropped, as the new destination replans the trip anyway
+		submit(coalescer, "a", ReplanningCoalescer.Kind.NEW_DESTINATION, "a-destination");
+		submit(coalescer, "a", ReplanningCoalescer.Kind.CURRENT_TRIP, "a-trip");
+		// but a new destination replaces a trip replan
+		submit(coalescer, "b", ReplanningCoalescer.Kind.CURRENT_TRIP, "b-trip");
+		submit(coalescer, "b", ReplanningCoalescer.Kind.NEW_DESTINATION, "b-destination");
+		// and a newer destination replaces an older one
+		submit(coalescer, "c", ReplanningCoalescer.Kind.NEW_DESTINATION, "c-destination1");
+		submit(coalescer, "c", ReplanningCoalescer.Kind.NEW_DESTINATION, "c-destination2");
+		assertEquals(Arrays.asList("a-destination", "b-destination", "c-destination2"), flush(coalescer, 0));
+
+		// once carried out, a trip replan goes through again
+		submit(coalescer, "a", ReplanningCoalescer.Kind.CURRENT_TRIP, "a-trip");
+		assertEquals(Collections.singletonList("a-trip"), flush(coalescer, 1));
+	}
+
+	@Test
+	public void holdsBackAgentsReplannedWithinTheMinimumInterval() {
+		ReplanningCoalescer coalescer = new ReplanningCoalescer(60, 0, null);
+		submit(coalescer, "a", ReplanningCoalescer.Kind.CURRENT_TRIP, "a1");
+		assertEquals(Collections.singletonList("a1"), flush(coalescer, 0));
+
+		submit(coalescer, "a", ReplanningCoalescer.Kind.CURRENT_TRIP, "a2");
+		submit(coalescer, "b", ReplanningCoalescer.Kind.CURRENT_TRIP, "b1");
+		// other agents are not held back
+		assertEquals(Collections.singletonList("b1"), flush(coalescer, 30));
+		// and a held back intent can still be replaced while it waits
+		submit(coalescer, "a", ReplanningCoalescer.Kind.NEW_DESTINATION, "a3");
+		assertEquals(Collections.emptyList(), flush(coalescer, 59));
+		assertEquals(Collections.singletonList("a3"), flush(coalescer, 60));
+		submit(coalescer, "a", ReplanningCoalescer.Kind.CURRENT_TRIP, "a4");
+		assertEquals(Collections.emptyList(), flush(coalescer, 100));
+		assertEquals(Collections.singletonList("a4"), flush(coalescer, 120));
+	}
+
+	@Test
+	public void carriesOutAtMostMaxPerStep() {
+		ReplanningCoalescer coalescer = new ReplanningCoalescer(0, 2, null);
+		for (String agentId : new String[]{"a", "b", "c", "d", "e"}) {
+			submit(coalescer, agentId, ReplanningCoalescer.Kind.CURRENT_TRIP, agentId + "1");
+		}
+		assertEquals(Arrays.asList("a1", "b1"), flush(coalescer, 0));
+		// deferred intents keep their place in the queue when replaced
+		submit(coalescer, "e", ReplanningCoalescer.Kind.CURRENT_TRIP, "e2");
+		submit(coalescer, "c", ReplanningCoalescer.Kind.CURRENT_TRIP, "c2");
+		submit(coalescer, "a", ReplanningCoalescer.Kind.CURRENT_TRIP, "a2");
+		assertEquals(Arrays.asList("c2", "d1"), flush(coalescer, 1));
+		assertEquals(Arrays.asList("e2", "a2"), flush(coalescer, 2));
+		assertEquals(Collections.emptyList(), flush(coalescer, 3));
+	}
+
+	@Test
+	public void dropsPendingIntentsAtCleanup() {
+		ReplanningCoalescer coalescer = new ReplanningCoalescer(0, 1, null);
+		submit(coalescer, "a", ReplanningCoalescer.Kind.CURRENT_TRIP, "a1");
+		submit(coalescer, "b", ReplanningCoalescer.Kind.CURRENT_TRIP, "b1");
+		assertEquals(Collections.singletonList("a1"), flush(coalescer, 0));
+		coalescer.notifyMobsimBeforeCleanup(null);
+		assertEquals(Collections.emptyList(), flush(coalescer, 1));
+	}
+}
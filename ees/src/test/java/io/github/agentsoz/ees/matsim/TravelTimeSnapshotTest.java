@@ -0,0 +1,115 @@
+package io.github.agentsoz.ees.matsim;
+
+/*-
+ * #%L
+ * Emergency Evacuation Simulator
+ * %%
+ * Copyright (C) 2014 - 2025 by its authors. See AUTHORS file.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+
+import org.junit.Before;
+import org.junit.Test;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.Scenario;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.core.config.Config;
+import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.mobsim.framework.events.MobsimAfterSimStepEvent;
+import org.matsim.core.network.NetworkUtils;
+import org.matsim.core.router.DijkstraFactory;
+import org.matsim.core.router.costcalculators.OnlyTimeDependentTravelDisutility;
+import org.matsim.core.router.util.LeastCostPathCalculator;
+import org.matsim.core.router.util.TravelTime;
+import org.matsim.core.scenario.ScenarioUtils;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that speed changes passed to the snapshot reach the routers
+ */
+public class TravelTimeSnapshotTest {
+
+	private static final double EPSILON = 1e-6;
+
+	private Network network;
+	private Node a, c;
+	private Link ab, bc, ad;
+	private final AtomicLong epoch = new AtomicLong();
+	private TravelTimeSnapshot snapshot;
+
+	@Before
+	public void setUp() {
+		Config config = ConfigUtils.createConfig();
+		config.network().setTimeVariantNetwork(true);
+		Scenario scenario = ScenarioUtils.createScenario(config);
+		network = scenario.getNetwork();
+		// a direct route a-b-c of 2km, and a detour a-d-c of about 2.8km, all at 20m/s
+		a = NetworkUtils.createAndAddNode(network, Id.createNodeId("a"), new Coord(0, 0));
+		Node b = NetworkUtils.createAndAddNode(network, Id.createNodeId("b"), new Coord(1000, 0));
+		c = NetworkUtils.createAndAddNode(network, Id.createNodeId("c"), new Coord(2000, 0));
+		Node d = NetworkUtils.createAndAddNode(network, Id.createNodeId("d"), new Coord(1000, 1000));
+		ab = NetworkUtils.createAndAddLink(network, Id.createLinkId("ab"), a, b, 1000, 20, 1000, 1);
+		bc = NetworkUtils.createAndAddLink(network, Id.createLinkId("bc"), b, c, 1000, 20, 1000, 1);
+		ad = NetworkUtils.createAndAddLink(network, Id.createLinkId("ad"), a, d, 1414, 20, 1000, 1);
+		NetworkUtils.createAndAddLink(network, Id.createLinkId("dc"), d, c, 1414, 20, 1000, 1);
+
+		// live travel times without congestion, that see the changes once they are in the network
+		TravelTime live = (link, time, person, vehicle) -> link.getLength() / link.getFreespeed(time);
+		snapshot = new TravelTimeSnapshot(60, epoch::get);
+		snapshot.setLiveTravelTime(live, event -> NetworkUtils.addNetworkChangeEvent(network, event), network);
+		snapshot.notifyMobsimAfterSimStep(new MobsimAfterSimStepEvent<>(null, 0));
+	}
+
+	private LeastCostPathCalculator.Path route(double time) {
+		LeastCostPathCalculator router = new DijkstraFactory().createPathCalculator(
+				network, new OnlyTimeDependentTravelDisutility(snapshot), snapshot);
+		return router.calcLeastCostPath(a, c, time, null, null);
+	}
+
+	@Test
+	public void speedChangeAltersRoutedTravelTime() {
+		LeastCostPathCalculator.Path before = route(1);
+		assertEquals(100, before.travelTime, EPSILON);
+		assertTrue(before.links.contains(bc));
+
+		// close the direct route to all intents and purposes
+		snapshot.addFreespeedChange(bc, 1, 0.1);
+		epoch.incrementAndGet();
+		snapshot.notifyMobsimAfterSimStep(new MobsimAfterSimStepEvent<>(null, 1));
+
+		LeastCostPathCalculator.Path after = route(1);
+		assertEquals(2 * 1414 / 20., after.travelTime, EPSILON);
+		assertTrue(after.links.contains(ad));
+	}
+
+	@Test
+	public void laterSpeedChangeIsSeenAtLaterTimes() {
+		snapshot.addFreespeedChange(ab, 1000, 1);
+		snapshot.notifyMobsimAfterSimStep(new MobsimAfterSimStepEvent<>(null, 1));
+
+		assertEquals(50, snapshot.getLinkTravelTime(ab, 1, null, null), EPSILON);
+		assertEquals(1000, snapshot.getLinkTravelTime(ab, 1000, null, null), EPSILON);
+		assertTrue(route(1000).links.contains(ad));
+	}
+}
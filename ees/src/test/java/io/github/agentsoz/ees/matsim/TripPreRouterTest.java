@@ -0,0 +1,248 @@
+package io.github.agentsoz.ees.matsim;
+
+/*-
+ * #%L
+ * Emergency Evacuation Simulator
+ * %%
+ * Copyright (C) 2014 - 2025 by its authors. See AUTHORS file.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+
+import org.junit.After;
+import org.junit.Test;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.TransportMode;
+import org.matsim.api.core.v01.population.Activity;
+import org.matsim.api.core.v01.population.Leg;
+import org.matsim.api.core.v01.population.Person;
+import org.matsim.api.core.v01.population.Plan;
+import org.matsim.api.core.v01.population.PlanElement;
+import org.matsim.core.mobsim.framework.HasPerson;
+import org.matsim.core.mobsim.framework.MobsimAgent;
+import org.matsim.core.mobsim.framework.events.MobsimAfterSimStepEvent;
+import org.matsim.core.mobsim.qsim.agents.HasModifiablePlan;
+import org.matsim.core.population.PopulationUtils;
+import org.matsim.core.router.TripStructureUtils;
+
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks when the pre-router routes trips, and that it only hands out a route at departure if
+ * the trip, its departure time and the routing epoch are still those it was routed for
+ */
+public class TripPreRouterTest {
+
+	private static final double LOOK_AHEAD = 600;
+	private static final double DEPARTURE = 1000;
+
+	private final AtomicLong epoch = new AtomicLong();
+	private final List<List<? extends PlanElement>> routes = new CopyOnWriteArrayList<>();
+	private final List<Double> departureTimes = new CopyOnWriteArrayList<>();
+	private TripPreRouter preRouter;
+
+	private TripPreRouter preRouter(int numberOfThreads) {
+		preRouter = new TripPreRouter(numberOfThreads, LOOK_AHEAD, epoch::get);
+		preRouter.setTripRouting((agent, mainMode, origin, destination, departureTime) -> {
+			Leg leg = PopulationUtils.createLeg(mainMode);
+			List<? extends PlanElement> route = Collections.singletonList(leg);
+			departureTimes.add(departureTime);
+			routes.add(route);
+			return route;
+		});
+		return preRouter;
+	}
+
+	@After
+	public void tearDown() {
+		if (preRouter != null) {
+			preRouter.notifyMobsimBeforeCleanup(null);
+		}
+	}
+
+	/**
+	 * A plan from home, leaving at the departure time, to a shelter, with no route yet
+	 */
+	private static Plan plan() {
+		Plan plan = PopulationUtils.createPlan();
+		Activity home = PopulationUtils.createActivityFromLinkId("home", Id.createLinkId("tpr-home"));
+		home.setEndTime(DEPARTURE);
+		plan.addActivity(home);
+		Leg leg = PopulationUtils.createLeg(TransportMode.car);
+		TripStructureUtils.setRoutingMode(leg, TransportMode.car);
+		plan.addLeg(leg);
+		plan.addActivity(PopulationUtils.createActivityFromLinkId("shelter", Id.createLinkId("tpr-shelter")));
+		return plan;
+	}
+
+	/**
+	 * An agent that only knows its id, person and plan, which is all that the pre-router asks of it
+	 */
+	private static MobsimAgent agent(String id, Plan plan) {
+		Person person = PopulationUtils.getFactory().createPerson(Id.createPersonId(id));
+		return (MobsimAgent) Proxy.newProxyInstance(TripPreRouterTest.class.getClassLoader(),
+				new Class<?>[]{MobsimAgent.class, HasModifiablePlan.class, HasPerson.class},
+				(proxy, method, args) -> {
+					switch (method.getName()) {
+						case "getId":
+							return person.getId();
+						case "getPerson":
+							return person;
+						case "getModifiablePlan":
+							return plan;
+						case "hashCode":
+							return System.identityHashCode(proxy);
+						case "equals":
+							return proxy == args[0];
+						case "toString":
+							return id;
+						default:
+							throw new UnsupportedOperationException(method.getName());
+					}
+				});
+	}
+
+	private static Activity home(Plan plan) {
+		return (Activity) plan.getPlanElements().get(0);
+	}
+
+	private static TripStructureUtils.Trip trip(Plan plan) {
+		return TripStructureUtils.findTripStartingAtActivity(home(plan), plan);
+	}
+
+	private void afterStep(double time) {
+		preRouter.notifyMobsimAfterSimStep(new MobsimAfterSimStepEvent<>(null, time));
+	}
+
+	/**
+	 * Registers the trip of a new agent and routes it, as it comes within the look-ahead window
+	 */
+	private MobsimAgent routed(String id, Plan plan) {
+		MobsimAgent agent = agent(id, plan);
+		preRouter.register(agent, home(plan));
+		afterStep(DEPARTURE - LOOK_AHEAD - 1);
+		assertTrue(routes.isEmpty());
+		afterStep(DEPARTURE - LOOK_AHEAD);
+		assertEquals(1, routes.size());
+		return agent;
+	}
+
+	@Test
+	public void handsOutTheRouteOnceWhenNothingChanged() {
+		preRouter(2);
+		Plan plan = plan();
+		MobsimAgent agent = routed("tpr1", plan);
+		assertEquals(DEPARTURE, departureTimes.get(0), 0);
+		assertSame(routes.get(0), preRouter.take(agent, trip(plan)));
+		assertNull(preRouter.take(agent, trip(plan)));
+	}
+
+	@Test
+	public void refusesAnotherOrigin() {
+		preRouter(2);
+		Plan plan = plan();
+		MobsimAgent agent = routed("tpr2", plan);
+		// the same trip as far as the plan goes, but not the activity that was routed from
+		plan.getPlanElements().set(0, PopulationUtils.createActivity(home(plan)));
+		assertNull(preRouter.take(agent, trip(plan)));
+	}
+
+	@Test
+	public void refusesAnotherDestination() {
+		preRouter(2);
+		Plan plan = plan();
+		MobsimAgent agent = routed("tpr3", plan);
+		plan.getPlanElements().set(2, PopulationUtils.createActivityFromLinkId("shelter", Id.createLinkId("tpr-other")));
+		assertNull(preRouter.take(agent, trip(plan)));
+	}
+
+	@Test
+	public void refusesAMovedDeparture() {
+		preRouter(2);
+		Plan plan = plan();
+		MobsimAgent agent = routed("tpr4", plan);
+		home(plan).setEndTime(DEPARTURE + 60);
+		assertNull(preRouter.take(agent, trip(plan)));
+	}
+
+	@Test
+	public void refusesRoutesFromAnEarlierEpoch() {
+		preRouter(2);
+		Plan plan = plan();
+		MobsimAgent agent = routed("tpr5", plan);
+		epoch.incrementAndGet();
+		assertNull(preRouter.take(agent, trip(plan)));
+	}
+
+	@Test
+	public void routesAgainWhenTheEpochMoves() {
+		preRouter(2);
+		Plan plan = plan();
+		MobsimAgent agent = routed("tpr6", plan);
+		epoch.incrementAndGet();
+		afterStep(DEPARTURE - LOOK_AHEAD + 1);
+		assertEquals(2, routes.size());
+		assertSame(routes.get(1), preRouter.take(agent, trip(plan)));
+	}
+
+	@Test
+	public void queuesMovedDeparturesAgain() {
+		preRouter(2);
+		Plan plan = plan();
+		MobsimAgent agent = agent("tpr7", plan);
+		preRouter.register(agent, home(plan));
+		home(plan).setEndTime(DEPARTURE + 1000);
+		afterStep(DEPARTURE - LOOK_AHEAD);
+		assertTrue(routes.isEmpty());
+		afterStep(DEPARTURE + 1000 - LOOK_AHEAD);
+		assertEquals(1, routes.size());
+		assertEquals(DEPARTURE + 1000, departureTimes.get(0), 0);
+		assertSame(routes.get(0), preRouter.take(agent, trip(plan)));
+	}
+
+	@Test
+	public void dropsTripsWithoutADepartureTime() {
+		preRouter(2);
+		Plan plan = plan();
+		MobsimAgent agent = agent("tpr8", plan);
+		preRouter.register(agent, home(plan));
+		home(plan).setEndTimeUndefined();
+		afterStep(DEPARTURE - LOOK_AHEAD);
+		afterStep(DEPARTURE + 1000);
+		assertTrue(routes.isEmpty());
+		assertNull(preRouter.take(agent, trip(plan)));
+	}
+
+	@Test
+	public void doesNothingWhenDisabled() {
+		preRouter(0);
+		Plan plan = plan();
+		MobsimAgent agent = agent("tpr9", plan);
+		preRouter.register(agent, home(plan));
+		afterStep(DEPARTURE);
+		assertTrue(routes.isEmpty());
+		assertNull(preRouter.take(agent, trip(plan)));
+	}
+}
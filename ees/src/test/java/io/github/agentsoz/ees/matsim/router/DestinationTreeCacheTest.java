@@ -0,0 +1,97 @@
+package io.github.agentsoz.ees.matsim.router;
+
+/*-
+ * #%L
+ * Emergency Evacuation Simulator
+ * %%
+ * Copyright (C) 2014 - 2025 by its authors. See AUTHORS file.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+
+import io.github.agentsoz.ees.matsim.EvacTravelDisutility;
+import io.github.agentsoz.ees.matsim.LinkPenaltyField;
+import io.github.agentsoz.ees.util.GridNetworks;
+import org.junit.Before;
+import org.junit.Test;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.core.router.util.LeastCostPathCalculator;
+import org.matsim.core.router.util.TravelDisutility;
+import org.matsim.core.trafficmonitoring.FreeSpeedTravelTime;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Checks that routes walked down the cached trees rooted at the destinations are the same as
+ * those found by the plain Dijkstra that was used before, also after the penalties change
+ */
+public class DestinationTreeCacheTest {
+
+	private static final int SIZE = 10;
+	private static final double TIME = 8 * 3600;
+
+	private Network network;
+	private final LinkPenaltyField penalties = new LinkPenaltyField();
+	private final FreeSpeedTravelTime travelTime = new FreeSpeedTravelTime();
+	private final AtomicLong networkChangeEpoch = new AtomicLong();
+	private TravelDisutility travelDisutility;
+
+	@Before
+	public void setUp() {
+		network = GridNetworks.randomGrid(SIZE, 4711);
+		travelDisutility = new EvacTravelDisutility.Factory(penalties).createTravelDisutility(travelTime);
+	}
+
+	private LeastCostPathCalculator router() {
+		return new EvacRoutingAlgorithmFactory(4, new DestinationTreeCache(4, 300, networkChangeEpoch::get))
+				.createPathCalculator(network, travelDisutility, travelTime);
+	}
+
+	private void assertSameRoutes(LeastCostPathCalculator router) {
+		RouterTestSupport.assertSameRoutes(network, SIZE, router, travelDisutility, travelTime,
+				RouterTestSupport.pairsTo(120, SIZE, 5, 44, 93), TIME);
+	}
+
+	@Test
+	public void routesDownTreesMatchDijkstra() {
+		assertSameRoutes(router());
+	}
+
+	@Test
+	public void routesMatchDijkstraAfterPenaltiesChange() {
+		LeastCostPathCalculator router = router();
+		assertSameRoutes(router);
+		// the trees for the old penalties must not be used any more
+		RouterTestSupport.publishPenalties(network, SIZE, penalties);
+		assertSameRoutes(router);
+	}
+
+	@Test
+	public void routesMatchDijkstraAfterNetworkChange() {
+		LeastCostPathCalculator router = router();
+		assertSameRoutes(router);
+		// slow down every other link, as a flood would, and say so
+		int i = 0;
+		for (Link link : network.getLinks().values()) {
+			if (i++ % 2 == 0) {
+				link.setFreespeed(link.getFreespeed() / 4);
+			}
+		}
+		networkChangeEpoch.incrementAndGet();
+		assertSameRoutes(router);
+	}
+}
@@ -0,0 +1,115 @@
+package io.github.agentsoz.ees.matsim.router;
+
+/*-
+ * #%L
+ * Emergency Evacuation Simulator
+ * %%
+ * Copyright (C) 2014 - 2025 by its authors. See AUTHORS file.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+
+import io.github.agentsoz.ees.util.GridNetworks;
+import org.junit.Before;
+import org.junit.Test;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.core.router.DijkstraFactory;
+import org.matsim.core.router.costcalculators.OnlyTimeDependentTravelDisutility;
+import org.matsim.core.router.util.LeastCostPathCalculator;
+import org.matsim.core.trafficmonitoring.FreeSpeedTravelTime;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the driving distances against the lengths of the routes found by a plain Dijkstra at
+ * free speed
+ */
+public class DrivingDistanceOracleTest {
+
+	private Network network;
+	private List<Link> links;
+
+	@Before
+	public void setUp() {
+		network = GridNetworks.randomGrid(12, 4711);
+		links = new ArrayList<>(network.getLinks().values());
+		Collections.shuffle(links, new Random(4711));
+	}
+
+	private double dijkstraDistance(Link fromLink, Link toLink, double time) {
+		if (fromLink == toLink) {
+			return 0;
+		}
+		FreeSpeedTravelTime travelTime = new FreeSpeedTravelTime();
+		LeastCostPathCalculator dijkstra = new DijkstraFactory().createPathCalculator(
+				network, new OnlyTimeDependentTravelDisutility(travelTime), travelTime);
+		LeastCostPathCalculator.Path path = dijkstra.calcLeastCostPath(
+				fromLink.getToNode(), toLink.getFromNode(), time, null, null);
+		double length = toLink.getLength();
+		for (Link link : path.links) {
+			length += link.getLength();
+		}
+		return length;
+	}
+
+	@Test
+	public void distancesMatchDijkstra() {
+		DrivingDistanceOracle oracle = new DrivingDistanceOracle(network, 4);
+		for (int i = 0; i < 200; i++) {
+			Link from = links.get(i % links.size());
+			Link to = links.get((7 * i + 3) % 20); // a few destinations, each asked about many times
+			double expected = dijkstraDistance(from, to, 0);
+			assertEquals("distance from " + from.getId() + " to " + to.getId(),
+					expected, oracle.getDistance(from, to, 0, 0), 0.01);
+			assertTrue(oracle.getLowerBound(from, to) <= expected + 0.01);
+		}
+	}
+
+	@Test
+	public void thresholdOnlyCutsShortDistancesThatAreTooFar() {
+		DrivingDistanceOracle oracle = new DrivingDistanceOracle(network, 4);
+		for (int i = 0; i < 100; i++) {
+			Link from = links.get(i);
+			Link to = links.get(links.size() - 1 - i);
+			double expected = dijkstraDistance(from, to, 0);
+			double distance = oracle.getDistance(from, to, 0, 0, 2000);
+			if (expected <= 2000) {
+				assertEquals(expected, distance, 0.01);
+			} else {
+				assertTrue(distance > 2000);
+			}
+		}
+	}
+
+	@Test
+	public void leastRecentlyUsedTreesAreEvicted() {
+		DrivingDistanceOracle oracle = new DrivingDistanceOracle(network, 4, 5);
+		Link from = links.get(0);
+		for (int i = 1; i <= 20; i++) {
+			oracle.getDistance(from, links.get(i), 0, 0);
+			assertTrue(oracle.getNumberOfTrees() <= 5);
+		}
+		// evicted trees are just grown again
+		assertEquals(dijkstraDistance(from, links.get(1), 0), oracle.getDistance(from, links.get(1), 0, 0), 0.01);
+	}
+}
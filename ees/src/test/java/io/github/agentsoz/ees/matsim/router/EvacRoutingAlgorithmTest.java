@@ -0,0 +1,146 @@
+package io.github.agentsoz.ees.matsim.router;
+
+/*-
+ * #%L
+ * Emergency Evacuation Simulator
+ * %%
+ * Copyright (C) 2014 - 2025 by its authors. See AUTHORS file.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+
+import io.github.agentsoz.ees.matsim.EvacTravelDisutility;
+import io.github.agentsoz.ees.matsim.LinkPenaltyField;
+import io.github.agentsoz.ees.util.GridNetworks;
+import org.junit.Before;
+import org.junit.Test;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.core.config.Config;
+import org.matsim.core.config.ConfigUtils;
+import org.matsim.core.network.NetworkChangeEvent;
+import org.matsim.core.network.NetworkUtils;
+import org.matsim.core.router.util.LeastCostPathCalculator;
+import org.matsim.core.router.util.TravelDisutility;
+import org.matsim.core.router.util.TravelTime;
+import org.matsim.core.trafficmonitoring.FreeSpeedTravelTime;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Checks that the landmark router finds the same routes as the plain Dijkstra that was used
+ * before it, on the evacuation disutility with and without hazard penalties, and with travel
+ * times that change without the penalties changing
+ */
+public class EvacRoutingAlgorithmTest {
+
+	private static final int SIZE = 10;
+	private static final double TIME = 8 * 3600;
+
+	private Network network;
+	private final LinkPenaltyField penalties = new LinkPenaltyField();
+	private final FreeSpeedTravelTime travelTime = new FreeSpeedTravelTime();
+	private TravelDisutility travelDisutility;
+
+	@Before
+	public void setUp() {
+		network = GridNetworks.randomGrid(SIZE, 4711);
+		travelDisutility = new EvacTravelDisutility.Factory(penalties).createTravelDisutility(travelTime);
+	}
+
+	private void assertSameRoutes(LeastCostPathCalculator router) {
+		RouterTestSupport.assertSameRoutes(network, SIZE, router, travelDisutility, travelTime,
+				RouterTestSupport.pairs(150, SIZE), TIME);
+	}
+
+	@Test
+	public void routesMatchDijkstra() {
+		assertSameRoutes(new EvacRoutingAlgorithmFactory(4).createPathCalculator(network, travelDisutility, travelTime));
+	}
+
+	@Test
+	public void routesMatchDijkstraAfterPenaltiesChange() {
+		LeastCostPathCalculator router = new EvacRoutingAlgorithmFactory(4)
+				.createPathCalculator(network, travelDisutility, travelTime);
+		assertSameRoutes(router);
+		// the landmark tables are re-customised for the new penalties
+		RouterTestSupport.publishPenalties(network, SIZE, penalties);
+		assertSameRoutes(router);
+		penalties.publish(new HashMap<>());
+		assertSameRoutes(router);
+	}
+
+	@Test
+	public void routersOfOneFactoryAgree() {
+		EvacRoutingAlgorithmFactory factory = new EvacRoutingAlgorithmFactory(4);
+		RouterTestSupport.publishPenalties(network, SIZE, penalties);
+		assertSameRoutes(factory.createPathCalculator(network, travelDisutility, travelTime));
+		// this one shares the graph and the landmark tables of the first
+		assertSameRoutes(factory.createPathCalculator(network, travelDisutility, travelTime));
+	}
+
+	@Test
+	public void routesMatchDijkstraAsCongestionEases() {
+		// congested travel times, as from the within-day travel times, on the western half of the grid
+		Map<Id<Link>, Double> congestion = new HashMap<>();
+		for (Link link : network.getLinks().values()) {
+			if (link.getToNode().getCoord().getX() < SIZE * 250) {
+				congestion.put(link.getId(), 6.);
+			}
+		}
+		TravelTime congestedTime = (link, time, person, vehicle) ->
+				congestion.getOrDefault(link.getId(), 1.) * travelTime.getLinkTravelTime(link, time, person, vehicle);
+		TravelDisutility congestedDisutility = new EvacTravelDisutility.Factory(penalties).createTravelDisutility(congestedTime);
+		LeastCostPathCalculator router = new EvacRoutingAlgorithmFactory(4)
+				.createPathCalculator(network, congestedDisutility, congestedTime);
+		RouterTestSupport.assertSameRoutes(network, SIZE, router, congestedDisutility, congestedTime,
+				RouterTestSupport.pairs(150, SIZE), TIME);
+		// the links get faster than they were when the landmark tables were computed, with the same penalties
+		congestion.clear();
+		RouterTestSupport.assertSameRoutes(network, SIZE, router, congestedDisutility, congestedTime,
+				RouterTestSupport.pairs(150, SIZE), TIME);
+	}
+
+	@Test
+	public void routesMatchDijkstraWhenLinksSpeedUpLater() {
+		Config config = ConfigUtils.createConfig();
+		config.network().setTimeVariantNetwork(true);
+		Network timeVariant = GridNetworks.randomGrid(NetworkUtils.createNetwork(config), SIZE, 4711);
+		// slowed down early on, as by a flood, and back to more than the original speed later
+		NetworkChangeEvent slow = new NetworkChangeEvent(0);
+		slow.setFreespeedChange(new NetworkChangeEvent.ChangeValue(NetworkChangeEvent.ChangeType.FACTOR, 0.2));
+		NetworkChangeEvent fast = new NetworkChangeEvent(9 * 3600);
+		fast.setFreespeedChange(new NetworkChangeEvent.ChangeValue(NetworkChangeEvent.ChangeType.FACTOR, 10));
+		int i = 0;
+		for (Link link : timeVariant.getLinks().values()) {
+			if (i++ % 3 == 0) {
+				slow.addLink(link);
+				fast.addLink(link);
+			}
+		}
+		NetworkUtils.addNetworkChangeEvent(timeVariant, slow);
+		NetworkUtils.addNetworkChangeEvent(timeVariant, fast);
+		TravelDisutility disutility = new EvacTravelDisutility.Factory(penalties).createTravelDisutility(travelTime);
+		LeastCostPathCalculator router = new EvacRoutingAlgorithmFactory(4)
+				.createPathCalculator(timeVariant, disutility, travelTime);
+		for (double time : new double[]{TIME, 10 * 3600}) {
+			RouterTestSupport.assertSameRoutes(timeVariant, SIZE, router, disutility, travelTime,
+					RouterTestSupport.pairs(150, SIZE), time);
+		}
+	}
+}
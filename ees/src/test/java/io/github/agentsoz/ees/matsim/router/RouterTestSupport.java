@@ -0,0 +1,118 @@
+package io.github.agentsoz.ees.matsim.router;
+
+/*-
+ * #%L
+ * Emergency Evacuation Simulator
+ * %%
+ * Copyright (C) 2014 - 2025 by its authors. See AUTHORS file.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+
+import io.github.agentsoz.ees.matsim.LinkPenaltyField;
+import io.github.agentsoz.ees.util.GridNetworks;
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.core.router.DijkstraFactory;
+import org.matsim.core.router.util.LeastCostPathCalculator;
+import org.matsim.core.router.util.TravelDisutility;
+import org.matsim.core.router.util.TravelTime;
+import org.matsim.core.utils.geometry.CoordUtils;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+
+/**
+ * Route requests and checks shared by the router tests, on the random grids of {@link GridNetworks}
+ */
+final class RouterTestSupport {
+
+	private RouterTestSupport() {
+	}
+
+	/**
+	 * Pairs of distinct grid node indices (row by row) spread over a grid of the given size
+	 */
+	static int[][] pairs(int count, int size) {
+		int n = size * size;
+		int[][] pairs = new int[count][];
+		for (int i = 0; i < count; i++) {
+			int from = (37 * i) % n;
+			int to = (53 * i + 11) % n;
+			pairs[i] = new int[]{from, (to == from) ? (to + 1) % n : to};
+		}
+		return pairs;
+	}
+
+	/**
+	 * Pairs from all over a grid of the given size to a few destinations, as when many agents are
+	 * sent to the same places
+	 */
+	static int[][] pairsTo(int count, int size, int... destinations) {
+		int n = size * size;
+		int[][] pairs = new int[count][];
+		for (int i = 0; i < count; i++) {
+			int to = destinations[i % destinations.length];
+			int from = (37 * i + 1) % n;
+			pairs[i] = new int[]{(from == to) ? (from + 1) % n : from, to};
+		}
+		return pairs;
+	}
+
+	/**
+	 * Penalises the links into the nodes around the centre of a random grid of the given size,
+	 * as a fire there would
+	 */
+	static void publishPenalties(Network network, int size, LinkPenaltyField penalties) {
+		Map<Id<Link>, Double> factors = new HashMap<>();
+		Coord centre = new Coord(size * 250, size * 250);
+		for (Link link : network.getLinks().values()) {
+			double distance = CoordUtils.calcEuclideanDistance(link.getToNode().getCoord(), centre);
+			if (distance < 1200) {
+				factors.put(link.getId(), (distance < 600) ? 10000. : 100.);
+			}
+		}
+		assertFalse(factors.isEmpty());
+		penalties.publish(factors);
+	}
+
+	/**
+	 * Routes between the given pairs of grid node indices at the given time and checks the routes
+	 * against those of a plain Dijkstra with the same costs
+	 */
+	static void assertSameRoutes(Network network, int size, LeastCostPathCalculator router,
+								 TravelDisutility travelDisutility, TravelTime travelTime, int[][] pairs, double time) {
+		LeastCostPathCalculator dijkstra = new DijkstraFactory().createPathCalculator(network, travelDisutility, travelTime);
+		for (int[] pair : pairs) {
+			Node from = GridNetworks.node(network, pair[0] / size, pair[0] % size);
+			Node to = GridNetworks.node(network, pair[1] / size, pair[1] % size);
+			LeastCostPathCalculator.Path expected = dijkstra.calcLeastCostPath(from, to, time, null, null);
+			LeastCostPathCalculator.Path actual = router.calcLeastCostPath(from, to, time, null, null);
+			String route = "route from " + from.getId() + " to " + to.getId() + " at " + time;
+			assertNotNull(route, actual);
+			assertEquals(route, expected.links, actual.links);
+			assertEquals(route, expected.travelCost, actual.travelCost, 1e-6);
+			assertEquals(route, expected.travelTime, actual.travelTime, 1e-6);
+		}
+	}
+}
@@ -0,0 +1,152 @@
+package io.github.agentsoz.ees.util;
+
+/*-
+ * #%L
+ * Emergency Evacuation Simulator
+ * %%
+ * Copyright (C) 2014 - 2025 by its authors. See AUTHORS file.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+
+import org.junit.Test;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.Point;
+
+import java.util.BitSet;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that distances looked up in the fire distance grid are within one cell diagonal of the
+ * exact distances to the fire, for fires given as polygons and as rasters
+ */
+public class FireDistanceGridTest {
+
+	private static final double MARGIN = 300;
+	// for the float precision of the stored distances
+	private static final double SLACK = 1e-3;
+
+	private final GeometryFactory factory = new GeometryFactory();
+
+	/**
+	 * A lopsided fire front, with edges at all angles, and a sliver thinner than a cell to one side
+	 */
+	private Geometry fire() {
+		int n = 36;
+		Coordinate[] ring = new Coordinate[n + 1];
+		for (int i = 0; i < n; i++) {
+			double angle = 2 * Math.PI * i / n;
+			double r = 400 * (1 + 0.3 * Math.sin(3 * angle));
+			ring[i] = new Coordinate(5000 + r * Math.cos(angle), 7000 + r * Math.sin(angle));
+		}
+		ring[n] = ring[0];
+		Geometry sliver = factory.toGeometry(new Envelope(5600, 5900, 7300, 7303));
+		return factory.createPolygon(ring).union(sliver);
+	}
+
+	/**
+	 * A raster with an elliptic blob of cells, a line of cells and a lone cell
+	 */
+	private static HazardRaster raster() {
+		int cols = 40;
+		int rows = 30;
+		BitSet cells = new BitSet();
+		for (int row = 0; row < rows; row++) {
+			for (int col = 0; col < cols; col++) {
+				double u = (col - 15) / 10.0;
+				double v = (row - 15) / 7.0;
+				if (u * u + v * v <= 1 || (col > 25 && col == row + 5) || (col == 36 && row == 2)) {
+					cells.set(row * cols + col);
+				}
+			}
+		}
+		return new HazardRaster(1000, 2000, 30, 5, -3, cols, rows, cells);
+	}
+
+	/**
+	 * Checks grid distances against exact ones at random points in the given region, and that
+	 * points well outside the grid get the exact distance
+	 */
+	private void assertWithinOneCellDiagonal(FireDistanceGrid grid, Geometry fire, Envelope region) {
+		double diagonal = grid.getCellSize() * Math.sqrt(2);
+		Random random = new Random(4711);
+		for (int i = 0; i < 5000; i++) {
+			Point point = factory.createPoint(new Coordinate(
+					region.getMinX() + random.nextDouble() * region.getWidth(),
+					region.getMinY() + random.nextDouble() * region.getHeight()));
+			double exact = point.distance(fire);
+			assertEquals("at " + point, exact, grid.distance(point), diagonal + SLACK);
+		}
+		Point far = factory.createPoint(new Coordinate(region.getMaxX() + 5000, region.getMinY() - 3000));
+		assertEquals(far.distance(fire), grid.distance(far), 0);
+	}
+
+	private static Envelope region(Envelope extent, double margin) {
+		Envelope region = new Envelope(extent);
+		region.expandBy(margin);
+		return region;
+	}
+
+	@Test
+	public void polygonDistancesAreWithinOneCellDiagonal() {
+		Geometry fire = fire();
+		FireDistanceGrid grid = new FireDistanceGrid(fire, MARGIN, 20);
+		assertEquals(20, grid.getCellSize(), 0);
+		assertWithinOneCellDiagonal(grid, fire, region(fire.getEnvelopeInternal(), MARGIN));
+		// the sliver is found although no cell centre lies in it
+		assertEquals(0, grid.distance(5750, 7301.5), 20 * Math.sqrt(2));
+	}
+
+	@Test
+	public void rasterDistancesAreWithinOneCellDiagonal() {
+		HazardRaster raster = raster();
+		FireDistanceGrid grid = new FireDistanceGrid(raster, MARGIN);
+		assertEquals(30, grid.getCellSize(), 0);
+		assertWithinOneCellDiagonal(grid, raster.getGeometry(), region(raster.getEnvelope(), MARGIN));
+	}
+
+	@Test
+	public void coarsensGridsWithTooManyCells() {
+		Geometry fire = fire();
+		FireDistanceGrid grid = new FireDistanceGrid(fire, MARGIN, 10, 2000);
+		assertTrue(grid.getCellSize() > 10);
+		assertWithinOneCellDiagonal(grid, fire, region(fire.getEnvelopeInternal(), MARGIN));
+
+		// rasters are coarsened by merging whole cells, so that the grid stays aligned with them
+		HazardRaster raster = raster();
+		FireDistanceGrid rasterGrid = new FireDistanceGrid(raster, MARGIN, 500);
+		assertEquals(90, rasterGrid.getCellSize(), 1e-9);
+		assertWithinOneCellDiagonal(rasterGrid, raster.getGeometry(), region(raster.getEnvelope(), MARGIN));
+	}
+
+	@Test
+	public void emptyFiresAreInfinitelyFar() {
+		FireDistanceGrid grid = new FireDistanceGrid(factory.createPolygon(), MARGIN, 20);
+		assertEquals(Double.POSITIVE_INFINITY, grid.distance(0, 0), 0);
+		assertEquals(Double.POSITIVE_INFINITY, grid.distance(5000, 7000), 0);
+
+		HazardRaster raster = new HazardRaster(1000, 2000, 30, 0, 0, 10, 10, new BitSet());
+		FireDistanceGrid rasterGrid = new FireDistanceGrid(raster, MARGIN);
+		assertEquals(Double.POSITIVE_INFINITY, rasterGrid.distance(1100, 2100), 0);
+		assertEquals(Double.POSITIVE_INFINITY, rasterGrid.distance(-5000, -5000), 0);
+	}
+}
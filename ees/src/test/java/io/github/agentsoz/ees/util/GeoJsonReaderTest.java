@@ -0,0 +1,275 @@
+package io.github.agentsoz.ees.util;
+
+/*-
+ * #%L
+ * Emergency Evacuation Simulator
+ * %%
+ * Copyright (C) 2014 - 2025 by its authors. See AUTHORS file.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the features streamed by the GeoJSON reader against what they hold, and against the
+ * whole-file json-simple parse that the reader replaced
+ */
+public class GeoJsonReaderTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private static final String COLLECTION = "{\n" +
+			"\"type\": \"FeatureCollection\",\n" +
+			"\"crs\": { \"type\": \"name\", \"properties\": { \"name\": \"urn:ogc:def:crs:EPSG::28355\" } },\n" +
+			"\"features\": [\n" +
+			"{ \"type\": \"Feature\", \"properties\": { \"name\": \"point\", \"n\": 1 },\n" +
+			"  \"geometry\": { \"type\": \"Point\", \"coordinates\": [1.5, 2.5, 100.0] } },\n" +
+			"{ \"type\": \"Feature\", \"geometry\": { \"type\": \"LineString\",\n" +
+			"  \"coordinates\": [[0, 0], [1, 1], [2, 0.5]] }, \"properties\": { \"name\": \"line\" } },\n" +
+			"{ \"type\": \"Feature\", \"properties\": { \"name\": \"polygon\" },\n" +
+			"  \"geometry\": { \"type\": \"Polygon\", \"coordinates\": [\n" +
+			"    [[0, 0], [10, 0], [10, 10], [0, 10], [0, 0]],\n" +
+			"    [[2, 2], [3, 2], [3, 3], [2, 2]],\n" +
+			"    [[5, 5], [6, 5], [6, 6], [5, 5]] ] } },\n" +
+			"{ \"type\": \"Feature\", \"properties\": { \"name\": \"multipolygon\" },\n" +
+			"  \"geometry\": { \"type\": \"MultiPolygon\", \"coordinates\": [\n" +
+			"    [[[0, 0], [1, 0], [1, 1], [0, 0]]],\n" +
+			"    [[[5, 5], [9, 5], [9, 9], [5, 5]], [[6, 6], [7, 6], [7, 7], [6, 6]]] ] } },\n" +
+			"{ \"type\": \"Feature\", \"properties\": {\n" +
+			"    \"name\": \"nested\",\n" +
+			"    \"zone\": { \"id\": \"z1\", \"limits\": { \"min\": 0, \"max\": 2.5 } },\n" +
+			"    \"times\": [1, 2, [3, 4], { \"at\": \"0930\" }],\n" +
+			"    \"flags\": [],\n" +
+			"    \"none\": null,\n" +
+			"    \"on\": true },\n" +
+			"  \"geometry\": { \"type\": \"Point\", \"coordinates\": [7, 8] } },\n" +
+			"{ \"type\": \"Feature\", \"properties\": { \"name\": \"nowhere\" }, \"geometry\": null }\n" +
+			"]\n" +
+			"}\n";
+
+	private static List<GeoJsonReader.Feature> readAll(GeoJsonReader reader) throws Exception {
+		List<GeoJsonReader.Feature> features = new ArrayList<>();
+		try (GeoJsonReader r = reader) {
+			for (GeoJsonReader.Feature feature = r.next(); feature != null; feature = r.next()) {
+				features.add(feature);
+			}
+		}
+		return features;
+	}
+
+	private static List<GeoJsonReader.Feature> readAll(String json) throws Exception {
+		return readAll(new GeoJsonReader(new StringReader(json)));
+	}
+
+	@Test
+	public void readsPoint() throws Exception {
+		GeoJsonReader.Feature point = readAll(COLLECTION).get(0);
+		assertEquals("Point", point.getGeometryType());
+		assertEquals("point", point.getProperty("name"));
+		assertEquals(1L, point.getProperty("n"));
+		// the third ordinate is dropped
+		assertEquals(1, point.getPositionLists().size());
+		assertArrayEquals(new double[]{1.5, 2.5}, point.getFirstPositionList(), 0);
+	}
+
+	@Test
+	public void readsLineStringWithGeometryBeforeProperties() throws Exception {
+		GeoJsonReader.Feature line = readAll(COLLECTION).get(1);
+		assertEquals("LineString", line.getGeometryType());
+		assertEquals("line", line.getProperty("name"));
+		assertEquals(1, line.getPositionLists().size());
+		assertArrayEquals(new double[]{0, 0, 1, 1, 2, 0.5}, line.getFirstPositionList(), 0);
+	}
+
+	@Test
+	public void readsPolygonWithHoles() throws Exception {
+		GeoJsonReader.Feature polygon = readAll(COLLECTION).get(2);
+		assertEquals("Polygon", polygon.getGeometryType());
+		List<double[]> rings = polygon.getPositionLists();
+		assertEquals(3, rings.size());
+		assertArrayEquals(new double[]{0, 0, 10, 0, 10, 10, 0, 10, 0, 0}, rings.get(0), 0);
+		assertArrayEquals(new double[]{2, 2, 3, 2, 3, 3, 2, 2}, rings.get(1), 0);
+		assertArrayEquals(new double[]{5, 5, 6, 5, 6, 6, 5, 5}, rings.get(2), 0);
+	}
+
+	@Test
+	public void readsMultiPolygonRingsInOrder() throws Exception {
+		GeoJsonReader.Feature multiPolygon = readAll(COLLECTION).get(3);
+		assertEquals("MultiPolygon", multiPolygon.getGeometryType());
+		List<double[]> rings = multiPolygon.getPositionLists();
+		assertEquals(3, rings.size());
+		assertArrayEquals(new double[]{0, 0, 1, 0, 1, 1, 0, 0}, rings.get(0), 0);
+		assertArrayEquals(new double[]{5, 5, 9, 5, 9, 9, 5, 5}, rings.get(1), 0);
+		assertArrayEquals(new double[]{6, 6, 7, 6, 7, 7, 6, 6}, rings.get(2), 0);
+	}
+
+	@Test
+	public void readsNestedProperties() throws Exception {
+		GeoJsonReader.Feature nested = readAll(COLLECTION).get(4);
+		Map<String, Object> properties = nested.getProperties();
+		assertEquals(6, properties.size());
+
+		JSONObject zone = (JSONObject) properties.get("zone");
+		assertEquals("z1", zone.get("id"));
+		JSONObject limits = (JSONObject) zone.get("limits");
+		assertEquals(0L, limits.get("min"));
+		assertEquals(2.5, limits.get("max"));
+
+		JSONArray times = (JSONArray) properties.get("times");
+		assertEquals(4, times.size());
+		assertEquals(1L, times.get(0));
+		assertEquals(2L, times.get(1));
+		assertEquals(Arrays.asList(3L, 4L), times.get(2));
+		assertEquals("0930", ((JSONObject) times.get(3)).get("at"));
+
+		assertEquals(new JSONArray(), properties.get("flags"));
+		assertTrue(properties.containsKey("none"));
+		assertNull(properties.get("none"));
+		assertEquals(Boolean.TRUE, properties.get("on"));
+
+		// the nested values do not leak into the geometry
+		assertArrayEquals(new double[]{7, 8}, nested.getFirstPositionList(), 0);
+	}
+
+	@Test
+	public void readsNullGeometry() throws Exception {
+		List<GeoJsonReader.Feature> features = readAll(COLLECTION);
+		assertEquals(6, features.size());
+		GeoJsonReader.Feature nowhere = features.get(5);
+		assertEquals("nowhere", nowhere.getProperty("name"));
+		assertNull(nowhere.getGeometryType());
+		assertTrue(nowhere.getPositionLists().isEmpty());
+		assertNull(nowhere.getFirstPositionList());
+	}
+
+	@Test
+	public void readsGzippedFile() throws Exception {
+		File file = folder.newFile("collection.json.gz");
+		try (Writer writer = new OutputStreamWriter(new GZIPOutputStream(new FileOutputStream(file)),
+				StandardCharsets.UTF_8)) {
+			writer.write(COLLECTION);
+		}
+		List<GeoJsonReader.Feature> gzipped = readAll(new GeoJsonReader(file.getPath()));
+		assertFeaturesEqual(readAll(COLLECTION), gzipped);
+	}
+
+	@Test
+	public void readsSameAsWholeFileParse() throws Exception {
+		assertSameAsWholeFileParse(new StringReader(COLLECTION), new GeoJsonReader(new StringReader(COLLECTION)));
+		String zones = "scenarios/nsw/lithgow-fire/lithgow_surrounds_zones_epsg4326.geojson";
+		assertSameAsWholeFileParse(new FileReader(zones), new GeoJsonReader(zones));
+		String grid = "scenarios/surf-coast-shire/archetypes-basic/" +
+				"anglesea_evac_test_ffdi104_phx5_2016data_minsup_fh2017_grid_epsg32754.json.gz";
+		assertSameAsWholeFileParse(new InputStreamReader(new GZIPInputStream(new FileInputStream(grid))),
+				new GeoJsonReader(grid));
+	}
+
+	/**
+	 * Parses the whole collection with json-simple, as the hazard and zone models used to, and
+	 * checks that the streamed features hold the same properties and positions
+	 */
+	private static void assertSameAsWholeFileParse(Reader json, GeoJsonReader reader) throws Exception {
+		JSONArray expected;
+		try (Reader r = json) {
+			expected = (JSONArray) ((JSONObject) new JSONParser().parse(r)).get("features");
+		}
+		List<GeoJsonReader.Feature> features = readAll(reader);
+		assertEquals(expected.size(), features.size());
+		for (int i = 0; i < features.size(); i++) {
+			JSONObject feature = (JSONObject) expected.get(i);
+			GeoJsonReader.Feature actual = features.get(i);
+			Object properties = feature.get("properties");
+			assertEquals("properties of feature " + i, (properties == null) ? new JSONObject() : properties,
+					actual.getProperties());
+			JSONObject geometry = (JSONObject) feature.get("geometry");
+			List<double[]> positionLists = new ArrayList<>();
+			if (geometry != null) {
+				assertEquals(geometry.get("type"), actual.getGeometryType());
+				addPositionLists((JSONArray) geometry.get("coordinates"), positionLists);
+			} else {
+				assertNull(actual.getGeometryType());
+			}
+			assertEquals("positions of feature " + i, positionLists.size(), actual.getPositionLists().size());
+			for (int j = 0; j < positionLists.size(); j++) {
+				assertArrayEquals("positions of feature " + i, positionLists.get(j), actual.getPositionLists().get(j), 0);
+			}
+		}
+	}
+
+	/**
+	 * Adds every innermost array of positions in the given coordinates, packed as the reader does
+	 */
+	private static void addPositionLists(JSONArray coordinates, List<double[]> positionLists) {
+		if (coordinates.isEmpty()) {
+			return;
+		}
+		if (coordinates.get(0) instanceof Number) { // a point
+			positionLists.add(pack(Arrays.asList(coordinates)));
+		} else if (((JSONArray) coordinates.get(0)).get(0) instanceof Number) { // a list of positions
+			List<JSONArray> positions = new ArrayList<>();
+			for (Object position : coordinates) {
+				positions.add((JSONArray) position);
+			}
+			positionLists.add(pack(positions));
+		} else {
+			for (Object part : coordinates) {
+				addPositionLists((JSONArray) part, positionLists);
+			}
+		}
+	}
+
+	private static double[] pack(List<JSONArray> positions) {
+		double[] list = new double[positions.size() * 2];
+		for (int i = 0; i < positions.size(); i++) {
+			list[2 * i] = ((Number) positions.get(i).get(0)).doubleValue();
+			list[2 * i + 1] = ((Number) positions.get(i).get(1)).doubleValue();
+		}
+		return list;
+	}
+
+	private static void assertFeaturesEqual(List<GeoJsonReader.Feature> expected, List<GeoJsonReader.Feature> actual) {
+		assertEquals(expected.size(), actual.size());
+		for (int i = 0; i < expected.size(); i++) {
+			assertEquals(expected.get(i).getGeometryType(), actual.get(i).getGeometryType());
+			assertEquals(expected.get(i).getProperties(), actual.get(i).getProperties());
+			assertEquals(expected.get(i).getPositionLists().size(), actual.get(i).getPositionLists().size());
+			for (int j = 0; j < expected.get(i).getPositionLists().size(); j++) {
+				assertArrayEquals(expected.get(i).getPositionLists().get(j), actual.get(i).getPositionLists().get(j), 0);
+			}
+		}
+	}
+}
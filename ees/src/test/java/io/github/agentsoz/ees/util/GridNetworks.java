@@ -0,0 +1,121 @@
+package io.github.agentsoz.ees.util;
+
+/*-
+ * #%L
+ * Emergency Evacuation Simulator
+ * %%
+ * Copyright (C) 2014 - 2025 by its authors. See AUTHORS file.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.TransportMode;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.core.network.NetworkUtils;
+import org.matsim.core.utils.geometry.CoordUtils;
+
+import java.util.Collections;
+import java.util.Random;
+
+/**
+ * Small grid networks of two-way links for the tests. Node {@code (i,j)} has id {@code i_j}, and
+ * link ids join the ids of their from and to nodes with a dash.
+ */
+public final class GridNetworks {
+
+	private static final double[] SPEEDS = {8.33, 13.89, 16.67, 22.22, 27.78};
+
+	private GridNetworks() {
+	}
+
+	/**
+	 * A square grid with the given spacing, where all links have a freespeed of 15
+	 */
+	public static Network grid(int size, double spacing) {
+		return grid(NetworkUtils.createNetwork(), size, spacing);
+	}
+
+	public static Network grid(Network network, int size, double spacing) {
+		Node[][] nodes = new Node[size][size];
+		for (int i = 0; i < size; i++) {
+			for (int j = 0; j < size; j++) {
+				nodes[i][j] = NetworkUtils.createAndAddNode(network, Id.createNodeId(i + "_" + j),
+						new Coord(i * spacing, j * spacing));
+			}
+		}
+		connect(nodes, (from, to) -> addLink(network, from, to, spacing, 15));
+		return network;
+	}
+
+	/**
+	 * A grid of about 500m blocks with jittered nodes and winding roads at assorted speeds, so
+	 * that the fastest route is not the shortest and no two routes cost the same
+	 */
+	public static Network randomGrid(int size, long seed) {
+		return randomGrid(NetworkUtils.createNetwork(), size, seed);
+	}
+
+	public static Network randomGrid(Network network, int size, long seed) {
+		Random random = new Random(seed);
+		Node[][] nodes = new Node[size][size];
+		for (int i = 0; i < size; i++) {
+			for (int j = 0; j < size; j++) {
+				nodes[i][j] = NetworkUtils.createAndAddNode(network, Id.createNodeId(i + "_" + j),
+						new Coord(i * 500 + 100 * random.nextDouble(), j * 500 + 100 * random.nextDouble()));
+			}
+		}
+		connect(nodes, (from, to) -> addLink(network, from, to,
+				CoordUtils.calcEuclideanDistance(from.getCoord(), to.getCoord()) * (1 + 0.5 * random.nextDouble()),
+				SPEEDS[random.nextInt(SPEEDS.length)]));
+		return network;
+	}
+
+	/**
+	 * Gets node {@code (i,j)} of a grid made here
+	 */
+	public static Node node(Network network, int i, int j) {
+		return network.getNodes().get(Id.createNodeId(i + "_" + j));
+	}
+
+	private interface LinkMaker {
+		void add(Node from, Node to);
+	}
+
+	private static void connect(Node[][] nodes, LinkMaker maker) {
+		for (int i = 0; i < nodes.length; i++) {
+			for (int j = 0; j < nodes.length; j++) {
+				if (i + 1 < nodes.length) {
+					maker.add(nodes[i][j], nodes[i + 1][j]);
+					maker.add(nodes[i + 1][j], nodes[i][j]);
+				}
+				if (j + 1 < nodes.length) {
+					maker.add(nodes[i][j], nodes[i][j + 1]);
+					maker.add(nodes[i][j + 1], nodes[i][j]);
+				}
+			}
+		}
+	}
+
+	private static void addLink(Network network, Node from, Node to, double length, double freespeed) {
+		Link link = NetworkUtils.createAndAddLink(network, Id.createLinkId(from.getId() + "-" + to.getId()),
+				from, to, length, freespeed, 1000, 1);
+		link.setAllowedModes(Collections.singleton(TransportMode.car));
+	}
+}
@@ -0,0 +1,93 @@
+package io.github.agentsoz.ees.util;
+
+/*-
+ * #%L
+ * Emergency Evacuation Simulator
+ * %%
+ * Copyright (C) 2014 - 2025 by its authors. See AUTHORS file.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+
+import org.junit.Test;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class HazardBuffersTest {
+
+	private static final double[] DISTANCES = {0, 10, 50, 200, 35, 1000, 500};
+
+	/**
+	 * A ragged star shaped fire front with many more vertices than the tolerance needs
+	 */
+	private static Geometry raggedFire() {
+		Random random = new Random(4711);
+		int n = 2000;
+		Coordinate[] ring = new Coordinate[n + 1];
+		for (int i = 0; i < n; i++) {
+			double angle = 2 * Math.PI * i / n;
+			double radius = 1000 + 300 * Math.sin(7 * angle) + 40 * random.nextDouble();
+			ring[i] = new Coordinate(radius * Math.cos(angle), radius * Math.sin(angle));
+		}
+		ring[n] = ring[0];
+		return new GeometryFactory().createPolygon(ring);
+	}
+
+	@Test
+	public void grownBuffersCoverExactBuffers() {
+		Geometry fire = raggedFire();
+		for (double tolerance : new double[]{1, 10, 50}) {
+			HazardBuffers buffers = new HazardBuffers(fire, tolerance);
+			for (double distance : DISTANCES) {
+				Geometry grown = buffers.getBuffer(distance);
+				Geometry exact = fire.buffer(distance);
+				assertTrue("buffer at " + distance + "m with tolerance " + tolerance + "m does not cover the exact one",
+						grown.covers(exact));
+			}
+		}
+	}
+
+	@Test
+	public void zeroToleranceGivesExactBuffers() {
+		Geometry fire = raggedFire();
+		HazardBuffers buffers = new HazardBuffers(fire, 0);
+		for (double distance : DISTANCES) {
+			assertTrue(buffers.getBuffer(distance).equalsExact(fire.buffer(distance)));
+		}
+		assertSame(fire, buffers.getSimplifiedHazard());
+	}
+
+	@Test
+	public void buffersAreCached() {
+		HazardBuffers buffers = new HazardBuffers(raggedFire(), 10);
+		assertSame(buffers.getBuffer(200), buffers.getBuffer(200));
+	}
+
+	@Test
+	public void paddingCoversChordError() {
+		for (int segments = 1; segments <= 8; segments++) {
+			double padded = HazardBuffers.paddedDistance(100, 5, segments);
+			// the middle of each chord must still be at least the exact distance plus tolerance out
+			assertTrue(padded * Math.cos(Math.PI / (4 * segments)) >= 105 - 1e-9);
+		}
+	}
+}
@@ -0,0 +1,176 @@
+package io.github.agentsoz.ees.util;
+
+/*-
+ * #%L
+ * Emergency Evacuation Simulator
+ * %%
+ * Copyright (C) 2014 - 2025 by its authors. See AUTHORS file.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class HazardCacheTest {
+
+	private static final String VARIANT = "crs=EPSG:28356";
+	private static final GeometryFactory FACTORY = new GeometryFactory();
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private Path input;
+
+	@Before
+	public void setUp() throws IOException {
+		input = folder.newFile("fire.geojson").toPath();
+		Files.write(input, "{\"type\":\"FeatureCollection\",\"features\":[]}".getBytes(StandardCharsets.UTF_8));
+	}
+
+	private static Geometry square(double x, double y, double side) {
+		return FACTORY.toGeometry(new Envelope(x, x + side, y, y + side));
+	}
+
+	private HazardCache cache() {
+		return new HazardCache(input.toString(), VARIANT, HazardCache.Mode.on);
+	}
+
+	private Path cacheFile() throws IOException {
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(folder.getRoot().toPath(), "*.hazard")) {
+			Iterator<Path> it = files.iterator();
+			assertTrue("no cache file written", it.hasNext());
+			return it.next();
+		}
+	}
+
+	private void writeSome() {
+		TreeMap<Double, Geometry> fire = new TreeMap<>();
+		fire.put(0.0, square(0, 0, 100));
+		fire.put(60.0, null);
+		fire.put(120.0, square(0, 0, 200));
+		cache().write(new HazardCache.Contents().putGeometry("fire", fire));
+	}
+
+	@Test
+	public void contentsRoundTrip() {
+		TreeMap<Double, Geometry> fire = new TreeMap<>();
+		fire.put(0.0, square(0, 0, 100));
+		fire.put(60.0, null);
+		fire.put(120.0, FACTORY.createPolygon(new Coordinate[]{
+				new Coordinate(0, 0), new Coordinate(300, 0), new Coordinate(150, 250), new Coordinate(0, 0)}));
+		TreeMap<Double, List<Geometry>> cyclone = new TreeMap<>();
+		cyclone.put(30.0, Arrays.asList(square(1000, 1000, 50), null, square(2000, 1000, 50)));
+		FireArrivalGrid grid = new FireArrivalGrid(100);
+		grid.addFire(500, 500, 60);
+		grid.addFire(700, 400, 120);
+		grid.addEmbers(900, 500, 30);
+
+		cache().write(new HazardCache.Contents()
+				.putGeometry("fire", fire)
+				.putGeometries("cyclone", cyclone)
+				.putArrivalGrid("arrival", grid));
+		HazardCache.Contents read = cache().read();
+		assertNotNull(read);
+
+		TreeMap<Double, Geometry> readFire = read.getGeometry("fire");
+		assertEquals(new HashSet<>(Arrays.asList(0.0, 120.0)), readFire.keySet());
+		assertTrue(readFire.get(0.0).equalsExact(fire.get(0.0)));
+		assertTrue(readFire.get(120.0).equalsExact(fire.get(120.0)));
+
+		List<Geometry> readCyclone = read.getGeometries("cyclone").get(30.0);
+		assertEquals(2, readCyclone.size());
+		assertTrue(readCyclone.get(0).equalsExact(cyclone.get(30.0).get(0)));
+		assertTrue(readCyclone.get(1).equalsExact(cyclone.get(30.0).get(2)));
+
+		FireArrivalGrid readGrid = read.getArrivalGrid("arrival");
+		for (double[] xy : new double[][]{{500, 500}, {700, 400}, {900, 500}, {300, 300}}) {
+			assertEquals(grid.getFireArrivalTime(xy[0], xy[1]), readGrid.getFireArrivalTime(xy[0], xy[1]), 0);
+			assertEquals(grid.getEmbersArrivalTime(xy[0], xy[1]), readGrid.getEmbersArrivalTime(xy[0], xy[1]), 0);
+		}
+		assertTrue(read.getGeometries("flood").isEmpty());
+	}
+
+	@Test
+	public void cacheOfOtherVersionIsIgnored() throws IOException {
+		writeSome();
+		try (RandomAccessFile file = new RandomAccessFile(cacheFile().toFile(), "rw")) {
+			file.seek(4); // just past the magic number
+			file.writeInt(Integer.MAX_VALUE);
+		}
+		assertNull(cache().read());
+	}
+
+	@Test
+	public void cacheOfChangedInputIsIgnored() throws IOException {
+		writeSome();
+		Files.write(input, "{\"type\":\"FeatureCollection\",\"features\":[ ]}".getBytes(StandardCharsets.UTF_8));
+		Files.setLastModifiedTime(input, FileTime.fromMillis(Files.getLastModifiedTime(input).toMillis() + 5000));
+		assertNull(cache().read());
+	}
+
+	@Test
+	public void cacheOfTouchedButUnchangedInputIsUsed() throws IOException {
+		writeSome();
+		Files.setLastModifiedTime(input, FileTime.fromMillis(Files.getLastModifiedTime(input).toMillis() + 5000));
+		assertNotNull(cache().read());
+	}
+
+	@Test
+	public void cacheOfOtherVariantIsIgnored() {
+		writeSome();
+		assertNull(new HazardCache(input.toString(), "crs=EPSG:7856", HazardCache.Mode.on).read());
+	}
+
+	@Test
+	public void cacheIsNotUsedWhenOff() throws IOException {
+		HazardCache off = new HazardCache(input.toString(), VARIANT, HazardCache.Mode.off);
+		off.write(new HazardCache.Contents().putGeometry("fire", Collections.singletonMap(0.0, square(0, 0, 1))));
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(folder.getRoot().toPath(), "*.hazard")) {
+			assertFalse(files.iterator().hasNext());
+		}
+		writeSome();
+		assertNull(off.read());
+	}
+
+	@Test
+	public void modesParseInAnyCase() {
+		assertEquals(HazardCache.Mode.on, HazardCache.parseMode("ON"));
+		assertEquals(HazardCache.Mode.off, HazardCache.parseMode(" Off "));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void unknownModeIsRejected() {
+		HazardCache.parseMode("mapped");
+	}
+}
@@ -0,0 +1,108 @@
+package io.github.agentsoz.ees.util;
+
+/*-
+ * #%L
+ * Emergency Evacuation Simulator
+ * %%
+ * Copyright (C) 2014 - 2025 by its authors. See AUTHORS file.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * #L%
+ */
+
+import org.junit.Test;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that updating the fire penalties incrementally gives the same penalties as computing
+ * them afresh, as the fire moves and grows
+ */
+public class PenaltyMethod2IncrementalTest {
+
+	private static final int SIZE = 40;
+	private static final double SPACING = 50;
+	private static final double BUFFER_WIDTH = 300;
+
+	/**
+	 * A lopsided fire front around the given centre that grows with the given radius
+	 */
+	private static Geometry fire(double x, double y, double radius) {
+		int n = 24;
+		Coordinate[] ring = new Coordinate[n + 1];
+		for (int i = 0; i < n; i++) {
+			double angle = 2 * Math.PI * i / n;
+			double r = radius * (1 + 0.3 * Math.sin(3 * angle));
+			ring[i] = new Coordinate(x + r * Math.cos(angle), y + r * Math.sin(angle));
+		}
+		ring[n] = ring[0];
+		return new GeometryFactory().createPolygon(ring);
+	}
+
+	private static Map<Id<Link>, Double> fullPenalties(Geometry fire, Geometry buffer, NetworkSpatialIndex index) {
+		Map<Id<Link>, Double> penalties = new HashMap<>();
+		Utils.penaltyMethod2(fire, buffer, BUFFER_WIDTH, penalties, index, point -> point.distance(fire));
+		return penalties;
+	}
+
+	@Test
+	public void incrementalPenaltiesMatchFullRecompute() {
+		NetworkSpatialIndex index = new NetworkSpatialIndex(GridNetworks.grid(SIZE, SPACING));
+		Map<Id<Link>, Double> incremental = new HashMap<>();
+		Geometry previousFire = null;
+		Geometry previousBuffer = null;
+		for (int step = 0; step < 12; step++) {
+			// the fire grows and drifts across the grid, and jumps once
+			double x = (step == 7) ? 1500 : 300 + 100 * step;
+			Geometry fire = fire(x, 900, 100 + 40 * step);
+			Geometry buffer = new HazardBuffers(fire, 0).getBuffer(BUFFER_WIDTH);
+			if (previousFire == null) {
+				assertFalse(Utils.penaltyMethod2Incremental(null, null, fire, buffer, BUFFER_WIDTH, incremental, index));
+				Utils.penaltyMethod2(fire, buffer, BUFFER_WIDTH, incremental, index, point -> point.distance(fire));
+			} else {
+				assertTrue(Utils.penaltyMethod2Incremental(previousFire, previousBuffer, fire, buffer, BUFFER_WIDTH,
+						incremental, index));
+			}
+			Map<Id<Link>, Double> full = fullPenalties(fire, buffer, index);
+			assertFalse(full.isEmpty());
+			assertEquals("penalties differ at step " + step, full, incremental);
+			previousFire = fire;
+			previousBuffer = buffer;
+		}
+	}
+
+	@Test
+	public void nodesBeyondBufferWidthAreNotPenalised() {
+		NetworkSpatialIndex index = new NetworkSpatialIndex(GridNetworks.grid(SIZE, SPACING));
+		Geometry fire = fire(1000, 1000, 200);
+		// a buffer that reaches further than the buffer width, as those of simplified fires do
+		Geometry buffer = fire.buffer(BUFFER_WIDTH + 2 * SPACING);
+		Map<Id<Link>, Double> penalties = fullPenalties(fire, buffer, index);
+		for (Map.Entry<Id<Link>, Double> entry : penalties.entrySet()) {
+			assertTrue("link " + entry.getKey() + " has penalty " + entry.getValue(), entry.getValue() > 0);
+		}
+		assertEquals(fullPenalties(fire, fire.buffer(BUFFER_WIDTH), index), penalties);
+	}
+}